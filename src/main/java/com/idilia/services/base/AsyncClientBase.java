@@ -12,6 +12,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -94,6 +95,7 @@ public class AsyncClientBase extends ClientBase implements Closeable {
     final HttpClientContext context_;
     final CompletableFuture<Response> future_;
     int retryCnt_ = 0;
+    PriorityScheduler.Slot slot_;
 
     /** Create a callback that does not support retries */
     public HttpCallback(CompletableFuture<Response> future) {
@@ -144,6 +146,7 @@ public class AsyncClientBase extends ClientBase implements Closeable {
           }
         }
         
+        release();
         gzipDecoder.process(result, null);
         if (result.getEntity() == null)
           future_.completeExceptionally(new IdiliaClientException("Unexpected null response from server"));
@@ -166,13 +169,94 @@ public class AsyncClientBase extends ClientBase implements Closeable {
         return;
       }
       
+      release();
       future_.completeExceptionally(new IdiliaClientException(e));
     }
 
     @Override
     public void cancelled() {
+      release();
       future_.cancel(false);
     }
+
+    /** Release the scheduler slot held while the request is in progress */
+    private void release() {
+      releaseSlot(slot_);
+    }
+  }
+
+  /**
+   * Set the priority class of the requests without a priority. Default is
+   * {@link PriorityScheduler.Priority#NORMAL}.
+   * @param priority priority class
+   */
+  public void setPriority(PriorityScheduler.Priority priority) {
+    this.priority = priority;
+  }
+
+  /**
+   * @return the priority class of the requests without a priority
+   */
+  public PriorityScheduler.Priority getPriority() {
+    return priority;
+  }
+
+  /**
+   * Install a scheduler in front of the shared HTTP client. Requests are then sent
+   * according to their priority class. Without a scheduler (the default), requests
+   * are sent immediately and wait for a connection in order of arrival.
+   * @param scheduler scheduler or null to send immediately
+   */
+  public static void setScheduler(PriorityScheduler scheduler) {
+    scheduler_ = scheduler;
+  }
+
+  /**
+   * Send a request with the HTTP client, through the scheduler when one is installed.
+   * @param req API request being sent. Provides the priority.
+   * @param httpPost HTTP request for req
+   * @param ctxt HTTP context of the request
+   * @param callback callback invoked with the response
+   */
+  protected void execute(RequestBase req, HttpPost httpPost, HttpClientContext ctxt, HttpCallback<?> callback) {
+    schedule(req, slot -> {
+      callback.slot_ = slot;
+      getClient().execute(httpPost, ctxt, callback);
+    });
+  }
+
+  /**
+   * Run a function sending a request when the scheduler, if one is installed, grants
+   * it a slot.
+   * @param req API request being sent. Provides the priority.
+   * @param dispatch function sending the request. Receives a null slot when there is
+   *        no scheduler. Otherwise the slot must be released when the request is finished.
+   */
+  protected void schedule(RequestBase req, PriorityScheduler.Dispatch dispatch) {
+    PriorityScheduler s = scheduler_;
+    if (s == null) {
+      dispatch.dispatch(null);
+      return;
+    }
+    s.submit(req.getPriority() != null ? req.getPriority() : priority, dispatch);
+  }
+
+  /**
+   * Release the scheduler slot of a finished request. The next request granted a slot
+   * is dispatched from the executor of the clients rather than from the calling
+   * thread, usually the I/O thread of the HTTP client, so that preparing it does not
+   * hold up the processing of the other connections.
+   * @param slot slot to release. Nothing is done when null.
+   */
+  protected static void releaseSlot(PriorityScheduler.Slot slot) {
+    if (slot == null)
+      return;
+    try {
+      executor.execute(slot::release);
+    } catch (RejectedExecutionException e) {
+      // The clients are stopped
+      slot.release();
+    }
   }
 
   public CompletableFuture<ResponseBase> perform(RequestBase req) throws IdiliaClientException {
@@ -180,13 +264,13 @@ public class AsyncClientBase extends ClientBase implements Closeable {
     final HttpPost httpPost = createPost(req);
     final HttpClientContext ctxt = HttpClientContext.create();
     try {
-      sign(ctxt, req.requestPath(), req.toSign());
+      sign(ctxt, req);
     } catch (IOException e) {
       throw new IdiliaClientException(e);
     }
     
     final CompletableFuture<ResponseBase> future = new CompletableFuture<>();
-    getClient().execute(httpPost, ctxt, 
+    execute(req, httpPost, ctxt, 
         new HttpCallback<ResponseBase>(httpPost, ctxt, future) {
       @Override
       public ResponseBase completedHdlr(HttpResponse result) throws IdiliaClientException, JsonParseException, UnsupportedOperationException, IOException {
@@ -223,6 +307,12 @@ public class AsyncClientBase extends ClientBase implements Closeable {
     }
   }
   
+  /** Priority class of the requests without a priority */
+  private PriorityScheduler.Priority priority = PriorityScheduler.Priority.NORMAL;
+
+  /** Scheduler of the requests or null */
+  private static volatile PriorityScheduler scheduler_;
+  
   /** Shared connection manager for the connections established by any instances of the client */
   static protected PoolingNHttpClientConnectionManager connMgr;
   
@@ -0,0 +1,142 @@
+package com.idilia.services.base;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Reader of the compact binary format written by a {@link BinaryWriter}.
+ * <p>
+ * Not multithread safe.
+ */
+public class BinaryReader {
+
+  /**
+   * Create a reader for a payload.
+   * @param buf bytes written by a {@link BinaryWriter}
+   */
+  public BinaryReader(byte[] buf) {
+    this.buf = buf;
+  }
+
+  /**
+   * @return the next byte
+   * @throws IdiliaClientException when the payload is truncated
+   */
+  public int readByte() throws IdiliaClientException {
+    check(1);
+    return buf[pos++];
+  }
+
+  /**
+   * @return the next boolean
+   * @throws IdiliaClientException when the payload is truncated
+   */
+  public boolean readBoolean() throws IdiliaClientException {
+    return readByte() != 0;
+  }
+
+  /**
+   * @return the next integer written with {@link BinaryWriter#writeVarInt}
+   * @throws IdiliaClientException when the payload is truncated or invalid
+   */
+  public int readVarInt() throws IdiliaClientException {
+    int v = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int b = readByte();
+      v |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return v;
+    }
+    throw new IdiliaClientException("Invalid variable length integer");
+  }
+
+  /**
+   * @return the next integer written with {@link BinaryWriter#writeSignedVarInt}
+   * @throws IdiliaClientException when the payload is truncated or invalid
+   */
+  public int readSignedVarInt() throws IdiliaClientException {
+    int z = readVarInt();
+    return (z >>> 1) ^ -(z & 1);
+  }
+
+  /**
+   * @return the next long written with {@link BinaryWriter#writeSignedVarLong}
+   * @throws IdiliaClientException when the payload is truncated or invalid
+   */
+  public long readSignedVarLong() throws IdiliaClientException {
+    long z = 0;
+    for (int shift = 0; shift < 70; shift += 7) {
+      int b = readByte();
+      z |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return (z >>> 1) ^ -(z & 1);
+    }
+    throw new IdiliaClientException("Invalid variable length integer");
+  }
+
+  /**
+   * @return the next double
+   * @throws IdiliaClientException when the payload is truncated
+   */
+  public double readDouble() throws IdiliaClientException {
+    check(8);
+    long v = 0;
+    for (int i = 0; i < 8; ++i)
+      v = (v << 8) | (buf[pos++] & 0xFF);
+    return Double.longBitsToDouble(v);
+  }
+
+  /**
+   * @return the next Double written with {@link BinaryWriter#writeNullableDouble}
+   * @throws IdiliaClientException when the payload is truncated
+   */
+  public Double readNullableDouble() throws IdiliaClientException {
+    return readBoolean() ? readDouble() : null;
+  }
+
+  /**
+   * @return the next byte array or null
+   * @throws IdiliaClientException when the payload is truncated or invalid
+   */
+  public byte[] readBytes() throws IdiliaClientException {
+    int n = readVarInt();
+    if (n == 0)
+      return null;
+    check(n - 1);
+    byte[] b = Arrays.copyOfRange(buf, pos, pos + n - 1);
+    pos += n - 1;
+    return b;
+  }
+
+  /**
+   * @return the next string or null
+   * @throws IdiliaClientException when the payload is truncated or invalid
+   */
+  public String readString() throws IdiliaClientException {
+    int v = readVarInt();
+    if (v == 0)
+      return null;
+    if ((v & 1) == 0) {
+      int idx = (v >>> 1) - 1;
+      if (idx >= dictionary.size())
+        throw new IdiliaClientException("Invalid string reference");
+      return dictionary.get(idx);
+    }
+    int n = v >>> 1;
+    check(n);
+    String s = new String(buf, pos, n, StandardCharsets.UTF_8);
+    pos += n;
+    dictionary.add(s);
+    return s;
+  }
+
+  private void check(int n) throws IdiliaClientException {
+    if (n < 0 || pos + n > buf.length)
+      throw new IdiliaClientException("Truncated binary payload");
+  }
+
+  final private byte[] buf;
+  final private ArrayList<String> dictionary = new ArrayList<>();
+  private int pos;
+}
@@ -0,0 +1,168 @@
+package com.idilia.services.base;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Writer of the compact binary format used to record responses in caches.
+ * <p>
+ * Integers are written as variable length quantities (7 bits per byte). Strings
+ * are UTF-8 and written once per payload: a string repeated later in the same
+ * payload is written as a reference to its first occurrence. Read the payload
+ * with a {@link BinaryReader} using the same sequence of calls.
+ * <p>
+ * Not multithread safe.
+ */
+public class BinaryWriter {
+
+  /**
+   * Create a writer with an initial capacity.
+   * @param capacity initial size of the buffer in bytes
+   */
+  public BinaryWriter(int capacity) {
+    this.buf = new byte[Math.max(capacity, 16)];
+  }
+
+  /**
+   * Write a byte.
+   * @param b value
+   * @return this writer
+   */
+  public BinaryWriter writeByte(int b) {
+    ensure(1);
+    buf[len++] = (byte) b;
+    return this;
+  }
+
+  /**
+   * Write a boolean as one byte.
+   * @param b value
+   * @return this writer
+   */
+  public BinaryWriter writeBoolean(boolean b) {
+    return writeByte(b ? 1 : 0);
+  }
+
+  /**
+   * Write a non-negative integer in 1 to 5 bytes. Negative values take 5 bytes.
+   * @param v value
+   * @return this writer
+   */
+  public BinaryWriter writeVarInt(int v) {
+    ensure(5);
+    while ((v & ~0x7F) != 0) {
+      buf[len++] = (byte) ((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    buf[len++] = (byte) v;
+    return this;
+  }
+
+  /**
+   * Write an integer of any sign. Values of small magnitude take few bytes.
+   * @param v value
+   * @return this writer
+   */
+  public BinaryWriter writeSignedVarInt(int v) {
+    return writeVarInt((v << 1) ^ (v >> 31));
+  }
+
+  /**
+   * Write a long of any sign. Values of small magnitude take few bytes.
+   * @param v value
+   * @return this writer
+   */
+  public BinaryWriter writeSignedVarLong(long v) {
+    long z = (v << 1) ^ (v >> 63);
+    ensure(10);
+    while ((z & ~0x7FL) != 0) {
+      buf[len++] = (byte) ((z & 0x7F) | 0x80);
+      z >>>= 7;
+    }
+    buf[len++] = (byte) z;
+    return this;
+  }
+
+  /**
+   * Write a double in 8 bytes.
+   * @param d value
+   * @return this writer
+   */
+  public BinaryWriter writeDouble(double d) {
+    long v = Double.doubleToRawLongBits(d);
+    ensure(8);
+    for (int shift = 56; shift >= 0; shift -= 8)
+      buf[len++] = (byte) (v >>> shift);
+    return this;
+  }
+
+  /**
+   * Write a Double that can be null.
+   * @param d value or null
+   * @return this writer
+   */
+  public BinaryWriter writeNullableDouble(Double d) {
+    writeBoolean(d != null);
+    return d != null ? writeDouble(d) : this;
+  }
+
+  /**
+   * Write a byte array preceded by its length. A null array is distinct from an empty one.
+   * @param b value or null
+   * @return this writer
+   */
+  public BinaryWriter writeBytes(byte[] b) {
+    if (b == null)
+      return writeVarInt(0);
+    writeVarInt(b.length + 1);
+    ensure(b.length);
+    System.arraycopy(b, 0, buf, len, b.length);
+    len += b.length;
+    return this;
+  }
+
+  /**
+   * Write a string that can be null. A string already written in this payload
+   * is recorded as a reference.
+   * @param s value or null
+   * @return this writer
+   */
+  public BinaryWriter writeString(String s) {
+    if (s == null)
+      return writeVarInt(0);
+    Integer idx = dictionary.get(s);
+    if (idx != null)
+      return writeVarInt((idx + 1) << 1);
+    dictionary.put(s, dictionary.size());
+    byte[] b = s.getBytes(StandardCharsets.UTF_8);
+    writeVarInt((b.length << 1) | 1);
+    ensure(b.length);
+    System.arraycopy(b, 0, buf, len, b.length);
+    len += b.length;
+    return this;
+  }
+
+  /**
+   * @return number of bytes written
+   */
+  public int length() {
+    return len;
+  }
+
+  /**
+   * @return the bytes written
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buf, len);
+  }
+
+  private void ensure(int n) {
+    if (len + n > buf.length)
+      buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+  }
+
+  final private HashMap<String, Integer> dictionary = new HashMap<>();
+  private byte[] buf;
+  private int len;
+}
@@ -0,0 +1,24 @@
+package com.idilia.services.base;
+
+/**
+ * Conversion of a response to and from the bytes recorded in a byte oriented
+ * {@link ResponseCache} (e.g., a {@link SharedMappedStore}).
+ *
+ * @param <V> type of the response
+ */
+public interface CacheCodec<V> {
+
+  /**
+   * Encode a response.
+   * @param value response to encode
+   * @return the encoded bytes or null when the response cannot be recorded
+   */
+  byte[] encode(V value);
+
+  /**
+   * Decode a response previously encoded.
+   * @param bytes encoded bytes
+   * @return the response
+   */
+  V decode(byte[] bytes);
+}
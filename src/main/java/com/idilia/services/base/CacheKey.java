@@ -0,0 +1,30 @@
+package com.idilia.services.base;
+
+/**
+ * Helper to build the canonical string keys used with a {@link ResponseCache}.
+ * <p>
+ * Each part is length prefixed so that parts cannot run into each other and
+ * a null part is distinct from an empty one.
+ */
+public final class CacheKey {
+
+  /**
+   * Build a key from the given parts. Parts are converted with toString().
+   * @param parts values identifying a request. Can include nulls.
+   * @return canonical key
+   */
+  public static String of(Object... parts) {
+    StringBuilder sb = new StringBuilder(64);
+    for (Object part: parts) {
+      if (part == null) {
+        sb.append("-;");
+        continue;
+      }
+      String s = part.toString();
+      sb.append(s.length()).append(':').append(s).append(';');
+    }
+    return sb.toString();
+  }
+
+  private CacheKey() {}
+}
@@ -10,10 +10,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
-import org.apache.commons.codec.binary.Base64;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
@@ -25,7 +22,6 @@ import org.apache.http.entity.ContentType;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
 
-import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 public class ClientBase {
@@ -90,22 +86,28 @@ public class ClientBase {
    */
 
   protected void sign(HttpContext ctxt, String resource, byte[] toMD5) {
+    sign(ctxt, resource, toMD5.length > 0 ? RequestBase.digest(toMD5) : null);
+  }
 
-    String signTail = "-" + serviceUrl.getHost() + "-" + resource;
-
-    if (toMD5.length > 0) {
-      // Compute the MD5 of the content to sign
-      try {
-        MessageDigest md = MessageDigest.getInstance("MD5");
-        byte[] theDigest = md.digest(toMD5);
-        byte[] base64md5 = Base64.encodeBase64(theDigest);
-        String strDigest = new String(base64md5);
-        signTail += "-";
-        signTail += strDigest;
-      } catch (NoSuchAlgorithmException e) {
-        e.printStackTrace();
-      }
+  /** Helper to add the information required to compute the signature of a request into the context.
+   * Uses the digest provided by the request when available.
+   * @param ctxt HttpContext to be updated
+   * @param req request to sign
+   * @throws IOException when the content to sign cannot be obtained from the request
+   */
+  protected void sign(HttpContext ctxt, RequestBase req) throws IOException {
+    String digest = req.contentDigest();
+    if (digest == null) {
+      byte[] toMD5 = req.toSign();
+      digest = toMD5.length > 0 ? RequestBase.digest(toMD5) : null;
     }
+    sign(ctxt, req.requestPath(), digest);
+  }
+
+  private void sign(HttpContext ctxt, String resource, String digest) {
+    String signTail = "-" + serviceUrl.getHost() + "-" + resource;
+    if (digest != null)
+      signTail += "-" + digest;
 
     ctxt.setAttribute("idlSignData", new RequestSigner.SignatureData(signTail,
         serviceUrl, credentials));
@@ -154,8 +156,7 @@ public class ClientBase {
     {
       // Single part json message.
       try {
-        JsonParser jp = jsonMapper_.getFactory().createParser(rxEntity.getContent());
-        resp = jp.readValueAs(req.responseClass());
+        resp = JsonCodecs.reader(req.responseClass()).readValue(rxEntity.getContent());
         if (resp.getStatus() != HttpStatus.SC_OK)
           throw new IdiliaClientException(resp);
         return resp;
@@ -171,7 +172,7 @@ public class ClientBase {
   final protected IdiliaCredentials credentials;
   final protected URL serviceUrl;
   final protected static String HMAC_SHA_ALGORITHM = "HmacSHA256";
-  final protected static ObjectMapper jsonMapper_ = new ObjectMapper();
+  final protected static ObjectMapper jsonMapper_ = JsonCodecs.mapper();
   final protected static URL defaultApiUrl;
   
   static {
@@ -0,0 +1,116 @@
+package com.idilia.services.base;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * List of doubles stored in a double array.
+ * <p>
+ * Used in the responses holding many numbers to avoid an object per value. The
+ * {@link java.util.List} methods box the values on access; {@link #getDouble(int)} and
+ * {@link #toDoubleArray()} do not. A null element is stored as NaN.
+ * <p>
+ * Not multithread safe.
+ */
+public final class DoubleList extends AbstractList<Double> implements RandomAccess {
+
+  /**
+   * Create an empty list.
+   */
+  public DoubleList() {
+    this.values = EMPTY;
+  }
+
+  /**
+   * Create a list holding the given values. The array is not copied.
+   * @param values initial content of the list
+   */
+  public DoubleList(double[] values) {
+    this.values = values;
+    this.size = values.length;
+  }
+
+  /**
+   * @param index position of the value
+   * @return value at the position
+   * @throws IndexOutOfBoundsException when the index is not in the list
+   */
+  public double getDouble(int index) {
+    if (index >= size)
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    return values[index];
+  }
+
+  /**
+   * Append a value.
+   * @param v value
+   */
+  public void addDouble(double v) {
+    if (size == values.length)
+      values = Arrays.copyOf(values, Math.max(4, size + (size >> 1)));
+    values[size++] = v;
+    ++modCount;
+  }
+
+  /**
+   * Append all the values of another list.
+   * @param other list appended
+   */
+  public void addAll(DoubleList other) {
+    if (size + other.size > values.length)
+      values = Arrays.copyOf(values, Math.max(size + other.size, size + (size >> 1)));
+    System.arraycopy(other.values, 0, values, size, other.size);
+    size += other.size;
+    ++modCount;
+  }
+
+  /**
+   * @return a copy of the values
+   */
+  public double[] toDoubleArray() {
+    return Arrays.copyOf(values, size);
+  }
+
+  /**
+   * Release the capacity beyond the size of the list.
+   */
+  public void trimToSize() {
+    if (values.length > size)
+      values = size == 0 ? EMPTY : Arrays.copyOf(values, size);
+  }
+
+  @Override
+  public Double get(int index) {
+    return getDouble(index);
+  }
+
+  @Override
+  public Double set(int index, Double v) {
+    double prev = getDouble(index);
+    values[index] = v != null ? v : Double.NaN;
+    return prev;
+  }
+
+  @Override
+  public boolean add(Double v) {
+    addDouble(v != null ? v : Double.NaN);
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    size = 0;
+    ++modCount;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  final private static double[] EMPTY = new double[0];
+
+  private double[] values;
+  private int size;
+}
@@ -0,0 +1,109 @@
+package com.idilia.services.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link ResponseCache} of responses recorded as bytes in another cache. Used to
+ * place responses in a persistent or shared storage.
+ * <p>
+ * Keys are prefixed with a namespace so that several kinds of responses can share
+ * the same storage. Clearing the cache only removes the responses of its namespace.
+ * <p>
+ * An entry that cannot be decoded, for instance one recorded by another version of
+ * the SDK or damaged, is treated as a miss and removed.
+ *
+ * @param <V> type of the response
+ */
+public class EncodedResponseCache<V> implements ResponseCache<V> {
+
+  /**
+   * Create a cache over a byte storage.
+   * @param storage storage for the encoded responses
+   * @param namespace prefix of the keys of this cache in the storage
+   * @param codec conversion of the responses to bytes
+   */
+  public EncodedResponseCache(ResponseCache<byte[]> storage, String namespace, CacheCodec<V> codec) {
+    this.storage = storage;
+    this.prefix = CacheKey.of(namespace);
+    this.codec = codec;
+  }
+
+  @Override
+  public V get(String key) {
+    byte[] b = storage.get(prefix + key);
+    if (b == null)
+      return null;
+    V v = decode(b);
+    if (v == null)
+      storage.remove(prefix + key);
+    return v;
+  }
+
+  @Override
+  public void put(String key, V value) {
+    byte[] b = codec.encode(value);
+    if (b != null)
+      storage.put(prefix + key, b);
+  }
+
+  @Override
+  public void remove(String key) {
+    storage.remove(prefix + key);
+  }
+
+  @Override
+  public void removeByPrefix(String keyPrefix) {
+    storage.removeByPrefix(prefix + keyPrefix);
+  }
+
+  /**
+   * Remove the responses of this cache's namespace. The responses of the other
+   * caches sharing the storage are kept.
+   */
+  @Override
+  public void clear() {
+    storage.removeByPrefix(prefix);
+  }
+
+  /**
+   * Invoke a function with each response of this cache's namespace.
+   */
+  @Override
+  public void forEach(BiConsumer<String, ? super V> action) {
+    List<String> invalid = new ArrayList<>();
+    storage.forEach((key, b) -> {
+      if (!key.startsWith(prefix))
+        return;
+      V v = decode(b);
+      if (v != null)
+        action.accept(key.substring(prefix.length()), v);
+      else
+        invalid.add(key);
+    });
+    for (String key: invalid)
+      storage.remove(key);
+  }
+
+  /**
+   * @return number of entries in the storage, including those of other namespaces
+   */
+  @Override
+  public int size() {
+    return storage.size();
+  }
+
+  /** @return the decoded response or null when the bytes cannot be decoded */
+  private V decode(byte[] b) {
+    try {
+      return codec.decode(b);
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  final private ResponseCache<byte[]> storage;
+  final private String prefix;
+  final private CacheCodec<V> codec;
+}
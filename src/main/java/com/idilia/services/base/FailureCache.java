@@ -0,0 +1,97 @@
+package com.idilia.services.base;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpStatus;
+
+/**
+ * Cache of the failures returned by the server for requests that would fail again
+ * if repeated (e.g., an unknown sensekey). A request with a recorded failure fails
+ * immediately without contacting the server until the failure expires.
+ * <p>
+ * Only client errors (4xx) are recorded, except those that depend on the state of the
+ * client or the server rather than on the request: authentication (401, 403),
+ * timeout (408) and rate limiting (429).
+ * <p>
+ * Multithread safe. Normally attached to a response cache such as
+ * {@link com.idilia.services.kb.SenseCardCache}.
+ */
+public class FailureCache {
+
+  /**
+   * Create a cache of failures.
+   * @param maxEntries maximum number of failures recorded
+   * @param timeToLive duration that a failure is remembered
+   * @param unit unit of timeToLive
+   */
+  public FailureCache(int maxEntries, long timeToLive, TimeUnit unit) {
+    if (timeToLive <= 0)
+      throw new IllegalArgumentException("timeToLive must be positive");
+    this.failures = new LruResponseCache<ResponseBase>(maxEntries).setTimeToLive(timeToLive, unit);
+  }
+
+  /**
+   * Return whether a failure status is expected to be returned again for the same request.
+   * @param status HTTP status returned by the server
+   * @return true for the client errors that do not depend on the state of the client or server
+   */
+  public static boolean isDeterministic(int status) {
+    return status >= 400 && status < 500 &&
+        status != HttpStatus.SC_UNAUTHORIZED &&
+        status != HttpStatus.SC_FORBIDDEN &&
+        status != HttpStatus.SC_REQUEST_TIMEOUT &&
+        status != 429; // Too many requests
+  }
+
+  /**
+   * Fail when a failure is recorded for a request.
+   * @param key key of the request
+   * @param requestId request id set in the response of the exception thrown
+   * @throws IdiliaClientException with the status and message of the recorded failure
+   */
+  public void check(String key, String requestId) throws IdiliaClientException {
+    ResponseBase r = failures.get(key);
+    if (r != null) {
+      ResponseBase c = new ResponseBase(r.getStatus(), r.getErrorMsg());
+      c.setRequestId(requestId);
+      throw new IdiliaClientException(c);
+    }
+  }
+
+  /**
+   * Record the failure of a request when it is deterministic.
+   * @param key key of the request
+   * @param e exception raised for the request
+   */
+  public void record(String key, IdiliaClientException e) {
+    ResponseBase r = e.getApiResponse();
+    if (r != null && isDeterministic(r.getStatus()))
+      failures.put(key, new ResponseBase(r.getStatus(), r.getErrorMsg()));
+  }
+
+  /**
+   * Remove the failures recorded for the keys starting with a prefix. Used by the
+   * caches sharing this cache to remove only their own failures.
+   * @param prefix start of the keys of the failures removed
+   */
+  public void removeByPrefix(String prefix) {
+    failures.removeByPrefix(prefix);
+  }
+
+  /**
+   * Remove all the failures recorded, including those of the other caches sharing
+   * this cache.
+   */
+  public void clear() {
+    failures.clear();
+  }
+
+  /**
+   * @return number of failures recorded, including those expired but not yet removed
+   */
+  public int size() {
+    return failures.size();
+  }
+
+  final private LruResponseCache<ResponseBase> failures;
+}
@@ -0,0 +1,210 @@
+package com.idilia.services.base;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Writer of an application/x-www-form-urlencoded request body.
+ * <p>
+ * Each parameter is encoded to UTF-8 and escaped in a single pass straight into the
+ * buffer of the body, which becomes the content of the entity without being copied.
+ * A value already encoded to UTF-8, for instance because it is also signed, is given
+ * as bytes with a {@link Utf8Pair} to avoid encoding it again. The encoding is the
+ * same as {@link org.apache.http.client.entity.UrlEncodedFormEntity} with UTF-8.
+ * <p>
+ * Not multithread safe.
+ */
+public final class FormBody {
+
+  /**
+   * Create a body with an initial capacity.
+   * @param capacity initial size of the buffer in bytes
+   */
+  public FormBody(int capacity) {
+    this.buf = new byte[Math.max(capacity, 64)];
+  }
+
+  /**
+   * Add a parameter.
+   * @param p name and value. The value of a {@link Utf8Pair} is written from its bytes.
+   * @return this body
+   */
+  public FormBody add(NameValuePair p) {
+    if (p instanceof Utf8Pair)
+      return add(p.getName(), ((Utf8Pair) p).getBytes());
+    return add(p.getName(), p.getValue());
+  }
+
+  /**
+   * Add a parameter.
+   * @param name name of the parameter
+   * @param value value of the parameter or null for a parameter without value
+   * @return this body
+   */
+  public FormBody add(String name, String value) {
+    separator();
+    writeString(name);
+    if (value != null) {
+      writeByte('=');
+      writeString(value);
+    }
+    return this;
+  }
+
+  /**
+   * Add a parameter whose value is already encoded to UTF-8.
+   * @param name name of the parameter
+   * @param utf8 value of the parameter encoded to UTF-8
+   * @return this body
+   */
+  public FormBody add(String name, byte[] utf8) {
+    separator();
+    writeString(name);
+    writeByte('=');
+    ensure(utf8.length);
+    for (byte b: utf8)
+      writeEscaped(b);
+    return this;
+  }
+
+  /**
+   * @return number of bytes written
+   */
+  public int length() {
+    return len;
+  }
+
+  /**
+   * @return a copy of the body
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buf, len);
+  }
+
+  /**
+   * @return entity sharing the buffer of this body
+   */
+  public HttpEntity toEntity() {
+    return new ByteArrayEntity(buf, 0, len, CONTENT_TYPE);
+  }
+
+  private void separator() {
+    if (len > 0)
+      writeByte('&');
+  }
+
+  /** Encode to UTF-8 and escape */
+  private void writeString(String s) {
+    int n = s.length();
+    ensure(n);
+    for (int i = 0; i < n; ++i) {
+      char c = s.charAt(i);
+      if (c < 0x80)
+        writeEscaped((byte) c);
+      else if (c < 0x800) {
+        writeEscaped((byte) (0xc0 | (c >> 6)));
+        writeEscaped((byte) (0x80 | (c & 0x3f)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, s.charAt(++i));
+        writeEscaped((byte) (0xf0 | (cp >> 18)));
+        writeEscaped((byte) (0x80 | ((cp >> 12) & 0x3f)));
+        writeEscaped((byte) (0x80 | ((cp >> 6) & 0x3f)));
+        writeEscaped((byte) (0x80 | (cp & 0x3f)));
+      } else if (Character.isSurrogate(c)) {
+        // Unpaired surrogate. Replaced as done by the UTF-8 encoder.
+        writeEscaped((byte) '?');
+      } else {
+        writeEscaped((byte) (0xe0 | (c >> 12)));
+        writeEscaped((byte) (0x80 | ((c >> 6) & 0x3f)));
+        writeEscaped((byte) (0x80 | (c & 0x3f)));
+      }
+    }
+  }
+
+  private void writeEscaped(byte b) {
+    if (SAFE[b & 0xff]) {
+      writeByte(b);
+    } else if (b == ' ') {
+      writeByte('+');
+    } else {
+      ensure(3);
+      buf[len++] = '%';
+      buf[len++] = HEX[(b >> 4) & 0xf];
+      buf[len++] = HEX[b & 0xf];
+    }
+  }
+
+  private void writeByte(int b) {
+    ensure(1);
+    buf[len++] = (byte) b;
+  }
+
+  private void ensure(int n) {
+    if (len + n > buf.length)
+      buf = Arrays.copyOf(buf, Math.max(len + n, buf.length * 2));
+  }
+
+  /**
+   * A parameter whose value is held encoded to UTF-8. The string value is
+   * only decoded when requested.
+   */
+  public static final class Utf8Pair implements NameValuePair {
+
+    /**
+     * @param name name of the parameter
+     * @param utf8 value encoded to UTF-8. Not copied.
+     */
+    public Utf8Pair(String name, byte[] utf8) {
+      this.name = name;
+      this.utf8 = utf8;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public String getValue() {
+      return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the value encoded to UTF-8
+     */
+    public byte[] getBytes() {
+      return utf8;
+    }
+
+    @Override
+    public String toString() {
+      return name + "=" + getValue();
+    }
+
+    final private String name;
+    final private byte[] utf8;
+  }
+
+  final private static ContentType CONTENT_TYPE =
+      ContentType.create("application/x-www-form-urlencoded", StandardCharsets.UTF_8);
+  final private static byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+  final private static boolean[] SAFE = new boolean[256];
+  static {
+    for (int c = 'a'; c <= 'z'; ++c)
+      SAFE[c] = true;
+    for (int c = 'A'; c <= 'Z'; ++c)
+      SAFE[c] = true;
+    for (int c = '0'; c <= '9'; ++c)
+      SAFE[c] = true;
+    for (char c: "_-.*".toCharArray())
+      SAFE[c] = true;
+  }
+
+  private byte[] buf;
+  private int len;
+}
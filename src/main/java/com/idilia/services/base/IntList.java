@@ -0,0 +1,104 @@
+package com.idilia.services.base;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * List of integers stored in an int array.
+ * <p>
+ * Used in the responses holding many integers to avoid an object per value. The
+ * {@link java.util.List} methods box the values on access; {@link #getInt(int)} and
+ * {@link #toIntArray()} do not. Null elements are not supported.
+ * <p>
+ * Not multithread safe.
+ */
+public final class IntList extends AbstractList<Integer> implements RandomAccess {
+
+  /**
+   * Create an empty list.
+   */
+  public IntList() {
+    this.values = EMPTY;
+  }
+
+  /**
+   * Create a list holding the given values. The array is not copied.
+   * @param values initial content of the list
+   */
+  public IntList(int[] values) {
+    this.values = values;
+    this.size = values.length;
+  }
+
+  /**
+   * @param index position of the value
+   * @return value at the position
+   * @throws IndexOutOfBoundsException when the index is not in the list
+   */
+  public int getInt(int index) {
+    if (index >= size)
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    return values[index];
+  }
+
+  /**
+   * Append a value.
+   * @param v value
+   */
+  public void addInt(int v) {
+    if (size == values.length)
+      values = Arrays.copyOf(values, Math.max(4, size + (size >> 1)));
+    values[size++] = v;
+    ++modCount;
+  }
+
+  /**
+   * @return a copy of the values
+   */
+  public int[] toIntArray() {
+    return Arrays.copyOf(values, size);
+  }
+
+  /**
+   * Release the capacity beyond the size of the list.
+   */
+  public void trimToSize() {
+    if (values.length > size)
+      values = size == 0 ? EMPTY : Arrays.copyOf(values, size);
+  }
+
+  @Override
+  public Integer get(int index) {
+    return getInt(index);
+  }
+
+  @Override
+  public Integer set(int index, Integer v) {
+    int prev = getInt(index);
+    values[index] = v;
+    return prev;
+  }
+
+  @Override
+  public boolean add(Integer v) {
+    addInt(v);
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    size = 0;
+    ++modCount;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  final private static int[] EMPTY = new int[0];
+
+  private int[] values;
+  private int size;
+}
@@ -0,0 +1,43 @@
+package com.idilia.services.base;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A {@link CacheCodec} recording responses in their JSON representation. Suitable for
+ * the responses decoded by Jackson such as the kb responses.
+ *
+ * @param <V> type of the response
+ */
+public class JsonCacheCodec<V> implements CacheCodec<V> {
+
+  /**
+   * Create a codec for a response class.
+   * @param cls class of the response. It must be serializable by Jackson.
+   */
+  public JsonCacheCodec(Class<V> cls) {
+    this.cls = cls;
+  }
+
+  @Override
+  public byte[] encode(V value) {
+    try {
+      return JsonCodecs.writer(cls).writeValueAsBytes(value);
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+  @Override
+  public V decode(byte[] bytes) {
+    try {
+      return JsonCodecs.reader(cls).readValue(bytes);
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+
+  final private Class<V> cls;
+}
@@ -0,0 +1,99 @@
+package com.idilia.services.base;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Registry of the JSON codecs used by the clients to encode requests and decode
+ * responses.
+ * <p>
+ * All the clients share one {@link ObjectMapper}. An {@link ObjectReader} or
+ * {@link ObjectWriter} is built once per type on first use and reused for all the
+ * following messages, which avoids resolving the (de)serializers for each message.
+ * The settings of the underlying {@link JsonFactory} can be tuned with the
+ * {@code configure} methods, preferably before the first request.
+ * <p>
+ * Multithread safe.
+ */
+public final class JsonCodecs {
+
+  private JsonCodecs() {}
+
+  /**
+   * @return the mapper shared by the clients
+   */
+  public static ObjectMapper mapper() {
+    return mapper;
+  }
+
+  /**
+   * @return the factory of the parsers and generators used by the clients
+   */
+  public static JsonFactory factory() {
+    return mapper.getFactory();
+  }
+
+  /**
+   * Return the reader of a type.
+   * @param type class of the values read
+   * @return a reader built on the first call for the type
+   */
+  public static ObjectReader reader(Class<?> type) {
+    return readers.computeIfAbsent(type, mapper::readerFor);
+  }
+
+  /**
+   * Return the writer of a type.
+   * @param type class of the values written
+   * @return a writer built on the first call for the type
+   */
+  public static ObjectWriter writer(Class<?> type) {
+    return writers.computeIfAbsent(type, mapper::writerFor);
+  }
+
+  /**
+   * Change a setting of the factory.
+   * @param feature factory setting
+   * @param state true to enable
+   */
+  public static synchronized void configure(JsonFactory.Feature feature, boolean state) {
+    mapper.getFactory().configure(feature, state);
+    reset();
+  }
+
+  /**
+   * Change a setting of the parsers.
+   * @param feature parser setting
+   * @param state true to enable
+   */
+  public static synchronized void configure(JsonParser.Feature feature, boolean state) {
+    mapper.configure(feature, state);
+    reset();
+  }
+
+  /**
+   * Change a setting of the deserialization of the values.
+   * @param feature deserialization setting
+   * @param state true to enable
+   */
+  public static synchronized void configure(DeserializationFeature feature, boolean state) {
+    mapper.configure(feature, state);
+    reset();
+  }
+
+  /** Drop the readers and writers built with the previous settings */
+  private static void reset() {
+    readers.clear();
+    writers.clear();
+  }
+
+  final private static ObjectMapper mapper = new ObjectMapper();
+  final private static ConcurrentHashMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+  final private static ConcurrentHashMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+}
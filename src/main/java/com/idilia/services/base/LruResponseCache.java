@@ -0,0 +1,196 @@
+package com.idilia.services.base;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * An in-memory {@link ResponseCache} bounded in number of entries and optionally
+ * in total weight. When a bound is exceeded, the least recently used entries
+ * are evicted. Entries can also be given a time to live.
+ *
+ * @param <V> type of the response stored
+ */
+public class LruResponseCache<V> implements ResponseCache<V> {
+
+  /**
+   * Create a cache bounded only in number of entries.
+   * @param maxEntries maximum number of responses kept
+   */
+  public LruResponseCache(int maxEntries) {
+    this(maxEntries, 0, null);
+  }
+
+  /**
+   * Create a cache bounded in number of entries and in weight.
+   * @param maxEntries maximum number of responses kept
+   * @param maxWeight maximum sum of the weight of the responses kept. 0 for no limit.
+   * @param weigher function returning the weight of a response (e.g., an estimate of its size in bytes)
+   */
+  public LruResponseCache(int maxEntries, long maxWeight, ToLongFunction<? super V> weigher) {
+    if (maxEntries <= 0)
+      throw new IllegalArgumentException("maxEntries must be positive");
+    this.maxEntries = maxEntries;
+    this.maxWeight = weigher != null ? maxWeight : 0;
+    this.weigher = weigher;
+    this.map = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Expire the entries after the given duration.
+   * @param duration time to live of an entry after it is recorded. 0 for no expiry.
+   * @param unit unit of the duration
+   * @return this cache
+   */
+  public LruResponseCache<V> setTimeToLive(long duration, TimeUnit unit) {
+    this.ttlNanos = unit.toNanos(duration);
+    return this;
+  }
+
+  /**
+   * Set a function invoked with the entries evicted to respect the bounds. Not invoked
+   * for the entries removed, replaced or expired.
+   * @param listener function receiving the key and value of an evicted entry. Invoked
+   *        while holding the lock of this cache.
+   * @return this cache
+   */
+  public LruResponseCache<V> setEvictionListener(BiConsumer<String, ? super V> listener) {
+    this.evictionListener = listener;
+    return this;
+  }
+
+  @Override
+  public synchronized V get(String key) {
+    Entry<V> e = map.get(key);
+    if (e != null && e.expiresAt != 0 && e.expiresAt - System.nanoTime() <= 0) {
+      remove(key);
+      e = null;
+    }
+    if (e == null) {
+      ++misses;
+      return null;
+    }
+    ++hits;
+    return e.value;
+  }
+
+  @Override
+  public synchronized void put(String key, V value) {
+    long expiresAt = ttlNanos > 0 ? (System.nanoTime() + ttlNanos) | 1 : 0;
+    Entry<V> prev = map.put(key, new Entry<>(value, expiresAt));
+    if (weigher != null) {
+      if (prev != null)
+        weight -= weigher.applyAsLong(prev.value);
+      weight += weigher.applyAsLong(value);
+    }
+    evict();
+  }
+
+  @Override
+  public synchronized void remove(String key) {
+    Entry<V> prev = map.remove(key);
+    if (prev != null && weigher != null)
+      weight -= weigher.applyAsLong(prev.value);
+  }
+
+  @Override
+  public synchronized void removeByPrefix(String prefix) {
+    Iterator<Map.Entry<String, Entry<V>>> it = map.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, Entry<V>> e = it.next();
+      if (e.getKey().startsWith(prefix)) {
+        if (weigher != null)
+          weight -= weigher.applyAsLong(e.getValue().value);
+        it.remove();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void clear() {
+    map.clear();
+    weight = 0;
+  }
+
+  @Override
+  public synchronized int size() {
+    return map.size();
+  }
+
+  /**
+   * Invoke a function with each response not expired, from the least to the most
+   * recently used. The function is invoked without holding the lock of this cache.
+   */
+  @Override
+  public void forEach(BiConsumer<String, ? super V> action) {
+    ArrayList<Map.Entry<String, Entry<V>>> entries;
+    synchronized (this) {
+      entries = new ArrayList<>(map.entrySet());
+    }
+    long now = System.nanoTime();
+    for (Map.Entry<String, Entry<V>> e: entries) {
+      Entry<V> v = e.getValue();
+      if (v.expiresAt == 0 || v.expiresAt - now > 0)
+        action.accept(e.getKey(), v.value);
+    }
+  }
+
+  /**
+   * @return sum of the weight of the responses currently recorded. 0 when no weigher was given.
+   */
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  /**
+   * @return number of lookups that found a response
+   */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /**
+   * @return number of lookups that did not find a response
+   */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /** Evict from the least recently used end until within bounds. Keeps at least the newest entry. */
+  private void evict() {
+    Iterator<Map.Entry<String, Entry<V>>> it = map.entrySet().iterator();
+    while (map.size() > 1 &&
+        (map.size() > maxEntries || (maxWeight > 0 && weight > maxWeight))) {
+      Map.Entry<String, Entry<V>> eldest = it.next();
+      if (weigher != null)
+        weight -= weigher.applyAsLong(eldest.getValue().value);
+      it.remove();
+      if (evictionListener != null)
+        evictionListener.accept(eldest.getKey(), eldest.getValue().value);
+    }
+  }
+
+  /** A recorded value with its expiry time. 0 when it does not expire. */
+  private static class Entry<V> {
+    Entry(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+
+    final V value;
+    final long expiresAt;
+  }
+
+  final private int maxEntries;
+  final private long maxWeight;
+  final private ToLongFunction<? super V> weigher;
+  final private LinkedHashMap<String, Entry<V>> map;
+  private long ttlNanos;
+  private BiConsumer<String, ? super V> evictionListener;
+  private long weight;
+  private long hits, misses;
+}
@@ -0,0 +1,207 @@
+package com.idilia.services.base;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link ResponseCache} of byte arrays stored outside of the Java heap in direct
+ * {@link ByteBuffer} slabs. Large serialized responses kept here do not add to the
+ * work of the garbage collector.
+ * <p>
+ * Values are appended to the current slab. When all slabs are used, the oldest slab
+ * is emptied and reused, dropping the values it held. Values larger than a slab are
+ * not recorded. The space of removed or replaced values is reclaimed when their slab
+ * is reused.
+ * <p>
+ * Multithread safe.
+ */
+public class OffHeapStore implements ResponseCache<byte[]> {
+
+  /**
+   * Create a store. The slabs are allocated when first needed.
+   * @param slabSize size in bytes of a slab
+   * @param maxBytes maximum size in bytes of all the slabs
+   */
+  public OffHeapStore(int slabSize, long maxBytes) {
+    if (slabSize <= 0 || maxBytes < slabSize)
+      throw new IllegalArgumentException("Invalid slab size or max bytes");
+    this.slabSize = slabSize;
+    this.maxSlabs = (int) Math.min(maxBytes / slabSize, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public synchronized byte[] get(String key) {
+    Location loc = index.get(key);
+    if (loc == null) {
+      ++misses;
+      return null;
+    }
+    ++hits;
+    return read(loc);
+  }
+
+  @Override
+  public synchronized void put(String key, byte[] value) {
+    remove(key);
+    if (value.length > slabSize)
+      return;
+    index.put(key, append(key, value));
+  }
+
+  @Override
+  public synchronized void remove(String key) {
+    Location loc = index.remove(key);
+    if (loc != null) {
+      loc.slab.keys.remove(key);
+      liveBytes -= loc.len;
+    }
+  }
+
+  @Override
+  public synchronized void removeByPrefix(String prefix) {
+    ArrayList<String> keys = new ArrayList<>();
+    for (String key: index.keySet())
+      if (key.startsWith(prefix))
+        keys.add(key);
+    keys.forEach(this::remove);
+  }
+
+  @Override
+  public synchronized void clear() {
+    index.clear();
+    for (Slab s: slabs)
+      s.reset();
+    liveBytes = 0;
+  }
+
+  @Override
+  public synchronized int size() {
+    return index.size();
+  }
+
+  /**
+   * Invoke a function with each value, from the oldest to the most recently recorded.
+   * The values are copied one at a time without holding the lock of this store.
+   */
+  @Override
+  public void forEach(BiConsumer<String, ? super byte[]> action) {
+    ArrayList<String> keys = new ArrayList<>();
+    synchronized (this) {
+      for (Slab s: slabs)
+        keys.addAll(s.keys);
+    }
+    for (String key: keys) {
+      byte[] value;
+      synchronized (this) {
+        Location loc = index.get(key);
+        value = loc != null ? read(loc) : null;
+      }
+      if (value != null)
+        action.accept(key, value);
+    }
+  }
+
+  /**
+   * @return number of bytes of the values recorded
+   */
+  public synchronized long getLiveBytes() {
+    return liveBytes;
+  }
+
+  /**
+   * @return number of bytes of direct memory allocated for the slabs
+   */
+  public synchronized long getAllocatedBytes() {
+    return (long) slabs.size() * slabSize;
+  }
+
+  /**
+   * @return number of lookups that found a value
+   */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /**
+   * @return number of lookups that did not find a value
+   */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  /** Copy a value out of its slab */
+  private static byte[] read(Location loc) {
+    byte[] value = new byte[loc.len];
+    ByteBuffer b = loc.slab.buf.duplicate();
+    b.position(loc.pos);
+    b.get(value);
+    return value;
+  }
+
+  /** Copy a value at the end of the current slab. Recycles the oldest slab when all are used. */
+  private Location append(String key, byte[] value) {
+    Slab cur = slabs.peekLast();
+    if (cur == null || cur.used + value.length > slabSize) {
+      cur = slabs.size() < maxSlabs ? new Slab(ByteBuffer.allocateDirect(slabSize)) : recycle();
+      slabs.addLast(cur);
+    }
+
+    ByteBuffer b = cur.buf.duplicate();
+    b.position(cur.used);
+    b.put(value);
+    Location loc = new Location(cur, cur.used, value.length);
+    cur.used += value.length;
+    cur.keys.add(key);
+    liveBytes += value.length;
+    return loc;
+  }
+
+  /** Drop the values of the oldest slab and return it for reuse */
+  private Slab recycle() {
+    Slab oldest = slabs.pollFirst();
+    for (String key: oldest.keys)
+      liveBytes -= index.remove(key).len;
+    oldest.reset();
+    return oldest;
+  }
+
+  /** A direct buffer and the keys of the values it holds in the order they were appended */
+  private static class Slab {
+    Slab(ByteBuffer buf) {
+      this.buf = buf;
+    }
+
+    void reset() {
+      used = 0;
+      keys.clear();
+    }
+
+    final ByteBuffer buf;
+    final LinkedHashSet<String> keys = new LinkedHashSet<>();
+    int used;
+  }
+
+  /** Position of a value in a slab */
+  private static class Location {
+    Location(Slab slab, int pos, int len) {
+      this.slab = slab;
+      this.pos = pos;
+      this.len = len;
+    }
+
+    final Slab slab;
+    final int pos;
+    final int len;
+  }
+
+  final private int slabSize;
+  final private int maxSlabs;
+  final private ArrayDeque<Slab> slabs = new ArrayDeque<>();
+  final private HashMap<String, Location> index = new HashMap<>();
+  private long liveBytes;
+  private long hits, misses;
+}
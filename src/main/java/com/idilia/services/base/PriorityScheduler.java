@@ -0,0 +1,215 @@
+package com.idilia.services.base;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scheduler of the requests sent by the asynchronous clients over the shared
+ * connections, installed with {@link AsyncClientBase#setScheduler}.
+ * <p>
+ * Each request belongs to a priority class. A class can reserve a number of request
+ * slots that only its requests use. The remaining slots are shared: when requests
+ * of several classes are waiting, a free shared slot goes to the classes in proportion
+ * to their weight. With slots reserved for the interactive class, bulk requests
+ * can occupy at most the shared slots and never delay interactive requests.
+ * <p>
+ * By default, no slot is reserved and the weights are 8, 4 and 1 for the interactive,
+ * normal and bulk classes. The capacity should not exceed the connections of the
+ * HTTP client ({@link ClientBase#maxConnections}) so that requests wait here rather
+ * than in the first come first served queue of the connection pool.
+ * <p>
+ * Multithread safe.
+ */
+public class PriorityScheduler {
+
+  /** Priority class of a request */
+  public enum Priority {
+    /** Requests for which a user is waiting */
+    INTERACTIVE,
+    /** Default class */
+    NORMAL,
+    /** Background processing */
+    BULK
+  }
+
+  /**
+   * Create a scheduler.
+   * @param capacity maximum number of requests in progress. Must be positive.
+   * @throws IllegalArgumentException when the capacity is not positive
+   */
+  public PriorityScheduler(int capacity) {
+    if (capacity <= 0)
+      throw new IllegalArgumentException("Capacity must be positive");
+    this.capacity = capacity;
+    int[] weights = { 8, 4, 1 };
+    for (Priority p: Priority.values())
+      lanes[p.ordinal()] = new Lane(weights[p.ordinal()]);
+  }
+
+  /**
+   * Configure a priority class.
+   * @param priority class configured
+   * @param reserved number of slots used only by the class
+   * @param weight share of the non reserved slots given to the class when requests
+   *        of several classes are waiting. Must be positive.
+   * @return this scheduler
+   * @throws IllegalArgumentException when the reserved slots exceed the capacity
+   */
+  public synchronized PriorityScheduler setPriority(Priority priority, int reserved, int weight) {
+    if (weight <= 0)
+      throw new IllegalArgumentException("Weight must be positive");
+    Lane l = lanes[priority.ordinal()];
+    int total = reserved;
+    for (Lane o: lanes)
+      if (o != l)
+        total += o.reserved;
+    if (reserved < 0 || total > capacity)
+      throw new IllegalArgumentException("Reserved slots exceed the capacity");
+    l.reserved = reserved;
+    l.weight = weight;
+    return this;
+  }
+
+  /**
+   * @param priority a priority class
+   * @return number of requests of the class in progress
+   */
+  public synchronized int getActive(Priority priority) {
+    Lane l = lanes[priority.ordinal()];
+    return l.reservedActive + l.sharedActive;
+  }
+
+  /**
+   * @param priority a priority class
+   * @return number of requests of the class waiting for a slot
+   */
+  public synchronized int getQueued(Priority priority) {
+    return lanes[priority.ordinal()].queue.size();
+  }
+
+  /**
+   * Submit a request. The dispatch function is called, possibly in the calling thread,
+   * when a slot is available and must arrange for {@link Slot#release()} to be called
+   * when the request is finished.
+   * @param priority class of the request
+   * @param dispatch function sending the request
+   */
+  public void submit(Priority priority, Dispatch dispatch) {
+    synchronized (this) {
+      lanes[priority.ordinal()].queue.add(dispatch);
+    }
+    pump();
+  }
+
+  /** A function sending a request in a slot */
+  public interface Dispatch {
+    /**
+     * Send the request.
+     * @param slot slot of the request. Must be released when the request is finished.
+     */
+    void dispatch(Slot slot);
+  }
+
+  /** Slot occupied by a request in progress */
+  public final class Slot {
+
+    private Slot(Lane lane, boolean reserved) {
+      this.lane = lane;
+      this.reserved = reserved;
+    }
+
+    /**
+     * Release the slot and dispatch the next request in the calling thread. Only the
+     * first call has an effect.
+     */
+    public void release() {
+      synchronized (PriorityScheduler.this) {
+        if (released)
+          return;
+        released = true;
+        if (reserved)
+          --lane.reservedActive;
+        else {
+          --lane.sharedActive;
+          --sharedActive;
+        }
+      }
+      pump();
+    }
+
+    final private Lane lane;
+    final private boolean reserved;
+    private boolean released;
+  }
+
+  /** Dispatch the requests that can obtain a slot */
+  private void pump() {
+    List<Runnable> ready = new ArrayList<>();
+    synchronized (this) {
+      int shared = capacity;
+      for (Lane l: lanes)
+        shared -= l.reserved;
+
+      // Requests that fit in the slots reserved for their class
+      for (Lane l: lanes) {
+        while (!l.queue.isEmpty() && l.reservedActive < l.reserved) {
+          ++l.reservedActive;
+          ready.add(dispatcher(l.queue.poll(), new Slot(l, true)));
+        }
+      }
+
+      // Shared slots by smooth weighted round robin among the classes with requests
+      while (sharedActive < shared) {
+        Lane best = null;
+        int total = 0;
+        for (Lane l: lanes) {
+          if (l.queue.isEmpty())
+            continue;
+          l.current += l.weight;
+          total += l.weight;
+          if (best == null || l.current > best.current)
+            best = l;
+        }
+        if (best == null)
+          break;
+        best.current -= total;
+        ++best.sharedActive;
+        ++sharedActive;
+        ready.add(dispatcher(best.queue.poll(), new Slot(best, false)));
+      }
+    }
+
+    for (Runnable r: ready)
+      r.run();
+  }
+
+  private static Runnable dispatcher(Dispatch d, Slot slot) {
+    return () -> {
+      try {
+        d.dispatch(slot);
+      } catch (RuntimeException e) {
+        slot.release();
+        throw e;
+      }
+    };
+  }
+
+  /** State of a priority class */
+  private static class Lane {
+    Lane(int weight) {
+      this.weight = weight;
+    }
+
+    final ArrayDeque<Dispatch> queue = new ArrayDeque<>();
+    int reserved;
+    int weight;
+    int current;
+    int reservedActive;
+    int sharedActive;
+  }
+
+  final private int capacity;
+  final private Lane[] lanes = new Lane[Priority.values().length];
+  private int sharedActive;
+}
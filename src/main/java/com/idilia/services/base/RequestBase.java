@@ -8,16 +8,20 @@
 package com.idilia.services.base;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
-import org.apache.http.Consts;
+import org.apache.commons.codec.binary.Base64;
 import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.message.BasicNameValuePair;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Base class for all request messages
  *
@@ -64,13 +68,51 @@ public abstract class RequestBase {
     return this.customerId;
   }
 
+  /**
+   * Specifies the priority class of this request when a {@link PriorityScheduler} is
+   * installed. Defaults to the priority of the client.
+   * @param priority priority class or null for the client's priority
+   */
+  @JsonIgnore
+  public final void setPriority(PriorityScheduler.Priority priority) {
+    this.priority = priority;
+  }
+
+  /**
+   * @return the priority class of this request or null for the client's priority
+   */
+  @JsonIgnore
+  public final PriorityScheduler.Priority getPriority() {
+    return this.priority;
+  }
+
   /**
    * @return HttpEntity suitable for transmission in an HTTP request.
    */
   public HttpEntity getContent() {
     List<NameValuePair> parms = new ArrayList<NameValuePair>();
     getHttpQueryParms(parms);
-    return new UrlEncodedFormEntity(parms, Consts.UTF_8);
+    return formBody(parms).toEntity();
+  }
+
+  /**
+   * Encode parameters as a form.
+   * @param parms parameters in order
+   * @return the encoded form
+   */
+  protected static FormBody formBody(List<NameValuePair> parms) {
+    int size = 0;
+    for (NameValuePair p: parms) {
+      size += p.getName().length() + 2;
+      if (p instanceof FormBody.Utf8Pair)
+        size += ((FormBody.Utf8Pair) p).getBytes().length;
+      else if (p.getValue() != null)
+        size += p.getValue().length();
+    }
+    FormBody form = new FormBody(size + size / 8);
+    for (NameValuePair p: parms)
+      form.add(p);
+    return form;
   }
 
   // Encode the content as HTTP query parameters
@@ -91,6 +133,31 @@ public abstract class RequestBase {
    */
   abstract public byte[] toSign() throws IOException;
 
+  /**
+   * Returns the digest of the content returned by {@link #toSign()} when the request
+   * already has it, so that it is not computed for each transmission.
+   *
+   * @return digest as computed by {@link #digest(byte[])} or null when not available
+   */
+  public String contentDigest() {
+    return null;
+  }
+
+  /**
+   * Computes the digest of the content to sign.
+   *
+   * @param toSign bytes returned by {@link #toSign()}
+   * @return base64 encoded MD5 digest
+   */
+  public static String digest(byte[] toSign) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("MD5");
+      return new String(Base64.encodeBase64(md.digest(toSign)), StandardCharsets.US_ASCII);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   /**
    * @return String url for the request
    */
@@ -103,4 +170,5 @@ public abstract class RequestBase {
 
   private String requestId;
   private UUID customerId;
+  private PriorityScheduler.Priority priority;
 }
@@ -0,0 +1,59 @@
+package com.idilia.services.base;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Storage for responses recovered from the server, indexed by a canonical
+ * string computed from the request.
+ * <p>
+ * Implementations must be multithread safe as a cache is normally shared
+ * between several clients.
+ *
+ * @param <V> type of the response stored
+ */
+public interface ResponseCache<V> {
+
+  /**
+   * Return the response recorded for the key.
+   * @param key canonical key of the request
+   * @return recorded response or null when not present
+   */
+  V get(String key);
+
+  /**
+   * Record the response for the key. May evict other entries.
+   * @param key canonical key of the request
+   * @param value response to record
+   */
+  void put(String key, V value);
+
+  /**
+   * Remove the response recorded for the key, if any.
+   * @param key canonical key of the request
+   */
+  void remove(String key);
+
+  /**
+   * Remove the responses whose key starts with a prefix. Used by the caches sharing
+   * a storage to remove only their own responses.
+   * @param prefix start of the keys of the responses removed
+   */
+  void removeByPrefix(String prefix);
+
+  /**
+   * Remove all recorded responses.
+   */
+  void clear();
+
+  /**
+   * @return number of responses currently recorded
+   */
+  int size();
+
+  /**
+   * Invoke a function with each recorded response. The responses least recently used
+   * are normally visited first. Used to export the content of a cache.
+   * @param action function receiving the key and the response
+   */
+  void forEach(BiConsumer<String, ? super V> action);
+}
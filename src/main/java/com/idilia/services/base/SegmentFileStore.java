@@ -0,0 +1,418 @@
+package com.idilia.services.base;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent {@link ResponseCache} of byte arrays stored in a directory.
+ * <p>
+ * Records are appended to segment files. When the active segment reaches its
+ * nominal size, it is sealed and memory mapped for reading so that lookups are served
+ * from the page cache. An in-memory index locates the most recent record of each key
+ * and is rebuilt by scanning the segments when the store is opened. A record that was
+ * partially written when a process stopped is discarded.
+ * <p>
+ * The total size of the segments is bounded. When exceeded, segments with mostly
+ * superseded records are compacted and then the oldest segments are dropped.
+ * <p>
+ * Multithread safe within a process. A directory must not be opened by two stores
+ * simultaneously.
+ */
+public class SegmentFileStore implements ResponseCache<byte[]>, Closeable {
+
+  /**
+   * Open or create a store.
+   * @param dir directory for the segment files. Created when it does not exist.
+   * @param segmentSize nominal size of a segment file in bytes
+   * @param maxBytes maximum total size of the segment files in bytes
+   * @throws IdiliaClientException when the directory cannot be read or created
+   */
+  public SegmentFileStore(Path dir, int segmentSize, long maxBytes) throws IdiliaClientException {
+    if (segmentSize <= HEADER_LEN || maxBytes < segmentSize)
+      throw new IllegalArgumentException("Invalid segment size or max bytes");
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    this.maxBytes = maxBytes;
+    try {
+      Files.createDirectories(dir);
+      recover();
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+  @Override
+  public synchronized byte[] get(String key) {
+    Location loc = index.get(key);
+    if (loc == null)
+      return null;
+    byte[] value = new byte[loc.valLen];
+    Segment seg = segments.get(loc.segment);
+    try {
+      seg.read(loc.valPos, value);
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+    return value;
+  }
+
+  @Override
+  public synchronized void put(String key, byte[] value) {
+    try {
+      append(key.getBytes(StandardCharsets.UTF_8), value);
+      enforceBound();
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+  @Override
+  public synchronized void remove(String key) {
+    if (!index.containsKey(key))
+      return;
+    try {
+      append(key.getBytes(StandardCharsets.UTF_8), null);
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+  /**
+   * Record a removal for each key starting with the prefix. The space is reclaimed
+   * when the segments are compacted.
+   */
+  @Override
+  public synchronized void removeByPrefix(String prefix) {
+    try {
+      for (String key: new ArrayList<>(index.keySet()))
+        if (key.startsWith(prefix))
+          append(key.getBytes(StandardCharsets.UTF_8), null);
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+  @Override
+  public synchronized void clear() {
+    try {
+      for (Segment seg: segments.values())
+        seg.delete();
+      segments.clear();
+      index.clear();
+      totalBytes = 0;
+      openActive(0);
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+  /**
+   * Invoke a function with each value, from the oldest to the most recently written.
+   * The values are read one at a time without holding the lock of this store while
+   * the function is invoked.
+   */
+  @Override
+  public void forEach(BiConsumer<String, ? super byte[]> action) {
+    ArrayList<Map.Entry<String, Location>> entries = new ArrayList<>();
+    synchronized (this) {
+      for (Map.Entry<String, Location> e: index.entrySet())
+        entries.add(new AbstractMap.SimpleImmutableEntry<>(e));
+    }
+    entries.sort(Comparator.comparingInt((Map.Entry<String, Location> e) -> e.getValue().segment)
+        .thenComparingLong(e -> e.getValue().valPos));
+    for (Map.Entry<String, Location> e: entries) {
+      byte[] value = get(e.getKey());
+      if (value != null)
+        action.accept(e.getKey(), value);
+    }
+  }
+
+  @Override
+  public synchronized int size() {
+    return index.size();
+  }
+
+  /**
+   * @return total size in bytes of the segment files
+   */
+  public synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Rewrite the live records of the sealed segments into new segments. This reclaims
+   * the space of superseded and removed records.
+   */
+  public synchronized void compact() {
+    try {
+      for (int id: new ArrayList<>(segments.keySet()))
+        if (id != active.id)
+          compactSegment(segments.get(id));
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+  /**
+   * Flush the active segment to disk and release the files.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    active.channel.force(true);
+    for (Segment seg: segments.values())
+      seg.close();
+  }
+
+  /** Scan the existing segments to rebuild the index and open an active segment */
+  private void recover() throws IOException {
+    TreeMap<Integer, Path> files = new TreeMap<>();
+    try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "seg-*.dat")) {
+      for (Path p: ds) {
+        String n = p.getFileName().toString();
+        files.put(Integer.parseInt(n.substring(4, n.length() - 4)), p);
+      }
+    }
+
+    for (Map.Entry<Integer, Path> e: files.entrySet()) {
+      FileChannel ch = FileChannel.open(e.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+      long validLen = scan(e.getKey(), ch);
+      if (validLen < ch.size())
+        ch.truncate(validLen); // discard a partial record
+      Segment seg = new Segment(e.getKey(), e.getValue(), ch, validLen);
+      segments.put(seg.id, seg);
+      totalBytes += validLen;
+    }
+
+    // Seal all recovered segments and start a new one
+    for (Segment seg: segments.values())
+      seg.seal();
+    openActive(files.isEmpty() ? 0 : files.lastKey() + 1);
+    enforceBound();
+  }
+
+  /** Index the records of a segment. Returns the length of the valid records. */
+  private long scan(int id, FileChannel ch) throws IOException {
+    long size = ch.size();
+    long pos = 0;
+    ByteBuffer hdr = ByteBuffer.allocate(HEADER_LEN);
+    while (pos + HEADER_LEN <= size) {
+      hdr.clear();
+      if (ch.read(hdr, pos) != HEADER_LEN)
+        break;
+      hdr.flip();
+      int keyLen = hdr.getInt();
+      int valLen = hdr.getInt();
+      int crc = hdr.getInt();
+      int bodyLen = keyLen + Math.max(valLen, 0);
+      if (keyLen <= 0 || valLen < -1 || pos + HEADER_LEN + bodyLen > size)
+        break;
+      ByteBuffer body = ByteBuffer.allocate(bodyLen);
+      ch.read(body, pos + HEADER_LEN);
+      if (crc(body.array(), 0, bodyLen) != crc)
+        break;
+      String key = new String(body.array(), 0, keyLen, StandardCharsets.UTF_8);
+      if (valLen < 0)
+        index.remove(key);
+      else
+        index.put(key, new Location(id, pos + HEADER_LEN + keyLen, valLen));
+      pos += HEADER_LEN + bodyLen;
+    }
+    return pos;
+  }
+
+  /** Append a record for the key. A null value records a removal. */
+  private void append(byte[] key, byte[] value) throws IOException {
+    int valLen = value != null ? value.length : -1;
+    int bodyLen = key.length + Math.max(valLen, 0);
+    if (active.length > 0 && active.length + HEADER_LEN + bodyLen > segmentSize) {
+      active.seal();
+      openActive(active.id + 1);
+    }
+
+    ByteBuffer rec = ByteBuffer.allocate(HEADER_LEN + bodyLen);
+    rec.putInt(key.length).putInt(valLen).putInt(0).put(key);
+    if (value != null)
+      rec.put(value);
+    rec.putInt(8, crc(rec.array(), HEADER_LEN, bodyLen));
+    rec.flip();
+
+    long pos = active.length;
+    while (rec.hasRemaining())
+      active.channel.write(rec, pos + rec.position());
+    active.length += rec.limit();
+    totalBytes += rec.limit();
+
+    String k = new String(key, StandardCharsets.UTF_8);
+    if (value == null)
+      index.remove(k);
+    else
+      index.put(k, new Location(active.id, pos + HEADER_LEN + key.length, valLen));
+  }
+
+  /** Compact sparse segments and drop the oldest ones until within the size bound */
+  private void enforceBound() throws IOException {
+    if (totalBytes <= maxBytes)
+      return;
+
+    // Reclaim superseded records from segments that are mostly dead
+    Map<Integer, Long> live = liveBytes();
+    for (int id: new ArrayList<>(segments.keySet())) {
+      Segment seg = segments.get(id);
+      if (id != active.id && live.getOrDefault(id, 0L) * 2 < seg.length)
+        compactSegment(seg);
+    }
+
+    // Evict the oldest segments
+    Iterator<Segment> it = segments.values().iterator();
+    while (totalBytes > maxBytes && segments.size() > 1) {
+      Segment oldest = it.next();
+      if (oldest == active)
+        break;
+      index.values().removeIf(loc -> loc.segment == oldest.id);
+      it.remove();
+      totalBytes -= oldest.length;
+      oldest.delete();
+    }
+  }
+
+  /**
+   * Move the live records of a sealed segment to the active segment and delete it.
+   * Removals are carried over while an older segment may still hold a value for the key.
+   */
+  private void compactSegment(Segment seg) throws IOException {
+    boolean olderExists = segments.firstKey() != seg.id;
+    byte[] hdr = new byte[HEADER_LEN];
+    for (long pos = 0; pos < seg.length; ) {
+      seg.read(pos, hdr);
+      ByteBuffer h = ByteBuffer.wrap(hdr);
+      int keyLen = h.getInt();
+      int valLen = h.getInt();
+      byte[] key = new byte[keyLen];
+      seg.read(pos + HEADER_LEN, key);
+      long valPos = pos + HEADER_LEN + keyLen;
+      pos = valPos + Math.max(valLen, 0);
+
+      String k = new String(key, StandardCharsets.UTF_8);
+      Location loc = index.get(k);
+      if (valLen >= 0 && loc != null && loc.segment == seg.id && loc.valPos == valPos) {
+        byte[] value = new byte[valLen];
+        seg.read(valPos, value);
+        append(key, value);
+      } else if (valLen < 0 && loc == null && olderExists) {
+        append(key, null);
+      }
+    }
+    segments.remove(seg.id);
+    totalBytes -= seg.length;
+    seg.delete();
+  }
+
+  private Map<Integer, Long> liveBytes() {
+    Map<Integer, Long> live = new HashMap<>();
+    for (Location loc: index.values())
+      live.merge(loc.segment, (long) loc.valLen + HEADER_LEN, Long::sum);
+    return live;
+  }
+
+  private void openActive(int id) throws IOException {
+    Path p = dir.resolve(String.format("seg-%08d.dat", id));
+    FileChannel ch = FileChannel.open(p,
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    active = new Segment(id, p, ch, ch.size());
+    totalBytes += active.length;
+    segments.put(id, active);
+  }
+
+  private static int crc(byte[] b, int off, int len) {
+    CRC32 crc = new CRC32();
+    crc.update(b, off, len);
+    return (int) crc.getValue();
+  }
+
+
+  /** A segment file. Read through the channel while active and through a mapping once sealed. */
+  private static class Segment {
+    Segment(int id, Path path, FileChannel channel, long length) {
+      this.id = id;
+      this.path = path;
+      this.channel = channel;
+      this.length = length;
+    }
+
+    void seal() throws IOException {
+      if (length > 0)
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+
+    void read(long pos, byte[] dst) throws IOException {
+      if (mapped != null) {
+        ByteBuffer b = mapped.duplicate();
+        b.position((int) pos);
+        b.get(dst);
+      } else {
+        ByteBuffer b = ByteBuffer.wrap(dst);
+        while (b.hasRemaining())
+          if (channel.read(b, pos + b.position()) < 0)
+            throw new IOException("Unexpected end of segment " + path);
+      }
+    }
+
+    void close() throws IOException {
+      mapped = null;
+      channel.close();
+    }
+
+    void delete() throws IOException {
+      close();
+      Files.deleteIfExists(path);
+    }
+
+    final int id;
+    final Path path;
+    final FileChannel channel;
+    long length;
+    MappedByteBuffer mapped;
+  }
+
+  /** Position of the value of the most recent record for a key */
+  private static class Location {
+    Location(int segment, long valPos, int valLen) {
+      this.segment = segment;
+      this.valPos = valPos;
+      this.valLen = valLen;
+    }
+
+    final int segment;
+    final long valPos;
+    final int valLen;
+  }
+
+  /** Record header: key length, value length (-1 for a removal), crc of key and value */
+  final private static int HEADER_LEN = 12;
+
+  final private Path dir;
+  final private int segmentSize;
+  final private long maxBytes;
+  final private TreeMap<Integer, Segment> segments = new TreeMap<>();
+  final private HashMap<String, Location> index = new HashMap<>();
+  private Segment active;
+  private long totalBytes;
+}
@@ -0,0 +1,372 @@
+package com.idilia.services.base;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link ResponseCache} of byte arrays stored in a memory mapped file that can be
+ * attached simultaneously by several processes on a host.
+ * <p>
+ * The file is an array of fixed size slots addressed by the hash of the key with a
+ * short linear probe. A writer claims a slot with a non-blocking lock on its byte
+ * range. When the slot is already claimed by another writer, the update is dropped
+ * rather than waiting. Readers take no locks: each slot carries a sequence number
+ * that is odd while it is being written and a checksum of its content, and a read
+ * that overlaps a write is retried or reported as a miss.
+ * <p>
+ * When all the slots of a probe are occupied, the one written least recently is
+ * replaced. Values that do not fit in a slot are not recorded.
+ * <p>
+ * Multithread safe. A process should attach a file once and share the instance.
+ */
+public class SharedMappedStore implements ResponseCache<byte[]>, Closeable {
+
+  /**
+   * Attach a shared file, creating it when it does not exist. When the file exists,
+   * its geometry is used instead of the one given.
+   * @param file path of the shared file
+   * @param slotCount number of slots
+   * @param slotSize size of a slot in bytes. Bounds the size of a key plus its value.
+   * @throws IdiliaClientException when the file cannot be created or is not a valid store
+   */
+  public SharedMappedStore(Path file, int slotCount, int slotSize) throws IdiliaClientException {
+    if (slotCount <= 0 || slotSize <= SLOT_HDR_LEN)
+      throw new IllegalArgumentException("Invalid slot count or slot size");
+    if (FILE_HDR_LEN + (long) slotCount * slotSize > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Shared file cannot exceed 2GB");
+
+    try {
+      if (file.getParent() != null)
+        Files.createDirectories(file.getParent());
+      channel = FileChannel.open(file,
+          StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+      // Initialize the header under an exclusive lock so that a single process creates it
+      FileLock lock = channel.lock(0, FILE_HDR_LEN, false);
+      try {
+        ByteBuffer hdr = ByteBuffer.allocate(FILE_HDR_LEN);
+        if (channel.size() < FILE_HDR_LEN) {
+          hdr.putInt(MAGIC).putInt(VERSION).putInt(slotCount).putInt(slotSize).rewind();
+          channel.write(hdr, 0);
+          channel.truncate(FILE_HDR_LEN);
+        } else {
+          channel.read(hdr, 0);
+          hdr.flip();
+          if (hdr.getInt() != MAGIC || hdr.getInt() != VERSION)
+            throw new IdiliaClientException("Not a shared cache file: " + file);
+          slotCount = hdr.getInt();
+          slotSize = hdr.getInt();
+        }
+      } finally {
+        lock.release();
+      }
+      this.slotCount = slotCount;
+      this.slotSize = slotSize;
+      this.buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_HDR_LEN + (long) slotCount * slotSize);
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+  @Override
+  public byte[] get(String key) {
+    byte[] k = key.getBytes(StandardCharsets.UTF_8);
+    int h = hash(key);
+    for (int p = 0; p < PROBES; ++p) {
+      byte[] v = read(slotOffset(h, p), h, k);
+      if (v != null)
+        return v;
+    }
+    return null;
+  }
+
+  @Override
+  public void put(String key, byte[] value) {
+    byte[] k = key.getBytes(StandardCharsets.UTF_8);
+    if (SLOT_HDR_LEN + k.length + value.length > slotSize)
+      return;
+    int h = hash(key);
+
+    // Prefer the slot of the key, then an empty slot, then the least recently written
+    int target = -1;
+    long oldest = Long.MAX_VALUE;
+    for (int p = 0; p < PROBES; ++p) {
+      int off = slotOffset(h, p);
+      if (read(off, h, k) != null) {
+        target = off;
+        break;
+      }
+      long stamp = buf.getInt(off + KEY_LEN_POS) == 0 ? Long.MIN_VALUE : buf.getLong(off + STAMP_POS);
+      if (stamp < oldest) {
+        oldest = stamp;
+        target = off;
+      }
+    }
+
+    FileLock lock = claim(target);
+    if (lock == null)
+      return;
+    try {
+      write(target, h, k, value);
+    } finally {
+      release(lock);
+    }
+  }
+
+  @Override
+  public void remove(String key) {
+    byte[] k = key.getBytes(StandardCharsets.UTF_8);
+    int h = hash(key);
+    for (int p = 0; p < PROBES; ++p) {
+      int off = slotOffset(h, p);
+      if (read(off, h, k) != null)
+        empty(off, null);
+    }
+  }
+
+  /**
+   * Remove the values whose key starts with a prefix. Scans all the slots of the file.
+   * The values of the other keys, including those recorded by other processes, are kept.
+   */
+  @Override
+  public void removeByPrefix(String prefix) {
+    byte[] p = prefix.getBytes(StandardCharsets.UTF_8);
+    for (int i = 0; i < slotCount; ++i) {
+      int off = FILE_HDR_LEN + i * slotSize;
+      if (buf.getInt(off + KEY_LEN_POS) != 0 && hasPrefix(off, p))
+        empty(off, p);
+    }
+  }
+
+  /**
+   * Remove all the values of the file, including those recorded by other processes
+   * and by other caches sharing the file.
+   */
+  @Override
+  public void clear() {
+    for (int i = 0; i < slotCount; ++i) {
+      int off = FILE_HDR_LEN + i * slotSize;
+      if (buf.getInt(off + KEY_LEN_POS) != 0)
+        empty(off, null);
+    }
+  }
+
+  /**
+   * Invoke a function with each value of the file, from the least to the most recently
+   * written. The slots are read without locks and a slot being written is skipped.
+   */
+  @Override
+  public void forEach(BiConsumer<String, ? super byte[]> action) {
+    ArrayList<long[]> slots = new ArrayList<>();
+    for (int i = 0; i < slotCount; ++i) {
+      int off = FILE_HDR_LEN + i * slotSize;
+      if (buf.getInt(off + KEY_LEN_POS) != 0)
+        slots.add(new long[] { buf.getLong(off + STAMP_POS), off });
+    }
+    slots.sort(Comparator.comparingLong(slot -> slot[0]));
+    for (long[] slot: slots) {
+      Map.Entry<String, byte[]> e = readEntry((int) slot[1]);
+      if (e != null)
+        action.accept(e.getKey(), e.getValue());
+    }
+  }
+
+  @Override
+  public int size() {
+    int n = 0;
+    for (int i = 0; i < slotCount; ++i)
+      if (buf.getInt(FILE_HDR_LEN + i * slotSize + KEY_LEN_POS) != 0)
+        ++n;
+    return n;
+  }
+
+  /**
+   * Detach from the shared file. The content remains available to other processes.
+   */
+  @Override
+  public void close() throws IOException {
+    buf.force();
+    channel.close();
+  }
+
+  /** Read the value of a slot when it holds the key. Returns null otherwise. */
+  private byte[] read(int off, int h, byte[] k) {
+    for (int attempt = 0; attempt < READ_ATTEMPTS; ++attempt) {
+      int seq = buf.getInt(off + SEQ_POS);
+      if ((seq & 1) != 0) {
+        Thread.yield();
+        continue;
+      }
+      int keyLen = buf.getInt(off + KEY_LEN_POS);
+      if (keyLen != k.length || buf.getInt(off + HASH_POS) != h)
+        return null;
+      int valLen = buf.getInt(off + VAL_LEN_POS);
+      if (valLen < 0 || SLOT_HDR_LEN + keyLen + valLen > slotSize)
+        continue;
+      int crc = buf.getInt(off + CRC_POS);
+      byte[] data = new byte[keyLen + valLen];
+      ByteBuffer b = buf.duplicate();
+      b.position(off + SLOT_HDR_LEN);
+      b.get(data);
+      if (buf.getInt(off + SEQ_POS) != seq || crc(data) != crc)
+        continue;
+      if (!Arrays.equals(k, Arrays.copyOf(data, keyLen)))
+        return null;
+      return Arrays.copyOfRange(data, keyLen, data.length);
+    }
+    return null;
+  }
+
+  /**
+   * Return whether the key of a slot starts with a prefix. The result is only reliable
+   * while the slot is claimed.
+   */
+  private boolean hasPrefix(int off, byte[] prefix) {
+    int keyLen = buf.getInt(off + KEY_LEN_POS);
+    if (keyLen < prefix.length || SLOT_HDR_LEN + keyLen > slotSize)
+      return false;
+    for (int i = 0; i < prefix.length; ++i)
+      if (buf.get(off + SLOT_HDR_LEN + i) != prefix[i])
+        return false;
+    return true;
+  }
+
+  /** Read the key and the value of a slot. Returns null when empty or being written. */
+  private Map.Entry<String, byte[]> readEntry(int off) {
+    for (int attempt = 0; attempt < READ_ATTEMPTS; ++attempt) {
+      int seq = buf.getInt(off + SEQ_POS);
+      if ((seq & 1) != 0) {
+        Thread.yield();
+        continue;
+      }
+      int keyLen = buf.getInt(off + KEY_LEN_POS);
+      if (keyLen == 0)
+        return null;
+      int valLen = buf.getInt(off + VAL_LEN_POS);
+      if (keyLen < 0 || valLen < 0 || SLOT_HDR_LEN + (long) keyLen + valLen > slotSize)
+        continue;
+      int crc = buf.getInt(off + CRC_POS);
+      byte[] data = new byte[keyLen + valLen];
+      ByteBuffer b = buf.duplicate();
+      b.position(off + SLOT_HDR_LEN);
+      b.get(data);
+      if (buf.getInt(off + SEQ_POS) != seq || crc(data) != crc)
+        continue;
+      return new AbstractMap.SimpleImmutableEntry<>(
+          new String(data, 0, keyLen, StandardCharsets.UTF_8), Arrays.copyOfRange(data, keyLen, data.length));
+    }
+    return null;
+  }
+
+  /** Write a record in a claimed slot. The sequence is odd while the slot is inconsistent. */
+  private void write(int off, int h, byte[] k, byte[] v) {
+    int seq = buf.getInt(off + SEQ_POS);
+    buf.putInt(off + SEQ_POS, seq | 1);
+    buf.putInt(off + HASH_POS, h);
+    buf.putLong(off + STAMP_POS, System.currentTimeMillis());
+    buf.putInt(off + KEY_LEN_POS, k.length);
+    buf.putInt(off + VAL_LEN_POS, v.length);
+    ByteBuffer b = buf.duplicate();
+    b.position(off + SLOT_HDR_LEN);
+    b.put(k).put(v);
+    CRC32 crc = new CRC32();
+    crc.update(k);
+    crc.update(v);
+    buf.putInt(off + CRC_POS, (int) crc.getValue());
+    buf.putInt(off + SEQ_POS, (seq | 1) + 1);
+  }
+
+  /**
+   * Mark a slot empty. Waits for the slot to be released by other writers.
+   * When a prefix is given, the slot is only emptied if its key still starts with it
+   * once claimed.
+   */
+  private void empty(int off, byte[] prefix) {
+    FileLock lock;
+    while ((lock = claim(off)) == null)
+      Thread.yield();
+    try {
+      if (prefix != null && !hasPrefix(off, prefix))
+        return;
+      int seq = buf.getInt(off + SEQ_POS);
+      buf.putInt(off + SEQ_POS, seq | 1);
+      buf.putInt(off + KEY_LEN_POS, 0);
+      buf.putInt(off + SEQ_POS, (seq | 1) + 1);
+    } finally {
+      release(lock);
+    }
+  }
+
+  /** Try to lock the byte range of a slot. Returns null when held by another writer. */
+  private FileLock claim(int off) {
+    try {
+      return channel.tryLock(off, slotSize, false);
+    } catch (OverlappingFileLockException e) {
+      return null; // held by another thread of this process
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+  private static void release(FileLock lock) {
+    try {
+      lock.release();
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+  private int slotOffset(int h, int probe) {
+    return FILE_HDR_LEN + Math.floorMod(h + probe, slotCount) * slotSize;
+  }
+
+  /** Hash of a key. String.hashCode is specified and thus identical in all processes. */
+  private static int hash(String key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private static int crc(byte[] data) {
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    return (int) crc.getValue();
+  }
+
+  /** File header: magic, version, slot count, slot size */
+  final private static int FILE_HDR_LEN = 64;
+  final private static int MAGIC = 0x49445343;
+  final private static int VERSION = 1;
+
+  /** Slot header: sequence, key hash, write time, key length (0 when empty), value length, crc */
+  final private static int SEQ_POS = 0;
+  final private static int HASH_POS = 4;
+  final private static int STAMP_POS = 8;
+  final private static int KEY_LEN_POS = 16;
+  final private static int VAL_LEN_POS = 20;
+  final private static int CRC_POS = 24;
+  final private static int SLOT_HDR_LEN = 28;
+
+  final private static int PROBES = 8;
+  final private static int READ_ATTEMPTS = 4;
+
+  final private FileChannel channel;
+  final private MappedByteBuffer buf;
+  final private int slotCount;
+  final private int slotSize;
+}
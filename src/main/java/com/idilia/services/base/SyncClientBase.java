@@ -85,7 +85,7 @@ public class SyncClientBase extends ClientBase implements Closeable {
     HttpPost httpPost = createPost(req);
     HttpClientContext ctxt = HttpClientContext.create();
     try {
-      sign(ctxt, req.requestPath(), req.toSign());
+      sign(ctxt, req);
     } catch (IOException e) {
       throw new IdiliaClientException(e);
     }
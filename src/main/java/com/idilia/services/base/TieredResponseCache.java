@@ -0,0 +1,114 @@
+package com.idilia.services.base;
+
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * A {@link ResponseCache} made of a small on-heap tier of decoded responses in front
+ * of a large tier of encoded responses, normally an {@link EncodedResponseCache} over
+ * an {@link OffHeapStore}. The off-heap store can be shared by several caches and
+ * reports the size in bytes of the second tier.
+ * <p>
+ * Responses are recorded in the first tier. When evicted from it, they are demoted
+ * to the second tier. A response found in the second tier is promoted back to the
+ * first tier. A response is present in a single tier.
+ * <p>
+ * When several caches share a store, each one must give the second tier its own
+ * namespace (see {@link EncodedResponseCache}) so that clearing a cache only removes
+ * its own responses from the store.
+ * <p>
+ * Multithread safe. The lookups and updates are serialized so that a response being
+ * promoted cannot replace a newer response recorded concurrently.
+ *
+ * @param <V> type of the response stored
+ */
+public class TieredResponseCache<V> implements ResponseCache<V> {
+
+  /**
+   * Create a cache.
+   * @param l1MaxEntries maximum number of responses in the first tier
+   * @param l1MaxBytes maximum estimated size in bytes of the responses in the first tier. 0 for no limit.
+   * @param weigher function estimating the size in bytes of a decoded response
+   * @param l2 second tier
+   */
+  public TieredResponseCache(int l1MaxEntries, long l1MaxBytes, ToLongFunction<? super V> weigher,
+      ResponseCache<V> l2) {
+    this.l2 = l2;
+    this.l1 = new LruResponseCache<V>(l1MaxEntries, l1MaxBytes, weigher)
+        .setEvictionListener(this::demote);
+  }
+
+  @Override
+  public synchronized V get(String key) {
+    V v = l1.get(key);
+    if (v != null)
+      return v;
+    v = l2.get(key);
+    if (v == null)
+      return null;
+    l2.remove(key);
+    l1.put(key, v);
+    return v;
+  }
+
+  @Override
+  public synchronized void put(String key, V value) {
+    l2.remove(key);
+    l1.put(key, value);
+  }
+
+  @Override
+  public synchronized void remove(String key) {
+    l1.remove(key);
+    l2.remove(key);
+  }
+
+  @Override
+  public synchronized void removeByPrefix(String prefix) {
+    l1.removeByPrefix(prefix);
+    l2.removeByPrefix(prefix);
+  }
+
+  @Override
+  public synchronized void clear() {
+    l1.clear();
+    l2.clear();
+  }
+
+  @Override
+  public int size() {
+    return l1.size() + l2.size();
+  }
+
+  /**
+   * Invoke a function with the responses of the second tier and then with those
+   * of the first tier.
+   */
+  @Override
+  public void forEach(BiConsumer<String, ? super V> action) {
+    l2.forEach(action);
+    l1.forEach(action);
+  }
+
+  /**
+   * @return the first tier. Provides its hit and miss counts.
+   */
+  public LruResponseCache<V> getFirstTier() {
+    return l1;
+  }
+
+  /**
+   * @return estimated size in bytes of the responses in the first tier
+   */
+  public long getFirstTierBytes() {
+    return l1.getWeight();
+  }
+
+  /** Record a response evicted from the first tier into the second tier */
+  private void demote(String key, V value) {
+    l2.put(key, value);
+  }
+
+  final private LruResponseCache<V> l1;
+  final private ResponseCache<V> l2;
+}
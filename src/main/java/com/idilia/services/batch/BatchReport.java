@@ -0,0 +1,83 @@
+package com.idilia.services.batch;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics of a run of a {@link BatchRunner}.
+ */
+public class BatchReport {
+
+  BatchReport(int succeeded, int failed, int skipped, long elapsedNanos, long[] latencies) {
+    this.succeeded = succeeded;
+    this.failed = failed;
+    this.skipped = skipped;
+    this.elapsedNanos = elapsedNanos;
+    this.latencies = latencies;
+    Arrays.sort(this.latencies);
+  }
+
+  /**
+   * @return number of items with a document
+   */
+  public int getSucceeded() {
+    return succeeded;
+  }
+
+  /**
+   * @return number of items whose request failed
+   */
+  public int getFailed() {
+    return failed;
+  }
+
+  /**
+   * @return number of items skipped because completed by a previous run
+   */
+  public int getSkipped() {
+    return skipped;
+  }
+
+  /**
+   * @param unit unit of the returned value
+   * @return duration of the run
+   */
+  public long getElapsed(TimeUnit unit) {
+    return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return number of items processed per second
+   */
+  public double getThroughput() {
+    return elapsedNanos > 0 ? (succeeded + failed) * 1e9 / elapsedNanos : 0;
+  }
+
+  /**
+   * Return a percentile of the latency of the requests.
+   * @param percentile value between 0 and 100
+   * @param unit unit of the returned value
+   * @return latency below which the given percentage of the requests completed. 0 when no request was sent.
+   */
+  public long getLatency(double percentile, TimeUnit unit) {
+    if (latencies.length == 0)
+      return 0;
+    int i = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+    return unit.convert(latencies[Math.max(0, Math.min(i, latencies.length - 1))], TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d succeeded, %d failed, %d skipped in %.1f s (%.1f docs/s). " +
+        "Latency ms: p50 %d, p90 %d, p99 %d, max %d",
+        succeeded, failed, skipped, elapsedNanos / 1e9, getThroughput(),
+        getLatency(50, TimeUnit.MILLISECONDS), getLatency(90, TimeUnit.MILLISECONDS),
+        getLatency(99, TimeUnit.MILLISECONDS), getLatency(100, TimeUnit.MILLISECONDS));
+  }
+
+  final private int succeeded;
+  final private int failed;
+  final private int skipped;
+  final private long elapsedNanos;
+  final private long[] latencies;
+}
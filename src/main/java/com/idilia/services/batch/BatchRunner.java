@@ -0,0 +1,431 @@
+package com.idilia.services.batch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.JsonCodecs;
+import com.idilia.services.base.IdiliaCredentials;
+import com.idilia.services.text.AsyncClient;
+import com.idilia.services.text.DisambiguateRequest;
+import com.idilia.services.text.DisambiguateResponse;
+import com.idilia.services.text.DisambiguatedDocument;
+
+/**
+ * Disambiguates a corpus with an {@link AsyncClient} and writes each document to a
+ * {@link BatchSink}.
+ * <p>
+ * The number of requests in progress and the rate at which they are sent are bounded.
+ * The documents are written in the order of the input or as they complete. A failed
+ * request is written with its error. When a checkpoint journal is given, each item
+ * written is recorded in the journal and a run with the same input, sink and journal
+ * resumes after the last item recorded.
+ * <p>
+ * Can also be invoked from the command line. Run without arguments for the usage.
+ */
+public class BatchRunner {
+
+  /** A text of the corpus */
+  public static class Item {
+
+    /**
+     * @param id identifier of the text in the output
+     * @param text text to disambiguate
+     */
+    public Item(String id, String text) {
+      this.id = id;
+      this.text = text;
+    }
+
+    /**
+     * @return identifier of the text
+     */
+    public String getId() {
+      return id;
+    }
+
+    /**
+     * @return text to disambiguate
+     */
+    public String getText() {
+      return text;
+    }
+
+    final private String id;
+    final private String text;
+  }
+
+  /**
+   * Create a runner.
+   * @param client client used to send the requests
+   * @param factory function creating a request with the parameters for all the items
+   *        (e.g., recipe, result mime). The text is added by the runner.
+   */
+  public BatchRunner(AsyncClient client, Supplier<DisambiguateRequest> factory) {
+    this.client = client;
+    this.factory = factory;
+  }
+
+  /**
+   * Set the maximum number of requests in progress. Default is 16.
+   * @param concurrency maximum number of requests
+   * @return this runner
+   */
+  public BatchRunner setConcurrency(int concurrency) {
+    this.concurrency = concurrency;
+    return this;
+  }
+
+  /**
+   * Set the maximum rate at which requests are sent. Default is no limit.
+   * @param requestsPerSecond maximum number of requests per second. 0 for no limit.
+   * @return this runner
+   */
+  public BatchRunner setRateLimit(double requestsPerSecond) {
+    this.intervalNanos = requestsPerSecond > 0 ? (long) (1e9 / requestsPerSecond) : 0;
+    return this;
+  }
+
+  /**
+   * Set whether the documents are written in the order of the input. When true, at most
+   * the concurrency limit of documents are pending in memory, so a slow request delays
+   * the following ones. Default is false (written as completed).
+   * @param ordered true to write in input order
+   * @return this runner
+   */
+  public BatchRunner setOrdered(boolean ordered) {
+    this.ordered = ordered;
+    return this;
+  }
+
+  /**
+   * Set the mime and character set of the texts. Default is text/plain in UTF-8.
+   * @param mime mime type expected by the server
+   * @param charset character set for encoding the texts
+   * @return this runner
+   */
+  public BatchRunner setMime(String mime, Charset charset) {
+    this.mime = mime;
+    this.charset = charset;
+    return this;
+  }
+
+  /**
+   * Set the checkpoint journal. Created when it does not exist.
+   * @param journal file of the journal or null for none
+   * @return this runner
+   */
+  public BatchRunner setJournal(Path journal) {
+    this.journalFile = journal;
+    return this;
+  }
+
+  /**
+   * Process the items of a corpus.
+   * @param items items to process. Must be the same sequence when resuming a job.
+   * @param sink destination of the documents. Closed when the run completes.
+   * @return statistics of the run
+   * @throws IOException when the sink or the journal cannot be written
+   */
+  public BatchReport run(Iterator<Item> items, BatchSink sink) throws IOException {
+    return new Run(sink).execute(items);
+  }
+
+  /**
+   * Read a corpus where each line is a JSON object with fields "id" and "text".
+   * The id defaults to the line number. Blank lines are ignored.
+   * @param file corpus file in UTF-8
+   * @return the items. The stream must be closed.
+   * @throws IOException when the file cannot be opened
+   */
+  public static Stream<Item> jsonLines(Path file) throws IOException {
+    AtomicInteger lineNo = new AtomicInteger();
+    return Files.lines(file, StandardCharsets.UTF_8)
+        .peek(l -> lineNo.incrementAndGet())
+        .filter(l -> !l.trim().isEmpty())
+        .map(l -> {
+          try {
+            JsonNode n = mapper.readTree(l);
+            JsonNode id = n.get("id");
+            return new Item(id != null ? id.asText() : Integer.toString(lineNo.get()), n.path("text").asText());
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+  }
+
+  /**
+   * Read a corpus where each file of a directory is a text. The id is the file name.
+   * @param dir corpus directory. The files are processed in name order.
+   * @return the items. The stream must be closed.
+   * @throws IOException when the directory cannot be read
+   */
+  public static Stream<Item> directory(Path dir) throws IOException {
+    return Files.list(dir)
+        .filter(Files::isRegularFile)
+        .sorted()
+        .map(p -> {
+          try {
+            return new Item(p.getFileName().toString(), new String(Files.readAllBytes(p), StandardCharsets.UTF_8));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+  }
+
+  /**
+   * The state of one call to {@link #run}.
+   * <p>
+   * The outcomes are written to the sink and the journal by a thread of the run
+   * rather than by the thread completing the request, which is the I/O thread
+   * of the client.
+   */
+  private class Run {
+
+    Run(BatchSink sink) {
+      this.sink = sink;
+      this.permits = new Semaphore(concurrency);
+      this.writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "idilia-batch-writer");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+
+    BatchReport execute(Iterator<Item> items) throws IOException {
+      long start = System.nanoTime();
+      try (BatchSink s = sink; CheckpointJournal j = journalFile != null ? new CheckpointJournal(journalFile) : null) {
+        this.journal = j;
+        s.open(j != null ? j.position() : 0);
+
+        int index = 0, seq = 0, skipped = 0;
+        long nextSend = System.nanoTime();
+        try {
+          for (; items.hasNext() && error == null; ++index) {
+            Item item = items.next();
+            if (j != null && j.isDone(index)) {
+              ++skipped;
+              continue;
+            }
+            if (intervalNanos > 0) {
+              long now = System.nanoTime();
+              if (nextSend - now > 0)
+                LockSupport.parkNanos(nextSend - now);
+              nextSend = Math.max(now, nextSend) + intervalNanos;
+            }
+            permits.acquireUninterruptibly();
+            send(item, index, seq++);
+          }
+        } finally {
+          // Write the requests in progress before closing the sink and the journal,
+          // also when reading the items fails
+          permits.acquireUninterruptibly(concurrency);
+        }
+        this.skipped = skipped;
+      } finally {
+        writer.shutdown();
+      }
+
+      if (error != null)
+        throw error;
+      return new BatchReport(succeeded, failed, skipped, System.nanoTime() - start,
+          Arrays.copyOf(latencies, count));
+    }
+
+    private void send(Item item, int index, int seq) {
+      long start = System.nanoTime();
+      CompletableFuture<DisambiguateResponse> f;
+      try {
+        DisambiguateRequest req = factory.get();
+        req.setText(item.getText(), mime, charset);
+        f = client.disambiguateAsync(req);
+      } catch (RuntimeException e) {
+        // The item is written as failed so that its permit and sequence are released
+        f = new CompletableFuture<>();
+        f.completeExceptionally(e instanceof IdiliaClientException ? e : new IdiliaClientException(e));
+      }
+
+      f.whenComplete((resp, ex) -> {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        DisambiguatedDocument doc = null;
+        if (cause == null) {
+          if (resp.getResults().isEmpty())
+            cause = new IdiliaClientException("No document returned by the server");
+          else
+            doc = resp.getResult();
+        }
+        Outcome o = new Outcome(item, index, seq, doc, cause, System.nanoTime() - start);
+        writer.execute(() -> complete(o));
+      });
+    }
+
+    /** Write the outcomes that can be written. Invoked on the writer thread. */
+    private void complete(Outcome o) {
+      if (!ordered) {
+        write(o);
+        return;
+      }
+      pending.put(o.seq, o);
+      while ((o = pending.remove(nextSeq)) != null) {
+        write(o);
+        ++nextSeq;
+      }
+    }
+
+    private void write(Outcome o) {
+      try {
+        if (error == null) {
+          long pos = sink.write(o.item, o.doc, o.error);
+          if (journal != null)
+            journal.record(o.index, pos);
+        }
+      } catch (IOException e) {
+        error = e;
+      } finally {
+        if (o.error == null)
+          ++succeeded;
+        else
+          ++failed;
+        if (count == latencies.length)
+          latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        latencies[count++] = o.latencyNanos;
+        permits.release();
+      }
+    }
+
+    final private BatchSink sink;
+    final private Semaphore permits;
+    final private ExecutorService writer;
+    final private TreeMap<Integer, Outcome> pending = new TreeMap<>();
+    private CheckpointJournal journal;
+    private int nextSeq;
+    private int succeeded, failed, skipped;
+    private long[] latencies = new long[1024];
+    private int count;
+    private volatile IOException error;
+  }
+
+  /** The result of the request for an item */
+  private static class Outcome {
+    Outcome(Item item, int index, int seq, DisambiguatedDocument doc, Throwable error, long latencyNanos) {
+      this.item = item;
+      this.index = index;
+      this.seq = seq;
+      this.doc = doc;
+      this.error = error;
+      this.latencyNanos = latencyNanos;
+    }
+
+    final Item item;
+    final int index;
+    final int seq;
+    final DisambiguatedDocument doc;
+    final Throwable error;
+    final long latencyNanos;
+  }
+
+  /**
+   * Command line entry point.
+   * @param args arguments described by the usage
+   * @throws Exception when the job fails
+   */
+  public static void main(String[] args) throws Exception {
+    String key = System.getenv("IDILIA_API_KEY"), url = null, input = null, output = null, journal = null;
+    String mime = "text/plain", recipe = null, resultMime = null;
+    int concurrency = 16;
+    double rate = 0;
+    boolean ordered = false;
+    for (int i = 0; i < args.length; ++i) {
+      String a = args[i];
+      if (a.equals("--ordered")) {
+        ordered = true;
+        continue;
+      }
+      if (i + 1 >= args.length)
+        usage();
+      String v = args[++i];
+      switch (a) {
+      case "--key": key = v; break;
+      case "--url": url = v; break;
+      case "--input": input = v; break;
+      case "--output": output = v; break;
+      case "--journal": journal = v; break;
+      case "--concurrency": concurrency = Integer.parseInt(v); break;
+      case "--rate": rate = Double.parseDouble(v); break;
+      case "--mime": mime = v; break;
+      case "--recipe": recipe = v; break;
+      case "--result-mime": resultMime = v; break;
+      default: usage();
+      }
+    }
+    if (key == null || input == null || output == null)
+      usage();
+
+    IdiliaCredentials creds = new IdiliaCredentials(key);
+    AsyncClient client = url != null ? new AsyncClient(creds, new URL(url)) : new AsyncClient(creds);
+    final String rcp = recipe, rm = resultMime;
+    BatchRunner runner = new BatchRunner(client, () -> {
+      DisambiguateRequest req = new DisambiguateRequest();
+      if (rcp != null)
+        req.setDisambiguationRecipe(rcp);
+      if (rm != null)
+        req.setResultMime(rm);
+      return req;
+    }).setConcurrency(concurrency).setRateLimit(rate).setOrdered(ordered)
+      .setMime(mime, StandardCharsets.UTF_8)
+      .setJournal(journal != null ? Paths.get(journal) : null);
+
+    Path in = Paths.get(input), out = Paths.get(output);
+    BatchSink sink = output.endsWith(".jsonl") ? BatchSink.jsonLines(out) : BatchSink.directory(out);
+    try (Stream<Item> items = Files.isDirectory(in) ? directory(in) : jsonLines(in)) {
+      System.out.println(runner.run(items.iterator(), sink));
+    } finally {
+      AsyncClient.stop();
+    }
+  }
+
+  private static void usage() {
+    System.err.println("Usage: BatchRunner --input <file.jsonl|dir> --output <file.jsonl|dir> [options]\n" +
+        "  --key <key>            API access and secret keys. Default is env IDILIA_API_KEY\n" +
+        "  --url <url>            API URL\n" +
+        "  --journal <file>       checkpoint journal for resuming the job\n" +
+        "  --concurrency <n>      maximum requests in progress (16)\n" +
+        "  --rate <n>             maximum requests per second\n" +
+        "  --ordered              write the documents in input order\n" +
+        "  --mime <mime>          mime of the texts (text/plain)\n" +
+        "  --recipe <recipe>      disambiguation recipe\n" +
+        "  --result-mime <mime>   mime of the documents");
+    System.exit(2);
+  }
+
+  final private static ObjectMapper mapper = JsonCodecs.mapper();
+
+  final private AsyncClient client;
+  final private Supplier<DisambiguateRequest> factory;
+  private int concurrency = 16;
+  private long intervalNanos;
+  private boolean ordered;
+  private String mime = "text/plain";
+  private Charset charset = StandardCharsets.UTF_8;
+  private Path journalFile;
+}
@@ -0,0 +1,57 @@
+package com.idilia.services.batch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import com.idilia.services.text.DisambiguatedDocument;
+
+/**
+ * Destination of the documents produced by a {@link BatchRunner}.
+ * <p>
+ * The runner invokes the methods from a single thread of its own, never from the
+ * I/O thread of the client, so that a write may block until the outcome is durable.
+ */
+public interface BatchSink extends Closeable {
+
+  /**
+   * Prepare the sink for writing.
+   * @param resumePosition position returned by {@link #write} for the last item
+   *        recorded in the checkpoint journal. 0 when starting a new job.
+   * @throws IOException when the sink cannot be opened
+   */
+  void open(long resumePosition) throws IOException;
+
+  /**
+   * Write the outcome of an item. The outcome must be durable when the method returns
+   * because the item is then recorded in the checkpoint journal.
+   * @param item item processed
+   * @param doc document obtained or null when the request failed
+   * @param error error of the request or null when successful
+   * @return the position from which to resume writing after this item
+   * @throws IOException when the outcome cannot be written
+   */
+  long write(BatchRunner.Item item, DisambiguatedDocument doc, Throwable error) throws IOException;
+
+  /**
+   * Create a sink writing a file per item in a directory. The name of the file is
+   * the id of the item, with the suffix ".gz" when the document is compressed and
+   * ".error" with the error message when the request failed.
+   * @param dir output directory. Created when it does not exist.
+   * @return a sink
+   */
+  static BatchSink directory(Path dir) {
+    return new DirectorySink(dir);
+  }
+
+  /**
+   * Create a sink writing a JSON line per item in a file. Each line has the id,
+   * the status and either the result mime, the encoding and the base64 document, or the
+   * error message.
+   * @param file output file
+   * @return a sink
+   */
+  static BatchSink jsonLines(Path file) {
+    return new JsonLinesSink(file);
+  }
+}
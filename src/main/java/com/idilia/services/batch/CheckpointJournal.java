@@ -0,0 +1,90 @@
+package com.idilia.services.batch;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Journal of the items completed by a {@link BatchRunner}. Each line has the index
+ * of an item in the input and the position of the sink after writing it, and ends
+ * with a period. A line partially written when the process stopped is ignored.
+ */
+class CheckpointJournal implements Closeable {
+
+  CheckpointJournal(Path file) throws IOException {
+    if (Files.exists(file)) {
+      try (BufferedReader rd = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = rd.readLine()) != null) {
+          int tab = line.indexOf('\t');
+          if (tab <= 0 || !line.endsWith("."))
+            continue;
+          try {
+            int index = Integer.parseInt(line.substring(0, tab));
+            long pos = Long.parseLong(line.substring(tab + 1, line.length() - 1));
+            done.set(index);
+            position = pos;
+          } catch (NumberFormatException e) {
+            // Partial line
+          }
+        }
+      }
+    }
+    this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+
+  /**
+   * @param index index of an item in the input
+   * @return true when the item was completed by a previous run
+   */
+  boolean isDone(int index) {
+    return done.get(index);
+  }
+
+  /**
+   * @return number of items completed by previous runs
+   */
+  int doneCount() {
+    return done.cardinality();
+  }
+
+  /**
+   * @return position of the sink after the last item recorded
+   */
+  long position() {
+    return position;
+  }
+
+  /**
+   * Record the completion of an item.
+   * @param index index of the item in the input
+   * @param pos position of the sink after writing the item
+   * @throws IOException when the journal cannot be written
+   */
+  void record(int index, long pos) throws IOException {
+    // Start on a new line in case the last one was partially written
+    if (!started) {
+      out.write('\n');
+      started = true;
+    }
+    out.write(index + "\t" + pos + ".\n");
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+
+  final private BitSet done = new BitSet();
+  final private Writer out;
+  private long position;
+  private boolean started;
+}
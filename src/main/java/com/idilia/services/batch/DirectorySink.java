@@ -0,0 +1,85 @@
+package com.idilia.services.batch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import com.idilia.services.text.DisambiguatedDocument;
+
+/**
+ * A {@link BatchSink} writing a file per item.
+ * <p>
+ * Each file is written to a temporary file that is synced to the device and then
+ * renamed. The directory is synced after the rename where the platform allows it.
+ */
+class DirectorySink implements BatchSink {
+
+  DirectorySink(Path dir) {
+    this.dir = dir;
+  }
+
+  @Override
+  public void open(long resumePosition) throws IOException {
+    Files.createDirectories(dir);
+  }
+
+  @Override
+  public long write(BatchRunner.Item item, DisambiguatedDocument doc, Throwable error) throws IOException {
+    String name = item.getId().replaceAll("[/\\\\:]", "_");
+    Path errorFile = dir.resolve(name + ".error");
+    if (error != null) {
+      byte[] msg = String.valueOf(error.getMessage()).getBytes(StandardCharsets.UTF_8);
+      writeDurably(new ByteArrayInputStream(msg), name, errorFile);
+      return 0;
+    }
+
+    // Write to a temporary file so that an interrupted job does not leave a partial document
+    try (InputStream is = doc.getEncodedInputStream()) {
+      writeDurably(is, name, dir.resolve(doc.getEncoding() != null ? name + ".gz" : name));
+    }
+
+    // The error of an earlier attempt at the item no longer applies
+    if (Files.deleteIfExists(errorFile))
+      syncDirectory();
+    return 0;
+  }
+
+  @Override
+  public void close() {
+  }
+
+  /** Write a file through a temporary file synced before being renamed */
+  private void writeDurably(InputStream is, String name, Path target) throws IOException {
+    Path tmp = dir.resolve(name + ".tmp");
+    try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      byte[] buf = new byte[8192];
+      for (int n; (n = is.read(buf)) > 0; ) {
+        ByteBuffer b = ByteBuffer.wrap(buf, 0, n);
+        while (b.hasRemaining())
+          ch.write(b);
+      }
+      ch.force(true);
+    }
+    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    syncDirectory();
+  }
+
+  /** Sync the entries of the directory. Not supported on all platforms. */
+  private void syncDirectory() {
+    try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+      ch.force(true);
+    } catch (IOException e) {
+      // Directories cannot be opened on some platforms; the rename is then as durable as it can be
+    }
+  }
+
+  final private Path dir;
+}
@@ -0,0 +1,72 @@
+package com.idilia.services.batch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.IOUtils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.ResponseBase;
+import com.idilia.services.text.DisambiguatedDocument;
+
+/** A {@link BatchSink} writing a JSON line per item in a file */
+class JsonLinesSink implements BatchSink {
+
+  JsonLinesSink(Path file) {
+    this.file = file;
+  }
+
+  @Override
+  public void open(long resumePosition) throws IOException {
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    // Drop the lines written after the last item recorded in the journal
+    channel.truncate(resumePosition);
+    channel.position(resumePosition);
+  }
+
+  @Override
+  public long write(BatchRunner.Item item, DisambiguatedDocument doc, Throwable error) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try (JsonGenerator g = factory.createGenerator(os)) {
+      g.writeStartObject();
+      g.writeStringField("id", item.getId());
+      if (error == null) {
+        g.writeNumberField("status", 200);
+        g.writeStringField("resultMime", doc.getResultMime());
+        if (doc.getEncoding() != null)
+          g.writeStringField("encoding", doc.getEncoding());
+        g.writeFieldName("document");
+        g.writeBinary(IOUtils.toByteArray(doc.getEncodedInputStream()));
+      } else {
+        ResponseBase r = error instanceof IdiliaClientException ? ((IdiliaClientException) error).getApiResponse() : null;
+        g.writeNumberField("status", r != null ? r.getStatus() : 0);
+        g.writeStringField("error", String.valueOf(error.getMessage()));
+      }
+      g.writeEndObject();
+    }
+    os.write('\n');
+
+    ByteBuffer b = ByteBuffer.wrap(os.toByteArray());
+    while (b.hasRemaining())
+      channel.write(b);
+    channel.force(false);
+    return channel.position();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel != null)
+      channel.close();
+  }
+
+  final private static JsonFactory factory = new JsonFactory();
+
+  final private Path file;
+  private FileChannel channel;
+}
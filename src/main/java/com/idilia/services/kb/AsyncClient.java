@@ -3,18 +3,30 @@ package com.idilia.services.kb;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.idilia.services.base.AsyncClientBase;
 import com.idilia.services.base.IdiliaClientException;
 import com.idilia.services.base.IdiliaCredentials;
+import com.idilia.services.base.ResponseBase;
 
 /**
  * Asynchronous Client For Kb Queries
@@ -46,6 +58,53 @@ public class AsyncClient extends AsyncClientBase {
     super(creds, url);
   }
 
+  /**
+   * Attach a cache for the sense menus. Menus found in the cache are returned
+   * without contacting the server.
+   * @param cache cache to use or null to disable caching
+   * @return this client
+   */
+  public AsyncClient setSenseMenuCache(SenseMenuCache cache) {
+    this.senseMenuCache = cache;
+    return this;
+  }
+
+  /**
+   * Attach a cache for the sense cards. Cards found in the cache
+   * are returned without contacting the server.
+   * @param cache cache to use or null to disable caching
+   * @return this client
+   */
+  public AsyncClient setSenseCardCache(SenseCardCache cache) {
+    this.senseCardCache = cache;
+    return this;
+  }
+
+  /**
+   * Set the maximum number of sense card requests in progress for a call to
+   * {@link #senseCards}. Default is 32.
+   * @param parallelism maximum number of simultaneous requests. Must be positive.
+   * @return this client
+   * @throws IllegalArgumentException when the parallelism is not positive
+   */
+  public AsyncClient setSenseCardParallelism(int parallelism) {
+    if (parallelism <= 0)
+      throw new IllegalArgumentException("parallelism must be positive");
+    this.senseCardParallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Attach a cache for the results of kb/query templates. Only the templates
+   * of a query without a recorded result are sent to the server.
+   * @param cache cache to use or null to disable caching
+   * @return this client
+   */
+  public AsyncClient setQueryItemCache(QueryItemCache cache) {
+    this.queryItemCache = cache;
+    return this;
+  }
+
 
   /**
    * Sends a query request to the kb server.
@@ -63,6 +122,79 @@ public class AsyncClient extends AsyncClientBase {
    */
   public <T> CompletableFuture<QueryResponse<T>> queryAsync(QueryRequest req, Class<T> tpRef) throws IdiliaClientException {
 
+    QueryItemCache.Lookup lookup = queryItemCache != null ? queryItemCache.lookup(req) : null;
+    if (lookup == null)
+      return send(req, tpRef);
+
+    // Only request the templates without a recorded result
+    if (!lookup.hasMisses())
+      return CompletableFuture.completedFuture(lookup.response(tpRef));
+    return send(lookup.missRequest(), JsonNode.class).thenApply(resp -> {
+      lookup.complete(resp);
+      return lookup.response(tpRef);
+    });
+  }
+
+
+  /**
+   * Sends a query request to the kb server and hands each result to a consumer as
+   * soon as it is received and decoded.
+   * <p>
+   * The results are not accumulated: the memory used does not depend on the number of
+   * templates and the processing of the first results overlaps the reception of the
+   * following ones. The results are decoded and passed to the consumer in order by a
+   * task of the given executor. The query item cache is not used and the request is
+   * not retried after a server error.
+   *
+   * @param <T> A POJO that can be JSON serialized and reconstituted.
+   * @param req Request message. One concrete implementation of {@link QueryRequest}
+   * @param tpRef type of the class of object to recover from the JSON response. Can be Object.class
+   *              or a user defined class.
+   * @param consumer function receiving each result. An exception thrown by the consumer
+   *              stops the decoding and fails the returned future.
+   * @param executor executor running the decoding and the consumer
+   * @return a CompletableFuture set with the response, without its results, once all the results are consumed
+   * @throws IdiliaClientException wrapping the actual exception encountered
+   */
+  public <T> CompletableFuture<QueryResponse<T>> queryAsync(QueryRequest req, Class<T> tpRef,
+      Consumer<? super T> consumer, Executor executor) throws IdiliaClientException {
+
+    final HttpPost httpPost = createPost(req);
+    final HttpClientContext ctxt = HttpClientContext.create();
+    try {
+      sign(ctxt, req);
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+
+    StreamingQueryConsumer<T> rxConsumer = new StreamingQueryConsumer<>(tpRef, consumer, executor);
+    schedule(req, slot -> getClient().execute(HttpAsyncMethods.create(httpPost), rxConsumer, ctxt, new FutureCallback<Void>() {
+      @Override
+      public void completed(Void result) {
+        release();
+      }
+
+      @Override
+      public void failed(Exception ex) {
+        release();
+      }
+
+      @Override
+      public void cancelled() {
+        release();
+      }
+
+      private void release() {
+        releaseSlot(slot);
+      }
+    }));
+    return rxConsumer.getParsed();
+  }
+
+
+  /** Sends a kb/query request without looking into the query cache */
+  private <T> CompletableFuture<QueryResponse<T>> send(QueryRequest req, Class<T> tpRef) throws IdiliaClientException {
+
     final HttpPost httpPost = createPost(req);
     final HttpClientContext ctxt = HttpClientContext.create();
     try {
@@ -72,7 +204,7 @@ public class AsyncClient extends AsyncClientBase {
     }
 
     final CompletableFuture<QueryResponse<T>> future = new CompletableFuture<>();
-    getClient().execute(httpPost, ctxt, new QueryCB<T>(tpRef, httpPost, ctxt, future));
+    execute(req, httpPost, ctxt, new QueryCB<T>(tpRef, httpPost, ctxt, future));
     return future;
   }
 
@@ -89,7 +221,7 @@ public class AsyncClient extends AsyncClientBase {
 
     public QueryResponse<T> completedHdlr(HttpResponse httpResponse) throws IdiliaClientException, JsonParseException, UnsupportedOperationException, IOException {
 
-      QueryResponse<T> resp = QueryCodec.decode(jsonMapper_, tpRef, httpResponse.getEntity());
+      QueryResponse<T> resp = QueryCodec.decode(tpRef, httpResponse.getEntity());
       if (resp.getStatus() != HttpURLConnection.HTTP_OK)
         throw new IdiliaClientException(resp);
       return resp;
@@ -110,6 +242,12 @@ public class AsyncClient extends AsyncClientBase {
    */
   public CompletableFuture<SenseMenuResponse> senseMenuAsync(SenseMenuRequest req) throws IdiliaClientException {
 
+    if (senseMenuCache != null) {
+      SenseMenuResponse cached = senseMenuCache.get(req);
+      if (cached != null)
+        return CompletableFuture.completedFuture(cached);
+    }
+
     final HttpPost httpPost = createPost(req);
     final HttpClientContext ctxt = HttpClientContext.create();
     try {
@@ -119,12 +257,21 @@ public class AsyncClient extends AsyncClientBase {
     }
 
     final CompletableFuture<SenseMenuResponse> future = new CompletableFuture<>();
-    getClient().execute(httpPost, ctxt, new HttpCallback<SenseMenuResponse>(httpPost, ctxt, future) {
+    execute(req, httpPost, ctxt, new HttpCallback<SenseMenuResponse>(httpPost, ctxt, future) {
       @Override
       public SenseMenuResponse completedHdlr(HttpResponse result) throws IdiliaClientException, JsonParseException, JsonMappingException, UnsupportedOperationException, IOException {
-        SenseMenuResponse resp = (SenseMenuResponse)decodeHttpResponse(result, req);
+        SenseMenuResponse resp;
+        try {
+          resp = (SenseMenuResponse)decodeHttpResponse(result, req);
+        } catch (IdiliaClientException e) {
+          if (senseMenuCache != null)
+            senseMenuCache.putFailure(req, e);
+          throw e;
+        }
         if (resp.getStatus() != HttpURLConnection.HTTP_OK)
           throw new IdiliaClientException(resp);
+        if (senseMenuCache != null)
+          senseMenuCache.put(req, resp);
         return resp;
       }
     });
@@ -148,13 +295,13 @@ public class AsyncClient extends AsyncClientBase {
     final HttpPost httpPost = createMultipartPost(req);
     final HttpClientContext ctxt = HttpClientContext.create();
     try {
-      sign(ctxt, req.requestPath(), req.toSign());
+      sign(ctxt, req);
     } catch (IOException ioe) {
       throw new IdiliaClientException(ioe);
     }
 
     final CompletableFuture<TaggingMenuResponse> future = new CompletableFuture<>();
-    getClient().execute(httpPost, ctxt, new HttpCallback<TaggingMenuResponse>(httpPost, ctxt, future) {
+    execute(req, httpPost, ctxt, new HttpCallback<TaggingMenuResponse>(httpPost, ctxt, future) {
       @Override
       public TaggingMenuResponse completedHdlr(HttpResponse result) throws IdiliaClientException, JsonParseException, JsonMappingException, UnsupportedOperationException, IOException {
         TaggingMenuResponse resp = (TaggingMenuResponse)decodeHttpResponse(result, req);
@@ -180,6 +327,12 @@ public class AsyncClient extends AsyncClientBase {
    */
   public CompletableFuture<SenseCardResponse> senseCardAsync(SenseCardRequest req) throws IdiliaClientException {
 
+    if (senseCardCache != null) {
+      SenseCardResponse cached = senseCardCache.get(req);
+      if (cached != null)
+        return CompletableFuture.completedFuture(cached);
+    }
+
     final HttpPost httpPost = createPost(req);
     final HttpClientContext ctxt = HttpClientContext.create();
     try {
@@ -189,16 +342,126 @@ public class AsyncClient extends AsyncClientBase {
     }
 
     final CompletableFuture<SenseCardResponse> future = new CompletableFuture<>();
-    getClient().execute(httpPost, ctxt, new HttpCallback<SenseCardResponse>(httpPost, ctxt, future) {
+    execute(req, httpPost, ctxt, new HttpCallback<SenseCardResponse>(httpPost, ctxt, future) {
       @Override
       public SenseCardResponse completedHdlr(HttpResponse result) throws IdiliaClientException, JsonParseException, JsonMappingException, UnsupportedOperationException, IOException {
-        SenseCardResponse resp = (SenseCardResponse)decodeHttpResponse(result, req);
+        SenseCardResponse resp;
+        try {
+          resp = (SenseCardResponse)decodeHttpResponse(result, req);
+        } catch (IdiliaClientException e) {
+          if (senseCardCache != null)
+            senseCardCache.putFailure(req, e);
+          throw e;
+        }
         if (resp.getStatus() != HttpURLConnection.HTTP_OK)
           throw new IdiliaClientException(resp);
+        if (senseCardCache != null)
+          senseCardCache.put(req, resp);
         return resp;
       }
     });
 
     return future;
   }
+
+  /**
+   * Obtains the sense cards of several sensekeys.
+   * <p>
+   * Each distinct sensekey is requested once. The cards found in the sense card cache
+   * are returned immediately and the others are requested concurrently, with at most
+   * the number of requests set with {@link #setSenseCardParallelism} in progress.
+   * The future does not fail when some cards cannot be obtained: the response for
+   * these sensekeys has the status and the message of the error, or status 0 when
+   * the server was not reached.
+   *
+   * @param fsks sensekeys of the cards
+   * @param template template of the cards
+   * @param len value for the data-len attribute of the cards. Can be null.
+   * @return a CompletableFuture set with a response for each distinct sensekey, in the order given
+   */
+  public CompletableFuture<Map<String, SenseCardResponse>> senseCards(Collection<String> fsks, String template, Integer len) {
+    return new SenseCardsFetch(new LinkedHashSet<>(fsks), template, len).start();
+  }
+
+
+  /** The state of a call to {@link #senseCards} */
+  private class SenseCardsFetch {
+
+    SenseCardsFetch(LinkedHashSet<String> fsks, String template, Integer len) {
+      this.fsks = new ArrayList<>(fsks);
+      this.template = template;
+      this.len = len;
+      this.responses = new SenseCardResponse[this.fsks.size()];
+    }
+
+    CompletableFuture<Map<String, SenseCardResponse>> start() {
+      remaining = fsks.size();
+      if (remaining == 0)
+        result.complete(new LinkedHashMap<>());
+      pump();
+      return result;
+    }
+
+    /** Send requests while below the parallelism limit */
+    private void pump() {
+      while (true) {
+        int i;
+        synchronized (this) {
+          if (next >= fsks.size() || running >= senseCardParallelism)
+            return;
+          i = next++;
+          ++running;
+        }
+
+        SenseCardRequest req = new SenseCardRequest(fsks.get(i)).setTemplate(template).setLength(len);
+        CompletableFuture<SenseCardResponse> f;
+        try {
+          f = senseCardAsync(req);
+        } catch (IdiliaClientException e) {
+          record(i, null, e);
+          continue;
+        }
+        if (f.isDone())
+          f.whenComplete((r, ex) -> record(i, r, ex));
+        else
+          f.whenComplete((r, ex) -> {
+            record(i, r, ex);
+            pump();
+          });
+      }
+    }
+
+    /** Record the outcome for a sensekey and complete the result when the last one is known */
+    private void record(int i, SenseCardResponse resp, Throwable ex) {
+      if (ex != null) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        ResponseBase api = cause instanceof IdiliaClientException ? ((IdiliaClientException) cause).getApiResponse() : null;
+        resp = new SenseCardResponse();
+        resp.setStatus(api != null ? api.getStatus() : 0);
+        resp.setErrorMsg(api != null ? api.getErrorMsg() : cause.toString());
+      }
+      synchronized (this) {
+        responses[i] = resp;
+        --running;
+        if (--remaining > 0)
+          return;
+      }
+      Map<String, SenseCardResponse> m = new LinkedHashMap<>();
+      for (int j = 0; j < responses.length; ++j)
+        m.put(fsks.get(j), responses[j]);
+      result.complete(m);
+    }
+
+    final private ArrayList<String> fsks;
+    final private String template;
+    final private Integer len;
+    final private SenseCardResponse[] responses;
+    final private CompletableFuture<Map<String, SenseCardResponse>> result = new CompletableFuture<>();
+    private int next, running, remaining;
+  }
+
+  private SenseMenuCache senseMenuCache;
+  private SenseCardCache senseCardCache;
+  private QueryItemCache queryItemCache;
+  private int senseCardParallelism = 32;
 }
@@ -15,10 +15,15 @@ package com.idilia.services.kb;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.idilia.services.base.IdiliaClientException;
 import com.idilia.services.base.IdiliaCredentials;
 import com.idilia.services.base.SyncClientBase;
@@ -62,6 +67,41 @@ public class Client extends SyncClientBase {
     super(creds, url);
   }
   
+  
+  /**
+   * Attach a cache for the sense menus. Menus found in the cache are returned
+   * without contacting the server.
+   * @param cache cache to use or null to disable caching
+   * @return this client
+   */
+  public Client setSenseMenuCache(SenseMenuCache cache) {
+    this.senseMenuCache = cache;
+    return this;
+  }
+
+  /**
+   * Attach a cache for the sense cards. Cards found in the cache
+   * are returned without contacting the server.
+   * @param cache cache to use or null to disable caching
+   * @return this client
+   */
+  public Client setSenseCardCache(SenseCardCache cache) {
+    this.senseCardCache = cache;
+    return this;
+  }
+  
+  
+  /**
+   * Attach a cache for the results of kb/query templates. Only the templates
+   * of a query without a recorded result are sent to the server.
+   * @param cache cache to use or null to disable caching
+   * @return this client
+   */
+  public Client setQueryItemCache(QueryItemCache cache) {
+    this.queryItemCache = cache;
+    return this;
+  }
+  
 
   /**
    * Sends a request to the kb server.
@@ -86,10 +126,91 @@ public class Client extends SyncClientBase {
    * @throws IdiliaClientException when the request is not successful for any reason
    */
   public <T> QueryResponse<T> query(QueryRequest req, Class<T> tpRef) throws IdiliaClientException {
+    QueryItemCache.Lookup lookup = queryItemCache != null ? queryItemCache.lookup(req) : null;
+    if (lookup == null)
+      return send(req, tpRef);
+    
+    // Only request the templates without a recorded result
+    if (lookup.hasMisses())
+      lookup.complete(send(lookup.missRequest(), JsonNode.class));
+    return lookup.response(tpRef);
+  }
+  
+  
+  /**
+   * Sends a kb/query request to the kb server and hands each result to a consumer as
+   * soon as it is received and decoded.
+   * <p>
+   * The results are not accumulated so the memory used does not depend on the number
+   * of templates. The query item cache is not used.
+   *
+   * @param <T> A POJO that can be JSON serialized and reconstituted.
+   * @param req   Request message. One concrete implementation of {@link QueryRequest}
+   * @param tpRef Type of the object into which to deserialize the result of each query.
+   * @param consumer function receiving each result in order
+   * @return the response without its results
+   * @throws IdiliaClientException when the request is not successful for any reason
+   */
+  public <T> QueryResponse<T> query(QueryRequest req, Class<T> tpRef, Consumer<? super T> consumer) throws IdiliaClientException {
+    try (CloseableHttpResponse httpResponse = getServerResponse(req)) {
+      HttpEntity entity = entity(httpResponse);
+      return QueryCodec.decode(tpRef, QueryCodec.contentType(entity), entity.getContent(), consumer);
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+
+  /**
+   * Sends a kb/query request to the kb server and returns a stream decoding the results
+   * as they are received.
+   * <p>
+   * The stream holds the connection and must be closed. The query item cache is not used.
+   * An IdiliaClientException is thrown while consuming the stream when the response
+   * cannot be decoded or, after the last result, when the request is not successful.
+   *
+   * @param <T> A POJO that can be JSON serialized and reconstituted.
+   * @param req   Request message. One concrete implementation of {@link QueryRequest}
+   * @param tpRef Type of the object into which to deserialize the result of each query.
+   * @return a sequential stream of the results in query order
+   * @throws IdiliaClientException when the request cannot be sent
+   */
+  public <T> Stream<T> queryStream(QueryRequest req, Class<T> tpRef) throws IdiliaClientException {
+    CloseableHttpResponse httpResponse = getServerResponse(req);
+    try {
+      HttpEntity entity = entity(httpResponse);
+      QueryCodec.Results<T> results = new QueryCodec.Results<>(tpRef, QueryCodec.contentType(entity), entity.getContent());
+      return StreamSupport.stream(results, false).onClose(() -> {
+        try {
+          httpResponse.close();
+        } catch (IOException e) {
+          throw new IdiliaClientException(e);
+        }
+      });
+    } catch (IOException | RuntimeException e) {
+      try {
+        httpResponse.close();
+      } catch (IOException ignore) {
+      }
+      throw e instanceof IdiliaClientException ? (IdiliaClientException) e : new IdiliaClientException(e);
+    }
+  }
+
+
+  private static HttpEntity entity(CloseableHttpResponse httpResponse) throws IdiliaClientException {
+    HttpEntity entity = httpResponse.getEntity();
+    if (entity == null)
+      throw new IdiliaClientException("Did not received a response from the server");
+    return entity;
+  }
+
+
+  /** Sends a kb/query request without looking into the query cache */
+  private <T> QueryResponse<T> send(QueryRequest req, Class<T> tpRef) throws IdiliaClientException {
     try (CloseableHttpResponse httpResponse = getServerResponse(req)) {
     
       // Recover the response.
-      QueryResponse<T> resp = QueryCodec.decode(jsonMapper_, tpRef, httpResponse.getEntity());
+      QueryResponse<T> resp = QueryCodec.decode(tpRef, httpResponse.getEntity());
       if (resp.getStatus() != HttpStatus.SC_OK)
         throw new IdiliaClientException(resp);
       return resp;
@@ -106,7 +227,23 @@ public class Client extends SyncClientBase {
    * @throws IdiliaClientException on any error encountered
    */
   public SenseMenuResponse senseMenu(SenseMenuRequest req) throws IdiliaClientException {
-      return (SenseMenuResponse)perform(req);
+    if (senseMenuCache != null) {
+      SenseMenuResponse cached = senseMenuCache.get(req);
+      if (cached != null)
+        return cached;
+    }
+    
+    SenseMenuResponse resp;
+    try {
+      resp = (SenseMenuResponse)perform(req);
+    } catch (IdiliaClientException e) {
+      if (senseMenuCache != null)
+        senseMenuCache.putFailure(req, e);
+      throw e;
+    }
+    if (senseMenuCache != null)
+      senseMenuCache.put(req, resp);
+    return resp;
   }
   
   
@@ -128,7 +265,26 @@ public class Client extends SyncClientBase {
    * @throws IdiliaClientException when the request is not successful for any reason
    */
   public SenseCardResponse senseCard(SenseCardRequest req) throws IdiliaClientException {
-    return (SenseCardResponse)perform(req);
-  }
+    if (senseCardCache != null) {
+      SenseCardResponse cached = senseCardCache.get(req);
+      if (cached != null)
+        return cached;
+    }
     
+    SenseCardResponse resp;
+    try {
+      resp = (SenseCardResponse)perform(req);
+    } catch (IdiliaClientException e) {
+      if (senseCardCache != null)
+        senseCardCache.putFailure(req, e);
+      throw e;
+    }
+    if (senseCardCache != null)
+      senseCardCache.put(req, resp);
+    return resp;
+  }
+  
+  private SenseMenuCache senseMenuCache;
+  private SenseCardCache senseCardCache;
+  private QueryItemCache queryItemCache;
 }
@@ -0,0 +1,212 @@
+package com.idilia.services.kb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.idilia.services.base.BinaryReader;
+import com.idilia.services.base.BinaryWriter;
+import com.idilia.services.base.CacheCodec;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.ResponseBase;
+
+/**
+ * Compact binary codecs for the responses of the kb services. Suitable to record
+ * responses in a byte oriented cache or file.
+ * <p>
+ * Query results are recorded as JSON trees where each field name is written once
+ * per payload. The payloads start with a format version. A payload written by
+ * another version is rejected with an {@link IdiliaClientException}.
+ */
+public final class KbBinaryCodec {
+
+  /** Codec of a sense menu response */
+  final public static CacheCodec<SenseMenuResponse> SENSE_MENU = new CacheCodec<SenseMenuResponse>() {
+    @Override
+    public byte[] encode(SenseMenuResponse r) {
+      return header(r).writeString(r.menu).toByteArray();
+    }
+
+    @Override
+    public SenseMenuResponse decode(byte[] bytes) {
+      BinaryReader rd = reader(bytes);
+      SenseMenuResponse r = new SenseMenuResponse();
+      readHeader(rd, r);
+      r.menu = rd.readString();
+      return r;
+    }
+  };
+
+  /** Codec of a tagging menu response */
+  final public static CacheCodec<TaggingMenuResponse> TAGGING_MENU = new CacheCodec<TaggingMenuResponse>() {
+    @Override
+    public byte[] encode(TaggingMenuResponse r) {
+      return header(r).writeString(r.text).writeString(r.menu).toByteArray();
+    }
+
+    @Override
+    public TaggingMenuResponse decode(byte[] bytes) {
+      BinaryReader rd = reader(bytes);
+      TaggingMenuResponse r = new TaggingMenuResponse();
+      readHeader(rd, r);
+      r.text = rd.readString();
+      r.menu = rd.readString();
+      return r;
+    }
+  };
+
+  /** Codec of a sense card response */
+  final public static CacheCodec<SenseCardResponse> SENSE_CARD = new CacheCodec<SenseCardResponse>() {
+    @Override
+    public byte[] encode(SenseCardResponse r) {
+      return header(r).writeString(r.card).toByteArray();
+    }
+
+    @Override
+    public SenseCardResponse decode(byte[] bytes) {
+      BinaryReader rd = reader(bytes);
+      SenseCardResponse r = new SenseCardResponse();
+      readHeader(rd, r);
+      r.card = rd.readString();
+      return r;
+    }
+  };
+
+  /** Codec of a query response with results as JSON trees */
+  final public static CacheCodec<QueryResponse<JsonNode>> QUERY = new CacheCodec<QueryResponse<JsonNode>>() {
+    @Override
+    public byte[] encode(QueryResponse<JsonNode> r) {
+      BinaryWriter w = header(r);
+      ArrayList<JsonNode> result = r.getResult();
+      w.writeVarInt(result != null ? result.size() + 1 : 0);
+      if (result != null)
+        for (JsonNode n: result)
+          writeNode(w, n);
+      return w.toByteArray();
+    }
+
+    @Override
+    public QueryResponse<JsonNode> decode(byte[] bytes) {
+      BinaryReader rd = reader(bytes);
+      QueryResponse<JsonNode> r = new QueryResponse<>();
+      readHeader(rd, r);
+      int n = rd.readVarInt() - 1;
+      if (n >= 0) {
+        r.setResult(new ArrayList<>(n));
+        for (; n > 0; --n)
+          r.addResult(readNode(rd));
+      }
+      return r;
+    }
+  };
+
+  /**
+   * Encode a JSON tree.
+   * @param w writer receiving the tree
+   * @param n tree to encode
+   */
+  static void writeNode(BinaryWriter w, JsonNode n) {
+    switch (n.getNodeType()) {
+    case NULL:
+    case MISSING:
+      w.writeByte(NULL);
+      break;
+    case BOOLEAN:
+      w.writeByte(n.booleanValue() ? TRUE : FALSE);
+      break;
+    case NUMBER:
+      if (n.canConvertToLong() && n.isIntegralNumber())
+        w.writeByte(LONG).writeSignedVarLong(n.longValue());
+      else
+        w.writeByte(DOUBLE).writeDouble(n.doubleValue());
+      break;
+    case ARRAY:
+      w.writeByte(ARRAY).writeVarInt(n.size());
+      for (JsonNode e: n)
+        writeNode(w, e);
+      break;
+    case OBJECT:
+      w.writeByte(OBJECT).writeVarInt(n.size());
+      for (Iterator<Map.Entry<String, JsonNode>> it = n.fields(); it.hasNext(); ) {
+        Map.Entry<String, JsonNode> f = it.next();
+        w.writeString(f.getKey());
+        writeNode(w, f.getValue());
+      }
+      break;
+    default:
+      w.writeByte(STRING).writeString(n.asText());
+      break;
+    }
+  }
+
+  /**
+   * Decode a JSON tree written with {@link #writeNode}.
+   * @param rd reader positioned on the tree
+   * @return the tree
+   */
+  static JsonNode readNode(BinaryReader rd) {
+    int tag = rd.readByte();
+    switch (tag) {
+    case NULL:
+      return nodes.nullNode();
+    case TRUE:
+      return nodes.booleanNode(true);
+    case FALSE:
+      return nodes.booleanNode(false);
+    case LONG: {
+      long v = rd.readSignedVarLong();
+      return v == (int) v ? nodes.numberNode((int) v) : nodes.numberNode(v);
+    }
+    case DOUBLE:
+      return nodes.numberNode(rd.readDouble());
+    case STRING:
+      return nodes.textNode(rd.readString());
+    case ARRAY: {
+      ArrayNode a = nodes.arrayNode();
+      for (int n = rd.readVarInt(); n > 0; --n)
+        a.add(readNode(rd));
+      return a;
+    }
+    case OBJECT: {
+      ObjectNode o = nodes.objectNode();
+      for (int n = rd.readVarInt(); n > 0; --n) {
+        String name = rd.readString();
+        o.set(name, readNode(rd));
+      }
+      return o;
+    }
+    default:
+      throw new IdiliaClientException("Invalid node type in binary payload");
+    }
+  }
+
+  private static BinaryWriter header(ResponseBase r) {
+    return new BinaryWriter(256).writeByte(VERSION)
+        .writeVarInt(r.getStatus()).writeString(r.getErrorMsg()).writeString(r.getRequestId());
+  }
+
+  private static BinaryReader reader(byte[] bytes) {
+    BinaryReader rd = new BinaryReader(bytes);
+    if (rd.readByte() != VERSION)
+      throw new IdiliaClientException("Unsupported binary format version");
+    return rd;
+  }
+
+  private static void readHeader(BinaryReader rd, ResponseBase r) {
+    r.setStatus(rd.readVarInt());
+    r.setErrorMsg(rd.readString());
+    r.setRequestId(rd.readString());
+  }
+
+  private KbBinaryCodec() {}
+
+  /** Node types of the encoded JSON trees */
+  final private static int NULL = 0, TRUE = 1, FALSE = 2, LONG = 3, DOUBLE = 4, STRING = 5, ARRAY = 6, OBJECT = 7;
+
+  final private static byte VERSION = 1;
+  final private static JsonNodeFactory nodes = JsonNodeFactory.instance;
+}
@@ -0,0 +1,232 @@
+package com.idilia.services.kb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.idilia.services.base.BinaryReader;
+import com.idilia.services.base.BinaryWriter;
+import com.idilia.services.base.IdiliaClientException;
+
+/**
+ * Export of the content of the kb caches to a file and warm loading of a new
+ * instance of the caches from that file. Normally written before an application stops
+ * and loaded when it starts so that it serves cache hits immediately.
+ * <p>
+ * The records are grouped in blocks that are decoded by several threads while the
+ * file is read. The decoded responses are inserted in the caches in the order they were
+ * written. The least recently used responses are written first so that the most used
+ * ones remain after loading into a smaller cache. The time to live of the entries
+ * restarts when they are loaded.
+ * <p>
+ * The content of the caches is enumerated with {@link com.idilia.services.base.ResponseCache#forEach}.
+ * Caches over a {@link com.idilia.services.base.SharedMappedStore} or a
+ * {@link com.idilia.services.base.SegmentFileStore} are exported as well although they
+ * are already persistent. The failures recorded are not exported.
+ */
+public final class KbCacheSnapshot {
+
+  /**
+   * Write the content of the caches to a file. The file is replaced atomically
+   * once completely written. On failure, the existing file is left unchanged and
+   * the partial file is deleted.
+   * @param file snapshot file
+   * @param cards cache of sense cards or null
+   * @param menus cache of sense menus or null
+   * @param queries cache of kb/query results or null
+   * @return number of responses written
+   * @throws IdiliaClientException when the file cannot be written
+   */
+  public static int write(Path file, SenseCardCache cards, SenseMenuCache menus, QueryItemCache queries)
+      throws IdiliaClientException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    boolean done = false;
+    try {
+      int count;
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        BlockWriter w = new BlockWriter(out);
+        if (cards != null)
+          cards.forEach((key, r) -> w.add(CARD, null, key, KbBinaryCodec.SENSE_CARD.encode(r)));
+        if (menus != null)
+          menus.forEachPartition((custId, p) -> p.forEach(
+              (key, r) -> w.add(MENU, custId, key, KbBinaryCodec.SENSE_MENU.encode(r))));
+        if (queries != null)
+          queries.forEach((key, r) -> w.add(QUERY, null, key, r.getBytes(StandardCharsets.UTF_8)));
+        w.flush();
+        out.writeInt(0);
+        count = w.total;
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      done = true;
+      return count;
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    } catch (UncheckedIOException e) {
+      throw new IdiliaClientException(e.getCause());
+    } finally {
+      if (!done)
+        deleteQuietly(tmp);
+    }
+  }
+
+  /**
+   * Load the responses of a snapshot file into the caches. The responses for a
+   * cache given as null are skipped. When the file is found invalid or truncated,
+   * part of its responses may have been loaded.
+   * @param file snapshot file
+   * @param cards cache of sense cards or null
+   * @param menus cache of sense menus or null
+   * @param queries cache of kb/query results or null
+   * @param parallelism number of threads decoding the responses
+   * @return number of responses loaded
+   * @throws IdiliaClientException when the file cannot be read or is not a complete valid snapshot
+   */
+  public static int load(Path file, SenseCardCache cards, SenseMenuCache menus, QueryItemCache queries,
+      int parallelism) throws IdiliaClientException {
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+    ArrayDeque<Future<List<Runnable>>> pending = new ArrayDeque<>();
+    int count = 0;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+      if (in.readInt() != MAGIC || in.readByte() != VERSION)
+        throw new IdiliaClientException("Not a supported cache snapshot: " + file);
+
+      // Blocks are decoded concurrently and inserted in the order of the file
+      for (int len; (len = in.readInt()) != 0; ) {
+        byte[] block = new byte[len];
+        in.readFully(block);
+        if (pending.size() >= 2 * parallelism)
+          count += insert(pending.poll());
+        pending.add(pool.submit(() -> decodeBlock(block, cards, menus, queries)));
+      }
+      while (!pending.isEmpty())
+        count += insert(pending.poll());
+      return count;
+    } catch (EOFException e) {
+      throw new IdiliaClientException("Truncated cache snapshot: " + file);
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /** Wait for a decoded block and insert its responses in their cache */
+  private static int insert(Future<List<Runnable>> block) throws IdiliaClientException {
+    List<Runnable> records;
+    try {
+      records = block.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IdiliaClientException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new IdiliaClientException(cause);
+    }
+    records.forEach(Runnable::run);
+    return records.size();
+  }
+
+  private static void deleteQuietly(Path p) {
+    try {
+      Files.deleteIfExists(p);
+    } catch (IOException e) {
+      // the original failure is reported
+    }
+  }
+
+  /** Decode the records of a block. Returns the insertions in their cache. */
+  private static List<Runnable> decodeBlock(byte[] block, SenseCardCache cards, SenseMenuCache menus,
+      QueryItemCache queries) throws IdiliaClientException {
+    BinaryReader rd = new BinaryReader(block);
+    int n = rd.readVarInt();
+    ArrayList<Runnable> records = new ArrayList<>(n);
+    for (int i = 0; i < n; ++i) {
+      int kind = rd.readByte();
+      String cust = rd.readString();
+      String key = rd.readString();
+      byte[] value = rd.readBytes();
+      if (kind == CARD && cards != null) {
+        SenseCardResponse r = KbBinaryCodec.SENSE_CARD.decode(value);
+        records.add(() -> cards.load(key, r));
+      } else if (kind == MENU && menus != null) {
+        UUID custId = cust != null ? UUID.fromString(cust) : null;
+        SenseMenuResponse r = KbBinaryCodec.SENSE_MENU.decode(value);
+        records.add(() -> menus.load(custId, key, r));
+      } else if (kind == QUERY && queries != null) {
+        String r = new String(value, StandardCharsets.UTF_8);
+        records.add(() -> queries.load(key, r));
+      }
+    }
+    return records;
+  }
+
+  /** Accumulates records in blocks written to the snapshot file */
+  private static class BlockWriter {
+    BlockWriter(DataOutputStream out) {
+      this.out = out;
+    }
+
+    void add(int kind, UUID custId, String key, byte[] value) {
+      if (value == null)
+        return;
+      block.writeByte(kind)
+        .writeString(custId != null ? custId.toString() : null)
+        .writeString(key)
+        .writeBytes(value);
+      ++total;
+      if (++records >= BLOCK_RECORDS || block.length() >= BLOCK_BYTES)
+        flush();
+    }
+
+    void flush() {
+      if (records == 0)
+        return;
+      byte[] b = new BinaryWriter(5).writeVarInt(records).toByteArray();
+      byte[] r = block.toByteArray();
+      try {
+        out.writeInt(b.length + r.length);
+        out.write(b);
+        out.write(r);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      block = new BinaryWriter(1 << 16);
+      records = 0;
+    }
+
+    final DataOutputStream out;
+    BinaryWriter block = new BinaryWriter(1 << 16);
+    int records;
+    int total;
+  }
+
+  private KbCacheSnapshot() {}
+
+  final private static int MAGIC = 0x49444b53;
+  final private static int VERSION = 1;
+  final private static int CARD = 1, MENU = 2, QUERY = 3;
+  final private static int BLOCK_RECORDS = 256;
+  final private static int BLOCK_BYTES = 1 << 20;
+}
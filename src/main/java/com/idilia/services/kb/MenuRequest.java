@@ -6,6 +6,7 @@ import java.util.Objects;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 
+import com.idilia.services.base.CacheKey;
 import com.idilia.services.base.IdiliaClientException;
 import com.idilia.services.base.RequestBase;
 
@@ -140,6 +141,20 @@ public abstract class MenuRequest extends RequestBase {
         true;
   }
   
+  @Override
+  public int hashCode() {
+    return Objects.hash(fskInfos, filters, collapsing, tmplt, addAnySense, addCreateSense);
+  }
+  
+  /**
+   * Return a canonical key over the policy fields. Two requests with equal policies
+   * return the same key.
+   * @return key for use with a response cache
+   */
+  String policyCacheKey() {
+    return CacheKey.of(fskInfos, filters, collapsing, tmplt, addAnySense, addCreateSense);
+  }
+  
   
   // Policy elements
   private String fskInfos;
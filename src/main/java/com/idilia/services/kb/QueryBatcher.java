@@ -0,0 +1,228 @@
+package com.idilia.services.kb;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.idilia.services.base.CacheKey;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.PriorityScheduler;
+
+/**
+ * Combines the concurrent single template kb/query requests into batched requests.
+ * <p>
+ * A request with a single template waits for other requests with the same result
+ * class and customer. The batch is sent with {@link AsyncClient#queryAsync} when it
+ * reaches its maximum size or when its window elapses. Each caller receives a response
+ * with its own result and its request id.
+ * <p>
+ * The window adapts to a latency target: it is halved when a batch completes later than
+ * the target after its first request was queued, and grows slowly up to its maximum
+ * otherwise. Requests with several templates are sent immediately.
+ * <p>
+ * Multithread safe. Close the batcher to send the pending requests and stop its timer thread.
+ */
+public class QueryBatcher implements Closeable {
+
+  /**
+   * Create a batcher sending its requests with the given client.
+   * @param client client used to send the batched requests
+   */
+  public QueryBatcher(AsyncClient client) {
+    this.client = client;
+    this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "idilia-query-batcher");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Set the maximum number of templates in a batch. Default is 100.
+   * @param maxBatchSize number of templates
+   * @return this batcher
+   */
+  public synchronized QueryBatcher setMaxBatchSize(int maxBatchSize) {
+    this.maxBatchSize = maxBatchSize;
+    return this;
+  }
+
+  /**
+   * Set the maximum duration that a request waits for other requests. Default is 5 ms.
+   * @param duration maximum window
+   * @param unit unit of duration
+   * @return this batcher
+   */
+  public synchronized QueryBatcher setMaxDelay(long duration, TimeUnit unit) {
+    this.maxDelayNanos = unit.toNanos(duration);
+    this.delayNanos = Math.min(delayNanos, maxDelayNanos);
+    return this;
+  }
+
+  /**
+   * Set the latency targeted for a request, including its wait in a batch. Default is 50 ms.
+   * @param duration target latency
+   * @param unit unit of duration
+   * @return this batcher
+   */
+  public synchronized QueryBatcher setLatencyTarget(long duration, TimeUnit unit) {
+    this.targetNanos = unit.toNanos(duration);
+    return this;
+  }
+
+  /**
+   * @param unit unit of the returned value
+   * @return the current window of a batch
+   */
+  public synchronized long getDelay(TimeUnit unit) {
+    return unit.convert(delayNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Sends a query request to the kb server, in a batch when it has a single template.
+   *
+   * @param <T> A POJO that can be JSON serialized and reconstituted.
+   * @param req Request message
+   * @param tpRef type of the class of object to recover from the JSON response
+   * @return a CompletableFuture set when the response is available
+   * @throws IdiliaClientException wrapping the actual exception encountered
+   * @see AsyncClient#queryAsync
+   */
+  public <T> CompletableFuture<QueryResponse<T>> queryAsync(QueryRequest req, Class<T> tpRef) throws IdiliaClientException {
+    List<String> templates = req.templates();
+    if (templates == null || templates.size() != 1)
+      return client.queryAsync(req, tpRef);
+
+    CompletableFuture<QueryResponse<T>> future = new CompletableFuture<>();
+    Batch<T> full = null;
+    synchronized (this) {
+      if (closed)
+        return client.queryAsync(req, tpRef);
+
+      // Only requests of the same priority class are combined
+      String key = CacheKey.of(tpRef.getName(), req.getCustomerId(), req.getPriority());
+      @SuppressWarnings("unchecked")
+      Batch<T> b = (Batch<T>) pending.get(key);
+      if (b == null) {
+        Batch<T> nb = b = new Batch<>(tpRef, req.getCustomerId(), req.getPriority());
+        pending.put(key, b);
+        b.timeout = timer.schedule(() -> expire(key, nb), delayNanos, TimeUnit.NANOSECONDS);
+      }
+      b.templates.add(templates.get(0));
+      b.requestIds.add(req.getRequestId());
+      b.futures.add(future);
+      if (b.templates.size() >= maxBatchSize) {
+        pending.remove(key);
+        b.timeout.cancel(false);
+        full = b;
+      }
+    }
+    if (full != null)
+      send(full);
+    return future;
+  }
+
+  /**
+   * Send the pending requests and stop the timer. The requests received afterwards
+   * are sent immediately.
+   */
+  @Override
+  public void close() {
+    List<Batch<?>> batches;
+    synchronized (this) {
+      closed = true;
+      batches = new ArrayList<>(pending.values());
+      pending.clear();
+    }
+    timer.shutdownNow();
+    batches.forEach(this::send);
+  }
+
+  /** Send a batch whose window elapsed unless it was already sent */
+  private void expire(String key, Batch<?> b) {
+    synchronized (this) {
+      if (pending.get(key) != b)
+        return;
+      pending.remove(key);
+    }
+    send(b);
+  }
+
+  private <T> void send(Batch<T> b) {
+    QueryRequest req = new QueryRequest("[" + String.join(",", b.templates) + "]");
+    req.setCustomerId(b.custId);
+    req.setPriority(b.priority);
+    CompletableFuture<QueryResponse<T>> f;
+    try {
+      f = client.queryAsync(req, b.tpRef);
+    } catch (RuntimeException e) {
+      // Runs on the timer thread: the failure is only reported through the futures
+      f = new CompletableFuture<>();
+      f.completeExceptionally(e instanceof IdiliaClientException ? e : new IdiliaClientException(e));
+    }
+    f.whenComplete((resp, ex) -> {
+      adapt(System.nanoTime() - b.start);
+      b.complete(resp, ex);
+    });
+  }
+
+  /** Adjust the window from the latency observed by the first request of a batch */
+  private synchronized void adapt(long latencyNanos) {
+    if (latencyNanos > targetNanos)
+      delayNanos /= 2;
+    else
+      delayNanos = Math.min(maxDelayNanos, delayNanos + Math.max(maxDelayNanos / 16, 1));
+  }
+
+  /** The requests combined in one kb/query request */
+  private static class Batch<T> {
+    Batch(Class<T> tpRef, UUID custId, PriorityScheduler.Priority priority) {
+      this.tpRef = tpRef;
+      this.custId = custId;
+      this.priority = priority;
+    }
+
+    /** Complete the future of each request with its own result */
+    void complete(QueryResponse<T> resp, Throwable ex) {
+      if (ex == null && (resp.getResult() == null || resp.getResult().size() != futures.size()))
+        ex = new IdiliaClientException("Unexpected number of results from the server");
+      for (int i = 0; i < futures.size(); ++i) {
+        if (ex != null) {
+          futures.get(i).completeExceptionally(ex);
+          continue;
+        }
+        QueryResponse<T> r = new QueryResponse<>();
+        r.setStatus(resp.getStatus());
+        r.setRequestId(requestIds.get(i));
+        r.setResult(new ArrayList<>(1));
+        r.addResult(resp.getResult().get(i));
+        futures.get(i).complete(r);
+      }
+    }
+
+    final Class<T> tpRef;
+    final UUID custId;
+    final PriorityScheduler.Priority priority;
+    final long start = System.nanoTime();
+    final ArrayList<String> templates = new ArrayList<>();
+    final ArrayList<String> requestIds = new ArrayList<>();
+    final ArrayList<CompletableFuture<QueryResponse<T>>> futures = new ArrayList<>();
+    ScheduledFuture<?> timeout;
+  }
+
+  final private AsyncClient client;
+  final private ScheduledExecutorService timer;
+  final private HashMap<String, Batch<?>> pending = new HashMap<>();
+  private int maxBatchSize = 100;
+  private long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(5);
+  private long delayNanos = maxDelayNanos;
+  private long targetNanos = TimeUnit.MILLISECONDS.toNanos(50);
+  private boolean closed;
+}
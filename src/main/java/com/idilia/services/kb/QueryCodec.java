@@ -1,58 +1,135 @@
 package com.idilia.services.kb;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.JsonCodecs;
 
 class QueryCodec {
 
   static <T> QueryResponse<T> decode(
-      ObjectMapper jsonMapper, Class<T> tpRef,
+      Class<T> tpRef,
       HttpEntity rxEntity) throws IdiliaClientException, JsonParseException, UnsupportedOperationException, IOException {
-    
+
+    ArrayList<T> result = new ArrayList<>();
+    QueryResponse<T> resp = decode(tpRef, contentType(rxEntity), rxEntity.getContent(), result::add);
+    if (resp.getStatus() == HttpStatus.SC_OK)
+      resp.setResult(result);
+    return resp;
+  }
+
+  /**
+   * Decode a response handing each result to a consumer as soon as it is parsed.
+   * @param tpRef class of the results
+   * @param contentType content type of the response
+   * @param is content of the response
+   * @param consumer function receiving the results in order
+   * @return the response without its results
+   * @throws IdiliaClientException when the response is not successful or cannot be parsed
+   */
+  static <T> QueryResponse<T> decode(Class<T> tpRef, String contentType, InputStream is,
+      Consumer<? super T> consumer) throws IdiliaClientException {
+    Results<T> results = new Results<>(tpRef, contentType, is);
+    results.forEachRemaining(consumer);
+    return results.response();
+  }
+
+  static String contentType(HttpEntity rxEntity) throws IdiliaClientException {
     Header ctHdr = rxEntity.getContentType();
     if (ctHdr == null)
       throw new IdiliaClientException("Unexpected no content type");
-    
-    String ct = ctHdr.getValue();
-    if (!ct.startsWith("application/json"))
-      throw new IdiliaClientException("Unexpected content type: " + ct);
-
-    // Parse the JSON response where we cast the "result" member into the supplied Result
-    QueryResponse<T> resp = new QueryResponse<T>();
-    JsonParser jp = jsonMapper.getFactory().createParser(rxEntity.getContent());
-    jp.nextToken(); // skip object boundary
-    while (jp.nextToken() != JsonToken.END_OBJECT) {
-      String fieldName = jp.getCurrentName();
-      jp.nextToken();
-      if (fieldName.contentEquals("status"))
-        resp.setStatus(jp.getIntValue());
-      else if (fieldName.contentEquals("requestId"))
-        resp.setRequestId(jp.getText());
-      else if (fieldName.contentEquals("errorMsg"))
-        resp.setErrorMsg(jp.getText());
-      else if (fieldName.contentEquals("result"))
-      {
-        jp.nextToken(); // skip over array start
-        resp.setResult(new ArrayList<>());
-        while (jp.getCurrentToken() != JsonToken.END_ARRAY) {
-          T r = (T) jp.readValueAs(tpRef);
-          resp.addResult(r);
-          jp.nextToken(); // skip end of object
+    return ctHdr.getValue();
+  }
+
+  /**
+   * The results of a response, parsed one at a time as they are requested.
+   * The other members of the response are available once all the results are consumed.
+   */
+  static class Results<T> extends Spliterators.AbstractSpliterator<T> {
+
+    Results(Class<T> tpRef, String contentType, InputStream is) throws IdiliaClientException {
+      super(Long.MAX_VALUE, Spliterator.ORDERED);
+      if (!contentType.startsWith("application/json"))
+        throw new IdiliaClientException("Unexpected content type: " + contentType);
+      this.reader = JsonCodecs.reader(tpRef);
+      try {
+        this.jp = JsonCodecs.factory().createParser(is);
+        jp.nextToken(); // skip object boundary
+      } catch (IOException e) {
+        throw new IdiliaClientException(e);
+      }
+    }
+
+    /**
+     * @throws IdiliaClientException when the response cannot be parsed or, after the
+     *   last result, when the response is not successful
+     */
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) throws IdiliaClientException {
+      try {
+        while (!done) {
+          if (inResult) {
+            if (jp.nextToken() == JsonToken.END_ARRAY) {
+              inResult = false;
+              continue;
+            }
+            T r = reader.readValue(jp);
+            action.accept(r);
+            return true;
+          }
+
+          JsonToken t = jp.nextToken();
+          if (t == JsonToken.END_OBJECT || t == null) {
+            done = true;
+            break;
+          }
+          String fieldName = jp.getCurrentName();
+          jp.nextToken();
+          if (fieldName.contentEquals("status"))
+            resp.setStatus(jp.getIntValue());
+          else if (fieldName.contentEquals("requestId"))
+            resp.setRequestId(jp.getText());
+          else if (fieldName.contentEquals("errorMsg"))
+            resp.setErrorMsg(jp.getText());
+          else if (fieldName.contentEquals("result") && jp.getCurrentToken() == JsonToken.START_ARRAY)
+            inResult = true;
+          else
+            jp.skipChildren();
         }
-      } else {
-        jp.skipChildren();
+        jp.close();
+      } catch (IOException e) {
+        throw new IdiliaClientException(e);
       }
+
+      if (resp.getStatus() != HttpStatus.SC_OK)
+        throw new IdiliaClientException(resp);
+      return false;
     }
 
-    return resp;
+    /**
+     * @return the response without its results. Complete once all the results are consumed.
+     */
+    QueryResponse<T> response() {
+      return resp;
+    }
+
+    final private ObjectReader reader;
+    final private JsonParser jp;
+    final private QueryResponse<T> resp = new QueryResponse<>();
+    private boolean inResult;
+    private boolean done;
   }
 }
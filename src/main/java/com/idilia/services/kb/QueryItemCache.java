@@ -0,0 +1,176 @@
+package com.idilia.services.kb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.apache.http.HttpStatus;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.idilia.services.base.CacheKey;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.JsonCodecs;
+import com.idilia.services.base.LruResponseCache;
+import com.idilia.services.base.ResponseCache;
+
+/**
+ * Cache of kb/query results at the granularity of the individual templates of a
+ * {@link QueryRequest}. It can be attached to a {@link Client} or an {@link AsyncClient}.
+ * <p>
+ * Each template of a query is serialized and used as the key of its result. When a
+ * query is issued, the results for the known templates are served locally and only the
+ * remaining templates are sent to the server. The results are merged back in the order
+ * of the original query.
+ * <p>
+ * Results are recorded as their JSON text so that they can be recovered into any
+ * result class. Multithread safe.
+ */
+public class QueryItemCache {
+
+  /**
+   * Create a cache bounded in number of results.
+   * @param maxEntries maximum number of template results recorded
+   */
+  public QueryItemCache(int maxEntries) {
+    this(new LruResponseCache<String>(maxEntries));
+  }
+
+  /**
+   * Create a cache bounded in number of results and in total size of the results.
+   * @param maxEntries maximum number of template results recorded
+   * @param maxChars maximum number of JSON characters recorded for all results
+   */
+  public QueryItemCache(int maxEntries, long maxChars) {
+    this(new LruResponseCache<String>(maxEntries, maxChars, String::length));
+  }
+
+  /**
+   * Create a cache using the storage provided by the application.
+   * @param storage storage for the JSON text of the results
+   */
+  public QueryItemCache(ResponseCache<String> storage) {
+    this.storage = storage;
+  }
+
+  /**
+   * Remove all recorded results.
+   */
+  public void clear() {
+    storage.clear();
+  }
+
+  /** Invoke a function with the key and the JSON text of each result recorded */
+  void forEach(BiConsumer<String, String> action) {
+    storage.forEach(action);
+  }
+
+  /** Record a result under a key obtained from {@link #forEach} */
+  void load(String key, String result) {
+    storage.put(key, result);
+  }
+
+  /**
+   * Look up the templates of a query.
+   * @param req query request
+   * @return the lookup result or null when the query cannot be split into templates
+   */
+  Lookup lookup(QueryRequest req) {
+    List<String> templates = req.templates();
+    return templates != null ? new Lookup(req, templates) : null;
+  }
+
+
+  /**
+   * The state of a query split between the results available locally and
+   * the templates that must be requested from the server.
+   */
+  class Lookup {
+
+    Lookup(QueryRequest req, List<String> templates) {
+      this.req = req;
+      this.keys = new String[templates.size()];
+      this.results = new String[templates.size()];
+      for (int i = 0; i < templates.size(); ++i) {
+        keys[i] = CacheKey.of(req.getCustomerId(), templates.get(i));
+        results[i] = storage.get(keys[i]);
+        if (results[i] == null)
+          misses.putIfAbsent(templates.get(i), keys[i]);
+      }
+    }
+
+    /**
+     * @return true when some templates must be requested from the server
+     */
+    boolean hasMisses() {
+      return !misses.isEmpty();
+    }
+
+    /**
+     * @return a request with each distinct template not found in the cache
+     */
+    QueryRequest missRequest() {
+      return req.subset(new ArrayList<>(misses.keySet()));
+    }
+
+    /**
+     * Record the results for the templates of {@link #missRequest}.
+     * @param resp server response to the miss request
+     * @throws IdiliaClientException when the response does not include a result for each template
+     */
+    void complete(QueryResponse<JsonNode> resp) throws IdiliaClientException {
+      List<JsonNode> nodes = resp.getResult();
+      if (nodes == null || nodes.size() != misses.size())
+        throw new IdiliaClientException("Unexpected number of results from the server");
+
+      Map<String, String> fetched = new LinkedHashMap<>();
+      ObjectWriter writer = JsonCodecs.writer(JsonNode.class);
+      int n = 0;
+      for (String key: misses.values()) {
+        try {
+          String r = writer.writeValueAsString(nodes.get(n++));
+          fetched.put(key, r);
+          storage.put(key, r);
+        } catch (JsonProcessingException e) {
+          throw new IdiliaClientException(e);
+        }
+      }
+      for (int i = 0; i < results.length; ++i)
+        if (results[i] == null)
+          results[i] = fetched.get(keys[i]);
+    }
+
+    /**
+     * Recover the results for all the templates of the original query.
+     * @param tpRef class of the results
+     * @return a response with a result for each template in the original order
+     * @throws IdiliaClientException when a result cannot be recovered into the given class
+     */
+    <T> QueryResponse<T> response(Class<T> tpRef) throws IdiliaClientException {
+      QueryResponse<T> resp = new QueryResponse<>();
+      resp.setStatus(HttpStatus.SC_OK);
+      resp.setRequestId(req.getRequestId());
+      resp.setResult(new ArrayList<>(results.length));
+      ObjectReader reader = JsonCodecs.reader(tpRef);
+      try {
+        for (String r: results)
+          resp.addResult(reader.readValue(r));
+      } catch (IOException e) {
+        throw new IdiliaClientException(e);
+      }
+      return resp;
+    }
+
+    final private QueryRequest req;
+    final private String[] keys;
+    final private String[] results;
+    final private LinkedHashMap<String, String> misses = new LinkedHashMap<>();
+  }
+
+  final private ResponseCache<String> storage;
+}
@@ -9,16 +9,19 @@ package com.idilia.services.kb;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import org.apache.http.NameValuePair;
-import org.apache.http.message.BasicNameValuePair;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idilia.services.base.FormBody;
 import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.JsonCodecs;
 import com.idilia.services.base.RequestBase;
 
 /**
@@ -94,7 +97,7 @@ public class QueryRequest extends RequestBase {
    * @param query Array of queries to be processed. 
    */
   public void setQuery(String query) {
-    this.query = query.getBytes();
+    this.query = query.getBytes(StandardCharsets.UTF_8);
   }
   
   
@@ -115,6 +118,41 @@ public class QueryRequest extends RequestBase {
   }
   
 
+  /**
+   * Return each template of the query serialized on its own.
+   * @return the serialized templates in query order or null when the query is not a JSON array
+   * @throws IdiliaClientException when the query cannot be parsed
+   */
+  List<String> templates() throws IdiliaClientException {
+    if (query == null)
+      throw new IdiliaClientException("No query specified");
+    try {
+      JsonNode root = mapper.readTree(query);
+      if (root == null || !root.isArray())
+        return null;
+      List<String> templates = new ArrayList<>(root.size());
+      for (JsonNode t: root)
+        templates.add(mapper.writeValueAsString(t));
+      return templates;
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+  
+  /**
+   * Create a request for a subset of the templates of this query. The request id,
+   * customer and priority are carried over.
+   * @param templates serialized templates as returned by {@link #templates}
+   * @return a new request
+   */
+  QueryRequest subset(List<String> templates) {
+    QueryRequest req = new QueryRequest("[" + String.join(",", templates) + "]");
+    req.setRequestId(getRequestId());
+    req.setCustomerId(getCustomerId());
+    req.setPriority(getPriority());
+    return req;
+  }
+
   @Override
   final public String requestPath() {
     return new String("/1/kb/query.json");
@@ -130,7 +168,7 @@ public class QueryRequest extends RequestBase {
     super.getHttpQueryParms(parms);
     
     // Add parameters from this class
-    parms.add(new BasicNameValuePair("query", new String(query, StandardCharsets.UTF_8)));
+    parms.add(new FormBody.Utf8Pair("query", query));
   }
   
   /** Return the content to sign when creating the authentication information */
@@ -159,5 +197,5 @@ public class QueryRequest extends RequestBase {
   }
   
   private byte[] query;
-  final static private ObjectMapper mapper = new ObjectMapper();
+  final static private ObjectMapper mapper = JsonCodecs.mapper();
 }
@@ -0,0 +1,125 @@
+package com.idilia.services.kb;
+
+import java.util.function.BiConsumer;
+
+import com.idilia.services.base.CacheKey;
+import com.idilia.services.base.EncodedResponseCache;
+import com.idilia.services.base.FailureCache;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.LruResponseCache;
+import com.idilia.services.base.ResponseCache;
+
+/**
+ * Cache of sense cards that can be attached to a {@link Client} or an {@link AsyncClient}.
+ * <p>
+ * A card depends on the sensekey, the template, the length and the customer.
+ * The storage can be a {@link com.idilia.services.base.SharedMappedStore} to share
+ * the cards among the processes of a host (see {@link #shared}).
+ * <p>
+ * Multithread safe.
+ */
+public class SenseCardCache {
+
+  /**
+   * Create an in-memory cache bounded in number of cards.
+   * @param maxEntries maximum number of cards recorded
+   */
+  public SenseCardCache(int maxEntries) {
+    this(new LruResponseCache<SenseCardResponse>(maxEntries));
+  }
+
+  /**
+   * Create a cache using the storage provided by the application.
+   * @param storage storage for the cards
+   */
+  public SenseCardCache(ResponseCache<SenseCardResponse> storage) {
+    this.storage = storage;
+  }
+
+  /**
+   * Create a cache recording the cards in a byte storage such as a file shared by
+   * several processes.
+   * @param storage byte storage. Can be shared with other caches.
+   * @return a cache recording the cards with {@link KbBinaryCodec#SENSE_CARD}
+   */
+  public static SenseCardCache shared(ResponseCache<byte[]> storage) {
+    return new SenseCardCache(new EncodedResponseCache<>(storage, "kb/sense_card", KbBinaryCodec.SENSE_CARD));
+  }
+
+  /**
+   * Also remember the deterministic failures of the requests. A request with a
+   * recorded failure fails immediately with the recorded status and message.
+   * @param failures cache of failures. Can be shared with other caches. Null to disable.
+   * @return this cache
+   */
+  public SenseCardCache setFailureCache(FailureCache failures) {
+    this.failures = failures;
+    return this;
+  }
+
+  /**
+   * Return the card recorded for an equivalent request.
+   * @param req sense card request
+   * @return a response with the request id of req or null when not present
+   * @throws IdiliaClientException when a failure is recorded for the request
+   */
+  public SenseCardResponse get(SenseCardRequest req) throws IdiliaClientException {
+    if (failures != null)
+      failures.check(namespace + req.cacheKey(), req.getRequestId());
+    SenseCardResponse r = storage.get(req.cacheKey());
+    return r != null ? copy(r, req.getRequestId()) : null;
+  }
+
+  /**
+   * Record the card returned by the server for a request.
+   * @param req sense card request
+   * @param resp successful response received for the request
+   */
+  public void put(SenseCardRequest req, SenseCardResponse resp) {
+    storage.put(req.cacheKey(), copy(resp, null));
+  }
+
+  /**
+   * Record the failure of a request when it is deterministic.
+   * @param req sense card request
+   * @param e exception raised for the request
+   */
+  public void putFailure(SenseCardRequest req, IdiliaClientException e) {
+    if (failures != null)
+      failures.record(namespace + req.cacheKey(), e);
+  }
+
+  /**
+   * Remove all the cards recorded and the failures recorded by this cache.
+   */
+  public void clear() {
+    storage.clear();
+    if (failures != null)
+      failures.removeByPrefix(namespace);
+  }
+
+  /** Invoke a function with the key and the value of each card recorded */
+  void forEach(BiConsumer<String, SenseCardResponse> action) {
+    storage.forEach(action);
+  }
+
+  /** Record a card under a key obtained from {@link #forEach} */
+  void load(String key, SenseCardResponse resp) {
+    storage.put(key, resp);
+  }
+
+  /** Copy the response so that the object recorded is never shared with application code */
+  static SenseCardResponse copy(SenseCardResponse r, String requestId) {
+    SenseCardResponse c = new SenseCardResponse();
+    c.card = r.card;
+    c.setStatus(r.getStatus());
+    c.setErrorMsg(r.getErrorMsg());
+    c.setRequestId(requestId);
+    return c;
+  }
+
+  final private static String namespace = CacheKey.of("kb/sense_card");
+
+  final private ResponseCache<SenseCardResponse> storage;
+  private FailureCache failures;
+}
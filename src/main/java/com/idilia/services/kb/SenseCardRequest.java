@@ -1,12 +1,14 @@
 package com.idilia.services.kb;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Objects;
 
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 
+import com.idilia.services.base.CacheKey;
 import com.idilia.services.base.IdiliaClientException;
 import com.idilia.services.base.RequestBase;
 import com.idilia.services.base.ResponseBase;
@@ -89,7 +91,7 @@ public class SenseCardRequest extends RequestBase {
   
   @Override
   final public byte[] toSign() throws IOException {
-    return fsk.getBytes();
+    return fsk.getBytes(StandardCharsets.UTF_8);
   }
   
   @Override
@@ -100,6 +102,11 @@ public class SenseCardRequest extends RequestBase {
   @Override
   public Class<? extends ResponseBase> responseClass() { return SenseCardResponse.class; }
 
+  /** Key identifying the card computed for this request */
+  String cacheKey() {
+    return CacheKey.of(getCustomerId(), fsk, tmplt, len);
+  }
+
   @Override
   public int hashCode() {
     return fsk.hashCode();
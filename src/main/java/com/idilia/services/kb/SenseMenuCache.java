@@ -0,0 +1,182 @@
+package com.idilia.services.kb;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import com.idilia.services.base.CacheKey;
+import com.idilia.services.base.EncodedResponseCache;
+import com.idilia.services.base.FailureCache;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.LruResponseCache;
+import com.idilia.services.base.OffHeapStore;
+import com.idilia.services.base.ResponseCache;
+import com.idilia.services.base.TieredResponseCache;
+
+/**
+ * Cache of sense menus that can be attached to a {@link Client} or an {@link AsyncClient}.
+ * <p>
+ * A sense menu depends only on the text, the selected sensekey, the menu policies and
+ * the customer. Responses are partitioned per customer so that the inventory of one
+ * customer cannot evict the entries of another. Each partition is bounded.
+ * <p>
+ * Multithread safe. An instance is normally shared by all the clients of an application.
+ */
+public class SenseMenuCache {
+
+  /**
+   * Create a cache where each customer partition keeps at most the given number of menus.
+   * @param maxEntriesPerCustomer maximum number of menus recorded for a customer
+   */
+  public SenseMenuCache(int maxEntriesPerCustomer) {
+    this(custId -> new LruResponseCache<>(maxEntriesPerCustomer));
+  }
+
+  /**
+   * Create a cache where each customer partition is bounded in number of menus and
+   * in total size of the menus' HTML.
+   * @param maxEntriesPerCustomer maximum number of menus recorded for a customer
+   * @param maxCharsPerCustomer maximum number of HTML characters recorded for a customer
+   */
+  public SenseMenuCache(int maxEntriesPerCustomer, long maxCharsPerCustomer) {
+    this(custId -> new LruResponseCache<SenseMenuResponse>(
+        maxEntriesPerCustomer, maxCharsPerCustomer,
+        r -> r.menu != null ? r.menu.length() : 0));
+  }
+
+  /**
+   * Create a cache where the storage of each customer partition is provided by the application.
+   * @param partitionFactory function invoked once per customer to create its storage.
+   *        The customer is null for requests without a customer.
+   */
+  public SenseMenuCache(Function<UUID, ResponseCache<SenseMenuResponse>> partitionFactory) {
+    this.partitionFactory = partitionFactory;
+  }
+
+  /**
+   * Create a cache recording the menus in a byte storage such as a file shared by
+   * several processes. The customers are kept apart by their key namespace.
+   * @param storage byte storage. Can be shared with other caches.
+   * @return a cache recording the menus with {@link KbBinaryCodec#SENSE_MENU}
+   */
+  public static SenseMenuCache shared(ResponseCache<byte[]> storage) {
+    return new SenseMenuCache(custId -> new EncodedResponseCache<>(
+        storage, "kb/sense_menu/" + custId, KbBinaryCodec.SENSE_MENU));
+  }
+
+  /**
+   * Create a cache where each customer partition keeps its most used menus on the heap
+   * and demotes the others to an off-heap store shared by all the partitions.
+   * @param hotEntriesPerCustomer maximum number of menus kept on the heap for a customer
+   * @param hotCharsPerCustomer maximum number of HTML characters kept on the heap for a customer
+   * @param store off-heap store. Can be shared with other caches.
+   * @return a cache recording the demoted menus with {@link KbBinaryCodec#SENSE_MENU}
+   */
+  public static SenseMenuCache tiered(int hotEntriesPerCustomer, long hotCharsPerCustomer, OffHeapStore store) {
+    return new SenseMenuCache(custId -> new TieredResponseCache<SenseMenuResponse>(
+        hotEntriesPerCustomer, hotCharsPerCustomer, r -> r.menu != null ? r.menu.length() : 0,
+        new EncodedResponseCache<>(store, "kb/sense_menu/" + custId, KbBinaryCodec.SENSE_MENU)));
+  }
+
+  /**
+   * Also remember the deterministic failures of the requests. A request with a
+   * recorded failure fails immediately with the recorded status and message.
+   * @param failures cache of failures. Can be shared with other caches. Null to disable.
+   * @return this cache
+   */
+  public SenseMenuCache setFailureCache(FailureCache failures) {
+    this.failures = failures;
+    return this;
+  }
+
+  /**
+   * Return the menu recorded for an equivalent request.
+   * @param req sense menu request
+   * @return a response with the request id of req or null when not present
+   * @throws IdiliaClientException when a failure is recorded for the request
+   */
+  public SenseMenuResponse get(SenseMenuRequest req) throws IdiliaClientException {
+    if (failures != null)
+      failures.check(failureKey(req), req.getRequestId());
+    SenseMenuResponse r = partition(req.getCustomerId()).get(req.cacheKey());
+    return r != null ? copy(r, req.getRequestId()) : null;
+  }
+
+  /**
+   * Record the menu returned by the server for a request.
+   * @param req sense menu request
+   * @param resp successful response received for the request
+   */
+  public void put(SenseMenuRequest req, SenseMenuResponse resp) {
+    partition(req.getCustomerId()).put(req.cacheKey(), copy(resp, null));
+  }
+
+  /**
+   * Record the failure of a request when it is deterministic.
+   * @param req sense menu request
+   * @param e exception raised for the request
+   */
+  public void putFailure(SenseMenuRequest req, IdiliaClientException e) {
+    if (failures != null)
+      failures.record(failureKey(req), e);
+  }
+
+  /**
+   * Remove all the menus and failures recorded for a customer. Normally used when the
+   * sense inventory of the customer is modified.
+   * @param custId customer or null for requests without a customer
+   */
+  public void invalidate(UUID custId) {
+    ResponseCache<SenseMenuResponse> p = partitions.get(custId != null ? custId : noCustomer);
+    if (p != null)
+      p.clear();
+    if (failures != null)
+      failures.removeByPrefix(CacheKey.of(namespace, custId));
+  }
+
+  /**
+   * Remove all the menus recorded and the failures recorded by this cache.
+   */
+  public void clear() {
+    partitions.values().forEach(ResponseCache::clear);
+    if (failures != null)
+      failures.removeByPrefix(CacheKey.of(namespace));
+  }
+
+  /** Invoke a function with each customer (null for none) and the storage of its menus */
+  void forEachPartition(BiConsumer<UUID, ResponseCache<SenseMenuResponse>> action) {
+    partitions.forEach((id, p) -> action.accept(noCustomer.equals(id) ? null : id, p));
+  }
+
+  /** Record a menu of a customer under a key obtained from {@link #forEachPartition} */
+  void load(UUID custId, String key, SenseMenuResponse resp) {
+    partition(custId).put(key, resp);
+  }
+
+  private static String failureKey(SenseMenuRequest req) {
+    return CacheKey.of(namespace, req.getCustomerId()) + req.cacheKey();
+  }
+
+  private ResponseCache<SenseMenuResponse> partition(UUID custId) {
+    return partitions.computeIfAbsent(
+        custId != null ? custId : noCustomer,
+        id -> partitionFactory.apply(noCustomer.equals(id) ? null : id));
+  }
+
+  /** Copy the response so that the object recorded is never shared with application code */
+  static SenseMenuResponse copy(SenseMenuResponse r, String requestId) {
+    SenseMenuResponse c = new SenseMenuResponse();
+    c.menu = r.menu;
+    c.setStatus(r.getStatus());
+    c.setErrorMsg(r.getErrorMsg());
+    c.setRequestId(requestId);
+    return c;
+  }
+
+  final private Function<UUID, ResponseCache<SenseMenuResponse>> partitionFactory;
+  final private ConcurrentHashMap<UUID, ResponseCache<SenseMenuResponse>> partitions = new ConcurrentHashMap<>();
+  private FailureCache failures;
+  final private static UUID noCustomer = new UUID(0, 0);
+  final private static String namespace = "kb/sense_menu";
+}
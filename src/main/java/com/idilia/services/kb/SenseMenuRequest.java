@@ -1,12 +1,15 @@
 package com.idilia.services.kb;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Objects;
 
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 
+import com.idilia.services.base.CacheKey;
+import com.idilia.services.base.FormBody;
 import com.idilia.services.base.IdiliaClientException;
 import com.idilia.services.base.ResponseBase;
 
@@ -27,6 +30,7 @@ public class SenseMenuRequest extends MenuRequest {
    */
   public final SenseMenuRequest setText(String text) {
     this.text = text;
+    this.textUtf8 = text != null ? text.getBytes(StandardCharsets.UTF_8) : null;
     return this;
   }
 
@@ -75,7 +79,7 @@ public class SenseMenuRequest extends MenuRequest {
   protected void getHttpQueryParms(List<NameValuePair> parms) throws IdiliaClientException {
     if (text == null || text.isEmpty())
       throw new IdiliaClientException("No text provided.");
-    parms.add(new BasicNameValuePair("text", text));
+    parms.add(new FormBody.Utf8Pair("text", textUtf8));
     if (selectedFsk != null)
       parms.add(new BasicNameValuePair("selectedFsk", selectedFsk));
     super.getHttpQueryParms(parms);
@@ -84,7 +88,7 @@ public class SenseMenuRequest extends MenuRequest {
   // Return the content to sign when creating the authentication information
   @Override
   final public byte[] toSign() throws IOException {
-    return text.getBytes();
+    return textUtf8;
   }
 
   @Override
@@ -107,6 +111,16 @@ public class SenseMenuRequest extends MenuRequest {
     return text.hashCode();
   }
   
+  /**
+   * Return a canonical key over the fields that determine the menu returned by the server.
+   * The customer is not included as the {@link SenseMenuCache} partitions by customer.
+   * @return key for use with a response cache
+   */
+  String cacheKey() {
+    return CacheKey.of(text, selectedFsk, policyCacheKey());
+  }
+  
   private String text;
+  private byte[] textUtf8;
   private String selectedFsk;
 }
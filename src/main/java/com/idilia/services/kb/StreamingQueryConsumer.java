@@ -0,0 +1,209 @@
+package com.idilia.services.kb;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.AsyncByteConsumer;
+import org.apache.http.protocol.HttpContext;
+
+import com.idilia.services.base.IdiliaClientException;
+
+/**
+ * Consumer of a kb/query response parsing the results while the response is received.
+ * <p>
+ * The bytes received are queued in a bounded buffer read by a parser running on an
+ * executor. The reception is suspended while the buffer is full so that the memory
+ * used does not depend on the size of the response. The parsed response, without its
+ * results, is set in {@link #getParsed()}.
+ */
+class StreamingQueryConsumer<T> extends AsyncByteConsumer<Void> {
+
+  /**
+   * @param tpRef class of the results
+   * @param consumer function receiving the results in order
+   * @param executor executor running the parser and the consumer
+   */
+  StreamingQueryConsumer(Class<T> tpRef, Consumer<? super T> consumer, Executor executor) {
+    this.tpRef = tpRef;
+    this.consumer = consumer;
+    this.executor = executor;
+  }
+
+  /**
+   * @return future set when the response is parsed
+   */
+  CompletableFuture<QueryResponse<T>> getParsed() {
+    return parsed;
+  }
+
+  @Override
+  protected void onResponseReceived(HttpResponse response) {
+    Header ct = response.getFirstHeader("Content-Type");
+    Header ce = response.getFirstHeader("Content-Encoding");
+    boolean gzip = ce != null && ce.getValue().equalsIgnoreCase("gzip");
+    Pipe pipe = this.pipe = new Pipe(bufferSize);
+    try {
+      executor.execute(() -> parse(pipe, gzip, ct));
+    } catch (RejectedExecutionException e) {
+      // No parser will read the pipe. Discard the rest of the response.
+      pipe.close();
+      parsed.completeExceptionally(new IdiliaClientException(e));
+    }
+  }
+
+  /** Parse the response read from the pipe. Runs on the executor. */
+  private void parse(Pipe pipe, boolean gzip, Header ct) {
+    try (InputStream is = gzip ? new GZIPInputStream(pipe) : pipe) {
+      if (ct == null)
+        throw new IdiliaClientException("Unexpected no content type");
+      parsed.complete(QueryCodec.decode(tpRef, ct.getValue(), is, consumer));
+    } catch (IdiliaClientException e) {
+      parsed.completeExceptionally(e);
+    } catch (Exception e) {
+      parsed.completeExceptionally(new IdiliaClientException(e));
+    } finally {
+      pipe.close();
+    }
+  }
+
+  @Override
+  protected void onByteReceived(ByteBuffer buf, IOControl ioctrl) {
+    pipe.write(buf, ioctrl);
+  }
+
+  @Override
+  protected Void buildResult(HttpContext context) {
+    completed = true;
+    return null;
+  }
+
+  @Override
+  protected void releaseResources() {
+    super.releaseResources();
+    Exception ex = getException();
+    if (ex == null && !completed)
+      ex = new IOException("Request cancelled");
+    if (pipe != null)
+      pipe.finish(ex);
+    else
+      parsed.completeExceptionally(ex instanceof IdiliaClientException ? ex : new IdiliaClientException(ex));
+  }
+
+  /** Bounded buffer between the I/O reactor and the parser */
+  static class Pipe extends InputStream {
+
+    Pipe(int limit) {
+      this.limit = limit;
+    }
+
+    /** Queue the bytes received. Suspends the input when the buffer is full. */
+    synchronized void write(ByteBuffer buf, IOControl ioctrl) {
+      if (closed) {
+        // The parser stopped. Discard the rest of the response.
+        buf.position(buf.limit());
+        return;
+      }
+      byte[] chunk = new byte[buf.remaining()];
+      buf.get(chunk);
+      chunks.add(chunk);
+      buffered += chunk.length;
+      notifyAll();
+      if (buffered >= limit && ioctrl != null) {
+        ioctrl.suspendInput();
+        suspended = ioctrl;
+      }
+    }
+
+    /** Signal the end of the content, with an error when it is incomplete */
+    synchronized void finish(Exception error) {
+      if (ended)
+        return;
+      ended = true;
+      this.error = error;
+      notifyAll();
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0)
+        return 0;
+      while (cur == null || pos == cur.length) {
+        cur = chunks.poll();
+        pos = 0;
+        if (cur != null)
+          continue;
+        if (ended) {
+          if (error != null)
+            throw error instanceof IOException ? (IOException) error : new IOException(error);
+          return -1;
+        }
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      int n = Math.min(len, cur.length - pos);
+      System.arraycopy(cur, pos, b, off, n);
+      pos += n;
+      buffered -= n;
+      resume();
+      return n;
+    }
+
+    @Override
+    public synchronized void close() {
+      closed = true;
+      chunks.clear();
+      cur = null;
+      buffered = 0;
+      resume();
+    }
+
+    /** Resume the input once half of the buffer is free */
+    private void resume() {
+      if (suspended != null && buffered < limit / 2) {
+        suspended.requestInput();
+        suspended = null;
+      }
+    }
+
+    final private int limit;
+    final private ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+    private byte[] cur;
+    private int pos;
+    private int buffered;
+    private IOControl suspended;
+    private boolean ended;
+    private boolean closed;
+    private Exception error;
+  }
+
+  /** Maximum number of bytes received but not parsed */
+  final static int bufferSize = 256 * 1024;
+
+  final private Class<T> tpRef;
+  final private Consumer<? super T> consumer;
+  final private Executor executor;
+  final private CompletableFuture<QueryResponse<T>> parsed = new CompletableFuture<>();
+  private volatile Pipe pipe;
+  private boolean completed;
+}
@@ -1,19 +1,15 @@
 package com.idilia.services.kb;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.http.Consts;
 import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.entity.mime.content.ByteArrayBody;
-import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.http.message.BasicNameValuePair;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -38,24 +34,28 @@ public class TaggingMenuRequest extends MenuRequest {
    */
   @JsonIgnore
   public final TaggingMenuRequest setTf(DisambiguatedDocument tf) throws IdiliaClientException {
-    try {
-      byte[] bytes = IOUtils.toByteArray(tf.getEncodedInputStream());
-      // Work around the MultipartEntityBuilder inability for us to add a form
-      // with Content-Encoding set. Therefore we ensure that we communicate 
-      // the encoding through the Content-Type.
-      String resultMime = tf.getResultMime();
-      ContentType ct = null;
-      if (tf.getEncoding() != null && tf.getEncoding().contentEquals("gzip")) {
-        if (!resultMime.endsWith("+gz"))
-          resultMime += "+gz";
-        ct = ContentType.create(resultMime);
-      } else
-        ct = ContentType.create(resultMime, Consts.UTF_8);
-      this.tf = new ByteArrayBody(bytes, ct, "tf");
-      return this;
-    } catch (IOException ioe) {
-      throw new IdiliaClientException(ioe);
-    }
+    return setTf(new TfPayload(tf));
+  }
+
+  /**
+   * Provide the sense inventory of the tagging menu using a payload shared with other
+   * requests. Use to obtain menus for several windows of the same document without
+   * copying and hashing the document for each request.
+   * @param tf a payload created from a disambiguate result
+   * @return updated TaggingMenuRequest
+   */
+  @JsonIgnore
+  public final TaggingMenuRequest setTf(TfPayload tf) {
+    this.tf = tf;
+    return this;
+  }
+
+  /**
+   * @return the payload provided with #setTf or null
+   */
+  @JsonIgnore
+  public final TfPayload getTf() {
+    return tf;
   }
   
   /**
@@ -117,18 +117,20 @@ public class TaggingMenuRequest extends MenuRequest {
     
     // Add a part with the tf. This is where Content-Encoding did not work
     // as the method addPart(BodyPart) is not visible. 
-    builder.addPart("tf", tf);
+    builder.addPart("tf", tf.body());
     return builder.build();
   }
   
   @Override
   final public byte[] toSign() throws IOException {
-    int l = (int) tf.getContentLength();
-    ByteArrayOutputStream signOs = new ByteArrayOutputStream(l);
-    tf.writeTo(signOs);
-    return signOs.toByteArray();
+    return tf.getBytes();
+  }
+  
+  @Override
+  public String contentDigest() {
+    return tf != null ? tf.getDigest() : null;
   }
   
-  private ContentBody tf;
+  private TfPayload tf;
   private int tfStart = -1, tfEnd = -1;
 }
@@ -0,0 +1,98 @@
+package com.idilia.services.kb;
+
+import java.io.IOException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Consts;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.content.ByteArrayBody;
+import org.apache.http.entity.mime.content.ContentBody;
+
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.RequestBase;
+import com.idilia.services.text.DisambiguatedDocument;
+
+/**
+ * An immutable disambiguation result attached to tagging menu requests.
+ * <p>
+ * The document is read and its signature digest computed once when the payload is
+ * created. The payload can then be attached to any number of {@link TaggingMenuRequest}
+ * (e.g., one per sentence window of the document) without copying or hashing the
+ * document again. It is safe to share between threads.
+ */
+public final class TfPayload {
+
+  /**
+   * Create the payload from a disambiguation result.
+   * @param tf a disambiguate result with resultMime application/x-tf+xml or application/x-tf+xml+gz
+   * @throws IdiliaClientException when the disambiguated result cannot be extracted
+   */
+  public TfPayload(DisambiguatedDocument tf) throws IdiliaClientException {
+    try {
+      this.bytes = IOUtils.toByteArray(tf.getEncodedInputStream());
+    } catch (IOException ioe) {
+      throw new IdiliaClientException(ioe);
+    }
+
+    // Work around the MultipartEntityBuilder inability for us to add a form
+    // with Content-Encoding set. Therefore we ensure that we communicate
+    // the encoding through the Content-Type.
+    String resultMime = tf.getResultMime();
+    if (tf.getEncoding() != null && tf.getEncoding().contentEquals("gzip")) {
+      if (!resultMime.endsWith("+gz"))
+        resultMime += "+gz";
+      this.contentType = ContentType.create(resultMime);
+    } else
+      this.contentType = ContentType.create(resultMime, Consts.UTF_8);
+    this.digest = RequestBase.digest(bytes);
+  }
+
+  /**
+   * Create a tagging menu request for a window of the document.
+   * @param tfStart starting offset of the window. -1 for the first token.
+   * @param tfEnd end offset of the window. -1 for one past the last token.
+   * @return a new request with this payload attached
+   */
+  public TaggingMenuRequest request(int tfStart, int tfEnd) {
+    return new TaggingMenuRequest().setTf(this).setTfStart(tfStart).setTfEnd(tfEnd);
+  }
+
+  /**
+   * @return size of the document transmitted
+   */
+  public int getContentLength() {
+    return bytes.length;
+  }
+
+  /**
+   * @return content type of the document part
+   */
+  public ContentType getContentType() {
+    return contentType;
+  }
+
+  /**
+   * @return signature digest of the document
+   */
+  String getDigest() {
+    return digest;
+  }
+
+  /**
+   * @return the document bytes. Shared, must not be modified.
+   */
+  byte[] getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @return a multipart body over the document bytes
+   */
+  ContentBody body() {
+    return new ByteArrayBody(bytes, contentType, "tf");
+  }
+
+  final private byte[] bytes;
+  final private ContentType contentType;
+  final private String digest;
+}
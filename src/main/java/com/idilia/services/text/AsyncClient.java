@@ -15,7 +15,10 @@ package com.idilia.services.text;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import javax.mail.MessagingException;
 
@@ -66,7 +69,56 @@ public class AsyncClient extends AsyncClientBase
   public AsyncClient(IdiliaCredentials creds, URL url) {
     super(creds, url);
   }
+  
+  /**
+   * Attach a cache for the disambiguation results. Results found in the cache
+   * are returned without contacting the server.
+   * @param cache cache to use or null to disable caching
+   * @return this client
+   */
+  public AsyncClient setDisambiguateCache(DisambiguateCache cache) {
+    this.disambiguateCache = cache;
+    return this;
+  }
+  
+  
+  /**
+   * Attach a cache for the paraphrases. Responses found in the cache
+   * are returned without contacting the server.
+   * @param cache cache to use or null to disable caching
+   * @return this client
+   */
+  public AsyncClient setParaphraseCache(ParaphraseCache cache) {
+    this.paraphraseCache = cache;
+    return this;
+  }
+  
+  
+  /**
+   * Set whether the paraphrases of the responses are decoded when accessed.
+   * The JSON text of a response is then retained and a paraphrase is decoded the
+   * first time it is obtained from {@link ParaphraseResponse#getParaphrases()}.
+   * This reduces the processing for callers reading few of the paraphrases.
+   * Default is false.
+   * @param lazy true to decode the paraphrases when accessed
+   * @return this client
+   */
+  public AsyncClient setLazyParaphrases(boolean lazy) {
+    this.lazyParaphrases = lazy;
+    return this;
+  }
     
+  /**
+   * Attach a deduplication stage. Identical disambiguate and paraphrase requests
+   * are then sent once and share the response.
+   * @param deduplicator deduplicator to use or null to disable
+   * @return this client
+   */
+  public AsyncClient setDeduplicator(RequestDeduplicator deduplicator) {
+    this.deduplicator = deduplicator;
+    return this;
+  }
+  
   /**
    * Sends a disambiguation request to a text server.
    * <p>
@@ -80,6 +132,16 @@ public class AsyncClient extends AsyncClientBase
    */
   public CompletableFuture<DisambiguateResponse> disambiguateAsync(final DisambiguateRequest req) throws IdiliaClientException {
     
+    if (disambiguateCache != null) {
+      DisambiguateResponse cached = disambiguateCache.get(req);
+      if (cached != null)
+        return CompletableFuture.completedFuture(cached);
+    }
+    
+    return deduplicator != null ? deduplicator.disambiguate(req, this::sendDisambiguate) : sendDisambiguate(req);
+  }
+  
+  private CompletableFuture<DisambiguateResponse> sendDisambiguate(final DisambiguateRequest req) throws IdiliaClientException {
     final HttpPost httpPost = createMultipartPost(req);
     final HttpClientContext ctxt = HttpClientContext.create();
     try {
@@ -90,12 +152,18 @@ public class AsyncClient extends AsyncClientBase
     
     final CompletableFuture<DisambiguateResponse> future = new CompletableFuture<>();
     
-    getClient().execute(httpPost, ctxt, new HttpCallback<DisambiguateResponse>(httpPost, ctxt, future) {
+    execute(req, httpPost, ctxt, new HttpCallback<DisambiguateResponse>(httpPost, ctxt, future) {
       @Override
       public DisambiguateResponse completedHdlr(HttpResponse result) throws IdiliaClientException, JsonParseException, UnsupportedOperationException, IOException, MessagingException {
-        DisambiguateResponse resp = DisambiguateCodec.decode(jsonMapper_, result.getEntity());
-        if (resp.getStatus() != HttpStatus.SC_OK && resp.getStatus() != HttpStatus.SC_ACCEPTED)
-          throw new IdiliaClientException(resp);
+        DisambiguateResponse resp = DisambiguateCodec.decode(result.getEntity());
+        if (resp.getStatus() != HttpStatus.SC_OK && resp.getStatus() != HttpStatus.SC_ACCEPTED) {
+          IdiliaClientException e = new IdiliaClientException(resp);
+          if (disambiguateCache != null)
+            disambiguateCache.putFailure(req, e);
+          throw e;
+        }
+        if (disambiguateCache != null)
+          disambiguateCache.putAsync(req, resp);
         return resp;
       }
     });
@@ -114,6 +182,16 @@ public class AsyncClient extends AsyncClientBase
    */
   public CompletableFuture<ParaphraseResponse> paraphraseAsync(final ParaphraseRequest req) throws IdiliaClientException {
    
+    if (paraphraseCache != null) {
+      ParaphraseResponse cached = paraphraseCache.get(req);
+      if (cached != null)
+        return CompletableFuture.completedFuture(cached);
+    }
+    
+    return deduplicator != null ? deduplicator.paraphrase(req, this::sendParaphrase) : sendParaphrase(req);
+  }
+  
+  private CompletableFuture<ParaphraseResponse> sendParaphrase(final ParaphraseRequest req) throws IdiliaClientException {
     final HttpPost httpPost = createPost(req);
     final HttpClientContext ctxt = HttpClientContext.create();
     try {
@@ -123,13 +201,19 @@ public class AsyncClient extends AsyncClientBase
     }
     
     final CompletableFuture<ParaphraseResponse> future = new CompletableFuture<>();
-    getClient().execute(httpPost, ctxt, 
+    execute(req, httpPost, ctxt, 
         new HttpCallback<ParaphraseResponse>(httpPost, ctxt, future) {
       @Override
       public ParaphraseResponse completedHdlr(HttpResponse result) throws IdiliaClientException, JsonParseException, JsonProcessingException, IOException, MessagingException {
-        ParaphraseResponse resp = ParaphraseCodec.decode(jsonMapper_, result.getEntity());
-        if (resp.getStatus() != HttpStatus.SC_OK && resp.getStatus() != HttpStatus.SC_ACCEPTED)
-          throw new IdiliaClientException(resp);
+        ParaphraseResponse resp = ParaphraseCodec.decode(result.getEntity(), lazyParaphrases);
+        if (resp.getStatus() != HttpStatus.SC_OK && resp.getStatus() != HttpStatus.SC_ACCEPTED) {
+          IdiliaClientException e = new IdiliaClientException(resp);
+          if (paraphraseCache != null)
+            paraphraseCache.putFailure(req, e);
+          throw e;
+        }
+        if (paraphraseCache != null)
+          paraphraseCache.put(req, resp);
         return resp;
       }
     });
@@ -158,7 +242,7 @@ public class AsyncClient extends AsyncClientBase
     }
     
     final CompletableFuture<MatchResponse> future = new CompletableFuture<>();
-    getClient().execute(httpPost, ctxt, new HttpCallback<MatchResponse>(httpPost, ctxt, future) {
+    execute(req, httpPost, ctxt, new HttpCallback<MatchResponse>(httpPost, ctxt, future) {
       @Override
       public MatchResponse completedHdlr(HttpResponse result) throws IdiliaClientException, JsonParseException, UnsupportedOperationException, IOException {
         MatchResponse resp = (MatchResponse)decodeHttpResponse(result, req);
@@ -192,7 +276,7 @@ public class AsyncClient extends AsyncClientBase
     }
     
     final CompletableFuture<MatchingEvalResponse> future = new CompletableFuture<>();
-    getClient().execute(httpPost, ctxt, 
+    execute(req, httpPost, ctxt, 
         new HttpCallback<MatchingEvalResponse>(httpPost, ctxt, future) {
       @Override
       public MatchingEvalResponse completedHdlr(HttpResponse result) throws IdiliaClientException, JsonParseException, UnsupportedOperationException, IOException {
@@ -204,5 +288,37 @@ public class AsyncClient extends AsyncClientBase
     });
     return future;
   }
-    
+
+  /**
+   * Sends a matching eval request with many documents as concurrent requests, each
+   * evaluating a chunk of the documents.
+   * <p>
+   * The results of the chunks are combined in the order of the documents. The future
+   * fails when the request for any chunk fails. The number of chunks processed
+   * simultaneously is limited by the connections available to the client.
+   *
+   * @param req Request message
+   * @param maxDocuments maximum number of documents in a chunk
+   * @param maxChars maximum number of characters of the documents in a chunk. 0 for no limit.
+   * @return a CompletableFuture set when the responses for all the chunks are available
+   * @throws IdiliaClientException wrapping the actual exception encountered
+   */
+  public CompletableFuture<MatchingEvalResponse> matchingEvalAsync(final MatchingEvalRequest req,
+      int maxDocuments, long maxChars) throws IdiliaClientException {
+    List<MatchingEvalRequest> chunks = req.split(maxDocuments, maxChars);
+    if (chunks.size() == 1)
+      return matchingEvalAsync(chunks.get(0));
+
+    List<CompletableFuture<MatchingEvalResponse>> futures = new ArrayList<>(chunks.size());
+    for (MatchingEvalRequest chunk: chunks)
+      futures.add(matchingEvalAsync(chunk));
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+        .thenApply(v -> MatchingEvalResponse.merge(
+            futures.stream().map(CompletableFuture::join).collect(Collectors.toList()), req.getRequestId()));
+  }
+  
+  private DisambiguateCache disambiguateCache;
+  private ParaphraseCache paraphraseCache;
+  private boolean lazyParaphrases;
+  private RequestDeduplicator deduplicator;
 }
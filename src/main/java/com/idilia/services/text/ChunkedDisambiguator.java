@@ -0,0 +1,146 @@
+package com.idilia.services.text;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.idilia.services.base.IdiliaClientException;
+
+/**
+ * Disambiguates a long text as chunks sent concurrently with an {@link AsyncClient}.
+ * <p>
+ * The text is split at paragraph boundaries (blank lines) into chunks with at most
+ * a budget of tokens, estimated from the white space separated words. A paragraph
+ * longer than the budget is split between words. Each chunk is a request of its own
+ * whose maximum number of tokens leaves room for the difference between the estimate
+ * and the tokenization of the server so that the chunk is not truncated. A larger
+ * maximum set by the request factory is kept.
+ * <p>
+ * Multithread safe.
+ */
+public class ChunkedDisambiguator {
+
+  /**
+   * Create a disambiguator.
+   * @param client client used to send the requests
+   * @param factory function creating a request with the parameters shared by all
+   *        the chunks (e.g., recipe, result mime). The text is added by the disambiguator
+   *        and the maximum number of tokens is raised when below the need of the chunk.
+   */
+  public ChunkedDisambiguator(AsyncClient client, Supplier<DisambiguateRequest> factory) {
+    this.client = client;
+    this.factory = factory;
+  }
+
+  /**
+   * Set the mime and character set of the texts. Default is text/plain in UTF-8.
+   * @param mime mime type expected by the server
+   * @param charset character set for encoding the chunks
+   * @return this disambiguator
+   */
+  public ChunkedDisambiguator setMime(String mime, Charset charset) {
+    this.mime = mime;
+    this.charset = charset;
+    return this;
+  }
+
+  /**
+   * Set the budget of estimated tokens of a chunk. Default is 500.
+   * @param maxTokens maximum number of tokens in a chunk. Must be positive.
+   * @return this disambiguator
+   */
+  public ChunkedDisambiguator setMaxTokens(int maxTokens) {
+    if (maxTokens <= 0)
+      throw new IllegalArgumentException("maxTokens must be positive");
+    this.maxTokens = maxTokens;
+    return this;
+  }
+
+  /**
+   * Disambiguate a text.
+   * @param text text to disambiguate
+   * @return a CompletableFuture set when the documents of all the chunks are available.
+   *         It fails when the request of any chunk fails.
+   */
+  public CompletableFuture<ChunkedDocument> disambiguateAsync(String text) {
+    int[] starts = split(text, maxTokens);
+    List<CompletableFuture<DisambiguateResponse>> futures = new ArrayList<>(starts.length);
+    for (int i = 0; i < starts.length; ++i) {
+      int end = i + 1 < starts.length ? starts[i + 1] : text.length();
+      DisambiguateRequest req = factory.get();
+      req.setText(text.substring(starts[i], end), mime, charset);
+      int need = 2 * DisambiguatePacker.estimateTokens(text, starts[i], end) + 100;
+      req.setMaxTokens(Math.max(req.getMaxTokens(), need));
+      try {
+        futures.add(client.disambiguateAsync(req));
+      } catch (IdiliaClientException e) {
+        CompletableFuture<DisambiguateResponse> f = new CompletableFuture<>();
+        f.completeExceptionally(e);
+        futures.add(f);
+      }
+    }
+
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+        .thenApply(v -> {
+          List<DisambiguatedDocument> docs = new ArrayList<>(futures.size());
+          for (CompletableFuture<DisambiguateResponse> f: futures)
+            docs.add(f.join().getResult());
+          return new ChunkedDocument(text, starts, docs);
+        });
+  }
+
+  /**
+   * Split a text into chunks with at most the given number of estimated tokens.
+   * @param text text to split
+   * @param maxTokens maximum number of tokens in a chunk
+   * @return offset of the start of each chunk. The first is 0.
+   */
+  static int[] split(String text, int maxTokens) {
+    List<Integer> starts = new ArrayList<>();
+    starts.add(0);
+    int tokens = 0;
+    Matcher m = paragraphBreak.matcher(text);
+    int pos = 0;
+    while (pos < text.length()) {
+      int end = m.find(pos) ? m.end() : text.length();
+      int t = DisambiguatePacker.estimateTokens(text, pos, end);
+      if (tokens > 0 && tokens + t > maxTokens) {
+        starts.add(pos);
+        tokens = 0;
+      }
+
+      if (t <= maxTokens) {
+        tokens += t;
+      } else {
+        // Split the paragraph at the start of a word
+        boolean inWord = false;
+        for (int i = pos; i < end; ++i) {
+          boolean ws = Character.isWhitespace(text.charAt(i));
+          if (!ws && !inWord) {
+            if (tokens == maxTokens) {
+              starts.add(i);
+              tokens = 0;
+            }
+            ++tokens;
+          }
+          inWord = !ws;
+        }
+      }
+      pos = end;
+    }
+    return starts.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  final private static Pattern paragraphBreak = Pattern.compile("\\n[ \\t\\r]*\\n\\s*");
+
+  final private AsyncClient client;
+  final private Supplier<DisambiguateRequest> factory;
+  private String mime = "text/plain";
+  private Charset charset = StandardCharsets.UTF_8;
+  private int maxTokens = 500;
+}
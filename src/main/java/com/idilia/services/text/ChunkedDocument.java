@@ -0,0 +1,76 @@
+package com.idilia.services.text;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of disambiguating a long text as consecutive chunks with a
+ * {@link ChunkedDisambiguator}.
+ * <p>
+ * The chunks cover the whole text without overlap. The offsets within the document
+ * of a chunk are relative to the start of the chunk and are converted to offsets in
+ * the original text with {@link #toTextOffset}.
+ */
+public class ChunkedDocument {
+
+  ChunkedDocument(String text, int[] starts, List<DisambiguatedDocument> documents) {
+    this.text = text;
+    this.starts = starts;
+    this.documents = Collections.unmodifiableList(documents);
+  }
+
+  /**
+   * @return number of chunks
+   */
+  public int getChunkCount() {
+    return documents.size();
+  }
+
+  /**
+   * @return the disambiguated document of each chunk, in text order
+   */
+  public List<DisambiguatedDocument> getDocuments() {
+    return documents;
+  }
+
+  /**
+   * @param chunk index of the chunk
+   * @return offset of the first character of the chunk in the original text
+   */
+  public int getChunkStart(int chunk) {
+    return starts[chunk];
+  }
+
+  /**
+   * @param chunk index of the chunk
+   * @return the text of the chunk
+   */
+  public String getChunkText(int chunk) {
+    return text.substring(starts[chunk], chunk + 1 < starts.length ? starts[chunk + 1] : text.length());
+  }
+
+  /**
+   * Convert an offset in the document of a chunk into an offset in the original text.
+   * @param chunk index of the chunk
+   * @param offset offset relative to the start of the chunk
+   * @return offset in the original text
+   */
+  public int toTextOffset(int chunk, int offset) {
+    return starts[chunk] + offset;
+  }
+
+  /**
+   * Return the chunk containing a character of the original text.
+   * @param textOffset offset in the original text
+   * @return index of the chunk
+   */
+  public int chunkAt(int textOffset) {
+    int i = Arrays.binarySearch(starts, textOffset);
+    return i >= 0 ? i : -i - 2;
+  }
+
+  final private String text;
+  final private int[] starts;
+  final private List<DisambiguatedDocument> documents;
+}
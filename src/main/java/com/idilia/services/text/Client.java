@@ -68,6 +68,45 @@ public class Client extends SyncClientBase
   }
   
   
+  /**
+   * Attach a cache for the disambiguation results. Results found in the cache
+   * are returned without contacting the server.
+   * @param cache cache to use or null to disable caching
+   * @return this client
+   */
+  public Client setDisambiguateCache(DisambiguateCache cache) {
+    this.disambiguateCache = cache;
+    return this;
+  }
+  
+  
+  /**
+   * Attach a cache for the paraphrases. Responses found in the cache
+   * are returned without contacting the server.
+   * @param cache cache to use or null to disable caching
+   * @return this client
+   */
+  public Client setParaphraseCache(ParaphraseCache cache) {
+    this.paraphraseCache = cache;
+    return this;
+  }
+  
+  
+  /**
+   * Set whether the paraphrases of the responses are decoded when accessed.
+   * The JSON text of a response is then retained and a paraphrase is decoded the
+   * first time it is obtained from {@link ParaphraseResponse#getParaphrases()}.
+   * This reduces the processing for callers reading few of the paraphrases.
+   * Default is false.
+   * @param lazy true to decode the paraphrases when accessed
+   * @return this client
+   */
+  public Client setLazyParaphrases(boolean lazy) {
+    this.lazyParaphrases = lazy;
+    return this;
+  }
+  
+  
   /**
    * Sends a disambiguation request to a text server.
    * 
@@ -81,6 +120,12 @@ public class Client extends SyncClientBase
    */
   public DisambiguateResponse disambiguate(DisambiguateRequest req) throws IdiliaClientException {
     
+    if (disambiguateCache != null) {
+      DisambiguateResponse cached = disambiguateCache.get(req);
+      if (cached != null)
+        return cached;
+    }
+    
     /* Create the request */
     final HttpPost httpPost = createMultipartPost(req);
     final HttpClientContext ctxt = HttpClientContext.create();
@@ -94,9 +139,15 @@ public class Client extends SyncClientBase
     try (CloseableHttpResponse httpResponse = getServerResponse(httpPost, ctxt)) {
       // Recover the response. It can be a single part or multipart
       HttpEntity rxEntity = httpResponse.getEntity();
-      DisambiguateResponse resp = DisambiguateCodec.decode(jsonMapper_, rxEntity);
-      if (resp.getStatus() != HttpStatus.SC_OK && resp.getStatus() != HttpStatus.SC_ACCEPTED)
-        throw new IdiliaClientException(resp);
+      DisambiguateResponse resp = DisambiguateCodec.decode(rxEntity);
+      if (resp.getStatus() != HttpStatus.SC_OK && resp.getStatus() != HttpStatus.SC_ACCEPTED) {
+        IdiliaClientException e = new IdiliaClientException(resp);
+        if (disambiguateCache != null)
+          disambiguateCache.putFailure(req, e);
+        throw e;
+      }
+      if (disambiguateCache != null)
+        disambiguateCache.put(req, resp);
       return resp;
     } catch (IOException | UnsupportedOperationException | MessagingException e) {
       throw new IdiliaClientException(e);
@@ -117,13 +168,25 @@ public class Client extends SyncClientBase
    */
   public ParaphraseResponse paraphrase(ParaphraseRequest req) throws IdiliaClientException {
     
+    if (paraphraseCache != null) {
+      ParaphraseResponse cached = paraphraseCache.get(req);
+      if (cached != null)
+        return cached;
+    }
+    
     try (CloseableHttpResponse httpResponse = getServerResponse(req)) {
 
       // Recover the response. It can be a single part or multipart
       HttpEntity rxEntity = httpResponse.getEntity();
-      ParaphraseResponse resp = ParaphraseCodec.decode(jsonMapper_, rxEntity);
-      if (resp.getStatus() != HttpStatus.SC_OK && resp.getStatus() != HttpStatus.SC_ACCEPTED)
-        throw new IdiliaClientException(resp);
+      ParaphraseResponse resp = ParaphraseCodec.decode(rxEntity, lazyParaphrases);
+      if (resp.getStatus() != HttpStatus.SC_OK && resp.getStatus() != HttpStatus.SC_ACCEPTED) {
+        IdiliaClientException e = new IdiliaClientException(resp);
+        if (paraphraseCache != null)
+          paraphraseCache.putFailure(req, e);
+        throw e;
+      }
+      if (paraphraseCache != null)
+        paraphraseCache.put(req, resp);
       return resp;
     } catch (IOException | UnsupportedOperationException | MessagingException e) {
       throw new IdiliaClientException(e);
@@ -161,4 +224,8 @@ public class Client extends SyncClientBase
   public MatchingEvalResponse matchingEval(MatchingEvalRequest req) throws IdiliaClientException {
     return (MatchingEvalResponse)perform(req);
   }
- }
+  
+  private DisambiguateCache disambiguateCache;
+  private ParaphraseCache paraphraseCache;
+  private boolean lazyParaphrases;
+}
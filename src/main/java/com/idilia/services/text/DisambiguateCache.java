@@ -0,0 +1,226 @@
+package com.idilia.services.text;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpStatus;
+
+import com.idilia.services.base.CacheKey;
+import com.idilia.services.base.FailureCache;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.ResponseCache;
+import com.idilia.services.base.SegmentFileStore;
+
+/**
+ * Cache of disambiguation results that can be attached to a {@link Client} or an
+ * {@link AsyncClient}.
+ * <p>
+ * Results are content addressed: the key is a hash of the attachments and of the
+ * parameters that affect the result. The value is the raw encoded bytes of each
+ * {@link DisambiguatedDocument}. When opened on a directory, the cache is persistent
+ * and results survive a restart. Requests processed offline (with a result URI) are
+ * never cached.
+ * <p>
+ * Multithread safe.
+ */
+public class DisambiguateCache implements Closeable {
+
+  /**
+   * Open a persistent cache stored in a directory.
+   * @param dir directory for the cache files. Created when it does not exist.
+   * @param maxBytes maximum size in bytes of the files
+   * @return a cache with the results recorded in previous runs
+   * @throws IdiliaClientException when the directory cannot be read or created
+   */
+  public static DisambiguateCache open(Path dir, long maxBytes) throws IdiliaClientException {
+    int segmentSize = (int) Math.min(Math.max(maxBytes / 16, 1 << 20), 1 << 30);
+    return new DisambiguateCache(new SegmentFileStore(dir, segmentSize, Math.max(maxBytes, segmentSize)));
+  }
+
+  /**
+   * Create a cache using the storage provided by the application.
+   * @param storage storage for the encoded documents
+   */
+  public DisambiguateCache(ResponseCache<byte[]> storage) {
+    this.storage = storage;
+  }
+
+  /**
+   * Also remember the deterministic failures of the requests. A request with a
+   * recorded failure fails immediately with the recorded status and message.
+   * @param failures cache of failures. Can be shared with other caches. Null to disable.
+   * @return this cache
+   */
+  public DisambiguateCache setFailureCache(FailureCache failures) {
+    this.failures = failures;
+    return this;
+  }
+
+  /**
+   * Return the documents recorded for an equivalent request.
+   * @param req disambiguate request
+   * @return a response with the request id of req or null when not present
+   * @throws IdiliaClientException when the attachments of the request cannot be read
+   *   or when a failure is recorded for the request
+   */
+  public DisambiguateResponse get(DisambiguateRequest req) throws IdiliaClientException {
+    try {
+      String key = req.cacheKey();
+      if (failures != null && key != null)
+        failures.check(namespace + key, req.getRequestId());
+      byte[] value = key != null ? storage.get(key) : null;
+      if (value == null)
+        return null;
+
+      DisambiguateResponse resp = new DisambiguateResponse();
+      resp.setStatus(HttpStatus.SC_OK);
+      resp.setRequestId(req.getRequestId());
+      DataInputStream is = new DataInputStream(new ByteArrayInputStream(value));
+      if (is.readByte() != VERSION)
+        return null;
+      for (int n = is.readInt(); n > 0; --n) {
+        String mime = is.readUTF();
+        String encoding = is.readBoolean() ? is.readUTF() : null;
+        byte[] bytes = new byte[is.readInt()];
+        is.readFully(bytes);
+        resp.addResult(new DisambiguatedDocument(mime, encoding, new ByteArrayInputStream(bytes)));
+      }
+      return resp;
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+  /**
+   * Record the documents returned by the server for a request. Responses without
+   * documents are ignored.
+   * @param req disambiguate request
+   * @param resp response received for the request
+   * @throws IdiliaClientException when the request or the documents cannot be read
+   */
+  public void put(DisambiguateRequest req, DisambiguateResponse resp) throws IdiliaClientException {
+    if (resp.getStatus() != HttpStatus.SC_OK || resp.getResults().isEmpty())
+      return;
+    try {
+      String key = req.cacheKey();
+      if (key != null)
+        storage.put(key, encode(resp));
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+  /**
+   * Record the documents returned by the server for a request without waiting for the
+   * storage. The documents are encoded by the caller and written by a background thread
+   * of this cache. Used from the I/O threads of the asynchronous client. A failure to
+   * write is ignored as the response is then simply not cached.
+   * @param req disambiguate request
+   * @param resp response received for the request
+   * @throws IdiliaClientException when the request or the documents cannot be read
+   */
+  void putAsync(DisambiguateRequest req, DisambiguateResponse resp) throws IdiliaClientException {
+    if (resp.getStatus() != HttpStatus.SC_OK || resp.getResults().isEmpty())
+      return;
+    try {
+      String key = req.cacheKey();
+      if (key == null)
+        return;
+      byte[] value = encode(resp);
+      writer.execute(() -> {
+        try {
+          storage.put(key, value);
+        } catch (RuntimeException e) {
+          // not cached
+        }
+      });
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    } catch (RejectedExecutionException e) {
+      // closed
+    }
+  }
+
+  /** Encode the documents of a response */
+  private static byte[] encode(DisambiguateResponse resp) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    DataOutputStream os = new DataOutputStream(bos);
+    os.writeByte(VERSION);
+    os.writeInt(resp.getResults().size());
+    for (DisambiguatedDocument doc: resp.getResults()) {
+      os.writeUTF(doc.getResultMime());
+      os.writeBoolean(doc.getEncoding() != null);
+      if (doc.getEncoding() != null)
+        os.writeUTF(doc.getEncoding());
+      byte[] bytes = doc.getEncodedBytes();
+      os.writeInt(bytes.length);
+      os.write(bytes);
+    }
+    os.flush();
+    return bos.toByteArray();
+  }
+
+  /**
+   * Record the failure of a request when it is deterministic.
+   * @param req disambiguate request
+   * @param e exception raised for the request
+   * @throws IdiliaClientException when the attachments of the request cannot be read
+   */
+  public void putFailure(DisambiguateRequest req, IdiliaClientException e) throws IdiliaClientException {
+    if (failures == null)
+      return;
+    try {
+      String key = req.cacheKey();
+      if (key != null)
+        failures.record(namespace + key, e);
+    } catch (IOException ioe) {
+      throw new IdiliaClientException(ioe);
+    }
+  }
+
+  /**
+   * Remove all recorded documents and the failures recorded by this cache.
+   */
+  public void clear() {
+    storage.clear();
+    if (failures != null)
+      failures.removeByPrefix(namespace);
+  }
+
+  /**
+   * Wait for the pending writes and release the storage when it holds files.
+   */
+  @Override
+  public void close() throws IOException {
+    writer.shutdown();
+    try {
+      writer.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (storage instanceof Closeable)
+      ((Closeable) storage).close();
+  }
+
+  /** Format of the recorded values */
+  final private static byte VERSION = 1;
+
+  final private static String namespace = CacheKey.of("text/disambiguate");
+
+  final private ResponseCache<byte[]> storage;
+  final private ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "idilia-disambiguate-cache");
+    t.setDaemon(true);
+    return t;
+  });
+  private FailureCache failures;
+}
@@ -20,14 +20,13 @@ import org.apache.http.HttpEntity;
 import org.apache.http.util.EntityUtils;
 
 import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.JsonCodecs;
 
 class DisambiguateCodec {
 
   // Decode the entity received from HTTP into a DisambiguateResponse object
-  static DisambiguateResponse decode(ObjectMapper jsonMapper, HttpEntity rxEntity) throws IdiliaClientException, JsonParseException, UnsupportedOperationException, IOException, MessagingException {
+  static DisambiguateResponse decode(HttpEntity rxEntity) throws IdiliaClientException, JsonParseException, UnsupportedOperationException, IOException, MessagingException {
     if (rxEntity == null)
       throw new IdiliaClientException("Did not received a response from the server");
     
@@ -39,8 +38,7 @@ class DisambiguateCodec {
 
     if (ct.startsWith("application/json")) {
       // Single part json message.
-      JsonParser jp = jsonMapper.getFactory().createParser(rxEntity.getContent());
-      return jp.readValueAs(DisambiguateResponse.class);
+      return JsonCodecs.reader(DisambiguateResponse.class).readValue(rxEntity.getContent());
     } else if (ct.contains("multipart/mixed")) {
       // Use java mail here because the HTTP client classes do not parse a response.
       
@@ -55,8 +53,7 @@ class DisambiguateCodec {
       String bodyCt = body.getContentType();
       if (!bodyCt.startsWith("application/json"))
         throw new IOException("Unexpected mime type from server: " + body.getContentType());
-      JsonParser jp = jsonMapper.getFactory().createParser(body.getInputStream());
-      DisambiguateResponse response = jp.readValueAs(DisambiguateResponse.class);
+      DisambiguateResponse response = JsonCodecs.reader(DisambiguateResponse.class).readValue(body.getInputStream());
       
       // Recover the WSD results. Can be several when snapshots are enabled.
       if (response.getStatus() == HttpURLConnection.HTTP_OK)
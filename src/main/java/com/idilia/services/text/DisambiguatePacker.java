@@ -0,0 +1,177 @@
+package com.idilia.services.text;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import com.idilia.services.base.FailureCache;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.ResponseBase;
+
+/**
+ * Disambiguates many small texts by packing them as the attachments of a few
+ * multipart requests sent concurrently with an {@link AsyncClient}.
+ * <p>
+ * Consecutive texts are packed in a request until it reaches its budget in texts,
+ * characters or estimated tokens. The documents returned for a request are mapped
+ * back to the texts in attachment order. When a request fails with a client error
+ * (e.g., one of the texts is rejected) or does not return one document per text,
+ * its texts are sent again individually so that the error is reported only for the
+ * texts that cause it.
+ * <p>
+ * The requests must not be processed offline (no result URI). Multithread safe.
+ */
+public class DisambiguatePacker {
+
+  /**
+   * Create a packer.
+   * @param client client used to send the requests
+   * @param factory function creating a request with the parameters shared by all
+   *        the texts (e.g., recipe, result mime). The texts are added by the packer.
+   */
+  public DisambiguatePacker(AsyncClient client, Supplier<DisambiguateRequest> factory) {
+    this.client = client;
+    this.factory = factory;
+  }
+
+  /**
+   * Set the mime and character set of the texts. Default is text/plain in UTF-8.
+   * @param mime mime type expected by the server (e.g., text/tweet)
+   * @param charset character set for encoding the texts
+   * @return this packer
+   */
+  public DisambiguatePacker setMime(String mime, Charset charset) {
+    this.mime = mime;
+    this.charset = charset;
+    return this;
+  }
+
+  /**
+   * Set the maximum number of texts in a request. Default is 50.
+   * @param maxTexts maximum number of texts
+   * @return this packer
+   */
+  public DisambiguatePacker setMaxTexts(int maxTexts) {
+    this.maxTexts = maxTexts;
+    return this;
+  }
+
+  /**
+   * Set the maximum number of characters of the texts in a request. A longer text
+   * is sent alone. Default is 65536.
+   * @param maxChars maximum number of characters. 0 for no limit.
+   * @return this packer
+   */
+  public DisambiguatePacker setMaxChars(long maxChars) {
+    this.maxChars = maxChars;
+    return this;
+  }
+
+  /**
+   * Set the maximum number of tokens of the texts in a request, estimated from the
+   * white space separated words. A longer text is sent alone. Default is no limit.
+   * @param maxTokens maximum number of tokens. 0 for no limit.
+   * @return this packer
+   */
+  public DisambiguatePacker setMaxTokens(int maxTokens) {
+    this.maxTokens = maxTokens;
+    return this;
+  }
+
+  /**
+   * Disambiguate the texts.
+   * @param texts texts to disambiguate
+   * @return a future for the document of each text, in the order of the texts. A future
+   *         fails with the error reported for its text.
+   */
+  public List<CompletableFuture<DisambiguatedDocument>> disambiguateAsync(List<String> texts) {
+    List<CompletableFuture<DisambiguatedDocument>> futures = new ArrayList<>(texts.size());
+    for (int i = 0; i < texts.size(); ++i)
+      futures.add(new CompletableFuture<>());
+
+    int start = 0;
+    long chars = 0, tokens = 0;
+    for (int i = 0; i < texts.size(); ++i) {
+      String text = texts.get(i);
+      int t = maxTokens > 0 ? estimateTokens(text) : 0;
+      if (i > start && (i - start >= maxTexts ||
+          (maxChars > 0 && chars + text.length() > maxChars) ||
+          (maxTokens > 0 && tokens + t > maxTokens))) {
+        send(texts.subList(start, i), futures.subList(start, i));
+        start = i;
+        chars = tokens = 0;
+      }
+      chars += text.length();
+      tokens += t;
+    }
+    if (start < texts.size())
+      send(texts.subList(start, texts.size()), futures.subList(start, texts.size()));
+    return futures;
+  }
+
+  /** Send a request with the texts and complete their futures */
+  private void send(List<String> texts, List<CompletableFuture<DisambiguatedDocument>> futures) {
+    CompletableFuture<DisambiguateResponse> f;
+    try {
+      DisambiguateRequest req = factory.get();
+      for (String text: texts)
+        req.setText(text, mime, charset);
+      f = client.disambiguateAsync(req);
+    } catch (IdiliaClientException e) {
+      f = new CompletableFuture<>();
+      f.completeExceptionally(e);
+    }
+
+    f.whenComplete((resp, ex) -> {
+      Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+      if (cause == null && resp.getResults().size() == texts.size()) {
+        for (int i = 0; i < texts.size(); ++i)
+          futures.get(i).complete(resp.getResults().get(i));
+      } else if (texts.size() > 1 && (cause == null || isClientError(cause))) {
+        for (int i = 0; i < texts.size(); ++i)
+          send(Collections.singletonList(texts.get(i)), Collections.singletonList(futures.get(i)));
+      } else {
+        Throwable e = cause != null ? cause :
+          new IdiliaClientException("Unexpected number of documents from the server");
+        futures.forEach(fut -> fut.completeExceptionally(e));
+      }
+    });
+  }
+
+  /** Return true for an error caused by the content of the request */
+  private static boolean isClientError(Throwable t) {
+    ResponseBase r = t instanceof IdiliaClientException ? ((IdiliaClientException) t).getApiResponse() : null;
+    return r != null && FailureCache.isDeterministic(r.getStatus());
+  }
+
+  /** Estimate the number of tokens of a text from its words */
+  static int estimateTokens(String text) {
+    return estimateTokens(text, 0, text.length());
+  }
+
+  /** Estimate the number of tokens of the characters [from, to) of a text from its words */
+  static int estimateTokens(String text, int from, int to) {
+    int n = 0;
+    boolean inWord = false;
+    for (int i = from; i < to; ++i) {
+      boolean ws = Character.isWhitespace(text.charAt(i));
+      if (!ws && !inWord)
+        ++n;
+      inWord = !ws;
+    }
+    return n;
+  }
+
+  final private AsyncClient client;
+  final private Supplier<DisambiguateRequest> factory;
+  private String mime = "text/plain";
+  private Charset charset = StandardCharsets.UTF_8;
+  private int maxTexts = 50;
+  private long maxChars = 65536;
+  private int maxTokens;
+}
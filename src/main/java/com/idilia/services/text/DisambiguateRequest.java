@@ -14,9 +14,14 @@ package com.idilia.services.text;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.codec.binary.Hex;
+
 import org.apache.http.Consts;
 import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
@@ -25,9 +30,11 @@ import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.FormBodyPart;
 import org.apache.http.entity.mime.FormBodyPartBuilder;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.http.entity.mime.content.StringBody;
 import org.apache.http.message.BasicNameValuePair;
 
+import com.idilia.services.base.CacheKey;
 import com.idilia.services.base.IdiliaClientException;
 import com.idilia.services.base.RequestBase;
 
@@ -145,6 +152,13 @@ public class DisambiguateRequest extends RequestBase {
     this.maxTokens = maxTokens;
   }
   
+  /**
+   * @return maximum number of tokens processed in the input document
+   */
+  public final int getMaxTokens() {
+    return maxTokens;
+  }
+  
   
   /**
    * Provides the document to process. 
@@ -157,6 +171,7 @@ public class DisambiguateRequest extends RequestBase {
    */
   public final void setAttachment(FormBodyPart attachment) {
     this.attachments.add(attachment);
+    this.attachmentsDigest = null;
   }
   
   /**
@@ -173,6 +188,7 @@ public class DisambiguateRequest extends RequestBase {
         "text" + this.attachments.size(),
         new StringBody(text, ContentType.create(mime, chSet)));
     this.attachments.add(bld.build());
+    this.attachmentsDigest = null;
   }
   
   /**
@@ -254,6 +270,50 @@ public class DisambiguateRequest extends RequestBase {
     return signOs.toByteArray();
   }
   
+  /**
+   * Return a content hash over the fields that determine the documents returned by the server:
+   * the attachments with their mime, the result mime, the recipe, the maximum number of tokens
+   * and the customer. The attachments are read and hashed once per request.
+   * @return a hex digest for use with a response cache or null when the request is processed
+   *         offline (i.e., has a result or notification URI).
+   * @throws IOException when the attachments cannot be read
+   */
+  String cacheKey() throws IOException {
+    if ((resultURI != null && !resultURI.isEmpty()) || (notificationURI != null && !notificationURI.isEmpty()))
+      return null;
+    byte[] digest = attachmentsDigest;
+    if (digest == null)
+      attachmentsDigest = digest = digestAttachments();
+    MessageDigest md = sha256();
+    md.update(CacheKey.of(resultMime, disambiguationRecipe, maxTokens, getCustomerId(), attachments.size())
+        .getBytes(StandardCharsets.UTF_8));
+    md.update(digest);
+    return Hex.encodeHexString(md.digest());
+  }
+
+  /** Hash the attachments with their mime */
+  private byte[] digestAttachments() throws IOException {
+    MessageDigest md = sha256();
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    for (FormBodyPart attachment: attachments) {
+      ContentBody body = attachment.getBody();
+      md.update(CacheKey.of(body.getMimeType(), body.getCharset()).getBytes(StandardCharsets.UTF_8));
+      os.reset();
+      body.writeTo(os);
+      md.update(CacheKey.of(os.size()).getBytes(StandardCharsets.UTF_8));
+      md.update(os.toByteArray());
+    }
+    return md.digest();
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+  
   private String resultMime = "application/x-semdoc+xml+gz";
   private String disambiguationRecipe;
   private String resultURI;
@@ -261,4 +321,6 @@ public class DisambiguateRequest extends RequestBase {
   private int maxTokens = 1000;
   private Integer timeout = 0;
   private ArrayList<FormBodyPart> attachments = new ArrayList<FormBodyPart>(1);
+  /** Hash of the attachments computed for the cache key. Reset when an attachment is added. */
+  private volatile byte[] attachmentsDigest;
 }
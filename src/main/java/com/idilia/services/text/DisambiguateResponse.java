@@ -44,5 +44,17 @@ public class DisambiguateResponse extends ResponseBase {
    */
   DisambiguateResponse() {}
 
+  /**
+   * Creates a copy sharing the documents of another response.
+   * @param other response copied
+   * @param requestId request id of the copy
+   */
+  DisambiguateResponse(DisambiguateResponse other, String requestId) {
+    setStatus(other.getStatus());
+    setErrorMsg(other.getErrorMsg());
+    setRequestId(requestId);
+    results.addAll(other.results);
+  }
+
   private ArrayList<DisambiguatedDocument> results = new ArrayList<DisambiguatedDocument>();
 }
@@ -28,6 +28,12 @@ public class DisambiguatedDocument {
     this.is = is;
    }
   
+  DisambiguatedDocument(String m, String encoding, byte[] bytes) {
+    this.resultMime = m;
+    this.encoding = encoding;
+    this.bytes = bytes;
+  }
+  
   /**
    * Returns the resultMime. Matches the same field in the request. E.g., application/x-semdoc+xml
    * @return the result mime of the document
@@ -58,8 +64,17 @@ public class DisambiguatedDocument {
    * @throws IOException when the input stream cannot be extracted
    */
   public InputStream getEncodedInputStream() throws IOException {
+    return new ByteArrayInputStream(getEncodedBytes());
+  }
+  
+  /**
+   * Return the raw content of the result without copying it.
+   * @return the raw document returned by the text server. Must not be modified.
+   * @throws IOException when the content cannot be extracted
+   */
+  byte[] getEncodedBytes() throws IOException {
     if (bytes == null)
       bytes = IOUtils.toByteArray(is);
-    return new ByteArrayInputStream(this.bytes);
+    return bytes;
   }
 }
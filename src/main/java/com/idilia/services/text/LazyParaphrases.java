@@ -0,0 +1,80 @@
+package com.idilia.services.text;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.JsonCodecs;
+
+/**
+ * Paraphrases of a response kept in their JSON form and decoded one at a time
+ * on first access.
+ * <p>
+ * The JSON of the response is retained along with the offset of each element of its
+ * paraphrases array. An element is decoded into its own {@link ParaphraseTable}
+ * the first time it is accessed.
+ * <p>
+ * Multithread safe.
+ */
+final class LazyParaphrases {
+
+  /**
+   * @param json JSON text of the response
+   * @param offsets byte offset in json of each paraphrase object
+   */
+  LazyParaphrases(byte[] json, int[] offsets) {
+    this.json = json;
+    this.offsets = offsets;
+    this.decoded = new ParaphraseTable[offsets.length];
+  }
+
+  int size() {
+    return offsets.length;
+  }
+
+  /**
+   * Return a decoded paraphrase.
+   * @param index position of the paraphrase in the response
+   * @return table holding only the paraphrase
+   * @throws IndexOutOfBoundsException when the index is not in the response
+   * @throws IdiliaClientException when the paraphrase cannot be decoded
+   */
+  synchronized ParaphraseTable get(int index) throws IdiliaClientException {
+    ParaphraseTable t = decoded[index];
+    if (t == null) {
+      t = new ParaphraseTable();
+      decode(index, t);
+      t.trimToSize();
+      decoded[index] = t;
+    }
+    return t;
+  }
+
+  /**
+   * Decode all the paraphrases.
+   * @return table holding the paraphrases in order
+   * @throws IdiliaClientException when a paraphrase cannot be decoded
+   */
+  ParaphraseTable toTable() throws IdiliaClientException {
+    ParaphraseTable t = new ParaphraseTable();
+    for (int i = 0; i < offsets.length; ++i)
+      decode(i, t);
+    t.trimToSize();
+    return t;
+  }
+
+  /** Append a paraphrase to a table */
+  private void decode(int index, ParaphraseTable t) throws IdiliaClientException {
+    int off = offsets[index];
+    try (JsonParser jp = JsonCodecs.factory().createParser(json, off, json.length - off)) {
+      jp.nextToken();
+      t.parse(jp);
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+  final private byte[] json;
+  final private int[] offsets;
+  final private ParaphraseTable[] decoded;
+}
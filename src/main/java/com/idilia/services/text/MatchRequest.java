@@ -13,6 +13,7 @@ package com.idilia.services.text;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -23,7 +24,9 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idilia.services.base.FormBody;
 import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.JsonCodecs;
 import com.idilia.services.base.RequestBase;
 import com.idilia.services.base.ResponseBase;
 
@@ -145,6 +148,7 @@ public class MatchRequest extends RequestBase {
    */
   public final void setText(String text, String mime, Charset chSet) {
     this.text = text;
+    this.textUtf8 = text != null ? text.getBytes(StandardCharsets.UTF_8) : null;
     this.textMime = mime + ";charset=" + chSet.name();
   }
   
@@ -222,7 +226,7 @@ public class MatchRequest extends RequestBase {
     // Add base parameters
     super.getHttpQueryParms(parms);
     
-    parms.add(new BasicNameValuePair("text", text));
+    parms.add(new FormBody.Utf8Pair("text", textUtf8));
     parms.add(new BasicNameValuePair("textMime", textMime));
     
     if (wsdMime != null && wsdMime.length() > 0)
@@ -244,10 +248,11 @@ public class MatchRequest extends RequestBase {
   
   @Override
   final public byte[] toSign() throws IOException {
-    return text.getBytes();
+    return textUtf8;
   }
   
   private String text;
+  private byte[] textUtf8;
   private String textMime;
   private String filters;
   private String wsdMime;
@@ -256,5 +261,5 @@ public class MatchRequest extends RequestBase {
   private String notificationURI;
   private Integer timeout = 0;
   private Integer maxCount;
-  private static final ObjectMapper jsonMapper = new ObjectMapper();
+  private static final ObjectMapper jsonMapper = JsonCodecs.mapper();
 }
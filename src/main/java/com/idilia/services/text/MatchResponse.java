@@ -5,7 +5,9 @@
 package com.idilia.services.text;
 
 import java.util.ArrayList;
+import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.idilia.services.base.ResponseBase;
 
@@ -19,6 +21,15 @@ public class MatchResponse extends ResponseBase {
   public static class KeywordMatch {
     public String kw;
     public ArrayList<Integer> position;
+
+    /**
+     * @return the positions of the keyword unboxed or null when there are none
+     * @throws NullPointerException when a position is null
+     */
+    @JsonIgnore
+    public int[] getPositions() {
+      return toInts(position);
+    }
   }
 
   @JsonIgnoreProperties(ignoreUnknown = true)
@@ -33,6 +44,15 @@ public class MatchResponse extends ResponseBase {
     public Double conf;
     public ArrayList<Integer> position;
     public ArrayList<String> reasons;
+
+    /**
+     * @return the positions of the sense unboxed or null when there are none
+     * @throws NullPointerException when a position is null
+     */
+    @JsonIgnore
+    public int[] getPositions() {
+      return toInts(position);
+    }
   }
 
   @JsonIgnoreProperties(ignoreUnknown = true)
@@ -56,4 +76,13 @@ public class MatchResponse extends ResponseBase {
 
   public MatchResult result;
   public WSD wsd;
+
+  private static int[] toInts(List<Integer> l) {
+    if (l == null)
+      return null;
+    int[] a = new int[l.size()];
+    for (int i = 0; i < a.length; ++i)
+      a[i] = l.get(i);
+    return a;
+  }
 }
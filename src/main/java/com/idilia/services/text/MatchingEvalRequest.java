@@ -1,6 +1,9 @@
 package com.idilia.services.text;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.http.NameValuePair;
@@ -10,6 +13,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.JsonCodecs;
 import com.idilia.services.base.RequestBase;
 import com.idilia.services.base.ResponseBase;
 import com.idilia.tagging.Sense;
@@ -99,20 +103,67 @@ public class MatchingEvalRequest extends RequestBase {
   /**
    * Set the list of documents to evaluate.
    * 
-   * @param documents plain text string for each document to evaluate
+   * @param documents plain text string for each document to evaluate. Copied.
    * @throws IdiliaClientException if the given documents cannot be serialized
    */
   public final void setDocuments(List<String> documents) throws IdiliaClientException {
     try {
       this.documents = jsonMapper.writeValueAsString(documents);
+      // Copied so that the chunks of a split request evaluate the documents serialized here
+      this.documentList = documents != null ? new ArrayList<>(documents) : null;
     } catch (JsonProcessingException e) {
       throw new IdiliaClientException(e);
     }
   }
+
+  /**
+   * Split this request into requests evaluating consecutive chunks of the documents.
+   * The expression and the other parameters are serialized once and shared by the chunks.
+   * @param maxDocuments maximum number of documents in a chunk
+   * @param maxChars maximum number of characters of the documents in a chunk. A larger
+   *        document is alone in its chunk. 0 for no limit.
+   * @return a request for each chunk in the order of the documents. Only this request
+   *         when the documents fit in a single chunk.
+   * @throws IdiliaClientException if the documents of a chunk cannot be serialized
+   */
+  List<MatchingEvalRequest> split(int maxDocuments, long maxChars) throws IdiliaClientException {
+    if (documentList == null || documentList.size() <= maxDocuments && maxChars <= 0)
+      return Collections.singletonList(this);
+
+    List<MatchingEvalRequest> chunks = new ArrayList<>();
+    int start = 0;
+    long chars = 0;
+    for (int i = 0; i < documentList.size(); ++i) {
+      int len = documentList.get(i).length();
+      if (i > start && (i - start >= maxDocuments || (maxChars > 0 && chars + len > maxChars))) {
+        chunks.add(chunk(start, i));
+        start = i;
+        chars = 0;
+      }
+      chars += len;
+    }
+    if (chunks.isEmpty())
+      return Collections.singletonList(this);
+    chunks.add(chunk(start, documentList.size()));
+    return chunks;
+  }
+
+  /** Create a request for documents [from, to) sharing the other parameters of this request */
+  private MatchingEvalRequest chunk(int from, int to) throws IdiliaClientException {
+    MatchingEvalRequest r = new MatchingEvalRequest();
+    r.expression = expression;
+    r.requireTerm = requireTerm;
+    r.skModelOverrides = skModelOverrides;
+    r.setRequestId(getRequestId());
+    r.setCustomerId(getCustomerId());
+    r.setPriority(getPriority());
+    r.setDocuments(documentList.subList(from, to));
+    return r;
+  }
   
   @Override
   public byte[] toSign() throws IOException {
-    return expression.getBytes();
+    return expression.getBytes(StandardCharsets.UTF_8);
   }
 
   @Override
@@ -137,6 +188,7 @@ public class MatchingEvalRequest extends RequestBase {
   private String expression;
   private RequireTerm requireTerm;
   private String documents;
+  private List<String> documentList;
   private String skModelOverrides;
-  static private final ObjectMapper jsonMapper = new ObjectMapper();
+  static private final ObjectMapper jsonMapper = JsonCodecs.mapper();
 }
@@ -1,8 +1,20 @@
 package com.idilia.services.text;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 
+import org.apache.http.HttpStatus;
+
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.idilia.services.base.CacheKey;
+import com.idilia.services.base.DoubleList;
 import com.idilia.services.base.ResponseBase;
 
 /**
@@ -78,6 +90,7 @@ public class MatchingEvalResponse extends ResponseBase {
     public Boolean used;
   }
 
+  @JsonDeserialize(using = ResultDeserializer.class)
   private List<Double> result;
 
   private List<SkModelStatus> skModelStatuses;
@@ -95,6 +108,10 @@ public class MatchingEvalResponse extends ResponseBase {
    * <li>&gt; 0: The document matches.
    * </ul>
    * <p>
+   * The decoded list is a {@link DoubleList} holding the values unboxed unless the
+   * server returned a null result. Use {@link DoubleList#getDouble(int)} or
+   * {@link DoubleList#toDoubleArray()} to read them without allocating.
+   * <p>
    * 
    * @return result code for each document
    */
@@ -128,4 +145,65 @@ public class MatchingEvalResponse extends ResponseBase {
   void setSkModelStatuses(List<SkModelStatus> skModelStatuses) {
     this.skModelStatuses = skModelStatuses;
   }
+
+  /**
+   * Combine the responses for consecutive chunks of the documents of a request.
+   * The results are concatenated. The statuses are those of the first chunk reporting
+   * each (text,sensekey) pair; a sensekey is reported as used when used for any chunk.
+   * @param parts responses in the order of the chunks
+   * @param requestId request id of the combined response
+   * @return the combined response
+   */
+  static MatchingEvalResponse merge(List<MatchingEvalResponse> parts, String requestId) {
+    MatchingEvalResponse m = new MatchingEvalResponse();
+    m.setStatus(HttpStatus.SC_OK);
+    m.setRequestId(requestId);
+    List<Double> result = new DoubleList();
+    LinkedHashMap<String, SkModelStatus> statuses = new LinkedHashMap<>();
+    for (MatchingEvalResponse p: parts) {
+      if (p.result != null) {
+        // A DoubleList does not hold the null results
+        if (result instanceof DoubleList && p.result.contains(null))
+          result = new ArrayList<>(result);
+        result.addAll(p.result);
+      }
+      if (p.skModelStatuses == null)
+        continue;
+      for (SkModelStatus s: p.skModelStatuses) {
+        SkModelStatus prev = statuses.putIfAbsent(CacheKey.of(s.text, s.fsk), s);
+        if (prev != null && Boolean.TRUE.equals(s.used))
+          prev.used = true;
+      }
+    }
+    m.result = result;
+    if (!statuses.isEmpty())
+      m.skModelStatuses = new ArrayList<>(statuses.values());
+    return m;
+  }
+
+  /**
+   * Reads the results in a {@link DoubleList}, or in an ArrayList when the server
+   * returned a null result.
+   */
+  static class ResultDeserializer extends JsonDeserializer<List<Double>> {
+    @Override
+    public List<Double> deserialize(JsonParser jp, DeserializationContext ctxt) throws IOException {
+      if (!jp.isExpectedStartArrayToken())
+        throw ctxt.mappingException(List.class);
+      DoubleList values = new DoubleList();
+      List<Double> l = values;
+      for (JsonToken t; (t = jp.nextToken()) != JsonToken.END_ARRAY; ) {
+        if (l == values && t != JsonToken.VALUE_NULL)
+          values.addDouble(jp.getValueAsDouble());
+        else {
+          // A DoubleList does not hold the null results
+          if (l == values)
+            l = new ArrayList<>(values);
+          l.add(t == JsonToken.VALUE_NULL ? null : jp.getValueAsDouble());
+        }
+      }
+      values.trimToSize();
+      return l;
+    }
+  }
 }
@@ -0,0 +1,173 @@
+package com.idilia.services.text;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import org.apache.http.HttpStatus;
+
+import com.idilia.services.base.CacheKey;
+import com.idilia.services.base.EncodedResponseCache;
+import com.idilia.services.base.FailureCache;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.LruResponseCache;
+import com.idilia.services.base.ResponseCache;
+
+/**
+ * Cache of paraphrases that can be attached to a {@link Client} or an {@link AsyncClient}.
+ * <p>
+ * The query text is normalized before keying so that queries differing only in
+ * case, spacing or punctuation share the same entry. The paraphrases returned on a hit
+ * are those computed for the first query recorded and their offsets refer to
+ * that query's text. Only the normalizations tolerable by the application
+ * should be enabled. All other request parameters must be identical for a hit.
+ * Requests processed offline (with a result URI) are never cached.
+ * <p>
+ * The storage can be a {@link com.idilia.services.base.SharedMappedStore} to share
+ * the paraphrases among the processes of a host (see {@link #shared}).
+ * <p>
+ * Multithread safe.
+ */
+public class ParaphraseCache {
+
+  /**
+   * Normalizations of the query text applied before keying.
+   */
+  public enum Normalization {
+    /** Remove the leading and trailing white space */
+    TRIM,
+    /** Replace sequences of white space with a single space */
+    COLLAPSE_WHITESPACE,
+    /** Convert to lower case */
+    LOWERCASE,
+    /** Remove the punctuation characters */
+    STRIP_PUNCTUATION
+  }
+
+  /**
+   * Create a cache bounded in number of entries and where entries expire.
+   * @param maxEntries maximum number of responses kept
+   * @param timeToLive duration that an entry remains valid. 0 for no expiry.
+   * @param unit unit of timeToLive
+   * @param normalization normalizations applied to the query text
+   */
+  public ParaphraseCache(int maxEntries, long timeToLive, TimeUnit unit, Set<Normalization> normalization) {
+    this(new LruResponseCache<ParaphraseResponse>(maxEntries).setTimeToLive(timeToLive, unit),
+        normalizer(normalization));
+  }
+
+  /**
+   * Create a cache using the storage and normalization provided by the application.
+   * @param storage storage for the responses
+   * @param normalizer function applied to the query text before keying
+   */
+  public ParaphraseCache(ResponseCache<ParaphraseResponse> storage, Function<String, String> normalizer) {
+    this.storage = storage;
+    this.normalizer = normalizer;
+  }
+
+  /**
+   * Create a cache recording the paraphrases in a byte storage such as a file shared
+   * by several processes.
+   * @param storage byte storage. Can be shared with other caches.
+   * @param normalizer function applied to the query text before keying
+   * @return a cache recording the responses with {@link TextBinaryCodec#PARAPHRASE}
+   */
+  public static ParaphraseCache shared(ResponseCache<byte[]> storage, Function<String, String> normalizer) {
+    return new ParaphraseCache(new EncodedResponseCache<>(storage, "text/paraphrase", TextBinaryCodec.PARAPHRASE), normalizer);
+  }
+
+  /**
+   * Return a function applying the given normalizations. Punctuation is removed first,
+   * then the case is lowered and finally white space is processed.
+   * @param normalization normalizations to apply
+   * @return normalizing function
+   */
+  public static Function<String, String> normalizer(Set<Normalization> normalization) {
+    final EnumSet<Normalization> n = normalization.isEmpty() ?
+        EnumSet.noneOf(Normalization.class) : EnumSet.copyOf(normalization);
+    return s -> {
+      if (s == null)
+        return null;
+      if (n.contains(Normalization.STRIP_PUNCTUATION))
+        s = punctuation.matcher(s).replaceAll("");
+      if (n.contains(Normalization.LOWERCASE))
+        s = s.toLowerCase(Locale.ROOT);
+      if (n.contains(Normalization.COLLAPSE_WHITESPACE))
+        s = whitespace.matcher(s).replaceAll(" ");
+      if (n.contains(Normalization.TRIM))
+        s = s.trim();
+      return s;
+    };
+  }
+
+  /**
+   * Also remember the deterministic failures of the requests. A request with a
+   * recorded failure fails immediately with the recorded status and message.
+   * @param failures cache of failures. Can be shared with other caches. Null to disable.
+   * @return this cache
+   */
+  public ParaphraseCache setFailureCache(FailureCache failures) {
+    this.failures = failures;
+    return this;
+  }
+
+  /**
+   * Return the paraphrases recorded for an equivalent request.
+   * @param req paraphrase request
+   * @return a response with the request id of req or null when not present
+   * @throws IdiliaClientException when a failure is recorded for the request
+   */
+  public ParaphraseResponse get(ParaphraseRequest req) throws IdiliaClientException {
+    String key = req.cacheKey(normalizer);
+    if (failures != null && key != null)
+      failures.check(namespace + key, req.getRequestId());
+    ParaphraseResponse r = key != null ? storage.get(key) : null;
+    return r != null ? new ParaphraseResponse(r, req.getRequestId()) : null;
+  }
+
+  /**
+   * Record the paraphrases returned by the server for a request. Only successful
+   * responses are recorded.
+   * @param req paraphrase request
+   * @param resp response received for the request
+   */
+  public void put(ParaphraseRequest req, ParaphraseResponse resp) {
+    if (resp.getStatus() != HttpStatus.SC_OK)
+      return;
+    String key = req.cacheKey(normalizer);
+    if (key != null)
+      storage.put(key, new ParaphraseResponse(resp, null));
+  }
+
+  /**
+   * Record the failure of a request when it is deterministic.
+   * @param req paraphrase request
+   * @param e exception raised for the request
+   */
+  public void putFailure(ParaphraseRequest req, IdiliaClientException e) {
+    String key = failures != null ? req.cacheKey(normalizer) : null;
+    if (key != null)
+      failures.record(namespace + key, e);
+  }
+
+  /**
+   * Remove all the responses recorded and the failures recorded by this cache.
+   */
+  public void clear() {
+    storage.clear();
+    if (failures != null)
+      failures.removeByPrefix(namespace);
+  }
+
+  final private static String namespace = CacheKey.of("text/paraphrase");
+  final private static Pattern punctuation = Pattern.compile("\\p{Punct}+");
+  final private static Pattern whitespace = Pattern.compile("\\s+");
+
+  final private ResponseCache<ParaphraseResponse> storage;
+  final private Function<String, String> normalizer;
+  private FailureCache failures;
+}
@@ -8,6 +8,7 @@ import javax.mail.MessagingException;
 import javax.mail.internet.MimeMultipart;
 import javax.mail.util.ByteArrayDataSource;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.util.EntityUtils;
@@ -15,15 +16,21 @@ import org.apache.http.util.EntityUtils;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.JsonCodecs;
 
 class ParaphraseCodec {
   
   // Decode the entity received from HTTP into a ParaphraseResponse object
   static ParaphraseResponse decode(
-      ObjectMapper jsonMapper,
       HttpEntity rxEntity) throws IdiliaClientException, JsonParseException, JsonProcessingException, IOException, MessagingException {
+    return decode(rxEntity, false);
+  }
+  
+  // Decode the entity received from HTTP into a ParaphraseResponse object.
+  // When lazy, the paraphrases are decoded when accessed.
+  static ParaphraseResponse decode(
+      HttpEntity rxEntity, boolean lazy) throws IdiliaClientException, JsonParseException, JsonProcessingException, IOException, MessagingException {
     
     if (rxEntity == null)
       throw new IdiliaClientException("Did not received a response from the server");
@@ -36,7 +43,9 @@ class ParaphraseCodec {
     if (ct.startsWith("application/json"))
     {
       // Single part json message.
-      JsonParser jp = jsonMapper.getFactory().createParser(rxEntity.getContent());
+      if (lazy)
+        return parse(EntityUtils.toByteArray(rxEntity));
+      JsonParser jp = JsonCodecs.factory().createParser(rxEntity.getContent());
       jp.nextToken();
       return new ParaphraseResponse(jp);
     }
@@ -57,9 +66,14 @@ class ParaphraseCodec {
         throw new IdiliaClientException("Unexpected mime type from server: " + body.getContentType());
       
       // Parse using the stream api
-      JsonParser jp = jsonMapper.getFactory().createParser(body.getInputStream());
-      jp.nextToken();
-      ParaphraseResponse response = new ParaphraseResponse(jp);
+      ParaphraseResponse response;
+      if (lazy)
+        response = parse(IOUtils.toByteArray(body.getInputStream()));
+      else {
+        JsonParser jp = JsonCodecs.factory().createParser(body.getInputStream());
+        jp.nextToken();
+        response = new ParaphraseResponse(jp);
+      }
       
       // Add the WSD result if present
       if (response.getStatus() == HttpURLConnection.HTTP_OK && mmp.getCount() > 1)
@@ -69,4 +83,11 @@ class ParaphraseCodec {
       throw new IdiliaClientException("Unexpected content type: " + ct);
     }
   }
+  
+  // Parse a response retaining its JSON text for decoding the paraphrases later
+  private static ParaphraseResponse parse(byte[] json) throws JsonParseException, JsonProcessingException, IOException {
+    JsonParser jp = JsonCodecs.factory().createParser(json);
+    jp.nextToken();
+    return new ParaphraseResponse(jp, json);
+  }
 }
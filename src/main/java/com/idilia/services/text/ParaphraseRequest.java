@@ -13,12 +13,16 @@ package com.idilia.services.text;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
 
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 
+import com.idilia.services.base.CacheKey;
+import com.idilia.services.base.FormBody;
 import com.idilia.services.base.IdiliaClientException;
 import com.idilia.services.base.RequestBase;
 
@@ -258,6 +262,7 @@ public class ParaphraseRequest extends RequestBase {
    */
   public final void setText(String text, String mime, Charset chSet) {
     this.text = text;
+    this.textUtf8 = text != null ? text.getBytes(StandardCharsets.UTF_8) : null;
     this.textMime = mime + ";charset=" + chSet.name();
   }
 
@@ -320,7 +325,7 @@ public class ParaphraseRequest extends RequestBase {
     // Add base parameters
     super.getHttpQueryParms(parms);
 
-    parms.add(new BasicNameValuePair("text", text));
+    parms.add(new FormBody.Utf8Pair("text", textUtf8));
     parms.add(new BasicNameValuePair("textMime", textMime));
 
     if (wsdMime != null && wsdMime.length() > 0)
@@ -378,7 +383,25 @@ public class ParaphraseRequest extends RequestBase {
   // Return the content to sign when creating the authentication information
   @Override
   final public byte[] toSign() throws IOException {
-    return text.getBytes();
+    return textUtf8;
+  }
+
+  /**
+   * Key identifying the paraphrases computed for this request. The timeout is
+   * excluded as it does not affect a successful result.
+   * @param normalizer function applied to the text before keying
+   * @return the key or null when the result is processed offline
+   */
+  String cacheKey(Function<String, String> normalizer) {
+    if ((resultURI != null && !resultURI.isEmpty()) ||
+        (notificationURI != null && !notificationURI.isEmpty()))
+      return null;
+    return CacheKey.of(getCustomerId(), normalizer.apply(text), textMime, wsdMime,
+        disambiguationRecipe, paraphrasingRecipe, maxCount, minWeight,
+        actionSuperfluousAdjectives, actionAdjectives, actionAdverbs, actionVerbs,
+        actionNouns, transformationSynonymy, transformationAssociation,
+        transformationSpecialization, transformationGeneralization,
+        transformationSyntax, filterFrequency);
   }
 
   @Override
@@ -426,6 +449,7 @@ public class ParaphraseRequest extends RequestBase {
   }
 
   private String text;
+  private byte[] textUtf8;
   private String textMime = "text/query; charset=utf8";
   private String wsdMime;
   private String disambiguationRecipe;
@@ -5,14 +5,17 @@
 package com.idilia.services.text;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.JsonToken;
+import com.idilia.services.base.IntList;
+import com.idilia.services.base.JsonCodecs;
 import com.idilia.services.base.ResponseBase;
 
 
@@ -26,38 +29,22 @@ public class ParaphraseResponse extends ResponseBase {
    * Document a sense used in a paraphrase and its location in the paraphrase's text.
    */
   public static class Sense {
-    private int start;
-    private int end;
-    private String fsk;
-    private String fs;
     
     /**
-     * Recreate from JSON stream
+     * Create a view on a sense of a table
      */
-    Sense(JsonParser jp) throws JsonParseException, IOException {
-      while (jp.nextToken() != JsonToken.END_OBJECT) {
-        String name = jp.getText();
-        jp.nextToken();
-        if (name.contentEquals("start"))
-          start = jp.getValueAsInt();
-        else if (name.contentEquals("end"))
-          end = jp.getValueAsInt();
-        else if (name.contentEquals("fsk"))
-          fsk = jp.getText();
-        else if (name.contentEquals("fs"))
-          fs = jp.getText();
-        else
-          jp.skipChildren();
-      }
+    Sense(ParaphraseTable table, int index) {
+      this.table = table;
+      this.index = index;
     }
-
+    
     /**
      * Return the start offset of the sense in {@link Paraphrase#getText}.
      *
      * @return start offset
      */
     public final int getStart() {
-      return start;
+      return table.senseStart(index);
     }
 
     /**
@@ -66,7 +53,7 @@ public class ParaphraseResponse extends ResponseBase {
      * @return one past the last character offset
      */
     public final int getEnd() {
-      return end;
+      return table.senseEnd(index);
     }
 
     /**
@@ -76,7 +63,7 @@ public class ParaphraseResponse extends ResponseBase {
      * @return sense key
      */
     public final String getFsk() {
-      return fsk;
+      return table.fsk(index);
     }
     
     /**
@@ -86,13 +73,16 @@ public class ParaphraseResponse extends ResponseBase {
      * @return fine sense
      */
     public final String getFs() {
-      return fs;
+      return table.fs(index);
     }
     
     @Override
     public String toString() {
-      return fsk;
+      return getFsk();
     }
+    
+    final private ParaphraseTable table;
+    final private int index;
   }
   
   
@@ -100,36 +90,13 @@ public class ParaphraseResponse extends ResponseBase {
    * Class to represent one paraphrase
    */
   public static class Paraphrase {
-    private String text;
-    private String surface;
-    private double weight = 0.0;
-    private String transformations = "";
-    private ArrayList<Sense> senses = new ArrayList<>();
     
     /**
-     * Recreate from JSON stream
+     * Create a view on a paraphrase of a table
      */
-    Paraphrase(JsonParser jp) throws JsonParseException, IOException {
-      while (jp.nextToken() != JsonToken.END_OBJECT) {
-        char c = jp.getTextCharacters()[jp.getTextOffset()];
-        char c2 = jp.getTextCharacters()[jp.getTextOffset()+1];
-        jp.nextToken(); // move to value or end object
-        if (c == 't' && c2 == 'e')
-          text = jp.getText();
-        else if (c == 's' && c2 == 'e')  {
-          while (jp.nextToken() != JsonToken.END_ARRAY)
-            senses.add(new Sense(jp));
-          senses.trimToSize();
-        }
-        else if (c == 's')
-          surface = jp.getText();
-        else if (c == 'w')
-          weight = jp.getValueAsDouble();
-        else if (c == 't')
-          transformations = jp.getText();
-        else
-          jp.skipChildren();
-      }
+    Paraphrase(ParaphraseTable table, int index) {
+      this.table = table;
+      this.index = index;
     }
     
     /**
@@ -139,7 +106,7 @@ public class ParaphraseResponse extends ResponseBase {
      * @return plain text for the paraphrase.
      */
     public String getText() {
-      return text;
+      return table.text(index);
     }
     
     /**
@@ -151,7 +118,7 @@ public class ParaphraseResponse extends ResponseBase {
      * @return paraphrase text with quoted compounds
      */
     public String getSurface() {
-      return surface;
+      return table.surface(index);
     }
     
     /**
@@ -162,7 +129,7 @@ public class ParaphraseResponse extends ResponseBase {
      * @return paraphrase weight
      */
     public double getWeight() {
-      return weight;
+      return table.weight(index);
     }
     
     /**
@@ -171,7 +138,7 @@ public class ParaphraseResponse extends ResponseBase {
      * @return comma separated list of transformations
      */
     public String getTransformations() {
-      return transformations;
+      return table.transformations(index);
     }
     
     /**
@@ -181,7 +148,55 @@ public class ParaphraseResponse extends ResponseBase {
      * @return senses list
      */
     public List<Sense> getSenses() {
-      return senses;
+      return new Senses(table, table.firstSense(index), table.senseCount(index));
+    }
+    
+    final private ParaphraseTable table;
+    final private int index;
+  }
+  
+  
+  /** View on the senses of a paraphrase */
+  private static class Senses extends AbstractList<Sense> implements RandomAccess {
+    Senses(ParaphraseTable table, int first, int size) {
+      this.table = table;
+      this.first = first;
+      this.size = size;
+    }
+    
+    @Override
+    public Sense get(int index) {
+      if (index < 0 || index >= size)
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      return new Sense(table, first + index);
+    }
+    
+    @Override
+    public int size() {
+      return size;
+    }
+    
+    final private ParaphraseTable table;
+    final private int first;
+    final private int size;
+  }
+  
+  
+  /** View on the paraphrases of a response */
+  private class Paraphrases extends AbstractList<Paraphrase> implements RandomAccess {
+    @Override
+    public Paraphrase get(int index) {
+      LazyParaphrases l = lazy;
+      int size = l != null ? l.size() : count;
+      if (index < 0 || index >= size)
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      return l != null ? new Paraphrase(l.get(index), 0) : new Paraphrase(table, index);
+    }
+    
+    @Override
+    public int size() {
+      LazyParaphrases l = lazy;
+      return l != null ? l.size() : count;
     }
   }
   
@@ -223,7 +238,10 @@ public class ParaphraseResponse extends ResponseBase {
   
   
   /**
-   * Returns the generated paraphrases
+   * Returns the generated paraphrases. The paraphrases are stored in a compact
+   * columnar form; the list and its elements are read only views on it.
+   * When the response was received by a client decoding the paraphrases lazily,
+   * a paraphrase is decoded the first time it is accessed.
    *
    * @return paraphrases
    */
@@ -275,7 +293,33 @@ public class ParaphraseResponse extends ResponseBase {
    * @param p paraphrase
    */
   public final void addParaphrase(Paraphrase p) {
-    paraphrases.add(p);
+    writableTable().add(p.getText(), p.getSurface(), p.getWeight(), p.getTransformations());
+    for (Sense sense: p.getSenses())
+      table.addSense(sense.getStart(), sense.getEnd(), sense.getFsk(), sense.getFs());
+    ++count;
+  }
+  
+  /**
+   * Return the table of the paraphrases for appending to it. The table is copied
+   * when shared with another response.
+   */
+  final ParaphraseTable writableTable() {
+    if (lazy != null) {
+      table = lazy.toTable();
+      count = table.size();
+      lazy = null;
+    }
+    if (table.isShared())
+      table = table.copy(count);
+    return table;
+  }
+  
+  /**
+   * Record that paraphrases were appended to the table returned by {@link #writableTable()}.
+   */
+  final void paraphrasesAdded() {
+    table.trimToSize();
+    count = table.size();
   }
   
   /**
@@ -284,6 +328,27 @@ public class ParaphraseResponse extends ResponseBase {
   public ParaphraseResponse() {}
 
   
+  /**
+   * Create a copy sharing the paraphrases, the confidence and the annotated document
+   * of another response.
+   *
+   * @param other response copied
+   * @param requestId request id of the copy
+   */
+  ParaphraseResponse(ParaphraseResponse other, String requestId) {
+    setStatus(other.getStatus());
+    setErrorMsg(other.getErrorMsg());
+    setRequestId(requestId);
+    wsdResult = other.wsdResult;
+    queryConfidence = other.queryConfidence;
+    table = other.table;
+    count = other.count;
+    lazy = other.lazy;
+    // Neither response may append to the table anymore
+    table.share();
+  }
+
+  
   /**
    * Recreate from JSON stream
    *
@@ -293,6 +358,21 @@ public class ParaphraseResponse extends ResponseBase {
    * @throws IOException when failing to parse the JSON
    */
   ParaphraseResponse(JsonParser jp) throws JsonParseException, JsonProcessingException, IOException {
+    this(jp, null);
+  }
+
+  
+  /**
+   * Recreate from JSON text. With the text, the paraphrases are indexed but only
+   * decoded when accessed.
+   *
+   * @param  JsonParser positioned at the start of this object, reading json from its start
+   * @param  json JSON text of the response or null to decode the paraphrases immediately
+   * @throws JsonParseException when failing to parse the JSON
+   * @throws JsonProcessingException when failing to parse the JSON
+   * @throws IOException when failing to parse the JSON
+   */
+  ParaphraseResponse(JsonParser jp, byte[] json) throws JsonParseException, JsonProcessingException, IOException {
     while (jp.nextToken() != JsonToken.END_OBJECT) {
       char c = jp.getTextCharacters()[jp.getTextOffset()];
       jp.nextToken();
@@ -304,12 +384,24 @@ public class ParaphraseResponse extends ResponseBase {
         setStatus(jp.getValueAsInt());
       } else if (c == 'q') {
         // Start of an object. Process it all using the mapper
-        QueryConfidence qf = jp.readValueAs(QueryConfidence.class);
+        QueryConfidence qf = JsonCodecs.reader(QueryConfidence.class).readValue(jp);
         setQueryConfidence(qf);
+      } else if (c == 'p' && json != null) {
+        IntList offsets = new IntList();
+        while (jp.nextToken() != JsonToken.END_ARRAY) {
+          // The location can precede the separator of the element
+          int off = (int) jp.getTokenLocation().getByteOffset();
+          while (json[off] != '{')
+            ++off;
+          offsets.addInt(off);
+          jp.skipChildren();
+        }
+        lazy = new LazyParaphrases(json, offsets.toIntArray());
       } else if (c == 'p') {
+        ParaphraseTable t = writableTable();
         while (jp.nextToken() != JsonToken.END_ARRAY)
-          paraphrases.add(new Paraphrase(jp));
-        paraphrases.trimToSize();
+          t.parse(jp);
+        paraphrasesAdded();
       } else {
         jp.skipChildren();
       }
@@ -318,6 +410,9 @@ public class ParaphraseResponse extends ResponseBase {
   
   
   private DisambiguatedDocument wsdResult;
-  private ArrayList<Paraphrase> paraphrases = new ArrayList<Paraphrase>();
+  private ParaphraseTable table = new ParaphraseTable();
+  private int count;
+  private volatile LazyParaphrases lazy;
+  final private Paraphrases paraphrases = new Paraphrases();
   private QueryConfidence queryConfidence;
 }
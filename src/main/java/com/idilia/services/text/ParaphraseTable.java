@@ -0,0 +1,268 @@
+package com.idilia.services.text;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Columnar storage of the paraphrases of a {@link ParaphraseResponse}.
+ * <p>
+ * The members of the paraphrases and of their senses are stored in parallel arrays
+ * indexed by the position of the paraphrase or of the sense. The senses of a
+ * paraphrase are consecutive. The strings are recorded once per table in a dictionary
+ * and referenced by their position in it, -1 for null. The paraphrases and senses
+ * returned to the application are views on a position of the table.
+ * <p>
+ * The table is only appended to. Not multithread safe while appended to. A table
+ * marked as shared by several responses is no longer appended to; a response
+ * appending to it first makes its own copy.
+ */
+final class ParaphraseTable {
+
+  ParaphraseTable() {
+    this(4, 8);
+  }
+
+  private ParaphraseTable(int paraphrases, int senses) {
+    texts = new int[paraphrases];
+    surfaces = new int[paraphrases];
+    transformations = new int[paraphrases];
+    weights = new double[paraphrases];
+    firstSense = new int[paraphrases + 1];
+    senseStarts = new int[senses];
+    senseEnds = new int[senses];
+    fsks = new int[senses];
+    fss = new int[senses];
+    strings = new String[Math.max(8, senses)];
+    dictionary = new HashMap<>();
+  }
+
+  /**
+   * Return a copy of the first paraphrases of this table.
+   * @param n number of paraphrases copied
+   * @return new table
+   */
+  ParaphraseTable copy(int n) {
+    ParaphraseTable t = new ParaphraseTable(n, firstSense[n]);
+    for (int i = 0; i < n; ++i) {
+      t.add(string(texts[i]), string(surfaces[i]), weights[i], string(transformations[i]));
+      for (int s = firstSense[i]; s < firstSense[i + 1]; ++s)
+        t.addSense(senseStarts[s], senseEnds[s], string(fsks[s]), string(fss[s]));
+    }
+    return t;
+  }
+
+  /**
+   * Mark the table as referenced by several responses. It must not be appended to anymore.
+   */
+  void share() {
+    shared = true;
+  }
+
+  /**
+   * @return whether the table is referenced by several responses
+   */
+  boolean isShared() {
+    return shared;
+  }
+
+  /**
+   * Append a paraphrase without senses.
+   * @return position of the paraphrase
+   */
+  int add(String text, String surface, double weight, String transformation) {
+    if (size == texts.length) {
+      int cap = Math.max(4, size * 2);
+      texts = Arrays.copyOf(texts, cap);
+      surfaces = Arrays.copyOf(surfaces, cap);
+      transformations = Arrays.copyOf(transformations, cap);
+      weights = Arrays.copyOf(weights, cap);
+      firstSense = Arrays.copyOf(firstSense, cap + 1);
+    }
+    texts[size] = intern(text);
+    surfaces[size] = intern(surface);
+    weights[size] = weight;
+    transformations[size] = intern(transformation);
+    firstSense[size + 1] = firstSense[size];
+    return size++;
+  }
+
+  /**
+   * Append a sense to the last paraphrase.
+   */
+  void addSense(int start, int end, String fsk, String fs) {
+    int n = firstSense[size];
+    if (n == senseStarts.length) {
+      int cap = Math.max(8, n * 2);
+      senseStarts = Arrays.copyOf(senseStarts, cap);
+      senseEnds = Arrays.copyOf(senseEnds, cap);
+      fsks = Arrays.copyOf(fsks, cap);
+      fss = Arrays.copyOf(fss, cap);
+    }
+    senseStarts[n] = start;
+    senseEnds[n] = end;
+    fsks[n] = intern(fsk);
+    fss[n] = intern(fs);
+    ++firstSense[size];
+  }
+
+  /**
+   * Append a paraphrase read from a JSON stream.
+   * @param jp parser positioned at the start of the paraphrase object
+   * @return position of the paraphrase
+   * @throws JsonParseException when failing to parse the JSON
+   * @throws IOException when failing to parse the JSON
+   */
+  int parse(JsonParser jp) throws JsonParseException, IOException {
+    int p = add(null, null, 0.0, "");
+    while (jp.nextToken() != JsonToken.END_OBJECT) {
+      char c = jp.getTextCharacters()[jp.getTextOffset()];
+      char c2 = jp.getTextCharacters()[jp.getTextOffset()+1];
+      jp.nextToken(); // move to value or end object
+      if (c == 't' && c2 == 'e')
+        texts[p] = intern(jp.getText());
+      else if (c == 's' && c2 == 'e') {
+        while (jp.nextToken() != JsonToken.END_ARRAY)
+          parseSense(jp);
+      }
+      else if (c == 's')
+        surfaces[p] = intern(jp.getText());
+      else if (c == 'w')
+        weights[p] = jp.getValueAsDouble();
+      else if (c == 't')
+        transformations[p] = intern(jp.getText());
+      else
+        jp.skipChildren();
+    }
+    return p;
+  }
+
+  private void parseSense(JsonParser jp) throws JsonParseException, IOException {
+    int start = 0, end = 0;
+    String fsk = null, fs = null;
+    while (jp.nextToken() != JsonToken.END_OBJECT) {
+      String name = jp.getText();
+      jp.nextToken();
+      if (name.contentEquals("start"))
+        start = jp.getValueAsInt();
+      else if (name.contentEquals("end"))
+        end = jp.getValueAsInt();
+      else if (name.contentEquals("fsk"))
+        fsk = jp.getText();
+      else if (name.contentEquals("fs"))
+        fs = jp.getText();
+      else
+        jp.skipChildren();
+    }
+    addSense(start, end, fsk, fs);
+  }
+
+  /**
+   * Release the capacity beyond the content and the dictionary index. Called once the
+   * table is built.
+   */
+  void trimToSize() {
+    int ns = firstSense[size];
+    texts = Arrays.copyOf(texts, size);
+    surfaces = Arrays.copyOf(surfaces, size);
+    transformations = Arrays.copyOf(transformations, size);
+    weights = Arrays.copyOf(weights, size);
+    firstSense = Arrays.copyOf(firstSense, size + 1);
+    senseStarts = Arrays.copyOf(senseStarts, ns);
+    senseEnds = Arrays.copyOf(senseEnds, ns);
+    fsks = Arrays.copyOf(fsks, ns);
+    fss = Arrays.copyOf(fss, ns);
+    strings = Arrays.copyOf(strings, nStrings);
+    dictionary = null;
+  }
+
+  int size() {
+    return size;
+  }
+
+  String text(int p) {
+    return string(texts[p]);
+  }
+
+  String surface(int p) {
+    return string(surfaces[p]);
+  }
+
+  double weight(int p) {
+    return weights[p];
+  }
+
+  String transformations(int p) {
+    return string(transformations[p]);
+  }
+
+  /** @return position of the first sense of a paraphrase */
+  int firstSense(int p) {
+    return firstSense[p];
+  }
+
+  /** @return number of senses of a paraphrase */
+  int senseCount(int p) {
+    return firstSense[p + 1] - firstSense[p];
+  }
+
+  int senseStart(int s) {
+    return senseStarts[s];
+  }
+
+  int senseEnd(int s) {
+    return senseEnds[s];
+  }
+
+  String fsk(int s) {
+    return string(fsks[s]);
+  }
+
+  String fs(int s) {
+    return string(fss[s]);
+  }
+
+  private String string(int i) {
+    return i >= 0 ? strings[i] : null;
+  }
+
+  /** @return position of the string in the dictionary, added when new */
+  private int intern(String s) {
+    if (s == null)
+      return -1;
+    if (dictionary == null) {
+      dictionary = new HashMap<>();
+      for (int i = 0; i < nStrings; ++i)
+        dictionary.put(strings[i], i);
+    }
+    Integer i = dictionary.get(s);
+    if (i != null)
+      return i;
+    if (nStrings == strings.length)
+      strings = Arrays.copyOf(strings, Math.max(8, nStrings * 2));
+    strings[nStrings] = s;
+    dictionary.put(s, nStrings);
+    return nStrings++;
+  }
+
+  private int size;
+  private int[] texts;
+  private int[] surfaces;
+  private int[] transformations;
+  private double[] weights;
+  private int[] firstSense;
+
+  private int[] senseStarts;
+  private int[] senseEnds;
+  private int[] fsks;
+  private int[] fss;
+
+  private String[] strings;
+  private int nStrings;
+  private HashMap<String, Integer> dictionary;
+  private volatile boolean shared;
+}
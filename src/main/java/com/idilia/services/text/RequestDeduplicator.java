@@ -0,0 +1,203 @@
+package com.idilia.services.text;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import com.idilia.services.base.CacheKey;
+import com.idilia.services.base.IdiliaClientException;
+
+/**
+ * Collapses identical disambiguate and paraphrase requests into a single server call
+ * when attached to an {@link AsyncClient}.
+ * <p>
+ * Requests are identified by a hash of their content and of the parameters that
+ * affect the result (the same key as {@link DisambiguateCache} and {@link ParaphraseCache}).
+ * A request identical to one in progress waits for its response instead of being sent.
+ * With a window, the response also serves the identical requests received during the
+ * window following its arrival. Each waiter receives a copy of the response with its
+ * own request id. A failure is returned to all the waiters and is never retained.
+ * Requests processed offline (with a result URI) are always sent.
+ * <p>
+ * Multithread safe.
+ */
+public class RequestDeduplicator {
+
+  /**
+   * Set the duration for which a response is reused after it is received.
+   * Default is 0 (only requests in progress are shared).
+   * @param duration duration of the window
+   * @param unit unit of the duration
+   * @return this deduplicator
+   */
+  public RequestDeduplicator setWindow(long duration, TimeUnit unit) {
+    this.windowNanos = unit.toNanos(duration);
+    return this;
+  }
+
+  /**
+   * @return number of requests received
+   */
+  public long getSubmitted() {
+    return submitted.sum();
+  }
+
+  /**
+   * @return number of requests served with the response of an identical request
+   */
+  public long getDeduplicated() {
+    return deduplicated.sum();
+  }
+
+  /**
+   * @return fraction of the requests received that were not sent to the server
+   */
+  public double getRatio() {
+    long s = submitted.sum();
+    return s > 0 ? (double) deduplicated.sum() / s : 0;
+  }
+
+  /**
+   * Reset the counters.
+   */
+  public void resetStatistics() {
+    submitted.reset();
+    deduplicated.reset();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d submitted, %d deduplicated (%.1f%%)",
+        getSubmitted(), getDeduplicated(), getRatio() * 100);
+  }
+
+  /**
+   * Obtain the response of a disambiguate request.
+   * @param req request
+   * @param send function sending the request to the server
+   * @return a future set with a response for the request
+   * @throws IdiliaClientException when the request cannot be read or sent
+   */
+  CompletableFuture<DisambiguateResponse> disambiguate(DisambiguateRequest req,
+      Function<DisambiguateRequest, CompletableFuture<DisambiguateResponse>> send) throws IdiliaClientException {
+    String key;
+    try {
+      key = req.cacheKey();
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+    return share(key != null ? disambiguateNs + key : null, () -> send.apply(req), r -> {
+      // Read the documents once so that each waiter can stream them
+      try {
+        for (DisambiguatedDocument doc: r.getResults())
+          doc.getEncodedBytes();
+      } catch (IOException e) {
+        throw new IdiliaClientException(e);
+      }
+      return r;
+    }).thenApply(r -> new DisambiguateResponse(r, req.getRequestId()));
+  }
+
+  /**
+   * Obtain the response of a paraphrase request.
+   * @param req request
+   * @param send function sending the request to the server
+   * @return a future set with a response for the request
+   * @throws IdiliaClientException when the request cannot be sent
+   */
+  CompletableFuture<ParaphraseResponse> paraphrase(ParaphraseRequest req,
+      Function<ParaphraseRequest, CompletableFuture<ParaphraseResponse>> send) throws IdiliaClientException {
+    String key = req.cacheKey(Function.identity());
+    return share(key != null ? paraphraseNs + key : null, () -> send.apply(req), r -> {
+      try {
+        if (r.getWsdResult() != null)
+          r.getWsdResult().getEncodedBytes();
+      } catch (IOException e) {
+        throw new IdiliaClientException(e);
+      }
+      return r;
+    }).thenApply(r -> new ParaphraseResponse(r, req.getRequestId()));
+  }
+
+  /**
+   * Return the future of an identical request or send the request.
+   * @param key key of the request or null when it cannot be shared
+   * @param send function sending the request
+   * @param prepare function applied once to the response before it is shared
+   * @return future set with the shared response
+   */
+  private <R> CompletableFuture<R> share(String key, Supplier<CompletableFuture<R>> send, UnaryOperator<R> prepare) {
+    submitted.increment();
+    if (key == null)
+      return send.get();
+
+    long now = System.nanoTime();
+    if (windowNanos > 0 && (submitted.sum() & 1023) == 0)
+      entries.values().removeIf(e -> e.expired(now));
+
+    Entry created = new Entry();
+    Entry cur = entries.compute(key, (k, e) -> e != null && !e.expired(now) ? e : created);
+    if (cur != created) {
+      deduplicated.increment();
+      @SuppressWarnings("unchecked")
+      CompletableFuture<R> f = (CompletableFuture<R>) cur.future;
+      return f;
+    }
+
+    @SuppressWarnings("unchecked")
+    CompletableFuture<R> shared = (CompletableFuture<R>) created.future;
+    CompletableFuture<R> sent;
+    try {
+      sent = send.get();
+    } catch (RuntimeException e) {
+      entries.remove(key, created);
+      shared.completeExceptionally(e);
+      throw e;
+    }
+
+    sent.whenComplete((r, ex) -> {
+      R value = null;
+      if (ex == null) {
+        try {
+          value = prepare.apply(r);
+        } catch (RuntimeException e) {
+          ex = e;
+        }
+      }
+      if (ex != null || windowNanos == 0)
+        entries.remove(key, created);
+      else
+        created.expiresAt = System.nanoTime() + windowNanos;
+      created.done = true;
+      if (ex != null)
+        shared.completeExceptionally(ex);
+      else
+        shared.complete(value);
+    });
+    return shared;
+  }
+
+  /** A request in progress or a response retained */
+  private static class Entry {
+    boolean expired(long now) {
+      return done && now - expiresAt >= 0;
+    }
+
+    final CompletableFuture<Object> future = new CompletableFuture<>();
+    volatile long expiresAt;
+    volatile boolean done;
+  }
+
+  final private static String disambiguateNs = CacheKey.of("text/disambiguate");
+  final private static String paraphraseNs = CacheKey.of("text/paraphrase");
+
+  final private ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+  final private LongAdder submitted = new LongAdder();
+  final private LongAdder deduplicated = new LongAdder();
+  private volatile long windowNanos;
+}
@@ -0,0 +1,264 @@
+package com.idilia.services.text;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.idilia.services.base.BinaryReader;
+import com.idilia.services.base.BinaryWriter;
+import com.idilia.services.base.CacheCodec;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.ResponseBase;
+
+/**
+ * Compact binary codecs for the responses of the text services. Suitable to record
+ * responses in a byte oriented cache or file.
+ * <p>
+ * The payloads start with a format version. A payload written by another version
+ * is rejected with an {@link IdiliaClientException}.
+ */
+public final class TextBinaryCodec {
+
+  /** Codec of a paraphrase response, including its annotated document when present */
+  final public static CacheCodec<ParaphraseResponse> PARAPHRASE = new CacheCodec<ParaphraseResponse>() {
+    @Override
+    public byte[] encode(ParaphraseResponse r) {
+      BinaryWriter w = header(r.getStatus(), r.getErrorMsg(), r.getRequestId());
+      ParaphraseResponse.QueryConfidence qc = r.getQueryConfidence();
+      w.writeBoolean(qc != null);
+      if (qc != null) {
+        w.writeNullableDouble(qc.confCorrectFineMostProbable);
+        w.writeNullableDouble(qc.confCorrectFinePresent);
+        w.writeNullableDouble(qc.confCorrectCoarseMostProbable);
+        w.writeNullableDouble(qc.confCorrectCoarsePresent);
+      }
+      w.writeVarInt(r.getParaphrases().size());
+      for (ParaphraseResponse.Paraphrase p: r.getParaphrases()) {
+        w.writeString(p.getText()).writeString(p.getSurface()).writeDouble(p.getWeight());
+        w.writeString(p.getTransformations());
+        w.writeVarInt(p.getSenses().size());
+        for (ParaphraseResponse.Sense s: p.getSenses())
+          w.writeVarInt(s.getStart()).writeVarInt(s.getEnd()).writeString(s.getFsk()).writeString(s.getFs());
+      }
+      w.writeBoolean(r.getWsdResult() != null);
+      if (r.getWsdResult() != null)
+        writeDocument(w, r.getWsdResult());
+      return w.toByteArray();
+    }
+
+    @Override
+    public ParaphraseResponse decode(byte[] bytes) {
+      BinaryReader rd = reader(bytes);
+      ParaphraseResponse r = new ParaphraseResponse();
+      readHeader(rd, r);
+      if (rd.readBoolean()) {
+        ParaphraseResponse.QueryConfidence qc = new ParaphraseResponse.QueryConfidence();
+        qc.confCorrectFineMostProbable = rd.readNullableDouble();
+        qc.confCorrectFinePresent = rd.readNullableDouble();
+        qc.confCorrectCoarseMostProbable = rd.readNullableDouble();
+        qc.confCorrectCoarsePresent = rd.readNullableDouble();
+        r.setQueryConfidence(qc);
+      }
+      ParaphraseTable t = r.writableTable();
+      for (int n = rd.readVarInt(); n > 0; --n) {
+        t.add(rd.readString(), rd.readString(), rd.readDouble(), rd.readString());
+        for (int ns = rd.readVarInt(); ns > 0; --ns)
+          t.addSense(rd.readVarInt(), rd.readVarInt(), rd.readString(), rd.readString());
+      }
+      r.paraphrasesAdded();
+      if (rd.readBoolean())
+        r.setWsdResult(readDocument(rd));
+      return r;
+    }
+  };
+
+  /** Codec of a match response */
+  final public static CacheCodec<MatchResponse> MATCH = new CacheCodec<MatchResponse>() {
+    @Override
+    public byte[] encode(MatchResponse r) {
+      BinaryWriter w = header(r.getStatus(), r.getErrorMsg(), r.getRequestId());
+      w.writeBoolean(r.result != null);
+      if (r.result != null) {
+        w.writeBoolean(r.result.match);
+        w.writeVarInt(size(r.result.matches));
+        if (r.result.matches != null)
+          for (MatchResponse.FskMatchResult m: r.result.matches) {
+            w.writeString(m.fsk);
+            w.writeVarInt(size(m.sks));
+            if (m.sks != null)
+              for (MatchResponse.SenseMatch s: m.sks) {
+                w.writeString(s.foundSk).writeNullableDouble(s.conf);
+                writeInts(w, s.position);
+                w.writeVarInt(size(s.reasons));
+                if (s.reasons != null)
+                  for (String reason: s.reasons)
+                    w.writeString(reason);
+              }
+            w.writeBoolean(m.kws != null);
+            if (m.kws != null) {
+              writeKeywords(w, m.kws.positive);
+              writeKeywords(w, m.kws.negative);
+            }
+          }
+      }
+      w.writeBoolean(r.wsd != null);
+      if (r.wsd != null)
+        w.writeString(r.wsd.mime).writeString(r.wsd.data);
+      return w.toByteArray();
+    }
+
+    @Override
+    public MatchResponse decode(byte[] bytes) {
+      BinaryReader rd = reader(bytes);
+      MatchResponse r = new MatchResponse();
+      readHeader(rd, r);
+      if (rd.readBoolean()) {
+        r.result = new MatchResponse.MatchResult();
+        r.result.match = rd.readBoolean();
+        int n = rd.readVarInt() - 1;
+        if (n >= 0) {
+          r.result.matches = new ArrayList<>(n);
+          for (; n > 0; --n) {
+            MatchResponse.FskMatchResult m = new MatchResponse.FskMatchResult();
+            m.fsk = rd.readString();
+            int ns = rd.readVarInt() - 1;
+            if (ns >= 0) {
+              m.sks = new ArrayList<>(ns);
+              for (; ns > 0; --ns) {
+                MatchResponse.SenseMatch s = new MatchResponse.SenseMatch();
+                s.foundSk = rd.readString();
+                s.conf = rd.readNullableDouble();
+                s.position = readInts(rd);
+                int nr = rd.readVarInt() - 1;
+                if (nr >= 0) {
+                  s.reasons = new ArrayList<>(nr);
+                  for (; nr > 0; --nr)
+                    s.reasons.add(rd.readString());
+                }
+                m.sks.add(s);
+              }
+            }
+            if (rd.readBoolean()) {
+              m.kws = new MatchResponse.KeywordMatches();
+              m.kws.positive = readKeywords(rd);
+              m.kws.negative = readKeywords(rd);
+            }
+            r.result.matches.add(m);
+          }
+        }
+      }
+      if (rd.readBoolean()) {
+        r.wsd = new MatchResponse.WSD();
+        r.wsd.mime = rd.readString();
+        r.wsd.data = rd.readString();
+      }
+      return r;
+    }
+  };
+
+  /** Codec of a disambiguated document */
+  final public static CacheCodec<DisambiguatedDocument> DISAMBIGUATED_DOCUMENT = new CacheCodec<DisambiguatedDocument>() {
+    @Override
+    public byte[] encode(DisambiguatedDocument doc) {
+      BinaryWriter w = new BinaryWriter(64).writeByte(VERSION);
+      writeDocument(w, doc);
+      return w.toByteArray();
+    }
+
+    @Override
+    public DisambiguatedDocument decode(byte[] bytes) {
+      return readDocument(reader(bytes));
+    }
+  };
+
+  private static BinaryWriter header(int status, String errorMsg, String requestId) {
+    return new BinaryWriter(256).writeByte(VERSION)
+        .writeVarInt(status).writeString(errorMsg).writeString(requestId);
+  }
+
+  private static BinaryReader reader(byte[] bytes) {
+    BinaryReader rd = new BinaryReader(bytes);
+    if (rd.readByte() != VERSION)
+      throw new IdiliaClientException("Unsupported binary format version");
+    return rd;
+  }
+
+  private static void readHeader(BinaryReader rd, ResponseBase r) {
+    r.setStatus(rd.readVarInt());
+    r.setErrorMsg(rd.readString());
+    r.setRequestId(rd.readString());
+  }
+
+  private static void writeDocument(BinaryWriter w, DisambiguatedDocument doc) {
+    try {
+      w.writeString(doc.getResultMime()).writeString(doc.getEncoding()).writeBytes(doc.getEncodedBytes());
+    } catch (IOException e) {
+      throw new IdiliaClientException(e);
+    }
+  }
+
+  private static DisambiguatedDocument readDocument(BinaryReader rd) {
+    return new DisambiguatedDocument(rd.readString(), rd.readString(), rd.readBytes());
+  }
+
+  /** Size of a list plus one, 0 for a null list */
+  private static int size(List<?> l) {
+    return l != null ? l.size() + 1 : 0;
+  }
+
+  /**
+   * Write a list of integers. The size is followed by a flag set when the list holds
+   * nulls, in which case each value is preceded by its presence.
+   */
+  private static void writeInts(BinaryWriter w, ArrayList<Integer> l) {
+    boolean nulls = l != null && l.contains(null);
+    w.writeVarInt(size(l) << 1 | (nulls ? 1 : 0));
+    if (l == null)
+      return;
+    for (Integer v: l) {
+      if (nulls)
+        w.writeBoolean(v != null);
+      if (v != null)
+        w.writeSignedVarInt(v);
+    }
+  }
+
+  private static ArrayList<Integer> readInts(BinaryReader rd) {
+    int h = rd.readVarInt();
+    int n = (h >>> 1) - 1;
+    if (n < 0)
+      return null;
+    boolean nulls = (h & 1) != 0;
+    ArrayList<Integer> l = new ArrayList<>(n);
+    for (; n > 0; --n)
+      l.add(!nulls || rd.readBoolean() ? rd.readSignedVarInt() : null);
+    return l;
+  }
+
+  private static void writeKeywords(BinaryWriter w, ArrayList<MatchResponse.KeywordMatch> l) {
+    w.writeVarInt(size(l));
+    if (l != null)
+      for (MatchResponse.KeywordMatch k: l) {
+        w.writeString(k.kw);
+        writeInts(w, k.position);
+      }
+  }
+
+  private static ArrayList<MatchResponse.KeywordMatch> readKeywords(BinaryReader rd) {
+    int n = rd.readVarInt() - 1;
+    if (n < 0)
+      return null;
+    ArrayList<MatchResponse.KeywordMatch> l = new ArrayList<>(n);
+    for (; n > 0; --n) {
+      MatchResponse.KeywordMatch k = new MatchResponse.KeywordMatch();
+      k.kw = rd.readString();
+      k.position = readInts(rd);
+      l.add(k);
+    }
+    return l;
+  }
+
+  private TextBinaryCodec() {}
+
+  final private static byte VERSION = 2;
+}
@@ -0,0 +1,63 @@
+package com.idilia.services.base;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.message.BasicNameValuePair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares encoding a kb/query form as done before {@link FormBody} (query bytes
+ * converted to a String and encoded by {@link UrlEncodedFormEntity}) with {@link FormBody}.
+ * Run with: mvn -Pbenchmarks clean test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=com.idilia.services.base.FormBodyBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FormBodyBenchmark {
+
+  byte[] query;
+
+  /** Query of 200 templates */
+  @Setup
+  public void setup() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < 200; ++i)
+      sb.append(i > 0 ? "," : "").append("{\"lemma\":\"café ").append(i).append("\",\"fs\":null,\"definition\":null}");
+    query = sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public HttpEntity urlEncodedForm() {
+    List<NameValuePair> parms = new ArrayList<>();
+    parms.add(new BasicNameValuePair("requestId", "r1"));
+    parms.add(new BasicNameValuePair("query", new String(query, StandardCharsets.UTF_8)));
+    return new UrlEncodedFormEntity(parms, StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public HttpEntity formBody() throws IOException {
+    return new FormBody(query.length + query.length / 8 + 16).add("requestId", "r1")
+        .add(new FormBody.Utf8Pair("query", query)).toEntity();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(FormBodyBenchmark.class.getSimpleName()).forks(1).build()).run();
+  }
+}
@@ -0,0 +1,64 @@
+package com.idilia.services.base;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import com.idilia.services.kb.QueryRequest;
+
+public class FormBodyTest {
+
+  static final String[] values = {
+      "plain", "with space", "a&b=c+d%e", "[{\"fs\":null}]", "_-.*~!'()", "café naïve",
+      "漢字", "emoji 😀 end", "lone \ud83d surrogate", "tab\tnew\nline", ""
+  };
+
+  @Test
+  public void testSameAsUrlEncodedForm() throws Exception {
+    for (String v: values) {
+      List<NameValuePair> parms = Arrays.asList(new BasicNameValuePair("text", v),
+          new BasicNameValuePair("näme", "x"), new BasicNameValuePair("flag", null));
+      byte[] expected = EntityUtils.toByteArray(new UrlEncodedFormEntity(parms, StandardCharsets.UTF_8));
+
+      FormBody form = new FormBody(0);
+      for (NameValuePair p: parms)
+        form.add(p);
+      assertArrayEquals(v, expected, form.toByteArray());
+
+      // Same from the bytes
+      form = new FormBody(0);
+      form.add(new FormBody.Utf8Pair("text", v.getBytes(StandardCharsets.UTF_8)));
+      form.add("näme", "x").add("flag", (String) null);
+      assertArrayEquals(v, expected, form.toByteArray());
+    }
+  }
+
+  @Test
+  public void testEntity() throws Exception {
+    HttpEntity e = new FormBody(4).add("a", "1").add("b", "2 3").toEntity();
+    assertEquals("application/x-www-form-urlencoded; charset=UTF-8", e.getContentType().getValue());
+    assertEquals(9, e.getContentLength());
+    assertEquals("a=1&b=2+3", EntityUtils.toString(e));
+  }
+
+  @Test
+  public void testRequestContent() throws Exception {
+    String q = "[{\"lemma\":\"café\",\"fs\":null}]";
+    QueryRequest req = new QueryRequest(q);
+    req.setRequestId("r 1");
+    assertArrayEquals(q.getBytes(StandardCharsets.UTF_8), req.toSign());
+    List<NameValuePair> parms = Arrays.asList(new BasicNameValuePair("requestId", "r 1"), new BasicNameValuePair("query", q));
+    assertEquals(EntityUtils.toString(new UrlEncodedFormEntity(parms, StandardCharsets.UTF_8)),
+        EntityUtils.toString(req.getContent()));
+  }
+}
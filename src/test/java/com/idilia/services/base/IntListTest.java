@@ -0,0 +1,54 @@
+package com.idilia.services.base;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class IntListTest {
+
+  @Test
+  public void testGrowAndView() {
+    IntList l = new IntList();
+    for (int i = 0; i < 10; ++i)
+      l.addInt(i * 2);
+    assertEquals(10, l.size());
+    assertEquals(18, l.getInt(9));
+    assertEquals(Integer.valueOf(4), l.get(2));
+    l.set(0, 7);
+    l.trimToSize();
+    assertArrayEquals(new int[] { 7, 2, 4, 6, 8, 10, 12, 14, 16, 18 }, l.toIntArray());
+    assertEquals(Arrays.asList(1, 2), new IntList(new int[] { 1, 2 }));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testOutOfBounds() {
+    IntList l = new IntList(new int[4]);
+    l.clear();
+    l.getInt(0);
+  }
+
+  @Test
+  public void testDoubleList() {
+    DoubleList a = new DoubleList(new double[] { 1.0, -1.0 });
+    DoubleList b = new DoubleList();
+    b.add(null);
+    b.addDouble(0.5);
+    a.addAll(b);
+    assertEquals(4, a.size());
+    assertEquals(0.5, a.getDouble(3), 0);
+    assertEquals(Double.valueOf(Double.NaN), a.get(2));
+  }
+
+  @Test
+  public void testJson() throws Exception {
+    ObjectMapper mapper = JsonCodecs.mapper();
+    IntList l = mapper.readValue("[3,-1,7]", IntList.class);
+    assertArrayEquals(new int[] { 3, -1, 7 }, l.toIntArray());
+    assertEquals("[3,-1,7]", mapper.writeValueAsString(l));
+  }
+}
@@ -0,0 +1,42 @@
+package com.idilia.services.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+public class JsonCodecsTest {
+
+  @Test
+  public void testCachedReaders() throws Exception {
+    ObjectReader r = JsonCodecs.reader(ResponseBase.class);
+    assertSame(r, JsonCodecs.reader(ResponseBase.class));
+    assertSame(JsonCodecs.writer(ResponseBase.class), JsonCodecs.writer(ResponseBase.class));
+
+    ResponseBase resp = r.readValue("{\"status\":404,\"errorMsg\":\"not found\",\"requestId\":\"x\"}");
+    assertEquals(404, resp.getStatus());
+    assertEquals("not found", resp.getErrorMsg());
+    assertEquals("x", resp.getRequestId());
+
+    ResponseBase back = r.readValue(JsonCodecs.writer(ResponseBase.class).writeValueAsBytes(resp));
+    assertEquals(404, back.getStatus());
+  }
+
+  @Test
+  public void testConfigure() throws Exception {
+    ObjectReader r = JsonCodecs.reader(ResponseBase.class);
+    JsonCodecs.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
+    try {
+      ObjectReader r2 = JsonCodecs.reader(ResponseBase.class);
+      assertNotSame(r, r2);
+      ResponseBase resp = r2.readValue("{/* comment */ \"status\":200}");
+      assertEquals(200, resp.getStatus());
+    } finally {
+      JsonCodecs.configure(JsonParser.Feature.ALLOW_COMMENTS, false);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.idilia.services.base;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.idilia.services.base.PriorityScheduler.Priority;
+
+public class PrioritySchedulerTest {
+
+  final ArrayDeque<PriorityScheduler.Slot> active = new ArrayDeque<>();
+  final List<Priority> dispatched = new ArrayList<>();
+
+  void submit(PriorityScheduler s, Priority p) {
+    s.submit(p, slot -> {
+      dispatched.add(p);
+      active.add(slot);
+    });
+  }
+
+  @Test
+  public void testReservedSlots() {
+    PriorityScheduler s = new PriorityScheduler(4).setPriority(Priority.INTERACTIVE, 1, 8);
+    for (int i = 0; i < 10; ++i)
+      submit(s, Priority.BULK);
+    assertEquals(3, s.getActive(Priority.BULK));
+    assertEquals(7, s.getQueued(Priority.BULK));
+
+    // Bulk requests cannot take the reserved slot
+    submit(s, Priority.INTERACTIVE);
+    assertEquals(1, s.getActive(Priority.INTERACTIVE));
+    assertEquals(0, s.getQueued(Priority.INTERACTIVE));
+
+    // The interactive request also competes for the shared slots
+    submit(s, Priority.INTERACTIVE);
+    assertEquals(1, s.getQueued(Priority.INTERACTIVE));
+    active.poll().release();
+    assertEquals(2, s.getActive(Priority.INTERACTIVE));
+    assertEquals(2, s.getActive(Priority.BULK));
+
+    // Releasing twice has no effect
+    PriorityScheduler.Slot slot = active.poll();
+    slot.release();
+    slot.release();
+    assertEquals(2, s.getActive(Priority.BULK));
+    assertEquals(6, s.getQueued(Priority.BULK));
+  }
+
+  @Test
+  public void testWeights() {
+    PriorityScheduler s = new PriorityScheduler(1)
+        .setPriority(Priority.NORMAL, 0, 3)
+        .setPriority(Priority.BULK, 0, 1);
+    for (int i = 0; i < 40; ++i) {
+      submit(s, Priority.NORMAL);
+      submit(s, Priority.BULK);
+    }
+    dispatched.clear();
+    for (int i = 0; i < 40; ++i)
+      active.poll().release();
+    assertEquals(30, dispatched.stream().filter(p -> p == Priority.NORMAL).count());
+    assertEquals(10, dispatched.stream().filter(p -> p == Priority.BULK).count());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOverReserved() {
+    new PriorityScheduler(4).setPriority(Priority.INTERACTIVE, 3, 1).setPriority(Priority.BULK, 2, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoCapacity() {
+    new PriorityScheduler(0);
+  }
+}
@@ -0,0 +1,104 @@
+package com.idilia.services.base;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentFileStoreTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  static byte[] value(int n, int len) {
+    byte[] b = new byte[len];
+    for (int i = 0; i < len; ++i)
+      b[i] = (byte) (n + i);
+    return b;
+  }
+
+  @Test
+  public void testPersistsAcrossReopen() throws IOException {
+    Path dir = tmp.getRoot().toPath();
+    try (SegmentFileStore store = new SegmentFileStore(dir, 1024, 1 << 20)) {
+      for (int i = 0; i < 20; ++i)
+        store.put("k" + i, value(i, 100));
+      store.put("k3", value(99, 10));
+      store.remove("k4");
+    }
+
+    try (SegmentFileStore store = new SegmentFileStore(dir, 1024, 1 << 20)) {
+      assertEquals(19, store.size());
+      assertArrayEquals(value(0, 100), store.get("k0"));
+      assertArrayEquals(value(99, 10), store.get("k3"));
+      assertNull(store.get("k4"));
+      assertArrayEquals(value(19, 100), store.get("k19"));
+    }
+  }
+
+  @Test
+  public void testPartialRecordDiscarded() throws IOException {
+    Path dir = tmp.getRoot().toPath();
+    try (SegmentFileStore store = new SegmentFileStore(dir, 1 << 16, 1 << 20)) {
+      store.put("a", value(1, 50));
+      store.put("b", value(2, 50));
+    }
+
+    // Simulate a crash in the middle of writing the last record
+    Path seg = dir.resolve("seg-00000000.dat");
+    try (FileChannel ch = FileChannel.open(seg, StandardOpenOption.WRITE)) {
+      ch.truncate(ch.size() - 10);
+    }
+
+    try (SegmentFileStore store = new SegmentFileStore(dir, 1 << 16, 1 << 20)) {
+      assertArrayEquals(value(1, 50), store.get("a"));
+      assertNull(store.get("b"));
+      store.put("c", value(3, 50));
+      assertArrayEquals(value(3, 50), store.get("c"));
+    }
+  }
+
+  @Test
+  public void testSizeBounded() throws IOException {
+    try (SegmentFileStore store = new SegmentFileStore(tmp.getRoot().toPath(), 1024, 4096)) {
+      for (int i = 0; i < 200; ++i)
+        store.put("k" + i, value(i, 100));
+      assertTrue(store.getTotalBytes() <= 4096);
+      assertArrayEquals(value(199, 100), store.get("k199"));
+      assertNull(store.get("k0"));
+
+      // Rewriting the same keys must not grow the store past its bound
+      for (int i = 0; i < 200; ++i)
+        store.put("k199", value(i, 100));
+      assertTrue(store.getTotalBytes() <= 4096);
+      assertArrayEquals(value(199, 100), store.get("k199"));
+    }
+  }
+
+  @Test
+  public void testForEach() throws IOException {
+    try (SegmentFileStore store = new SegmentFileStore(tmp.getRoot().toPath(), 1024, 1 << 20)) {
+      for (int i = 0; i < 20; ++i)
+        store.put("k" + i, value(i, 100));
+      store.put("k3", value(99, 10));
+      store.removeByPrefix("k1");
+
+      // Oldest first, without the removed keys
+      List<String> keys = new ArrayList<>();
+      store.forEach((k, v) -> keys.add(k));
+      assertEquals(Arrays.asList("k0", "k2", "k4", "k5", "k6", "k7", "k8", "k9", "k3"), keys);
+    }
+  }
+}
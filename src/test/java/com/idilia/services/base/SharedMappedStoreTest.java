@@ -0,0 +1,128 @@
+package com.idilia.services.base;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SharedMappedStoreTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  static byte[] value(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testVisibleToOtherAttachments() throws IOException {
+    Path file = tmp.getRoot().toPath().resolve("cache.shm");
+    try (SharedMappedStore a = new SharedMappedStore(file, 64, 256);
+        SharedMappedStore b = new SharedMappedStore(file, 1, 64)) {
+      a.put("dog/N1", value("card of dog"));
+      assertArrayEquals(value("card of dog"), b.get("dog/N1"));
+
+      b.put("dog/N1", value("new card"));
+      assertArrayEquals(value("new card"), a.get("dog/N1"));
+      assertEquals(1, a.size());
+
+      b.remove("dog/N1");
+      assertNull(a.get("dog/N1"));
+    }
+
+    // Content survives the detachment of all processes
+    try (SharedMappedStore a = new SharedMappedStore(file, 64, 256)) {
+      a.put("cat/N1", value("card of cat"));
+    }
+    try (SharedMappedStore a = new SharedMappedStore(file, 64, 256)) {
+      assertArrayEquals(value("card of cat"), a.get("cat/N1"));
+    }
+  }
+
+  @Test
+  public void testBounded() throws IOException {
+    try (SharedMappedStore s = new SharedMappedStore(tmp.getRoot().toPath().resolve("c"), 16, 128)) {
+      for (int i = 0; i < 100; ++i)
+        s.put("k" + i, value("v" + i));
+      assertTrue(s.size() <= 16);
+      assertArrayEquals(value("v99"), s.get("k99"));
+
+      // Too large for a slot
+      s.put("big", new byte[200]);
+      assertNull(s.get("big"));
+
+      s.clear();
+      assertEquals(0, s.size());
+    }
+  }
+
+  @Test
+  public void testEncodedNamespaces() throws IOException {
+    try (SharedMappedStore s = new SharedMappedStore(tmp.getRoot().toPath().resolve("c"), 16, 256)) {
+      EncodedResponseCache<ResponseBase> c1 = new EncodedResponseCache<>(s, "one", new JsonCacheCodec<>(ResponseBase.class));
+      EncodedResponseCache<ResponseBase> c2 = new EncodedResponseCache<>(s, "two", new JsonCacheCodec<>(ResponseBase.class));
+      c1.put("k", new ResponseBase(200, "from one"));
+      assertEquals("from one", c1.get("k").getErrorMsg());
+      assertNull(c2.get("k"));
+    }
+  }
+
+  @Test
+  public void testClearNamespace() throws IOException {
+    Path file = tmp.getRoot().toPath().resolve("c");
+    try (SharedMappedStore s = new SharedMappedStore(file, 1024, 256);
+        SharedMappedStore other = new SharedMappedStore(file, 1024, 256)) {
+      EncodedResponseCache<ResponseBase> c1 = new EncodedResponseCache<>(s, "one", new JsonCacheCodec<>(ResponseBase.class));
+      EncodedResponseCache<ResponseBase> c2 = new EncodedResponseCache<>(other, "two", new JsonCacheCodec<>(ResponseBase.class));
+      for (int i = 0; i < 5; ++i) {
+        c1.put("k" + i, new ResponseBase(200, "from one"));
+        c2.put("k" + i, new ResponseBase(200, "from two"));
+      }
+      s.put("raw", value("not in a namespace"));
+
+      // Clearing a namespace keeps the entries of the other namespaces and processes
+      c1.clear();
+      for (int i = 0; i < 5; ++i) {
+        assertNull(c1.get("k" + i));
+        assertEquals("from two", c2.get("k" + i).getErrorMsg());
+      }
+      assertArrayEquals(value("not in a namespace"), other.get("raw"));
+      assertEquals(6, s.size());
+
+      s.removeByPrefix("ra");
+      assertNull(s.get("raw"));
+      assertEquals(5, s.size());
+    }
+  }
+
+  @Test
+  public void testUndecodable() throws IOException {
+    try (SharedMappedStore s = new SharedMappedStore(tmp.getRoot().toPath().resolve("c"), 16, 256)) {
+      EncodedResponseCache<ResponseBase> c = new EncodedResponseCache<>(s, "one", new JsonCacheCodec<>(ResponseBase.class));
+      c.put("good", new ResponseBase(200, "ok"));
+      // Recorded by another version or damaged
+      s.put(CacheKey.of("one") + "bad", new byte[] { 1, 2, 3 });
+
+      List<String> keys = new ArrayList<>();
+      c.forEach((k, v) -> keys.add(k));
+      assertEquals(Arrays.asList("good"), keys);
+      assertEquals(1, s.size());
+
+      s.put(CacheKey.of("one") + "bad", new byte[] { 1, 2, 3 });
+      assertNull(c.get("bad"));
+      assertNull(s.get(CacheKey.of("one") + "bad"));
+      assertEquals("ok", c.get("good").getErrorMsg());
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package com.idilia.services.base;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TieredResponseCacheTest {
+
+  static final CacheCodec<String> codec = new CacheCodec<String>() {
+    @Override
+    public byte[] encode(String v) {
+      return v.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String decode(byte[] b) {
+      return new String(b, StandardCharsets.UTF_8);
+    }
+  };
+
+  @Test
+  public void testOffHeapStore() {
+    OffHeapStore store = new OffHeapStore(16, 32);
+    store.put("a", new byte[10]);
+    store.put("b", new byte[] { 1, 2, 3 });
+    assertArrayEquals(new byte[] { 1, 2, 3 }, store.get("b"));
+    assertEquals(13, store.getLiveBytes());
+    assertEquals(16, store.getAllocatedBytes());
+
+    // Fills the second slab, then recycles the first one
+    store.put("c", new byte[12]);
+    store.put("d", new byte[12]);
+    assertNull(store.get("a"));
+    assertNull(store.get("b"));
+    assertEquals(2, store.size());
+    assertEquals(24, store.getLiveBytes());
+    assertEquals(32, store.getAllocatedBytes());
+
+    // Too large for a slab
+    store.put("e", new byte[17]);
+    assertNull(store.get("e"));
+
+    store.remove("c");
+    assertEquals(12, store.getLiveBytes());
+    store.clear();
+    assertEquals(0, store.size());
+    assertEquals(0, store.getLiveBytes());
+  }
+
+  @Test
+  public void testDemotionAndPromotion() {
+    OffHeapStore store = new OffHeapStore(1024, 4096);
+    TieredResponseCache<String> cache = new TieredResponseCache<>(
+        2, 0, String::length, new EncodedResponseCache<>(store, "test", codec));
+
+    cache.put("a", "alpha");
+    cache.put("b", "beta");
+    assertEquals(9, cache.getFirstTierBytes());
+    assertEquals(0, store.size());
+
+    // Evicting "a" from the first tier demotes it
+    cache.put("c", "gamma");
+    assertEquals(9, cache.getFirstTierBytes());
+    assertEquals(1, store.size());
+    assertEquals(5, store.getLiveBytes());
+    assertEquals(3, cache.size());
+
+    // Reading "a" promotes it and demotes "b"
+    assertEquals("alpha", cache.get("a"));
+    assertEquals(1, store.size());
+    assertEquals(4, store.getLiveBytes());
+    assertEquals("beta", cache.get("b"));
+
+    // Replacing a demoted response removes the stale copy
+    cache.put("c", "delta");
+    assertEquals("delta", cache.get("c"));
+
+    cache.remove("a");
+    assertNull(cache.get("a"));
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertNull(cache.get("b"));
+  }
+
+  @Test
+  public void testByteBound() {
+    OffHeapStore store = new OffHeapStore(1024, 4096);
+    TieredResponseCache<String> cache = new TieredResponseCache<>(
+        100, 10, String::length, new EncodedResponseCache<>(store, "test", codec));
+    cache.put("a", "12345");
+    cache.put("b", "12345");
+    cache.put("c", "12345");
+    assertEquals(10, cache.getFirstTierBytes());
+    assertEquals(5, store.getLiveBytes());
+    assertEquals("12345", cache.get("a"));
+    assertEquals(1, cache.getFirstTier().getMissCount());
+  }
+
+  @Test
+  public void testSharedStore() {
+    OffHeapStore store = new OffHeapStore(1024, 4096);
+    TieredResponseCache<String> one = new TieredResponseCache<>(
+        1, 0, String::length, new EncodedResponseCache<>(store, "one", codec));
+    TieredResponseCache<String> two = new TieredResponseCache<>(
+        1, 0, String::length, new EncodedResponseCache<>(store, "two", codec));
+    for (String k: new String[] { "a", "b", "c" }) {
+      one.put(k, "one " + k);
+      two.put(k, "two " + k);
+    }
+    assertEquals(4, store.size());
+
+    // Clearing a cache keeps the demoted responses of the other
+    one.clear();
+    assertEquals(2, store.size());
+    assertNull(one.get("a"));
+    assertEquals("two a", two.get("a"));
+    assertEquals("two b", two.get("b"));
+  }
+
+  @Test
+  public void testOffHeapStoreOrder() {
+    OffHeapStore store = new OffHeapStore(64, 256);
+    for (int i = 0; i < 20; ++i)
+      store.put("k" + i, new byte[] { (byte) i });
+    store.put("k3", new byte[] { 3 });
+
+    List<String> keys = new ArrayList<>();
+    store.forEach((k, v) -> keys.add(k));
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 20; ++i)
+      if (i != 3)
+        expected.add("k" + i);
+    expected.add("k3");
+    assertEquals(expected, keys);
+  }
+}
@@ -0,0 +1,241 @@
+package com.idilia.services.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.IdiliaCredentials;
+import com.idilia.services.base.ResponseBase;
+import com.idilia.services.text.AsyncClient;
+import com.idilia.services.text.DisambiguateRequest;
+import com.idilia.services.text.DisambiguateResponse;
+import com.idilia.services.text.DisambiguatedDocument;
+import com.idilia.services.text.TextResponses;
+
+public class BatchRunnerTest {
+
+  final ObjectMapper mapper = new ObjectMapper();
+  final ScheduledExecutorService timer = Executors.newScheduledThreadPool(4);
+  final AtomicInteger sent = new AtomicInteger();
+  Path dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("batch");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    timer.shutdownNow();
+    try (Stream<Path> s = Files.walk(dir)) {
+      s.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+    }
+  }
+
+  /**
+   * A client returning the text in upper case after a delay decreasing with the
+   * position of the text so that the requests complete out of order. A text "bad"
+   * makes its request fail.
+   */
+  AsyncClient client() throws IdiliaClientException {
+    return new AsyncClient(new IdiliaCredentials("Idi0123456789", "012345678901234567890123456789")) {
+      @Override
+      public CompletableFuture<DisambiguateResponse> disambiguateAsync(DisambiguateRequest req) {
+        CompletableFuture<DisambiguateResponse> f = new CompletableFuture<>();
+        String text;
+        try {
+          text = new String(req.toSign(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+          f.completeExceptionally(e);
+          return f;
+        }
+        int n = sent.incrementAndGet();
+        timer.schedule(() -> {
+          if (text.equals("bad"))
+            f.completeExceptionally(new IdiliaClientException(new ResponseBase(400, "bad text")));
+          else
+            f.complete(TextResponses.disambiguate("text/plain", text.toUpperCase().getBytes(StandardCharsets.UTF_8)));
+        }, Math.max(0, 20 - 2 * n), TimeUnit.MILLISECONDS);
+        return f;
+      }
+    };
+  }
+
+  Path input(String... texts) throws IOException {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < texts.length; ++i)
+      lines.add("{\"id\":\"t" + i + "\",\"text\":\"" + texts[i] + "\"}");
+    return Files.write(dir.resolve("in.jsonl"), lines, StandardCharsets.UTF_8);
+  }
+
+  List<JsonNode> output(Path file) throws IOException {
+    List<JsonNode> res = new ArrayList<>();
+    for (String l: Files.readAllLines(file, StandardCharsets.UTF_8))
+      res.add(mapper.readTree(l));
+    return res;
+  }
+
+  BatchReport run(BatchRunner runner, Path in, Path out) throws IOException {
+    try (Stream<BatchRunner.Item> items = BatchRunner.jsonLines(in)) {
+      return runner.run(items.iterator(), BatchSink.jsonLines(out));
+    }
+  }
+
+  @Test
+  public void testOrdered() throws Exception {
+    Path in = input("a", "b", "bad", "c", "d", "e");
+    Path out = dir.resolve("out.jsonl");
+    BatchReport report = run(new BatchRunner(client(), DisambiguateRequest::new).setConcurrency(4).setOrdered(true), in, out);
+    assertEquals(5, report.getSucceeded());
+    assertEquals(1, report.getFailed());
+    assertEquals(0, report.getSkipped());
+
+    List<JsonNode> docs = output(out);
+    assertEquals(6, docs.size());
+    String[] expected = { "A", "B", null, "C", "D", "E" };
+    for (int i = 0; i < docs.size(); ++i) {
+      JsonNode d = docs.get(i);
+      assertEquals("t" + i, d.get("id").asText());
+      if (expected[i] == null) {
+        assertEquals(400, d.get("status").asInt());
+        assertEquals("bad text", d.get("error").asText());
+      } else {
+        assertEquals(200, d.get("status").asInt());
+        assertEquals(expected[i], new String(Base64.getDecoder().decode(d.get("document").asText()), StandardCharsets.UTF_8));
+      }
+    }
+  }
+
+  @Test
+  public void testResume() throws Exception {
+    Path in = input("a", "b", "c", "d", "e");
+    Path out = dir.resolve("out.jsonl");
+    Path journal = dir.resolve("journal");
+
+    // A previous run completed the first two items and was interrupted while writing
+    // the third one to the output and to the journal
+    String done = "{\"id\":\"t0\",\"status\":200}\n{\"id\":\"t1\",\"status\":200}\n";
+    int pos = done.getBytes(StandardCharsets.UTF_8).length;
+    Files.write(out, (done + "{\"id\":\"t2\",\"sta").getBytes(StandardCharsets.UTF_8));
+    Files.write(journal, ("0\t27.\n1\t" + pos + ".\n2\t9").getBytes(StandardCharsets.UTF_8));
+
+    BatchReport report = run(new BatchRunner(client(), DisambiguateRequest::new).setJournal(journal), in, out);
+    assertEquals(2, report.getSkipped());
+    assertEquals(3, report.getSucceeded());
+    assertEquals(3, sent.get());
+
+    List<JsonNode> docs = output(out);
+    assertEquals(5, docs.size());
+    List<String> ids = new ArrayList<>();
+    for (JsonNode d: docs)
+      ids.add(d.get("id").asText());
+    for (int i = 0; i < 5; ++i)
+      assertEquals(1, ids.stream().filter(("t" + i)::equals).count());
+
+    // Nothing left to do
+    sent.set(0);
+    report = run(new BatchRunner(client(), DisambiguateRequest::new).setJournal(journal), in, out);
+    assertEquals(5, report.getSkipped());
+    assertEquals(0, sent.get());
+    assertEquals(5, output(out).size());
+  }
+
+  @Test
+  public void testMalformedInput() throws Exception {
+    Path in = input("a", "b", "c");
+    Files.write(in, "{\"id\":\"t3\",\"text\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    Path out = dir.resolve("out.jsonl");
+    Path journal = dir.resolve("journal");
+    try {
+      run(new BatchRunner(client(), DisambiguateRequest::new).setConcurrency(4).setJournal(journal), in, out);
+      fail();
+    } catch (UncheckedIOException e) {
+      // The items sent before the malformed line are written and recorded
+      assertEquals(3, output(out).size());
+    }
+
+    sent.set(0);
+    Files.write(in, Files.readAllLines(in).subList(0, 3), StandardCharsets.UTF_8);
+    BatchReport report = run(new BatchRunner(client(), DisambiguateRequest::new).setJournal(journal), in, out);
+    assertEquals(3, report.getSkipped());
+    assertEquals(0, sent.get());
+  }
+
+  @Test
+  public void testRateLimit() throws Exception {
+    Path in = input("a", "b", "c", "d", "e");
+    BatchReport report = run(new BatchRunner(client(), DisambiguateRequest::new).setRateLimit(100), in, dir.resolve("out.jsonl"));
+    assertEquals(5, report.getSucceeded());
+    assertTrue(report.getElapsed(TimeUnit.MILLISECONDS) >= 40);
+  }
+
+  @Test
+  public void testWriterThread() throws Exception {
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+    BatchSink sink = new BatchSink() {
+      @Override
+      public void open(long resumePosition) {
+      }
+
+      @Override
+      public long write(BatchRunner.Item item, DisambiguatedDocument doc, Throwable error) {
+        threads.add(Thread.currentThread().getName());
+        return 0;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    try (Stream<BatchRunner.Item> items = BatchRunner.jsonLines(input("a", "b", "c"))) {
+      BatchReport report = new BatchRunner(client(), DisambiguateRequest::new).setConcurrency(3).run(items.iterator(), sink);
+      assertEquals(3, report.getSucceeded());
+    }
+    // Not written by the threads completing the requests
+    assertEquals(1, threads.size());
+    assertEquals("idilia-batch-writer", threads.iterator().next());
+  }
+
+  @Test
+  public void testDirectoryRetry() throws Exception {
+    Path out = dir.resolve("out");
+    BatchRunner.Item item = new BatchRunner.Item("t0", "a");
+    try (BatchSink sink = BatchSink.directory(out)) {
+      sink.open(0);
+      sink.write(item, null, new IdiliaClientException("failed"));
+      assertTrue(Files.exists(out.resolve("t0.error")));
+
+      // A later success replaces the error
+      sink.write(item, TextResponses.disambiguate("text/plain", "A".getBytes(StandardCharsets.UTF_8)).getResult(), null);
+    }
+    assertFalse(Files.exists(out.resolve("t0.error")));
+    assertFalse(Files.exists(out.resolve("t0.tmp")));
+    assertEquals("A", new String(Files.readAllBytes(out.resolve("t0")), StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,96 @@
+package com.idilia.services.kb;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.idilia.services.base.JsonCodecs;
+
+/**
+ * Compares decoding responses with a parser resolving the type on each call (as done
+ * before {@link JsonCodecs}) with the cached readers of {@link JsonCodecs}.
+ * Run with: mvn -Pbenchmarks clean test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=com.idilia.services.kb.JsonDecodeBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JsonDecodeBenchmark {
+
+  ObjectMapper mapper = new ObjectMapper();
+  byte[] card;
+  byte[] query;
+
+  /** Payloads in the format returned by the server */
+  @Setup
+  public void setup() {
+    card = ("{\"status\":200,\"requestId\":\"r1\",\"card\":\"<div class=\\\"idl-sensecard\\\">" +
+        "<h1>bank</h1><p>A financial institution that accepts deposits</p></div>\"}").getBytes(StandardCharsets.UTF_8);
+
+    StringBuilder sb = new StringBuilder("{\"status\":200,\"requestId\":\"r2\",\"result\":[");
+    for (int i = 0; i < 50; ++i)
+      sb.append(i > 0 ? "," : "").append("{\"fs\":\"bank/N").append(i)
+        .append("\",\"definition\":\"sloping land beside a body of water\",\"neInfos\":[]}");
+    query = sb.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public SenseCardResponse cardPerCall() throws IOException {
+    return mapper.getFactory().createParser(card).readValueAs(SenseCardResponse.class);
+  }
+
+  @Benchmark
+  public SenseCardResponse cardCachedReader() throws IOException {
+    return JsonCodecs.reader(SenseCardResponse.class).readValue(card);
+  }
+
+  @Benchmark
+  public List<KbQuery> queryPerCall() throws IOException {
+    return query(mapper.getFactory().createParser(query), null);
+  }
+
+  @Benchmark
+  public List<KbQuery> queryCachedReader() throws IOException {
+    return query(JsonCodecs.factory().createParser(query), JsonCodecs.reader(KbQuery.class));
+  }
+
+  /** Same loop as {@link QueryCodec} with or without a reader */
+  private static List<KbQuery> query(JsonParser jp, ObjectReader reader) throws IOException {
+    List<KbQuery> res = new ArrayList<>();
+    jp.nextToken();
+    while (jp.nextToken() != JsonToken.END_OBJECT) {
+      String fieldName = jp.getCurrentName();
+      jp.nextToken();
+      if (fieldName.contentEquals("result")) {
+        jp.nextToken();
+        while (jp.getCurrentToken() != JsonToken.END_ARRAY) {
+          res.add(reader != null ? reader.readValue(jp) : jp.readValueAs(KbQuery.class));
+          jp.nextToken();
+        }
+      } else
+        jp.skipChildren();
+    }
+    return res;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(JsonDecodeBenchmark.class.getSimpleName()).forks(1).build()).run();
+  }
+}
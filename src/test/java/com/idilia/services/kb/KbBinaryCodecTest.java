@@ -0,0 +1,40 @@
+package com.idilia.services.kb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class KbBinaryCodecTest {
+
+  final ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  public void testQuery() throws Exception {
+    QueryResponse<JsonNode> orig = new QueryResponse<>();
+    orig.setStatus(200);
+    orig.setResult(mapper.readValue(
+        "[{\"fs\":\"dog/N1\",\"freq\":12,\"big\":12345678901,\"w\":0.5,\"ok\":true,\"none\":null," +
+        "\"hypernyms\":[{\"fs\":\"canine/N1\"}]},{\"fs\":\"cat/N1\",\"hypernyms\":[]}]",
+        new TypeReference<ArrayList<JsonNode>>() {}));
+
+    QueryResponse<JsonNode> r = KbBinaryCodec.QUERY.decode(KbBinaryCodec.QUERY.encode(orig));
+    assertEquals(200, r.getStatus());
+    assertEquals(orig.getResult(), r.getResult());
+  }
+
+  @Test
+  public void testSenseMenu() {
+    SenseMenuResponse orig = new SenseMenuResponse();
+    orig.setStatus(200);
+    orig.menu = "<div>été</div>";
+    SenseMenuResponse r = KbBinaryCodec.SENSE_MENU.decode(KbBinaryCodec.SENSE_MENU.encode(orig));
+    assertEquals(orig.menu, r.getMenu());
+    assertEquals(200, r.getStatus());
+  }
+}
@@ -0,0 +1,178 @@
+package com.idilia.services.kb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.SharedMappedStore;
+
+public class KbCacheSnapshotTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  final ObjectMapper mapper = new ObjectMapper();
+
+  static SenseCardResponse card(String html) {
+    SenseCardResponse r = new SenseCardResponse();
+    r.card = html;
+    r.setStatus(200);
+    return r;
+  }
+
+  @Test
+  public void testWriteAndLoad() throws Exception {
+    SenseCardCache cards = new SenseCardCache(1000);
+    for (int i = 0; i < 600; ++i)
+      cards.put(new SenseCardRequest("dog/N" + i), card("card " + i));
+
+    SenseMenuCache menus = new SenseMenuCache(10);
+    UUID cust = UUID.randomUUID();
+    SenseMenuRequest custReq = SenseMenuCacheTest.request("dog");
+    custReq.setCustomerId(cust);
+    menus.put(custReq, SenseMenuCacheTest.response("custom menu"));
+    menus.put(SenseMenuCacheTest.request("dog"), SenseMenuCacheTest.response("dog menu"));
+
+    QueryItemCache queries = new QueryItemCache(10);
+    QueryItemCache.Lookup lookup = queries.lookup(new QueryRequest(Arrays.asList(KbQuery.build("Paris/N1"))));
+    lookup.complete(new QueryItemCacheTest().serve(lookup.missRequest()));
+
+    Path file = tmp.getRoot().toPath().resolve("kb.snapshot");
+    assertEquals(603, KbCacheSnapshot.write(file, cards, menus, queries));
+    assertFalse(Files.exists(file.resolveSibling("kb.snapshot.tmp")));
+
+    SenseCardCache cards2 = new SenseCardCache(1000);
+    SenseMenuCache menus2 = new SenseMenuCache(10);
+    QueryItemCache queries2 = new QueryItemCache(10);
+    assertEquals(603, KbCacheSnapshot.load(file, cards2, menus2, queries2, 4));
+
+    assertEquals("card 0", cards2.get(new SenseCardRequest("dog/N0")).getCard());
+    assertEquals("card 599", cards2.get(new SenseCardRequest("dog/N599")).getCard());
+    assertEquals("custom menu", menus2.get(custReq).getMenu());
+    assertEquals("dog menu", menus2.get(SenseMenuCacheTest.request("dog")).getMenu());
+    QueryItemCache.Lookup hit = queries2.lookup(new QueryRequest(Arrays.asList(KbQuery.build("Paris/N1"))));
+    assertFalse(hit.hasMisses());
+    assertEquals("def of Paris/N1", hit.response(KbQuery.class).getResult().get(0).definition);
+
+    // Only the caches given are loaded
+    SenseCardCache cards3 = new SenseCardCache(1000);
+    assertEquals(600, KbCacheSnapshot.load(file, cards3, null, null, 1));
+  }
+
+  @Test
+  public void testTruncatedAndInvalid() throws Exception {
+    SenseCardCache cards = new SenseCardCache(1000);
+    for (int i = 0; i < 600; ++i)
+      cards.put(new SenseCardRequest("dog/N" + i), card("card " + i));
+    Path file = tmp.getRoot().toPath().resolve("kb.snapshot");
+    KbCacheSnapshot.write(file, cards, null, null);
+
+    // Cut within the last block
+    byte[] b = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(b, b.length - 20));
+    SenseCardCache loaded = new SenseCardCache(1000);
+    try {
+      KbCacheSnapshot.load(file, loaded, null, null, 2);
+      fail();
+    } catch (IdiliaClientException e) {
+      assertTrue(e.getMessage().startsWith("Truncated cache snapshot"));
+    }
+    assertNull(loaded.get(new SenseCardRequest("dog/N599")));
+
+    // Missing the end marker
+    Files.write(file, Arrays.copyOf(b, b.length - 4));
+    try {
+      KbCacheSnapshot.load(file, new SenseCardCache(1000), null, null, 2);
+      fail();
+    } catch (IdiliaClientException e) {
+      assertTrue(e.getMessage().startsWith("Truncated cache snapshot"));
+    }
+
+    Files.write(file, new byte[] { 1, 2, 3, 4, 5 });
+    try {
+      KbCacheSnapshot.load(file, loaded, null, null, 2);
+      fail();
+    } catch (IdiliaClientException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testLoadKeepsOrder() throws Exception {
+    SenseCardCache cards = new SenseCardCache(1000);
+    for (int i = 0; i < 1000; ++i)
+      cards.put(new SenseCardRequest("dog/N" + i), card("card " + i));
+    Path file = tmp.getRoot().toPath().resolve("kb.snapshot");
+    KbCacheSnapshot.write(file, cards, null, null);
+
+    // The most recently used cards remain in a smaller cache
+    SenseCardCache small = new SenseCardCache(100);
+    assertEquals(1000, KbCacheSnapshot.load(file, small, null, null, 4));
+    for (int i = 900; i < 1000; ++i)
+      assertEquals("card " + i, small.get(new SenseCardRequest("dog/N" + i)).getCard());
+    assertNull(small.get(new SenseCardRequest("dog/N899")));
+  }
+
+  @Test
+  public void testSharedStore() throws Exception {
+    Path file = tmp.getRoot().toPath().resolve("kb.snapshot");
+    try (SharedMappedStore store = new SharedMappedStore(tmp.getRoot().toPath().resolve("kb.shm"), 1024, 512)) {
+      SenseCardCache cards = SenseCardCache.shared(store);
+      for (int i = 0; i < 10; ++i)
+        cards.put(new SenseCardRequest("dog/N" + i), card("card " + i));
+      SenseMenuCache.shared(store).put(SenseMenuCacheTest.request("dog"), SenseMenuCacheTest.response("dog menu"));
+      assertEquals(10, KbCacheSnapshot.write(file, cards, null, null));
+    }
+
+    SenseCardCache loaded = new SenseCardCache(100);
+    assertEquals(10, KbCacheSnapshot.load(file, loaded, null, null, 2));
+    assertEquals("card 3", loaded.get(new SenseCardRequest("dog/N3")).getCard());
+  }
+
+  @Test
+  public void testFailures() throws Exception {
+    SenseMenuCache menus = new SenseMenuCache(10);
+    UUID cust = UUID.randomUUID();
+    SenseMenuRequest custReq = SenseMenuCacheTest.request("dog");
+    custReq.setCustomerId(cust);
+    menus.put(custReq, SenseMenuCacheTest.response("custom menu"));
+    Path file = tmp.getRoot().toPath().resolve("kb.snapshot");
+    KbCacheSnapshot.write(file, null, menus, null);
+
+    // An error decoding a block is reported
+    byte[] b = Files.readAllBytes(file);
+    String s = new String(b, StandardCharsets.ISO_8859_1).replace(cust.toString(), "not a customer id - not a customer!!");
+    Files.write(file, s.getBytes(StandardCharsets.ISO_8859_1));
+    try {
+      KbCacheSnapshot.load(file, null, new SenseMenuCache(10), null, 2);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    // A failed write leaves no partial file
+    Path dir = tmp.newFolder("kb.dir").toPath();
+    Files.write(dir.resolve("x"), new byte[1]);
+    try {
+      KbCacheSnapshot.write(dir, null, menus, null);
+      fail();
+    } catch (IdiliaClientException e) {
+      // expected
+    }
+    assertFalse(Files.exists(dir.resolveSibling("kb.dir.tmp")));
+  }
+}
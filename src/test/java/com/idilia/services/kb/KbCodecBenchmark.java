@@ -0,0 +1,81 @@
+package com.idilia.services.kb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares Jackson round trips of kb responses with {@link KbBinaryCodec}.
+ * Run with: mvn -Pbenchmarks clean test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=com.idilia.services.kb.KbCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KbCodecBenchmark {
+
+  ObjectMapper mapper = new ObjectMapper();
+  SenseMenuResponse menu;
+  QueryResponse<JsonNode> query;
+
+  /** Payloads in the format returned by the server */
+  @Setup
+  public void setup() throws IOException {
+    StringBuilder html = new StringBuilder("<div class=\"idl-sensemenu\">");
+    for (int i = 0; i < 12; ++i)
+      html.append("<div class=\"idl-tile-container\" data-fsk=\"bank/N").append(i)
+        .append("\"><div class=\"idl-tile\"><img src=\"//cdn.idilia.com/img/").append(i)
+        .append(".jpg\"><p>A financial institution that accepts deposits</p></div></div>");
+    menu = new SenseMenuResponse();
+    menu.setStatus(200);
+    menu.menu = html.append("</div>").toString();
+
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < 50; ++i)
+      sb.append(i > 0 ? "," : "").append("{\"fs\":\"bank/N").append(i).append("\",\"lemma\":\"bank\",\"pos\":\"noun\",")
+        .append("\"definition\":\"sloping land beside a body of water\",\"frequency\":").append(100 - i)
+        .append(",\"hypernyms\":[{\"fs\":\"slope/N1\"},{\"fs\":\"incline/N").append(i % 3).append("\"}]}");
+    query = new QueryResponse<>();
+    query.setStatus(200);
+    query.setResult(mapper.readValue(sb.append("]").toString(), new TypeReference<ArrayList<JsonNode>>() {}));
+  }
+
+  @Benchmark
+  public SenseMenuResponse senseMenuJackson() throws IOException {
+    return mapper.readValue(mapper.writeValueAsBytes(menu), SenseMenuResponse.class);
+  }
+
+  @Benchmark
+  public SenseMenuResponse senseMenuBinary() {
+    return KbBinaryCodec.SENSE_MENU.decode(KbBinaryCodec.SENSE_MENU.encode(menu));
+  }
+
+  @Benchmark
+  public ArrayList<JsonNode> queryJackson() throws IOException {
+    return mapper.readValue(mapper.writeValueAsBytes(query.getResult()), new TypeReference<ArrayList<JsonNode>>() {});
+  }
+
+  @Benchmark
+  public QueryResponse<JsonNode> queryBinary() {
+    return KbBinaryCodec.QUERY.decode(KbBinaryCodec.QUERY.encode(query));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(KbCodecBenchmark.class.getSimpleName()).forks(1).build()).run();
+  }
+}
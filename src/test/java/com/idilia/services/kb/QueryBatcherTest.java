@@ -0,0 +1,165 @@
+package com.idilia.services.kb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.IdiliaCredentials;
+import com.idilia.services.base.PriorityScheduler;
+
+public class QueryBatcherTest {
+
+  final ObjectMapper mapper = new ObjectMapper();
+  final List<QueryRequest> sent = new CopyOnWriteArrayList<>();
+
+  /** A client answering the templates locally */
+  AsyncClient client() throws IdiliaClientException {
+    return new AsyncClient(new IdiliaCredentials("Idi0123456789", "012345678901234567890123456789")) {
+      @Override
+      public <T> CompletableFuture<QueryResponse<T>> queryAsync(QueryRequest req, Class<T> tpRef) {
+        sent.add(req);
+        CompletableFuture<QueryResponse<T>> f = new CompletableFuture<>();
+        try {
+          QueryResponse<T> resp = new QueryResponse<>();
+          resp.setStatus(200);
+          resp.setResult(new ArrayList<>());
+          for (JsonNode t: mapper.readTree(req.toSign())) {
+            KbQuery q = mapper.treeToValue(t, KbQuery.class);
+            q.definition = "def of " + q.fs;
+            resp.addResult(tpRef.cast(q));
+          }
+          f.complete(resp);
+        } catch (Exception e) {
+          f.completeExceptionally(e);
+        }
+        return f;
+      }
+    };
+  }
+
+  @Test
+  public void testSizeWindow() throws Exception {
+    try (QueryBatcher batcher = new QueryBatcher(client())
+        .setMaxBatchSize(3).setMaxDelay(1, TimeUnit.MINUTES)) {
+      List<CompletableFuture<QueryResponse<KbQuery>>> futures = new ArrayList<>();
+      for (int i = 0; i < 6; ++i) {
+        QueryRequest req = new QueryRequest(KbQuery.build("dog/N" + i));
+        req.setRequestId("r" + i);
+        futures.add(batcher.queryAsync(req, KbQuery.class));
+      }
+      assertEquals(2, sent.size());
+      for (int i = 0; i < 6; ++i) {
+        QueryResponse<KbQuery> resp = futures.get(i).get();
+        assertEquals("r" + i, resp.getRequestId());
+        assertEquals(1, resp.getResult().size());
+        assertEquals("def of dog/N" + i, resp.getResult().get(0).definition);
+      }
+    }
+  }
+
+  @Test
+  public void testPriority() throws Exception {
+    try (QueryBatcher batcher = new QueryBatcher(client())
+        .setMaxBatchSize(2).setMaxDelay(1, TimeUnit.MINUTES)) {
+      List<CompletableFuture<QueryResponse<KbQuery>>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; ++i) {
+        QueryRequest req = new QueryRequest(KbQuery.build("dog/N" + i));
+        if (i % 2 == 0)
+          req.setPriority(PriorityScheduler.Priority.INTERACTIVE);
+        futures.add(batcher.queryAsync(req, KbQuery.class));
+      }
+
+      // Batched with the requests of the same priority class
+      assertEquals(2, sent.size());
+      assertEquals(PriorityScheduler.Priority.INTERACTIVE, sent.get(0).getPriority());
+      assertEquals("def of dog/N2", futures.get(2).get().getResult().get(0).definition);
+      assertEquals(null, sent.get(1).getPriority());
+      assertEquals("def of dog/N3", futures.get(3).get().getResult().get(0).definition);
+    }
+  }
+
+  @Test
+  public void testTimeWindowAndClose() throws Exception {
+    QueryBatcher batcher = new QueryBatcher(client())
+        .setMaxBatchSize(100).setMaxDelay(5, TimeUnit.MILLISECONDS);
+    CompletableFuture<QueryResponse<KbQuery>> a = batcher.queryAsync(new QueryRequest(KbQuery.build("a/N1")), KbQuery.class);
+    CompletableFuture<QueryResponse<KbQuery>> b = batcher.queryAsync(new QueryRequest(KbQuery.build("b/N1")), KbQuery.class);
+    assertEquals("def of b/N1", b.get(1, TimeUnit.SECONDS).getResult().get(0).definition);
+    assertEquals("def of a/N1", a.get().getResult().get(0).definition);
+    assertEquals(1, sent.size());
+
+    // Multiple templates are not batched
+    List<KbQuery> two = new ArrayList<>();
+    two.add(KbQuery.build("c/N1"));
+    two.add(KbQuery.build("d/N1"));
+    assertEquals(2, batcher.queryAsync(new QueryRequest(two), KbQuery.class).get().getResult().size());
+    assertEquals(2, sent.size());
+
+    // Closing sends the pending requests
+    batcher.setMaxDelay(1, TimeUnit.MINUTES);
+    CompletableFuture<QueryResponse<KbQuery>> e = batcher.queryAsync(new QueryRequest(KbQuery.build("e/N1")), KbQuery.class);
+    batcher.close();
+    assertEquals("def of e/N1", e.get().getResult().get(0).definition);
+  }
+
+  @Test
+  public void testLatencyTarget() throws Exception {
+    QueryBatcher batcher = new QueryBatcher(client())
+        .setMaxBatchSize(1).setMaxDelay(4, TimeUnit.MILLISECONDS).setLatencyTarget(0, TimeUnit.NANOSECONDS);
+    batcher.queryAsync(new QueryRequest(KbQuery.build("a/N1")), KbQuery.class).get();
+    assertEquals(2, batcher.getDelay(TimeUnit.MILLISECONDS));
+
+    batcher.setLatencyTarget(1, TimeUnit.MINUTES);
+    batcher.queryAsync(new QueryRequest(KbQuery.build("a/N1")), KbQuery.class).get();
+    assertTrue(batcher.getDelay(TimeUnit.MICROSECONDS) > 2000);
+    batcher.close();
+  }
+
+  @Test(expected = ExecutionException.class)
+  public void testResultMismatch() throws Exception {
+    AsyncClient c = new AsyncClient(new IdiliaCredentials("Idi0123456789", "012345678901234567890123456789")) {
+      @Override
+      public <T> CompletableFuture<QueryResponse<T>> queryAsync(QueryRequest req, Class<T> tpRef) {
+        QueryResponse<T> resp = new QueryResponse<>();
+        resp.setStatus(200);
+        resp.setResult(new ArrayList<>());
+        return CompletableFuture.completedFuture(resp);
+      }
+    };
+    try (QueryBatcher batcher = new QueryBatcher(c).setMaxBatchSize(1)) {
+      batcher.queryAsync(new QueryRequest(KbQuery.build("a/N1")), KbQuery.class).get();
+    }
+  }
+
+  @Test
+  public void testSendFailure() throws Exception {
+    AsyncClient failing = new AsyncClient(new IdiliaCredentials("Idi0123456789", "012345678901234567890123456789")) {
+      @Override
+      public <T> CompletableFuture<QueryResponse<T>> queryAsync(QueryRequest req, Class<T> tpRef) {
+        throw new IllegalStateException("not started");
+      }
+    };
+    try (QueryBatcher batcher = new QueryBatcher(failing).setMaxDelay(5, TimeUnit.MILLISECONDS)) {
+      CompletableFuture<QueryResponse<KbQuery>> f = batcher.queryAsync(new QueryRequest(KbQuery.build("a/N1")), KbQuery.class);
+      try {
+        f.get(1, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof IdiliaClientException);
+        assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+      }
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.idilia.services.kb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idilia.services.base.PriorityScheduler;
+
+public class QueryItemCacheTest {
+
+  final ObjectMapper mapper = new ObjectMapper();
+
+  /** Simulate the server by echoing the template with a definition */
+  QueryResponse<JsonNode> serve(QueryRequest req) throws Exception {
+    QueryResponse<JsonNode> resp = new QueryResponse<>();
+    resp.setStatus(200);
+    resp.setResult(new ArrayList<>());
+    for (JsonNode t: mapper.readTree(req.toSign())) {
+      KbQuery q = mapper.treeToValue(t, KbQuery.class);
+      q.definition = "def of " + q.fs;
+      resp.addResult(mapper.valueToTree(q));
+    }
+    return resp;
+  }
+
+  @Test
+  public void testOnlyMissesSent() throws Exception {
+    QueryItemCache cache = new QueryItemCache(100);
+
+    QueryItemCache.Lookup first = cache.lookup(new QueryRequest(
+        Arrays.asList(KbQuery.build("Montreal/N1"), KbQuery.build("Quebec/N1"))));
+    assertTrue(first.hasMisses());
+    first.complete(serve(first.missRequest()));
+    assertEquals("def of Quebec/N1", first.response(KbQuery.class).getResult().get(1).definition);
+
+    // Second query overlaps. Only the new template is requested, including once a duplicate.
+    QueryRequest req = new QueryRequest(
+        Arrays.asList(KbQuery.build("Paris/N1"), KbQuery.build("Quebec/N1"), KbQuery.build("Paris/N1")));
+    req.setRequestId("r2");
+    req.setPriority(PriorityScheduler.Priority.INTERACTIVE);
+    QueryItemCache.Lookup second = cache.lookup(req);
+    QueryRequest missReq = second.missRequest();
+    assertEquals(1, mapper.readTree(missReq.toSign()).size());
+    assertEquals("r2", missReq.getRequestId());
+    assertEquals(PriorityScheduler.Priority.INTERACTIVE, missReq.getPriority());
+    second.complete(serve(missReq));
+
+    QueryResponse<KbQuery> resp = second.response(KbQuery.class);
+    assertEquals("r2", resp.getRequestId());
+    assertEquals(3, resp.getResult().size());
+    assertEquals("Paris/N1", resp.getResult().get(0).fs);
+    assertEquals("def of Quebec/N1", resp.getResult().get(1).definition);
+    assertEquals("def of Paris/N1", resp.getResult().get(2).definition);
+
+    assertFalse(cache.lookup(req).hasMisses());
+  }
+}
@@ -0,0 +1,150 @@
+package com.idilia.services.kb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.nio.IOControl;
+import org.apache.http.protocol.BasicHttpContext;
+import org.junit.Test;
+
+import com.idilia.services.base.IdiliaClientException;
+
+public class QueryStreamTest {
+
+  static String response(int n, String tail) {
+    StringBuilder sb = new StringBuilder("{\"requestId\":\"r1\",\"result\":[");
+    for (int i = 0; i < n; ++i)
+      sb.append(i > 0 ? "," : "").append("{\"fs\":\"bank/N").append(i)
+        .append("\",\"definition\":\"sloping land beside a body of water\",\"neInfos\":[]}");
+    return sb.append("]").append(tail).append("}").toString();
+  }
+
+  static QueryCodec.Results<KbQuery> results(String json) {
+    return new QueryCodec.Results<>(KbQuery.class, "application/json;charset=UTF-8",
+        new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testResults() {
+    QueryCodec.Results<KbQuery> results = results(response(3, ",\"status\":200"));
+    List<String> fs = StreamSupport.stream(results, false).map(q -> q.fs).collect(Collectors.toList());
+    assertEquals(3, fs.size());
+    assertEquals("bank/N2", fs.get(2));
+    assertEquals(200, results.response().getStatus());
+    assertEquals("r1", results.response().getRequestId());
+    assertEquals(null, results.response().getResult());
+  }
+
+  @Test
+  public void testErrorStatus() {
+    QueryCodec.Results<KbQuery> results = results("{\"status\":400,\"errorMsg\":\"bad template\"}");
+    try {
+      results.tryAdvance(q -> fail());
+      fail();
+    } catch (IdiliaClientException e) {
+      assertEquals(400, e.getApiResponse().getStatus());
+      assertEquals("bad template", e.getApiResponse().getErrorMsg());
+    }
+  }
+
+  /** Control recording the suspension of the input */
+  static class Control implements IOControl {
+    volatile boolean suspended;
+    volatile int resumed;
+    @Override public void requestInput() { suspended = false; ++resumed; }
+    @Override public void suspendInput() { suspended = true; }
+    @Override public void requestOutput() {}
+    @Override public void suspendOutput() {}
+    @Override public void shutdown() {}
+  }
+
+  @Test
+  public void testStreamingConsumer() throws Exception {
+    List<Runnable> tasks = new ArrayList<>();
+    List<KbQuery> received = new CopyOnWriteArrayList<>();
+    StreamingQueryConsumer<KbQuery> consumer = new StreamingQueryConsumer<>(KbQuery.class, received::add, tasks::add);
+
+    BasicHttpResponse http = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+    http.addHeader("Content-Type", "application/json");
+    consumer.responseReceived(http);
+    assertEquals(1, tasks.size());
+
+    // Receive more than the buffer before the parser runs: the input is suspended
+    byte[] body = response(5000, ",\"status\":200").getBytes(StandardCharsets.UTF_8);
+    assertTrue(body.length > StreamingQueryConsumer.bufferSize);
+    Control ctrl = new Control();
+    int off = 0;
+    for (; off < body.length && !ctrl.suspended; off += 4096)
+      consumer.onByteReceived(ByteBuffer.wrap(body, off, Math.min(4096, body.length - off)), ctrl);
+    assertTrue(ctrl.suspended);
+
+    // The parser resumes the input as it drains the buffer
+    Thread parser = new Thread(tasks.get(0));
+    parser.start();
+    for (; off < body.length; off += 4096) {
+      while (ctrl.suspended)
+        Thread.sleep(1);
+      consumer.onByteReceived(ByteBuffer.wrap(body, off, Math.min(4096, body.length - off)), ctrl);
+    }
+    consumer.responseCompleted(new BasicHttpContext());
+    parser.join();
+
+    assertTrue(ctrl.resumed > 0);
+    QueryResponse<KbQuery> resp = consumer.getParsed().get();
+    assertEquals(200, resp.getStatus());
+    assertEquals(5000, received.size());
+    assertEquals("bank/N4999", received.get(4999).fs);
+  }
+
+  @Test
+  public void testStreamingFailure() throws Exception {
+    StreamingQueryConsumer<KbQuery> consumer = new StreamingQueryConsumer<>(KbQuery.class, q -> {}, Runnable::run);
+    consumer.failed(new IOException("connection reset"));
+    try {
+      consumer.getParsed().get();
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IdiliaClientException);
+    }
+    assertFalse(consumer.getParsed().isCancelled());
+  }
+
+  @Test
+  public void testStreamingRejected() throws Exception {
+    StreamingQueryConsumer<KbQuery> consumer = new StreamingQueryConsumer<>(KbQuery.class, q -> {}, r -> {
+      throw new RejectedExecutionException("shut down");
+    });
+    BasicHttpResponse http = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+    http.addHeader("Content-Type", "application/json");
+    consumer.responseReceived(http);
+    try {
+      consumer.getParsed().get();
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IdiliaClientException);
+      assertTrue(e.getCause().getCause() instanceof RejectedExecutionException);
+    }
+
+    // The rest of the response is discarded
+    ByteBuffer buf = ByteBuffer.wrap(response(10, ",\"status\":200").getBytes(StandardCharsets.UTF_8));
+    consumer.onByteReceived(buf, new Control());
+    assertFalse(buf.hasRemaining());
+    consumer.responseCompleted(new BasicHttpContext());
+  }
+}
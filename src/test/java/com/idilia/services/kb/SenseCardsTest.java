@@ -0,0 +1,103 @@
+package com.idilia.services.kb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.IdiliaCredentials;
+import com.idilia.services.base.ResponseBase;
+
+public class SenseCardsTest {
+
+  /** A client holding the requests until completed by the test */
+  static class HeldClient extends AsyncClient {
+    HeldClient() throws IdiliaClientException {
+      super(new IdiliaCredentials("Idi0123456789", "012345678901234567890123456789"));
+    }
+
+    @Override
+    public CompletableFuture<SenseCardResponse> senseCardAsync(SenseCardRequest req) {
+      if (req.getFsk().startsWith("cached"))
+        return CompletableFuture.completedFuture(card(req.getFsk()));
+      CompletableFuture<SenseCardResponse> f = new CompletableFuture<>();
+      synchronized (this) {
+        requests.add(req);
+        held.add(f);
+        maxHeld = Math.max(maxHeld, ++inProgress);
+      }
+      return f;
+    }
+
+    /** Complete the oldest request held */
+    void release() {
+      CompletableFuture<SenseCardResponse> f;
+      SenseCardRequest req;
+      synchronized (this) {
+        f = held.remove(0);
+        req = requests.remove(0);
+        --inProgress;
+      }
+      if (req.getFsk().startsWith("bad"))
+        f.completeExceptionally(new IdiliaClientException(new ResponseBase(404, "unknown sensekey")));
+      else
+        f.complete(card(req.getFsk()));
+    }
+
+    final List<SenseCardRequest> requests = new ArrayList<>();
+    final List<CompletableFuture<SenseCardResponse>> held = new ArrayList<>();
+    int inProgress, maxHeld;
+  }
+
+  static SenseCardResponse card(String fsk) {
+    SenseCardResponse r = new SenseCardResponse();
+    r.card = "card of " + fsk;
+    r.setStatus(200);
+    return r;
+  }
+
+  @Test
+  public void testBoundedAndPartial() throws Exception {
+    HeldClient client = new HeldClient();
+    client.setSenseCardParallelism(2);
+    CompletableFuture<Map<String, SenseCardResponse>> f = client.senseCards(
+        Arrays.asList("dog/N1", "cat/N1", "dog/N1", "cached/N1", "bad/N1", "fish/N1"), "image_v3", null);
+
+    assertEquals(2, client.held.size());
+    assertEquals("image_v3", client.requests.get(0).getTemplate());
+    while (!client.held.isEmpty())
+      client.release();
+    assertEquals(2, client.maxHeld);
+
+    Map<String, SenseCardResponse> m = f.get();
+    assertEquals(Arrays.asList("dog/N1", "cat/N1", "cached/N1", "bad/N1", "fish/N1"), new ArrayList<>(m.keySet()));
+    assertEquals("card of dog/N1", m.get("dog/N1").getCard());
+    assertEquals("card of cached/N1", m.get("cached/N1").getCard());
+    assertEquals(404, m.get("bad/N1").getStatus());
+    assertEquals("unknown sensekey", m.get("bad/N1").getErrorMsg());
+    assertNull(m.get("bad/N1").getCard());
+  }
+
+  @Test
+  public void testEmptyAndCachedOnly() throws Exception {
+    HeldClient client = new HeldClient();
+    assertEquals(0, client.senseCards(new ArrayList<>(), "image_v3", 1).get().size());
+    CompletableFuture<Map<String, SenseCardResponse>> f = client.senseCards(
+        Arrays.asList("cached/N1", "cached/N2"), "image_v3", 1);
+    assertFalse(f.isCompletedExceptionally());
+    assertEquals(2, f.get().size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoParallelism() throws Exception {
+    new HeldClient().setSenseCardParallelism(0);
+  }
+}
@@ -0,0 +1,151 @@
+package com.idilia.services.kb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.idilia.services.base.FailureCache;
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.OffHeapStore;
+import com.idilia.services.base.ResponseBase;
+
+public class SenseMenuCacheTest {
+
+  static SenseMenuRequest request(String text) {
+    return new SenseMenuRequest().setText(text).setTemplate("image_v3");
+  }
+
+  static SenseMenuResponse response(String menu) {
+    SenseMenuResponse r = new SenseMenuResponse();
+    r.menu = menu;
+    r.setStatus(200);
+    return r;
+  }
+
+  @Test
+  public void testKeyCoversPolicies() {
+    SenseMenuCache cache = new SenseMenuCache(10);
+    cache.put(request("dog"), response("dog menu"));
+
+    SenseMenuRequest req = request("dog");
+    req.setRequestId("r1");
+    SenseMenuResponse hit = cache.get(req);
+    assertNotNull(hit);
+    assertEquals("dog menu", hit.getMenu());
+    assertEquals("r1", hit.getRequestId());
+
+    assertNull(cache.get(request("dog").setSelectedFsk("dog/N1")));
+    assertNull(cache.get(request("dog").setFilters("noDynamic")));
+    assertNull(cache.get((SenseMenuRequest) request("dog").setAddAnySense()));
+    assertNull(cache.get(request("dog").setTemplate("image_v2")));
+    assertNull(cache.get(request("cat")));
+  }
+
+  @Test
+  public void testCustomerPartitions() {
+    SenseMenuCache cache = new SenseMenuCache(10);
+    UUID cust = UUID.randomUUID();
+    SenseMenuRequest custReq = request("dog");
+    custReq.setCustomerId(cust);
+    cache.put(custReq, response("custom menu"));
+
+    assertNull(cache.get(request("dog")));
+    assertEquals("custom menu", cache.get(custReq).getMenu());
+
+    cache.invalidate(cust);
+    assertNull(cache.get(custReq));
+  }
+
+  @Test
+  public void testBounded() {
+    SenseMenuCache cache = new SenseMenuCache(2);
+    cache.put(request("a"), response("a"));
+    cache.put(request("b"), response("b"));
+    assertNotNull(cache.get(request("a")));
+    cache.put(request("c"), response("c"));
+
+    assertNotNull(cache.get(request("a")));
+    assertNull(cache.get(request("b")));
+    assertNotNull(cache.get(request("c")));
+  }
+
+  @Test
+  public void testFailures() {
+    SenseMenuCache cache = new SenseMenuCache(10).setFailureCache(new FailureCache(10, 1, TimeUnit.MINUTES));
+    cache.putFailure(request("xyzzy"), new IdiliaClientException(new ResponseBase(404, "unknown word")));
+    cache.putFailure(request("dog"), new IdiliaClientException(new ResponseBase(429, "too many requests")));
+    assertNull(cache.get(request("dog")));
+
+    SenseMenuRequest req = request("xyzzy");
+    req.setRequestId("r2");
+    try {
+      cache.get(req);
+      fail("Expected the recorded failure");
+    } catch (IdiliaClientException e) {
+      assertEquals(404, e.getApiResponse().getStatus());
+      assertEquals("unknown word", e.getMessage());
+      assertEquals("r2", e.getApiResponse().getRequestId());
+    }
+  }
+
+  @Test
+  public void testSharedFailureCache() {
+    FailureCache failures = new FailureCache(10, 1, TimeUnit.MINUTES);
+    SenseMenuCache menus = new SenseMenuCache(10).setFailureCache(failures);
+    SenseCardCache cards = new SenseCardCache(10).setFailureCache(failures);
+    UUID cust = UUID.randomUUID();
+    SenseMenuRequest custReq = request("xyzzy");
+    custReq.setCustomerId(cust);
+    IdiliaClientException notFound = new IdiliaClientException(new ResponseBase(404, "unknown word"));
+    menus.putFailure(request("xyzzy"), notFound);
+    menus.putFailure(custReq, notFound);
+    cards.putFailure(new SenseCardRequest("xyzzy/N1"), notFound);
+    assertEquals(3, failures.size());
+
+    // Each cache only removes its own failures
+    menus.invalidate(cust);
+    assertEquals(2, failures.size());
+    assertNull(menus.get(custReq));
+    cards.clear();
+    assertEquals(1, failures.size());
+    assertNull(cards.get(new SenseCardRequest("xyzzy/N1")));
+    try {
+      menus.get(request("xyzzy"));
+      fail("Expected the recorded failure");
+    } catch (IdiliaClientException e) {
+      assertEquals(404, e.getApiResponse().getStatus());
+    }
+    menus.clear();
+    assertEquals(0, failures.size());
+  }
+
+  @Test
+  public void testTieredInvalidate() {
+    OffHeapStore store = new OffHeapStore(1024, 8192);
+    SenseMenuCache cache = SenseMenuCache.tiered(1, 0, store);
+    UUID cust1 = UUID.randomUUID(), cust2 = UUID.randomUUID();
+    for (String text: new String[] { "dog", "cat" }) {
+      for (UUID cust: new UUID[] { cust1, cust2 }) {
+        SenseMenuRequest req = request(text);
+        req.setCustomerId(cust);
+        cache.put(req, response(text + " of " + cust));
+      }
+    }
+    assertEquals(2, store.size());
+
+    // Only the demoted menus of the customer are removed from the shared store
+    cache.invalidate(cust1);
+    assertEquals(1, store.size());
+    SenseMenuRequest req = request("dog");
+    req.setCustomerId(cust2);
+    assertEquals("dog of " + cust2, cache.get(req).getMenu());
+    req.setCustomerId(cust1);
+    assertNull(cache.get(req));
+  }
+}
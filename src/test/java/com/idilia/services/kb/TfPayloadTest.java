@@ -0,0 +1,52 @@
+package com.idilia.services.kb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.idilia.services.base.BinaryWriter;
+import com.idilia.services.base.RequestBase;
+import com.idilia.services.text.DisambiguatedDocument;
+import com.idilia.services.text.TextBinaryCodec;
+
+public class TfPayloadTest {
+
+  static DisambiguatedDocument document(String mime, String encoding, byte[] content) {
+    return TextBinaryCodec.DISAMBIGUATED_DOCUMENT.decode(
+        new BinaryWriter(64).writeByte(2).writeString(mime).writeString(encoding).writeBytes(content).toByteArray());
+  }
+
+  @Test
+  public void testSharedPayload() throws Exception {
+    byte[] content = "<tf>some features</tf>".getBytes(StandardCharsets.UTF_8);
+    TfPayload tf = new TfPayload(document("application/x-tf+xml", null, content));
+    assertEquals(content.length, tf.getContentLength());
+    assertEquals("application/x-tf+xml; charset=UTF-8", tf.getContentType().toString());
+
+    TaggingMenuRequest r1 = tf.request(0, 5);
+    TaggingMenuRequest r2 = tf.request(5, 9).setTemplate("image_v3");
+    assertSame(r1.toSign(), r2.toSign());
+    assertEquals(RequestBase.digest(content), r1.contentDigest());
+    assertEquals(r1.contentDigest(), r2.contentDigest());
+
+    // Each request has its window and the document
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    r2.getContent().writeTo(os);
+    String body = new String(os.toByteArray(), StandardCharsets.UTF_8);
+    assertTrue(body.contains("tfStart=5&tfEnd=9"));
+    assertTrue(body.contains("<tf>some features</tf>"));
+  }
+
+  @Test
+  public void testGzipDocument() throws Exception {
+    TfPayload tf = new TfPayload(document("application/x-tf+xml", "gzip", new byte[] { 1, 2, 3 }));
+    assertEquals("application/x-tf+xml+gz", tf.getContentType().toString());
+    TaggingMenuRequest req = new TaggingMenuRequest().setTf(document("application/x-tf+xml", "gzip", new byte[] { 1, 2, 3 }));
+    assertEquals(tf.getDigest(), req.contentDigest());
+  }
+}
@@ -0,0 +1,99 @@
+package com.idilia.services.text;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.idilia.services.base.IdiliaCredentials;
+
+public class ChunkedDisambiguatorTest {
+
+  @Test
+  public void testSplitParagraphs() {
+    String text = "a b c\n\nd e\n \nf g h i\n\nj";
+    // Paragraphs of 3, 2, 4 and 1 tokens
+    assertArrayEquals(new int[] { 0, 13 }, ChunkedDisambiguator.split(text, 5));
+    assertArrayEquals(new int[] { 0, 7, 13, 22 }, ChunkedDisambiguator.split(text, 4));
+    assertArrayEquals(new int[] { 0 }, ChunkedDisambiguator.split(text, 10));
+    assertArrayEquals(new int[] { 0 }, ChunkedDisambiguator.split("", 10));
+  }
+
+  @Test
+  public void testSplitLongParagraph() {
+    String text = "one two three four five\n\nsix";
+    // The last word of the long paragraph is packed with the next paragraph
+    assertArrayEquals(new int[] { 0, 8, 19 }, ChunkedDisambiguator.split(text, 2));
+  }
+
+  @Test
+  public void testStitching() throws Exception {
+    AsyncClient client = new AsyncClient(new IdiliaCredentials("Idi0123456789", "012345678901234567890123456789")) {
+      @Override
+      public CompletableFuture<DisambiguateResponse> disambiguateAsync(DisambiguateRequest req) {
+        try {
+          DisambiguateResponse resp = new DisambiguateResponse();
+          resp.setStatus(200);
+          resp.addResult(new DisambiguatedDocument("text/plain", null, req.toSign()));
+          return CompletableFuture.completedFuture(resp);
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+
+    String text = "a b c\n\nd e\n \nf g h i\n\nj";
+    ChunkedDocument doc = new ChunkedDisambiguator(client, DisambiguateRequest::new)
+        .setMaxTokens(4).disambiguateAsync(text).get();
+    assertEquals(4, doc.getChunkCount());
+    assertEquals("f g h i\n\n", doc.getChunkText(2));
+    assertEquals("f g h i\n\n",
+        IOUtils.toString(doc.getDocuments().get(2).getInputStream(), StandardCharsets.UTF_8));
+    assertEquals(text.indexOf('g'), doc.toTextOffset(2, 2));
+    assertEquals(0, doc.chunkAt(0));
+    assertEquals(1, doc.chunkAt(7));
+    assertEquals(1, doc.chunkAt(12));
+    assertEquals(3, doc.chunkAt(text.length() - 1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidMaxTokens() {
+    new ChunkedDisambiguator(null, DisambiguateRequest::new).setMaxTokens(0);
+  }
+
+  @Test
+  public void testRequestMaxTokens() throws Exception {
+    List<Integer> maxTokens = new ArrayList<>();
+    AsyncClient client = new AsyncClient(new IdiliaCredentials("Idi0123456789", "012345678901234567890123456789")) {
+      @Override
+      public CompletableFuture<DisambiguateResponse> disambiguateAsync(DisambiguateRequest req) {
+        maxTokens.add(req.getMaxTokens());
+        DisambiguateResponse resp = new DisambiguateResponse();
+        resp.setStatus(200);
+        resp.addResult(new DisambiguatedDocument("text/plain", null, new byte[0]));
+        return CompletableFuture.completedFuture(resp);
+      }
+    };
+
+    // Raised to the need of the chunk unless the factory set a larger maximum
+    String text = "a b c\n\nd e";
+    new ChunkedDisambiguator(client, () -> {
+      DisambiguateRequest req = new DisambiguateRequest();
+      req.setMaxTokens(10);
+      return req;
+    }).setMaxTokens(3).disambiguateAsync(text).get();
+    new ChunkedDisambiguator(client, () -> {
+      DisambiguateRequest req = new DisambiguateRequest();
+      req.setMaxTokens(5000);
+      return req;
+    }).setMaxTokens(3).disambiguateAsync(text).get();
+    assertEquals(Arrays.asList(106, 104, 5000, 5000), maxTokens);
+  }
+}
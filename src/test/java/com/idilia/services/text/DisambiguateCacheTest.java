@@ -0,0 +1,51 @@
+package com.idilia.services.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DisambiguateCacheTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testCacheKey() throws Exception {
+    DisambiguateRequest req = RequestDeduplicatorTest.request("a", "1");
+    String key = req.cacheKey();
+    assertEquals(key, req.cacheKey());
+    assertEquals(key, RequestDeduplicatorTest.request("a", "2").cacheKey());
+
+    // The parameters and attachments set after a first computation are included
+    req.setCustomerId(UUID.randomUUID());
+    String custKey = req.cacheKey();
+    assertNotEquals(key, custKey);
+    req.setText("b", "text/plain", StandardCharsets.UTF_8);
+    assertNotEquals(custKey, req.cacheKey());
+    req.setResultURI("s3://bucket/result");
+    assertNull(req.cacheKey());
+  }
+
+  @Test
+  public void testPutAsync() throws Exception {
+    Path dir = tmp.getRoot().toPath();
+    try (DisambiguateCache cache = DisambiguateCache.open(dir, 1 << 20)) {
+      cache.putAsync(RequestDeduplicatorTest.request("a", "1"), RequestDeduplicatorTest.response("A"));
+    }
+
+    // Closing waits for the pending writes
+    try (DisambiguateCache cache = DisambiguateCache.open(dir, 1 << 20)) {
+      DisambiguateResponse hit = cache.get(RequestDeduplicatorTest.request("a", "2"));
+      assertEquals("2", hit.getRequestId());
+      assertEquals("A", RequestDeduplicatorTest.content(hit));
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package com.idilia.services.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.IdiliaCredentials;
+import com.idilia.services.base.ResponseBase;
+
+public class DisambiguatePackerTest {
+
+  final List<Integer> sent = new CopyOnWriteArrayList<>();
+
+  /**
+   * A client returning the text of each attachment as its document. The texts end
+   * with ';' so that they can be recovered from the signed content. A text "bad;"
+   * makes its request fail.
+   */
+  AsyncClient client() throws IdiliaClientException {
+    return new AsyncClient(new IdiliaCredentials("Idi0123456789", "012345678901234567890123456789")) {
+      @Override
+      public CompletableFuture<DisambiguateResponse> disambiguateAsync(DisambiguateRequest req) {
+        try {
+          String[] texts = new String(req.toSign(), StandardCharsets.UTF_8).split(";");
+          sent.add(texts.length);
+          if (Arrays.asList(texts).contains("bad"))
+            throw new IdiliaClientException(new ResponseBase(400, "bad text"));
+          DisambiguateResponse resp = new DisambiguateResponse();
+          resp.setStatus(200);
+          for (String t: texts)
+            resp.addResult(new DisambiguatedDocument("text/plain", null, t.getBytes(StandardCharsets.UTF_8)));
+          return CompletableFuture.completedFuture(resp);
+        } catch (Exception e) {
+          CompletableFuture<DisambiguateResponse> f = new CompletableFuture<>();
+          f.completeExceptionally(e);
+          return f;
+        }
+      }
+    };
+  }
+
+  static String text(CompletableFuture<DisambiguatedDocument> f) throws Exception {
+    return IOUtils.toString(f.get().getInputStream(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testPacking() throws Exception {
+    List<String> texts = new ArrayList<>();
+    for (int i = 0; i < 10; ++i)
+      texts.add("text " + i + ";");
+    List<CompletableFuture<DisambiguatedDocument>> docs = new DisambiguatePacker(client(), DisambiguateRequest::new)
+        .setMaxTexts(4).disambiguateAsync(texts);
+    assertEquals(Arrays.asList(4, 4, 2), sent);
+    for (int i = 0; i < 10; ++i)
+      assertEquals("text " + i, text(docs.get(i)));
+
+    // Each text has 2 tokens and 7 characters
+    sent.clear();
+    new DisambiguatePacker(client(), DisambiguateRequest::new).setMaxTokens(5).disambiguateAsync(texts);
+    assertEquals(5, sent.size());
+    sent.clear();
+    new DisambiguatePacker(client(), DisambiguateRequest::new).setMaxChars(21).disambiguateAsync(texts);
+    assertEquals(Arrays.asList(3, 3, 3, 1), sent);
+  }
+
+  @Test
+  public void testErrorIsolated() throws Exception {
+    List<String> texts = Arrays.asList("a;", "bad;", "c;");
+    List<CompletableFuture<DisambiguatedDocument>> docs = new DisambiguatePacker(client(), DisambiguateRequest::new)
+        .disambiguateAsync(texts);
+    assertEquals("a", text(docs.get(0)));
+    assertEquals("c", text(docs.get(2)));
+    try {
+      docs.get(1).get();
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IdiliaClientException);
+      assertEquals(400, ((IdiliaClientException) e.getCause()).getApiResponse().getStatus());
+    }
+    assertEquals(Arrays.asList(3, 1, 1, 1), sent);
+  }
+
+  @Test
+  public void testEstimateTokens() {
+    assertEquals(0, DisambiguatePacker.estimateTokens("  "));
+    assertEquals(3, DisambiguatePacker.estimateTokens(" a bc\td "));
+  }
+}
@@ -0,0 +1,76 @@
+package com.idilia.services.text;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class LazyParaphrasesTest {
+
+  static final String json = "{\"status\":200,\"requestId\":\"r1\",\"paraphrases\":[" +
+      "{\"text\":\"cheap flights\",\"surface\":\"cheap flights\",\"weight\":1.0," +
+      "\"senses\":[{\"start\":0,\"end\":5,\"fsk\":\"cheap/J1\",\"fs\":\"cheap/J1\"}]}," +
+      "{\"text\":\"budget flights\",\"surface\":\"budget flights\",\"weight\":0.8,\"transformations\":\"synonymy\"," +
+      "\"senses\":[{\"start\":0,\"end\":6,\"fsk\":\"budget/J1\",\"fs\":\"budget/J1\"},{\"start\":7,\"end\":14,\"fsk\":\"flight/N1\",\"fs\":\"flight/N1\"}]}]," +
+      "\"queryConfidence\":{\"confCorrectFinePresent\":0.9}}";
+
+  static ParaphraseResponse parse(boolean lazy) throws Exception {
+    byte[] b = json.getBytes(StandardCharsets.UTF_8);
+    JsonParser jp = new ObjectMapper().getFactory().createParser(b);
+    jp.nextToken();
+    return new ParaphraseResponse(jp, lazy ? b : null);
+  }
+
+  @Test
+  public void testSameAsEager() throws Exception {
+    ParaphraseResponse eager = parse(false);
+    ParaphraseResponse lazy = parse(true);
+    assertEquals(0.9, lazy.getQueryConfidence().confCorrectFinePresent, 0);
+    assertEquals("r1", lazy.getRequestId());
+    assertEquals(2, lazy.getParaphrases().size());
+
+    // Access in reverse order
+    for (int i = 1; i >= 0; --i) {
+      ParaphraseResponse.Paraphrase e = eager.getParaphrases().get(i), l = lazy.getParaphrases().get(i);
+      assertEquals(e.getText(), l.getText());
+      assertEquals(e.getSurface(), l.getSurface());
+      assertEquals(e.getWeight(), l.getWeight(), 0);
+      assertEquals(e.getTransformations(), l.getTransformations());
+      assertEquals(e.getSenses().size(), l.getSenses().size());
+      assertEquals(e.getSenses().get(0).getEnd(), l.getSenses().get(0).getEnd());
+      assertEquals(e.getSenses().get(0).getFsk(), l.getSenses().get(0).getFsk());
+    }
+
+    // Decoded once
+    assertSame(lazy.getParaphrases().get(1).getText(), lazy.getParaphrases().get(1).getText());
+
+    // Same binary form
+    assertArrayEquals(TextBinaryCodec.PARAPHRASE.encode(eager), TextBinaryCodec.PARAPHRASE.encode(lazy));
+  }
+
+  @Test
+  public void testCopyAndAdd() throws Exception {
+    ParaphraseResponse lazy = parse(true);
+    ParaphraseResponse copy = new ParaphraseResponse(lazy, "r2");
+    copy.addParaphrase(lazy.getParaphrases().get(0));
+    assertEquals(3, copy.getParaphrases().size());
+    assertEquals("flight/N1", copy.getParaphrases().get(1).getSenses().get(1).getFs());
+    assertEquals("cheap flights", copy.getParaphrases().get(2).getText());
+    assertEquals(2, lazy.getParaphrases().size());
+  }
+
+  @Test
+  public void testCodec() throws Exception {
+    ParaphraseResponse r = ParaphraseCodec.decode(new StringEntity(json, ContentType.APPLICATION_JSON), true);
+    assertEquals(200, r.getStatus());
+    assertEquals("budget flights", r.getParaphrases().get(1).getText());
+  }
+}
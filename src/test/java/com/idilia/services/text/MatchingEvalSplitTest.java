@@ -0,0 +1,124 @@
+package com.idilia.services.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.http.NameValuePair;
+import org.junit.Test;
+
+import com.idilia.services.base.DoubleList;
+import com.idilia.services.base.JsonCodecs;
+import com.idilia.services.base.PriorityScheduler;
+import com.idilia.services.text.MatchingEvalResponse.SkModelStatus;
+import com.idilia.tagging.Sense;
+
+public class MatchingEvalSplitTest {
+
+  static MatchingEvalRequest request(int n) {
+    MatchingEvalRequest req = new MatchingEvalRequest();
+    req.setExpression(Collections.singletonList(new Sense(0, 5, "jaguar", "jaguar/N1")));
+    req.setRequireTerm(MatchingEvalRequest.RequireTerm.yes);
+    req.setRequestId("r1");
+    List<String> docs = new ArrayList<>();
+    for (int i = 0; i < n; ++i)
+      docs.add("doc" + i);
+    req.setDocuments(docs);
+    return req;
+  }
+
+  static String param(MatchingEvalRequest req, String name) {
+    List<NameValuePair> parms = new ArrayList<>();
+    req.getHttpQueryParms(parms);
+    for (NameValuePair p: parms)
+      if (p.getName().equals(name))
+        return p.getValue();
+    return null;
+  }
+
+  static SkModelStatus status(String fsk, boolean used) {
+    SkModelStatus s = new SkModelStatus();
+    s.fsk = fsk;
+    s.text = "jaguar";
+    s.used = used;
+    return s;
+  }
+
+  @Test
+  public void testSplit() {
+    MatchingEvalRequest req = request(10);
+    req.setPriority(PriorityScheduler.Priority.INTERACTIVE);
+    assertSame(req, req.split(10, 0).get(0));
+
+    List<MatchingEvalRequest> chunks = req.split(4, 0);
+    assertEquals(3, chunks.size());
+    assertEquals("[\"doc0\",\"doc1\",\"doc2\",\"doc3\"]", param(chunks.get(0), "documents"));
+    assertEquals("[\"doc8\",\"doc9\"]", param(chunks.get(2), "documents"));
+    assertSame(param(req, "expression"), param(chunks.get(1), "expression"));
+    assertEquals("yes", param(chunks.get(1), "requireTerm"));
+    assertEquals("r1", chunks.get(1).getRequestId());
+    assertEquals(PriorityScheduler.Priority.INTERACTIVE, chunks.get(1).getPriority());
+
+    // Each document has 4 characters
+    chunks = req.split(100, 9);
+    assertEquals(5, chunks.size());
+    assertEquals(1, request(1).split(100, 2).size());
+  }
+
+  @Test
+  public void testDocumentsCopied() {
+    MatchingEvalRequest req = new MatchingEvalRequest();
+    List<String> docs = new ArrayList<>(Arrays.asList("doc0", "doc1", "doc2"));
+    req.setDocuments(docs);
+    docs.set(0, "changed");
+    docs.add("doc3");
+
+    List<MatchingEvalRequest> chunks = req.split(2, 0);
+    assertEquals(2, chunks.size());
+    assertEquals("[\"doc0\",\"doc1\"]", param(chunks.get(0), "documents"));
+    assertEquals("[\"doc2\"]", param(chunks.get(1), "documents"));
+  }
+
+  @Test
+  public void testDecodeResults() throws Exception {
+    MatchingEvalResponse r = JsonCodecs.reader(MatchingEvalResponse.class).readValue(
+        "{\"status\":200,\"result\":[1.0,-0.5,0],\"skModelStatuses\":[{\"fsk\":\"dog/N1\",\"used\":false}]}");
+    assertTrue(r.getResult() instanceof DoubleList);
+    assertEquals(-0.5, ((DoubleList) r.getResult()).getDouble(1), 0);
+    assertFalse(r.getSkModelStatuses().get(0).wasUsed());
+
+    // Null results are kept
+    r = JsonCodecs.reader(MatchingEvalResponse.class).readValue("{\"status\":200,\"result\":[1.0,null]}");
+    assertEquals(Arrays.asList(1.0, null), r.getResult());
+    assertNull(JsonCodecs.reader(MatchingEvalResponse.class).<MatchingEvalResponse>readValue("{\"result\":null}").getResult());
+  }
+
+  @Test
+  public void testMerge() {
+    MatchingEvalResponse a = new MatchingEvalResponse();
+    a.setResult(new DoubleList(new double[] { 1.0, -1.0 }));
+    a.setSkModelStatuses(new ArrayList<>(Arrays.asList(status("jaguar/N1", false))));
+    MatchingEvalResponse b = new MatchingEvalResponse();
+    b.setResult(new DoubleList(new double[] { 0.0 }));
+    b.setSkModelStatuses(new ArrayList<>(Arrays.asList(status("jaguar/N1", true))));
+
+    MatchingEvalResponse m = MatchingEvalResponse.merge(Arrays.asList(a, b), "r1");
+    assertEquals(200, m.getStatus());
+    assertEquals("r1", m.getRequestId());
+    assertEquals(Arrays.asList(1.0, -1.0, 0.0), m.getResult());
+    assertEquals(1, m.getSkModelStatuses().size());
+    assertTrue(m.getSkModelStatuses().get(0).wasUsed());
+
+    // Null results are kept
+    b.setResult(Arrays.asList(0.0, null));
+    m = MatchingEvalResponse.merge(Arrays.asList(a, b), "r1");
+    assertEquals(Arrays.asList(1.0, -1.0, 0.0, null), m.getResult());
+  }
+}
@@ -0,0 +1,90 @@
+package com.idilia.services.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idilia.services.base.LruResponseCache;
+import com.idilia.services.text.ParaphraseCache.Normalization;
+
+public class ParaphraseCacheTest {
+
+  static ParaphraseRequest request(String text) {
+    ParaphraseRequest req = new ParaphraseRequest();
+    req.setText(text, "text/query", StandardCharsets.UTF_8);
+    return req;
+  }
+
+  static ParaphraseResponse response(String text) throws Exception {
+    String json = "{\"status\":200,\"paraphrases\":[{\"text\":\"" + text +
+        "\",\"surface\":\"" + text + "\",\"weight\":1.0,\"senses\":[]}]}";
+    JsonParser jp = new ObjectMapper().getFactory().createParser(json);
+    jp.nextToken();
+    return new ParaphraseResponse(jp);
+  }
+
+  @Test
+  public void testNormalizedHit() throws Exception {
+    ParaphraseCache cache = new ParaphraseCache(10, 0, TimeUnit.SECONDS,
+        EnumSet.of(Normalization.TRIM, Normalization.COLLAPSE_WHITESPACE, Normalization.LOWERCASE));
+    cache.put(request("Cheap flights"), response("cheap flights"));
+
+    ParaphraseRequest req = request("  cheap   FLIGHTS ");
+    req.setRequestId("r1");
+    ParaphraseResponse hit = cache.get(req);
+    assertNotNull(hit);
+    assertEquals("r1", hit.getRequestId());
+    assertEquals("cheap flights", hit.getParaphrases().get(0).getText());
+
+    // Punctuation is significant unless requested
+    assertNull(cache.get(request("cheap flights!")));
+
+    // Other parameters are part of the key
+    ParaphraseRequest other = request("cheap flights");
+    other.setMaxCount(3);
+    assertNull(cache.get(other));
+  }
+
+  @Test
+  public void testPunctuationAndOffline() throws Exception {
+    ParaphraseCache cache = new ParaphraseCache(10, 0, TimeUnit.SECONDS,
+        EnumSet.of(Normalization.STRIP_PUNCTUATION, Normalization.TRIM));
+    cache.put(request("flights?"), response("flights"));
+    assertNotNull(cache.get(request("flights")));
+
+    ParaphraseRequest offline = request("flights");
+    offline.setResultURI("s3://bucket/result");
+    assertNull(cache.get(offline));
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    ParaphraseCache cache = new ParaphraseCache(10, 1, TimeUnit.MILLISECONDS,
+        EnumSet.noneOf(Normalization.class));
+    cache.put(request("flights"), response("flights"));
+    Thread.sleep(5);
+    assertNull(cache.get(request("flights")));
+  }
+
+  @Test
+  public void testSharedStorage() throws Exception {
+    ParaphraseCache cache = ParaphraseCache.shared(new LruResponseCache<byte[]>(10),
+        ParaphraseCache.normalizer(EnumSet.of(Normalization.LOWERCASE)));
+    ParaphraseResponse resp = response("cheap flights");
+    cache.put(request("Cheap flights"), resp);
+
+    ParaphraseResponse hit = cache.get(request("cheap flights"));
+    assertNotNull(hit);
+    assertEquals(200, hit.getStatus());
+    assertEquals("cheap flights", hit.getParaphrases().get(0).getSurface());
+    assertEquals(1.0, hit.getParaphrases().get(0).getWeight(), 0);
+  }
+}
@@ -0,0 +1,87 @@
+package com.idilia.services.text;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.idilia.services.base.JsonCodecs;
+
+/**
+ * Compares decoding all the paraphrases of a response with decoding them when accessed,
+ * for a caller reading the top paraphrase and for one reading all of them.
+ * Run with: mvn -Pbenchmarks clean test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=com.idilia.services.text.ParaphraseDecodeBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParaphraseDecodeBenchmark {
+
+  byte[] json;
+
+  /** Response with 100 paraphrases of 3 senses */
+  @Setup
+  public void setup() {
+    String[] w = { "cheap", "flight", "budget", "airfare", "ticket", "low", "cost", "plane" };
+    StringBuilder sb = new StringBuilder("{\"status\":200,\"requestId\":\"r1\",\"paraphrases\":[");
+    for (int i = 0; i < 100; ++i) {
+      String t = w[i % 8] + " " + w[(i / 8) % 8] + " to " + w[(i / 3) % 8];
+      sb.append(i > 0 ? "," : "").append("{\"text\":\"").append(t).append("\",\"surface\":\"").append(t)
+        .append("\",\"weight\":").append(1.0 - i * 0.005).append(",\"transformations\":\"synonymy\",\"senses\":[");
+      for (int s = 0; s < 3; ++s)
+        sb.append(s > 0 ? "," : "").append("{\"start\":").append(s * 7).append(",\"end\":").append(s * 7 + 5)
+          .append(",\"fsk\":\"").append(w[(i + s) % 8]).append("/N1\",\"fs\":\"").append(w[(i + s) % 8]).append("/N1\"}");
+      sb.append("]}");
+    }
+    sb.append("],\"queryConfidence\":{\"confCorrectFineMostProbable\":0.61,\"confCorrectFinePresent\":0.93}}");
+    json = sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private ParaphraseResponse decode(boolean lazy) throws IOException {
+    JsonParser jp = JsonCodecs.factory().createParser(json);
+    jp.nextToken();
+    return new ParaphraseResponse(jp, lazy ? json : null);
+  }
+
+  @Benchmark
+  public String topEager() throws IOException {
+    return decode(false).getParaphrases().get(0).getText();
+  }
+
+  @Benchmark
+  public String topLazy() throws IOException {
+    return decode(true).getParaphrases().get(0).getText();
+  }
+
+  @Benchmark
+  public int allEager() throws IOException {
+    int n = 0;
+    for (ParaphraseResponse.Paraphrase p: decode(false).getParaphrases())
+      n += p.getSenses().size();
+    return n;
+  }
+
+  @Benchmark
+  public int allLazy() throws IOException {
+    int n = 0;
+    for (ParaphraseResponse.Paraphrase p: decode(true).getParaphrases())
+      n += p.getSenses().size();
+    return n;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(ParaphraseDecodeBenchmark.class.getSimpleName()).forks(1).build()).run();
+  }
+}
@@ -0,0 +1,79 @@
+package com.idilia.services.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ParaphraseTableTest {
+
+  static ParaphraseResponse parse(String json) throws Exception {
+    JsonParser jp = new ObjectMapper().getFactory().createParser(json);
+    jp.nextToken();
+    return new ParaphraseResponse(jp);
+  }
+
+  static final String json = "{\"status\":200,\"paraphrases\":[" +
+      "{\"text\":\"cheap flights\",\"surface\":\"cheap flights\",\"weight\":1.0,\"transformations\":\"\"," +
+      "\"senses\":[{\"start\":0,\"end\":5,\"fsk\":\"cheap/J1\",\"fs\":\"cheap/J1\"},{\"start\":6,\"end\":13,\"fsk\":\"flight/N1\",\"fs\":\"flight/N1\",\"x\":[1]}]}," +
+      "{\"text\":\"inexpensive flights\",\"weight\":0.8,\"transformations\":\"synonymy\",\"other\":{}," +
+      "\"senses\":[{\"start\":12,\"end\":19,\"fsk\":\"flight/N1\",\"fs\":\"flight/N1\"}]}," +
+      "{\"text\":\"cheap flight\",\"surface\":\"cheap flight\",\"weight\":0.5,\"senses\":[]}]}";
+
+  @Test
+  public void testViews() throws Exception {
+    ParaphraseResponse r = parse(json);
+    assertEquals(3, r.getParaphrases().size());
+
+    ParaphraseResponse.Paraphrase p = r.getParaphrases().get(1);
+    assertEquals("inexpensive flights", p.getText());
+    assertNull(p.getSurface());
+    assertEquals(0.8, p.getWeight(), 0);
+    assertEquals("synonymy", p.getTransformations());
+    assertEquals(1, p.getSenses().size());
+    assertEquals(12, p.getSenses().get(0).getStart());
+    assertEquals("flight/N1", p.getSenses().get(0).getFs());
+
+    // The strings are recorded once per response
+    assertSame(r.getParaphrases().get(0).getText(), r.getParaphrases().get(0).getSurface());
+    assertSame(r.getParaphrases().get(0).getSenses().get(1).getFsk(), p.getSenses().get(0).getFsk());
+
+    assertEquals(0, r.getParaphrases().get(2).getSenses().size());
+    assertEquals("", r.getParaphrases().get(2).getTransformations());
+  }
+
+  @Test
+  public void testAddToSharedTable() throws Exception {
+    ParaphraseResponse r = parse(json);
+    ParaphraseTable shared = r.writableTable();
+    ParaphraseResponse a = new ParaphraseResponse(r, "a");
+    ParaphraseResponse b = new ParaphraseResponse(r, "b");
+
+    // Appending to a copy does not change the responses sharing the table
+    a.addParaphrase(r.getParaphrases().get(0));
+    b.addParaphrase(r.getParaphrases().get(1));
+    assertEquals(3, r.getParaphrases().size());
+    assertEquals(4, a.getParaphrases().size());
+    assertEquals(4, b.getParaphrases().size());
+    assertEquals("cheap flights", a.getParaphrases().get(3).getText());
+    assertEquals(2, a.getParaphrases().get(3).getSenses().size());
+    assertEquals("inexpensive flights", b.getParaphrases().get(3).getText());
+    assertEquals("flight/N1", b.getParaphrases().get(3).getSenses().get(0).getFsk());
+
+    // The shared table is left as is, including by the original response
+    assertEquals(3, shared.size());
+    r.addParaphrase(r.getParaphrases().get(2));
+    assertEquals(3, shared.size());
+    assertEquals(4, r.getParaphrases().size());
+    assertEquals("cheap flights", a.getParaphrases().get(3).getText());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testOutOfBounds() throws Exception {
+    parse(json).getParaphrases().get(0).getSenses().get(2);
+  }
+}
@@ -0,0 +1,131 @@
+package com.idilia.services.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.idilia.services.base.IdiliaClientException;
+import com.idilia.services.base.ResponseBase;
+
+public class RequestDeduplicatorTest {
+
+  final List<CompletableFuture<DisambiguateResponse>> sent = new ArrayList<>();
+
+  CompletableFuture<DisambiguateResponse> send(DisambiguateRequest req) {
+    CompletableFuture<DisambiguateResponse> f = new CompletableFuture<>();
+    sent.add(f);
+    return f;
+  }
+
+  static DisambiguateRequest request(String text, String requestId) {
+    DisambiguateRequest req = new DisambiguateRequest();
+    req.setText(text, "text/plain", StandardCharsets.UTF_8);
+    req.setRequestId(requestId);
+    return req;
+  }
+
+  static DisambiguateResponse response(String content) {
+    DisambiguateResponse resp = new DisambiguateResponse();
+    resp.setStatus(200);
+    // A streamed document can only be read once unless buffered
+    resp.addResult(new DisambiguatedDocument("text/plain", null,
+        new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))));
+    return resp;
+  }
+
+  static String content(DisambiguateResponse resp) throws Exception {
+    return IOUtils.toString(resp.getResult().getInputStream(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testInFlightSharing() throws Exception {
+    RequestDeduplicator dedup = new RequestDeduplicator();
+    CompletableFuture<DisambiguateResponse> a1 = dedup.disambiguate(request("a", "1"), this::send);
+    CompletableFuture<DisambiguateResponse> b = dedup.disambiguate(request("b", "2"), this::send);
+    CompletableFuture<DisambiguateResponse> a2 = dedup.disambiguate(request("a", "3"), this::send);
+    assertEquals(2, sent.size());
+
+    sent.get(0).complete(response("A"));
+    sent.get(1).complete(response("B"));
+    assertEquals("A", content(a1.get()));
+    assertEquals("A", content(a2.get()));
+    assertEquals("B", content(b.get()));
+    assertEquals("1", a1.get().getRequestId());
+    assertEquals("3", a2.get().getRequestId());
+
+    assertEquals(3, dedup.getSubmitted());
+    assertEquals(1, dedup.getDeduplicated());
+    assertEquals(1.0 / 3, dedup.getRatio(), 1e-9);
+
+    // Without a window, a completed request is sent again
+    dedup.disambiguate(request("a", "4"), this::send);
+    assertEquals(3, sent.size());
+  }
+
+  @Test
+  public void testWindow() throws Exception {
+    RequestDeduplicator dedup = new RequestDeduplicator().setWindow(1, TimeUnit.HOURS);
+    dedup.disambiguate(request("a", "1"), this::send);
+    sent.get(0).complete(response("A"));
+    DisambiguateResponse r = dedup.disambiguate(request("a", "2"), this::send).get();
+    assertEquals(1, sent.size());
+    assertEquals("A", content(r));
+    assertEquals("2", r.getRequestId());
+  }
+
+  @Test
+  public void testFailureShared() throws Exception {
+    RequestDeduplicator dedup = new RequestDeduplicator().setWindow(1, TimeUnit.HOURS);
+    CompletableFuture<DisambiguateResponse> a1 = dedup.disambiguate(request("a", "1"), this::send);
+    CompletableFuture<DisambiguateResponse> a2 = dedup.disambiguate(request("a", "2"), this::send);
+    sent.get(0).completeExceptionally(new IdiliaClientException(new ResponseBase(500, "down")));
+    for (CompletableFuture<DisambiguateResponse> f: Arrays.asList(a1, a2)) {
+      try {
+        f.get();
+        fail();
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof IdiliaClientException);
+      }
+    }
+
+    // Failures are not retained
+    dedup.disambiguate(request("a", "3"), this::send);
+    assertEquals(2, sent.size());
+  }
+
+  @Test
+  public void testParaphrase() throws Exception {
+    RequestDeduplicator dedup = new RequestDeduplicator();
+    List<CompletableFuture<ParaphraseResponse>> calls = new ArrayList<>();
+    List<CompletableFuture<ParaphraseResponse>> res = new ArrayList<>();
+    for (int i = 0; i < 3; ++i) {
+      ParaphraseRequest req = new ParaphraseRequest();
+      req.setText(i < 2 ? "same query" : "other query", "text/query", StandardCharsets.UTF_8);
+      req.setRequestId(Integer.toString(i));
+      res.add(dedup.paraphrase(req, r -> {
+        CompletableFuture<ParaphraseResponse> f = new CompletableFuture<>();
+        calls.add(f);
+        return f;
+      }));
+    }
+    assertEquals(2, calls.size());
+    ParaphraseResponse resp = new ParaphraseResponse();
+    resp.setStatus(200);
+    calls.get(0).complete(resp);
+    assertEquals("0", res.get(0).get().getRequestId());
+    assertEquals("1", res.get(1).get().getRequestId());
+    assertEquals(1, dedup.getDeduplicated());
+  }
+}
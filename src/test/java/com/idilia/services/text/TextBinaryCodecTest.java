@@ -0,0 +1,74 @@
+package com.idilia.services.text;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class TextBinaryCodecTest {
+
+  final ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  public void testParaphrase() throws Exception {
+    String json = "{\"status\":200,\"requestId\":\"r1\",\"queryConfidence\":{\"confCorrectFinePresent\":0.9}," +
+        "\"paraphrases\":[{\"text\":\"cheap flights\",\"surface\":\"cheap flights\",\"weight\":1.0," +
+        "\"transformations\":\"\",\"senses\":[{\"start\":0,\"end\":5,\"fsk\":\"cheap/J1\",\"fs\":\"cheap/J1\"}]}," +
+        "{\"text\":\"budget flights\",\"surface\":\"budget flights\",\"weight\":0.8," +
+        "\"transformations\":\"synonymy\",\"senses\":[]}]}";
+    JsonParser jp = mapper.getFactory().createParser(json);
+    jp.nextToken();
+    ParaphraseResponse orig = new ParaphraseResponse(jp);
+    orig.setWsdResult(new DisambiguatedDocument("application/x-tf+xml", null, new byte[] { 1, 2, 3 }));
+
+    byte[] b = TextBinaryCodec.PARAPHRASE.encode(orig);
+    assertTrue(b.length < json.length());
+    ParaphraseResponse r = TextBinaryCodec.PARAPHRASE.decode(b);
+    assertEquals(200, r.getStatus());
+    assertEquals("r1", r.getRequestId());
+    assertEquals(0.9, r.getQueryConfidence().confCorrectFinePresent, 0);
+    assertEquals(2, r.getParaphrases().size());
+    assertEquals("cheap/J1", r.getParaphrases().get(0).getSenses().get(0).getFs());
+    assertEquals(5, r.getParaphrases().get(0).getSenses().get(0).getEnd());
+    assertEquals(0.8, r.getParaphrases().get(1).getWeight(), 0);
+    assertEquals("synonymy", r.getParaphrases().get(1).getTransformations());
+    assertArrayEquals(new byte[] { 1, 2, 3 }, r.getWsdResult().getEncodedBytes());
+    assertNull(r.getWsdResult().getEncoding());
+  }
+
+  @Test
+  public void testMatch() throws Exception {
+    MatchResponse orig = mapper.readValue("{\"status\":200,\"result\":{\"match\":true,\"matches\":[" +
+        "{\"fsk\":\"dog/N1\",\"sks\":[{\"foundSk\":\"dog/N1\",\"conf\":0.7,\"position\":[3,-1],\"reasons\":[\"same\"]}]," +
+        "\"kws\":{\"positive\":[{\"kw\":\"dog\",\"position\":[3]}]}}]}}", MatchResponse.class);
+    MatchResponse r = TextBinaryCodec.MATCH.decode(TextBinaryCodec.MATCH.encode(orig));
+    assertTrue(r.result.match);
+    MatchResponse.SenseMatch sm = r.result.matches.get(0).sks.get(0);
+    assertEquals("dog/N1", sm.foundSk);
+    assertEquals(Integer.valueOf(-1), sm.position.get(1));
+    assertArrayEquals(new int[] { 3, -1 }, sm.getPositions());
+    assertEquals("same", sm.reasons.get(0));
+    assertEquals("dog", r.result.matches.get(0).kws.positive.get(0).kw);
+    assertNull(r.result.matches.get(0).kws.negative);
+    assertNull(r.wsd);
+  }
+
+  @Test
+  public void testMatchNullPosition() throws Exception {
+    MatchResponse orig = mapper.readValue("{\"status\":200,\"result\":{\"match\":true,\"matches\":[" +
+        "{\"fsk\":\"dog/N1\",\"sks\":[{\"foundSk\":\"dog/N1\",\"position\":[3,null,-2]},{\"foundSk\":\"dog/N2\",\"position\":[]}]," +
+        "\"kws\":{\"positive\":[{\"kw\":\"dog\",\"position\":null}]}}]}}", MatchResponse.class);
+    MatchResponse r = TextBinaryCodec.MATCH.decode(TextBinaryCodec.MATCH.encode(orig));
+    MatchResponse.FskMatchResult m = r.result.matches.get(0);
+    assertEquals(Arrays.asList(3, null, -2), m.sks.get(0).position);
+    assertEquals(0, m.sks.get(1).position.size());
+    assertNull(m.kws.positive.get(0).position);
+  }
+}
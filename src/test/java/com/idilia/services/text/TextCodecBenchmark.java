@@ -0,0 +1,92 @@
+package com.idilia.services.text;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares Jackson round trips of text responses with {@link TextBinaryCodec}.
+ * Run with: mvn -Pbenchmarks clean test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=com.idilia.services.text.TextCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextCodecBenchmark {
+
+  ObjectMapper mapper = new ObjectMapper();
+  ParaphraseResponse paraphrase;
+  MatchResponse match;
+
+  /** Payloads in the format returned by the server for a typical query */
+  @Setup
+  public void setup() throws IOException {
+    StringBuilder sb = new StringBuilder("{\"status\":200,\"requestId\":\"r1\",")
+        .append("\"queryConfidence\":{\"confCorrectFineMostProbable\":0.61,\"confCorrectFinePresent\":0.93,")
+        .append("\"confCorrectCoarseMostProbable\":0.72,\"confCorrectCoarsePresent\":0.97},\"paraphrases\":[");
+    String[] words = { "cheap", "inexpensive", "low-cost", "budget", "flights", "airfare", "tickets", "montreal" };
+    for (int i = 0; i < 20; ++i) {
+      String a = words[i % 4], b = words[4 + (i / 4) % 3];
+      sb.append(i > 0 ? "," : "").append("{\"text\":\"").append(a).append(' ').append(b).append(" montreal\",")
+        .append("\"surface\":\"").append(a).append(' ').append(b).append(" montreal\",\"weight\":").append(1.0 - i * 0.03)
+        .append(",\"transformations\":\"synonymy,specialization\",\"senses\":[")
+        .append("{\"start\":0,\"end\":").append(a.length()).append(",\"fsk\":\"").append(a).append("/J1\",\"fs\":\"").append(a).append("/J1\"},")
+        .append("{\"start\":").append(a.length() + 1).append(",\"end\":").append(a.length() + 1 + b.length())
+        .append(",\"fsk\":\"").append(b).append("/N1\",\"fs\":\"").append(b).append("/N1\"},")
+        .append("{\"start\":").append(a.length() + b.length() + 2).append(",\"end\":").append(a.length() + b.length() + 10)
+        .append(",\"fsk\":\"Montreal/N1\",\"fs\":\"Montreal/N1\"}]}");
+    }
+    sb.append("]}");
+    JsonParser jp = mapper.getFactory().createParser(sb.toString());
+    jp.nextToken();
+    paraphrase = new ParaphraseResponse(jp);
+
+    sb = new StringBuilder("{\"status\":200,\"requestId\":\"r1\",\"result\":{\"match\":true,\"matches\":[");
+    for (int i = 0; i < 10; ++i)
+      sb.append(i > 0 ? "," : "").append("{\"fsk\":\"").append(words[i % words.length]).append("/N1\",\"sks\":[")
+        .append("{\"foundSk\":\"").append(words[i % words.length]).append("/N1\",\"conf\":0.8,\"position\":[").append(i).append(",").append(i + 1)
+        .append("],\"reasons\":[\"same sense\",\"hypernym\"]}],\"kws\":{\"positive\":[{\"kw\":\"")
+        .append(words[i % words.length]).append("\",\"position\":[").append(i).append("]}],\"negative\":[]}}");
+    sb.append("]}}");
+    match = mapper.readValue(sb.toString(), MatchResponse.class);
+  }
+
+  @Benchmark
+  public ParaphraseResponse paraphraseJackson() throws IOException {
+    JsonParser jp = mapper.getFactory().createParser(mapper.writeValueAsBytes(paraphrase));
+    jp.nextToken();
+    return new ParaphraseResponse(jp);
+  }
+
+  @Benchmark
+  public ParaphraseResponse paraphraseBinary() {
+    return TextBinaryCodec.PARAPHRASE.decode(TextBinaryCodec.PARAPHRASE.encode(paraphrase));
+  }
+
+  @Benchmark
+  public MatchResponse matchJackson() throws IOException {
+    return mapper.readValue(mapper.writeValueAsBytes(match), MatchResponse.class);
+  }
+
+  @Benchmark
+  public MatchResponse matchBinary() {
+    return TextBinaryCodec.MATCH.decode(TextBinaryCodec.MATCH.encode(match));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(TextCodecBenchmark.class.getSimpleName()).forks(1).build()).run();
+  }
+}
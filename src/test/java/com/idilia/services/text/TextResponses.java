@@ -0,0 +1,20 @@
+package com.idilia.services.text;
+
+/**
+ * Builds text responses for tests in other packages.
+ */
+public class TextResponses {
+
+  /**
+   * @param mime mime of the documents
+   * @param docs content of the documents
+   * @return a successful response with the documents
+   */
+  public static DisambiguateResponse disambiguate(String mime, byte[]... docs) {
+    DisambiguateResponse resp = new DisambiguateResponse();
+    resp.setStatus(200);
+    for (byte[] d: docs)
+      resp.addResult(new DisambiguatedDocument(mime, null, d));
+    return resp;
+  }
+}